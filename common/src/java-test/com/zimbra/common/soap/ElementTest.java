@@ -25,6 +25,8 @@ import java.io.InputStream;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import org.apache.log4j.BasicConfigurator;
@@ -44,6 +46,7 @@ import com.google.common.collect.Lists;
 import com.google.common.io.Closeables;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.soap.Element.ElementFactory;
+import com.zimbra.common.soap.Element.StreamedElement;
 import com.zimbra.common.soap.Element.XMLElement;
 import com.zimbra.common.util.ZimbraLog;
 
@@ -115,6 +118,125 @@ public class ElementTest {
         Assert.assertEquals("explicit child namespace", "urn:zimbraMail", json.getElement("foo").getNamespaceURI(""));
     }
 
+    @Test
+    public void streamedXml() throws Exception {
+        streamed(XMLElement.mFactory);
+    }
+
+    @Test
+    public void streamedJson() throws Exception {
+        streamed(Element.JSONElement.mFactory);
+    }
+
+    private static void streamed(ElementFactory factory) throws IOException {
+        Element built = factory.createElement(MailConstants.SEARCH_RESPONSE).addAttribute("offset", 0);
+        for (int id = 1; id <= 3; id++) {
+            addHit(built, id);
+        }
+        built.addAttribute("more", false);
+
+        Element streamed = factory.createElement(MailConstants.SEARCH_RESPONSE).addAttribute("offset", 0);
+        // 0 stands for a hit that vanished before serialization and adds nothing
+        final Iterator<Integer> ids = Arrays.asList(1, 0, 2, 3).iterator();
+        StreamedElement hits = streamed.addStreamedElements("m", new StreamedElement.Source() {
+            @Override
+            public boolean next(Element parent) {
+                if (!ids.hasNext()) {
+                    return false;
+                }
+                int id = ids.next();
+                if (id > 0) {
+                    addHit(parent, id);
+                }
+                return true;
+            }
+        });
+        streamed.addAttribute("more", false);
+
+        Assert.assertTrue("logging leaves a marker", streamed.prettyPrint().contains("streamed m elements"));
+        Assert.assertEquals(-1, hits.getCount());
+        StringBuilder out = new StringBuilder();
+        streamed.marshal(out);
+        Assert.assertEquals(built.toString(), out.toString());
+        Assert.assertEquals(3, hits.getCount());
+        try {
+            streamed.marshal(new StringBuilder());
+            Assert.fail("source can only be consumed once");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void addHit(Element parent, int id) {
+        Element m = parent.addNonUniqueElement("m").addAttribute("id", id);
+        m.addNonUniqueElement("e").addAttribute("a", "user" + id + "@example.com").addAttribute("t", "f");
+        m.addAttribute("su", "re: <" + id + "> & \"more\"", Element.Disposition.CONTENT);
+    }
+
+    @Test
+    public void streamedUnsupported() throws Exception {
+        Element elt = new Element.FileBackedElement(new File("unused"));
+        try {
+            elt.addStreamedElements("m", null);
+            Assert.fail("file-backed elements can't hold streamed children");
+        } catch (Element.ContainerException expected) {
+        }
+    }
+
+    @Test
+    public void nestedStreamsXml() throws Exception {
+        nestedStreams(XMLElement.mFactory);
+    }
+
+    @Test
+    public void nestedStreamsJson() throws Exception {
+        nestedStreams(Element.JSONElement.mFactory);
+    }
+
+    private static void nestedStreams(ElementFactory factory) throws IOException {
+        Element built = factory.createElement(MailConstants.GET_FOLDER_RESPONSE);
+        Element root = built.addNonUniqueElement("folder").addAttribute("id", 1);
+        for (int i = 0; i < 3; i++) {
+            Element child = root.addNonUniqueElement("folder").addAttribute("id", 10 + i);
+            for (int j = 0; j < i; j++) {
+                child.addNonUniqueElement("folder").addAttribute("id", 100 + 10 * i + j);
+            }
+        }
+
+        Element streamed = factory.createElement(MailConstants.GET_FOLDER_RESPONSE);
+        streamed.addNonUniqueElement("folder").addAttribute("id", 1).addStreamedElements("folder",
+                new StreamedElement.Source() {
+            private int i = 0;
+
+            @Override
+            public boolean next(Element parent) {
+                if (i == 3) {
+                    return false;
+                }
+                Element child = parent.addNonUniqueElement("folder").addAttribute("id", 10 + i);
+                if (i > 0) {
+                    // a single level of nesting is enough; the inner children come from a plain list
+                    final Iterator<Integer> ids = Arrays.asList(100 + 10 * i, 101 + 10 * i).subList(0, i).iterator();
+                    child.addStreamedElements("folder", new StreamedElement.Source() {
+                        @Override
+                        public boolean next(Element inner) {
+                            if (!ids.hasNext()) {
+                                return false;
+                            }
+                            inner.addNonUniqueElement("folder").addAttribute("id", ids.next());
+                            return true;
+                        }
+                    });
+                }
+                i++;
+                return true;
+            }
+        });
+
+        StringBuilder out = new StringBuilder();
+        streamed.marshal(out);
+        Assert.assertEquals(built.toString(), out.toString());
+    }
+
     @Test
     public void getPathElementList() {
         Element e = XMLElement.mFactory.createElement("parent");
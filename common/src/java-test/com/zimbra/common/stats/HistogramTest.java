@@ -0,0 +1,67 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.common.stats;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void percentiles() {
+        Histogram histogram = new Histogram("test");
+        Assert.assertEquals(0, histogram.getPercentile(50));
+
+        for (int i = 1; i <= 100; i++) {
+            histogram.increment(i);
+        }
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getTotal());
+        Assert.assertEquals(100, histogram.getMax());
+        Assert.assertTrue(50.5 == histogram.getAverage());
+        // 50 falls in the [32, 63] bucket, 95 and 99 in [64, 127] capped by the max
+        Assert.assertEquals(63, histogram.getPercentile(50));
+        Assert.assertEquals(100, histogram.getPercentile(95));
+        Assert.assertEquals(100, histogram.getPercentile(99));
+        Assert.assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void zeroAndNegative() {
+        Histogram histogram = new Histogram("test");
+        histogram.increment(0);
+        histogram.increment(-5);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(0, histogram.getPercentile(99));
+        Assert.assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void accumulator() {
+        Histogram histogram = new Histogram("fsync_ms");
+        Assert.assertEquals(6, histogram.getNames().size());
+        Assert.assertEquals("fsync_ms_p99", histogram.getNames().get(4));
+        histogram.increment(10);
+        Assert.assertEquals(histogram.getNames().size(), histogram.getData().size());
+        Assert.assertEquals(1L, histogram.getData().get(0));
+
+        histogram.reset();
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getMax());
+        Assert.assertEquals(0, histogram.getPercentile(50));
+    }
+}
@@ -59,4 +59,41 @@ public class BEncodingTest {
         Assert.assertEquals(new TreeMap<Object, Object>(), decoded.get("yy"));
     }
 
+    @Test
+    public void lazy() throws Exception {
+        String encoded = "d3:Foo3:6.74:foo23:bar4:herpli654e7:hwhergk3:74xe7:testingi5e2:yyd1:ai-12e1:bl1:xd1:ki1eeeee";
+        Map<Object, Object> decoded = BEncoding.decodeLazily(encoded);
+        Assert.assertTrue(decoded instanceof BEncoding.LazyDictionary);
+        Assert.assertEquals(5, decoded.size());
+        Assert.assertEquals(BEncoding.decode(encoded), decoded);
+        Assert.assertEquals(encoded, BEncoding.encode(decoded));
+
+        Map<?, ?> yy = (Map<?, ?>) decoded.get("yy");
+        Assert.assertTrue(yy instanceof BEncoding.LazyDictionary);
+        Assert.assertEquals(-12L, yy.get("a"));
+        Assert.assertEquals("[x, {k=1}]", yy.get("b").toString());
+        Assert.assertSame(yy, decoded.get("yy"));
+
+        Assert.assertEquals("6.7", decoded.remove("Foo"));
+        decoded.put("new", 7L);
+        Assert.assertEquals("d4:foo23:bar4:herpli654e7:hwhergk3:74xe3:newi7e7:testingi5e2:yyd1:ai-12e1:bl1:xd1:ki1eeeee",
+                BEncoding.encode(decoded));
+
+        BEncoding.LazyDictionary copy = new BEncoding.LazyDictionary((BEncoding.LazyDictionary) decoded);
+        copy.remove("testing");
+        Assert.assertEquals(5L, decoded.get("testing"));
+        Assert.assertEquals(4, copy.size());
+    }
+
+    @Test
+    public void lazyInvalid() {
+        for (String encoded : new String[] { "d1:ai1x2ee", "d1:a5:abe", "d1:ae", "d1:ai1ee1", "d1:ad1:bee" }) {
+            try {
+                BEncoding.decodeLazily(encoded);
+                Assert.fail(encoded);
+            } catch (BEncoding.BEncodingException expected) {
+            }
+        }
+    }
+
 }
@@ -151,6 +151,12 @@ public final class LC {
     public static final KnownKey zimbra_store_copy_buffer_size_kb = KnownKey.newKey(16); // KB
     public static final KnownKey zimbra_nio_file_copy_chunk_size_kb = KnownKey.newKey(512); // KB
     public static final KnownKey zimbra_blob_input_stream_buffer_size_kb = KnownKey.newKey(1); // KB
+    // number of independently locked LRU shards in the blob file descriptor cache
+    public static final KnownKey zimbra_blob_fd_cache_shards = KnownKey.newKey(16);
+    // zlib level (1-9) used by the "deflate" blob compression codec
+    public static final KnownKey zimbra_blob_deflate_level = KnownKey.newKey(1);
+    // uncompressed blobs at least this large are sent to HTTP/IMAP clients from a memory-mapped file; -1 disables
+    public static final KnownKey zimbra_blob_mmap_threshold_kb = KnownKey.newKey(1024); // KB
 
     @Supported
     public static final KnownKey zimbra_mailbox_manager_hardref_cache = KnownKey.newKey(2500);
@@ -164,6 +170,16 @@ public final class LC {
     @Supported
     public static final KnownKey zimbra_mailbox_galsync_cache = KnownKey.newKey(10000);
 
+    public static final KnownKey zimbra_mailbox_item_cache_heap_percent = KnownKey.newKey(10);
+    public static final KnownKey zimbra_mailbox_cache_warmup = KnownKey.newKey(true);
+    public static final KnownKey zimbra_mailbox_cache_warmup_items = KnownKey.newKey(200);
+    public static final KnownKey zimbra_mailbox_cache_warmup_threads = KnownKey.newKey(2);
+
+    public static final KnownKey zimbra_redolog_group_commit = KnownKey.newKey(false);
+    public static final KnownKey zimbra_redolog_group_commit_max_batch = KnownKey.newKey(1024);
+
+    public static final KnownKey zimbra_message_cache_max_bytes = KnownKey.newKey(128L * 1024 * 1024);
+
     @Supported
     public static final KnownKey zimbra_mailbox_change_checkpoint_frequency = KnownKey.newKey(100);
 
@@ -175,12 +191,18 @@ public final class LC {
 
     public static final KnownKey zimbra_mailbox_lock_readwrite = KnownKey.newKey(true);
 
+    public static final KnownKey zimbra_mailbox_lock_optimistic_read = KnownKey.newKey(false);
+
     @Supported
     public static final KnownKey zimbra_index_threads = KnownKey.newKey(10);
 
     @Supported
     public static final KnownKey zimbra_reindex_threads = KnownKey.newKey(10);
 
+    @Supported
+    public static final KnownKey zimbra_reindex_pipeline_threads = KnownKey.newKey(4);
+    public static final KnownKey zimbra_reindex_pipeline_depth = KnownKey.newKey(16);
+
     @Supported
     public static final KnownKey zimbra_index_max_readers = KnownKey.newKey(35);
 
@@ -234,6 +256,13 @@ public final class LC {
     @Supported
     public static final KnownKey zimbra_index_lucene_max_terms_per_query = KnownKey.newKey(50000);
 
+    // Near-real-time indexing: searches read uncommitted documents from the open IndexWriter, and commits are
+    // coalesced until the interval has passed or enough changes have piled up. Items are only marked indexed once
+    // their documents are committed, so the ones lost in a crash are still queued for indexing after a restart.
+    public static final KnownKey zimbra_index_lucene_nrt = KnownKey.newKey(false);
+    public static final KnownKey zimbra_index_lucene_nrt_commit_interval_ms = KnownKey.newKey(5000);
+    public static final KnownKey zimbra_index_lucene_nrt_commit_max_changes = KnownKey.newKey(1000);
+
     @Supported
     public static final KnownKey zimbra_index_elasticsearch_url_base = KnownKey.newKey("http://localhost:9200/");
 
@@ -299,6 +328,8 @@ public final class LC {
     @Supported
     @Reloadable
     public static final KnownKey soap_response_chunked_transfer_encoding_enabled = KnownKey.newKey(true);
+    @Reloadable
+    public static final KnownKey soap_response_streaming_enabled = KnownKey.newKey(true);
     public static final KnownKey zimbra_servlet_output_stream_buffer_size = KnownKey.newKey(5120);
 
     public static final KnownKey rest_response_cache_control_value = KnownKey.newKey("no-store, no-cache");
@@ -655,6 +686,7 @@ public final class LC {
     @Supported
     public static final KnownKey calendar_cache_range_months = KnownKey.newKey(3);
     public static final KnownKey calendar_cache_max_stale_items = KnownKey.newKey(10);
+    public static final KnownKey calendar_cache_update_on_commit = KnownKey.newKey(true);
     public static final KnownKey calendar_exchange_form_auth_url = KnownKey.newKey("/exchweb/bin/auth/owaauth.dll");
     public static final KnownKey calendar_item_get_max_retries = KnownKey.newKey(100);
 
@@ -681,6 +713,12 @@ public final class LC {
     // Default 3 days.  Without limit 1 server was needing to restart every 30 to 45 days
     public static final KnownKey imap_noninteractive_session_cache_maxage_days = KnownKey.newKey(3);
     public static final KnownKey imap_use_ehcache = KnownKey.newKey(true);
+    // write disk/memcached IMAP folder cache entries in the compact columnar format instead of Java serialization
+    public static final KnownKey imap_compact_folder_cache = KnownKey.newKey(true);
+    // cache serialized BODY/BODYSTRUCTURE/ENVELOPE by blob digest so header-only FETCHes skip the blob store
+    public static final KnownKey imap_structure_cache = KnownKey.newKey(true);
+    public static final KnownKey imap_structure_cache_heap_size = KnownKey.newKey(16 * 1024 * 1024);
+    public static final KnownKey imap_structure_cache_disk_size = KnownKey.newKey(1024L * 1024 * 1024);
     public static final KnownKey imap_write_timeout = KnownKey.newKey(10);
     public static final KnownKey imap_write_chunk_size = KnownKey.newKey(8 * 1024);
     public static final KnownKey imap_thread_keep_alive_time = KnownKey.newKey(60);
@@ -1050,6 +1088,11 @@ public final class LC {
 
     @Supported
     public static final KnownKey contact_ranking_enabled = KnownKey.newKey(true);
+    // in-memory prefix index used by contact autocomplete instead of a Lucene search
+    public static final KnownKey contact_autocomplete_index_enabled = KnownKey.newKey(true);
+    public static final KnownKey contact_autocomplete_index_max_contacts = KnownKey.newKey(10000);
+    public static final KnownKey contact_autocomplete_index_cache_size = KnownKey.newKey(1000); // mailboxes
+    public static final KnownKey contact_autocomplete_index_idle_minutes = KnownKey.newKey(60);
 
 
     public static final KnownKey jdbc_results_streaming_enabled = KnownKey.newKey(true);
@@ -1064,6 +1107,9 @@ public final class LC {
 
     public static final KnownKey zimbra_lmtp_validate_messages = KnownKey.newKey(true);
     public static final KnownKey zimbra_lmtp_max_line_length = KnownKey.newKey(10240);
+    // threads delivering one message to many local recipients; 1 delivers serially
+    public static final KnownKey zimbra_lmtp_delivery_threads = KnownKey.newKey(1);
+    public static final KnownKey zimbra_lmtp_parallel_delivery_min_recipients = KnownKey.newKey(8);
 
     public static final KnownKey data_source_scheduling_enabled = KnownKey.newKey(true);
     public static final KnownKey data_source_eas_sync_email = KnownKey.newKey(true);
@@ -1094,6 +1140,7 @@ public final class LC {
 
     public static final KnownKey zimbra_slow_logging_enabled = KnownKey.newKey(false);
     public static final KnownKey zimbra_slow_logging_threshold = KnownKey.newKey(5000);
+    public static final KnownKey zimbra_db_conn_slow_hold_threshold_ms = KnownKey.newKey(5000);
 
     public static final KnownKey smtp_host_retry_millis = KnownKey.newKey(60000);
     public static final KnownKey smtp_to_lmtp_enabled = KnownKey.newKey(false);
@@ -1205,6 +1252,10 @@ public final class LC {
 
     // Remove this in 8.0.
     public static final KnownKey filter_null_env_sender_for_dsn_redirect = KnownKey.newKey(true);
+    // compiled Sieve scripts shared by accounts with identical admin before/after scripts
+    public static final KnownKey zimbra_filter_shared_plan_cache_size = KnownKey.newKey(500);
+    // compiled :matches patterns shared by all filter evaluations
+    public static final KnownKey zimbra_filter_pattern_cache_size = KnownKey.newKey(5000);
 
     //appliance
     public static final KnownKey zimbra_vami_user = KnownKey.newKey("vmware");
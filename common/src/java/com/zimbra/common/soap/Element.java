@@ -149,6 +149,16 @@ public abstract class Element implements Cloneable {
     public Element addUniqueElement(QName qname) throws ContainerException  { return addNonUniqueElement(qname); }
     public Element addUniqueElement(Element elt) throws ContainerException  { return addNonUniqueElement(elt); }
 
+    /** Adds a {@link StreamedElement} whose <tt>name</tt> children are only
+     *  produced by <tt>source</tt> while this <tt>Element</tt> is being
+     *  serialized.  Use this only on responses that are written straight to
+     *  the client; nothing can be read back from the streamed children.
+     *  @throws ContainerException if this kind of <tt>Element</tt> can't hold
+     *          streamed children; callers should then add the children directly */
+    public StreamedElement addStreamedElements(String name, StreamedElement.Source source) throws ContainerException {
+        throw new ContainerException("streamed elements not supported by " + getClass().getSimpleName());
+    }
+
     /**
      * The approach to namespaces is to ALWAYS store them on elements that use them (for either the element's name
      * or in one of its attributes names) but ignore them where they are not used.  This means that unused namespace
@@ -825,6 +835,7 @@ public abstract class Element implements Cloneable {
         public void destroy() {
             // Assumption - Only FileBackedElement children of XMLElement
             // need special action from destroy(), so, we're done here.
+            // (StreamedElement releases its source once serialized.)
         }
 
         public JSONElement(QName qname) {
@@ -962,6 +973,19 @@ public abstract class Element implements Cloneable {
             return elt.collapseNamespace();
         }
 
+        @Override
+        public StreamedElement addStreamedElements(String name, StreamedElement.Source source)
+        throws ContainerException {
+            // JSON groups non-unique children into one array per name, so the stream has to own that slot
+            if (mAttributes.containsKey(name)) {
+                throw new ContainerException("already stored element or attribute with name: " + name);
+            }
+            StreamedElement elt = new StreamedElement(name, mFactory, source);
+            mAttributes.put(name, elt);
+            elt.mParent = this;
+            return elt;
+        }
+
         @Override
         public Element addUniqueElement(String name) throws ContainerException {
             return addUniqueElement(new JSONElement(name));
@@ -1484,6 +1508,8 @@ public abstract class Element implements Cloneable {
                         ((JSONElement) value).marshal(out, indent, safe);
                     } else if (value instanceof FileBackedElement) {
                         ((FileBackedElement) value).marshal(out);
+                    } else if (value instanceof StreamedElement) {
+                        ((StreamedElement) value).marshal(out, indent, safe);
                     } else if (value instanceof Element) {
                         out.append('"').append(StringUtil.jsEncode(value)).append('"');
                     } else if (!(value instanceof List<?>)) {
@@ -1655,7 +1681,7 @@ public abstract class Element implements Cloneable {
                         "cannot add children to element containing text - <" +
                         this.getName() + ">, trying to add <" + elt.getName() + ">");
             }
-            assert(elt instanceof XMLElement || elt instanceof FileBackedElement);
+            assert(elt instanceof XMLElement || elt instanceof FileBackedElement || elt instanceof StreamedElement);
             if (mChildren == null) {
                 mChildren = new ArrayList<Element>();
             }
@@ -1664,6 +1690,12 @@ public abstract class Element implements Cloneable {
             return elt.collapseNamespace();
         }
 
+        @Override
+        public StreamedElement addStreamedElements(String name, StreamedElement.Source source)
+        throws ContainerException {
+            return (StreamedElement) addNonUniqueElement(new StreamedElement(name, mFactory, source));
+        }
+
         @Override
         public Element setText(String content) throws ContainerException {
             if (content != null && !content.trim().equals("") && mChildren != null) {
@@ -1996,6 +2028,8 @@ public abstract class Element implements Cloneable {
                             ((XMLElement) child).marshal(out, indent < 0 ? -1 : indent + INDENT_SIZE, safe);
                         } else if (child instanceof FileBackedElement) {
                             child.marshal(out);
+                        } else if (child instanceof StreamedElement) {
+                            ((StreamedElement) child).marshal(out, indent < 0 ? -1 : indent + INDENT_SIZE, safe);
                         } else {
                             out.append(xmlEncode(child.toString(), false));
                         }
@@ -2176,6 +2210,207 @@ public abstract class Element implements Cloneable {
         }
     }
 
+    /**
+     * Write-only {@link Element} standing in for a run of same-named children that are produced one at a time while
+     * the enclosing document is serialized.  Each child is marshaled and dropped before the next one is produced, so
+     * a response with thousands of hits never exists in memory as a complete {@link Element} tree.
+     * <p>
+     * The source is consumed by the first real serialization ({@link #marshal}, {@link #toString} of an ancestor,
+     * {@link #toUTF8}); a second one fails.  {@link #prettyPrint} and other indented output only leave a marker, so
+     * the document can still be logged before it is sent.  Under JSON, every child produced must be named
+     * {@link #getName()}; under XML, the children are written in order whatever their names.
+     */
+    public static final class StreamedElement extends Element {
+
+        /** Produces the children of a {@link StreamedElement}. */
+        public interface Source {
+            /**
+             * Adds the next child (or children) to {@code parent}, which is empty on entry and only lives for the
+             * duration of the call.  A call may add nothing, e.g. when an item vanished since the response was
+             * built.
+             *
+             * @return false once the source is exhausted
+             */
+            boolean next(Element parent) throws IOException;
+        }
+
+        private final ElementFactory factory;
+        private Source source;
+        private int count = -1;
+
+        StreamedElement(String name, ElementFactory factory, Source source) {
+            mName = name;
+            this.factory = factory;
+            this.source = source;
+        }
+
+        /** Returns the number of children written, or -1 if the element has not been serialized yet. */
+        public int getCount() {
+            return count;
+        }
+
+        private void marshal(Appendable out, int indent, boolean safe) throws IOException {
+            if (indent >= 0) {
+                // pretty-printing for the logs; leave the source for the real thing
+                if (factory instanceof JSONElement.JSONFactory) {
+                    out.append('"').append(toString()).append('"');
+                } else {
+                    indent(out, indent, indent > 0);
+                    out.append("<!-- ").append(toString()).append(" -->");
+                }
+                return;
+            }
+            if (source == null) {
+                throw new IOException("streamed <" + mName + "> elements have already been serialized");
+            }
+            Source src = source;
+            source = null;
+            count = 0;
+
+            Element scratch = factory.createElement(mName);
+            scratch.mParent = mParent;  // so that namespaces resolve as if the children were ours
+            if (scratch instanceof JSONElement) {
+                out.append('[');
+                while (src.next(scratch)) {
+                    for (Map.Entry<String, Object> entry : scratch.mAttributes.entrySet()) {
+                        if (!mName.equals(entry.getKey()) || !(entry.getValue() instanceof List<?>)) {
+                            throw new IOException("streamed <" + mName + "> produced <" + entry.getKey() + ">");
+                        }
+                        for (Object child : (List<?>) entry.getValue()) {
+                            if (count++ > 0) {
+                                out.append(',');
+                            }
+                            ((JSONElement) child).marshal(out, -1, safe);
+                        }
+                    }
+                    scratch.mAttributes.clear();
+                }
+                out.append(']');
+            } else {
+                XMLElement xscratch = (XMLElement) scratch;
+                while (src.next(xscratch)) {
+                    if (xscratch.mChildren != null) {
+                        for (Element child : xscratch.mChildren) {
+                            if (child instanceof StreamedElement) {
+                                ((StreamedElement) child).marshal(out, -1, safe);
+                            } else {
+                                ((XMLElement) child).marshal(out, -1, safe);
+                                count++;
+                            }
+                        }
+                        xscratch.mChildren = null;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void marshal(Appendable out) throws IOException {
+            marshal(out, -1, false);
+        }
+
+        @Override
+        public String toString() {
+            return count < 0 ? "streamed " + mName + " elements" : count + " streamed " + mName + " elements";
+        }
+
+        @Override
+        public void destroy() {
+            source = null;
+        }
+
+        @Override
+        public ElementFactory getFactory() {
+            return factory;
+        }
+
+        @Override
+        public Element addNonUniqueElement(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element addNonUniqueElement(QName qname) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element addNonUniqueElement(Element elt) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element setText(String content) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element addAttribute(String key, String value, Disposition disp) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public KeyValuePair addKeyValuePair(String key, String value, String eltname, String attrname) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element clone() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Element getOptionalElement(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Set<Attribute> listAttributes() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Element> listElements(String name) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean hasChildren() {
+            // keeps XMLElement.addAttribute() from pruning us as an empty same-named child
+            return true;
+        }
+
+        @Override
+        public List<KeyValuePair> listKeyValuePairs(String eltname, String attrname) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getText() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        String getRawText() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getAttribute(String key, String defaultValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String prettyPrint() {
+            return prettyPrint(false);
+        }
+
+        @Override
+        public String prettyPrint(boolean safe) {
+            return toString();
+        }
+    }
+
     public static void main(String[] args) throws ContainerException, SoapParseException {
         System.out.println(Element.parseJSON("{ 'a':'b'}").getAttribute("a", null));
         System.out.println(Element.parseJSON("{ '_attrs' : {'a':'b'}}").getAttribute("a", null));
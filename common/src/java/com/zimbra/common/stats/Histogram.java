@@ -0,0 +1,144 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.common.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks the distribution of a non-negative value (a latency, a batch size...) in power-of-two buckets, so that
+ * percentiles can be reported without keeping every sample.  Percentiles are approximated by the upper bound of the
+ * bucket they fall in, which is within a factor of two of the true value.
+ * <p>
+ * As an {@link Accumulator}, reports the count, average, 50th, 95th and 99th percentiles and maximum since the last
+ * call to {@link #reset}.
+ */
+public class Histogram implements Accumulator {
+
+    // bucket 0 holds zero, bucket i holds values in [2^(i-1), 2^i - 1]
+    private static final int NUM_BUCKETS = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final List<String> names;
+
+    /**
+     * @param prefix prefix for the stat names returned by {@link #getNames()}
+     */
+    public Histogram(String prefix) {
+        List<String> list = new ArrayList<String>(6);
+        list.add(prefix + "_count");
+        list.add(prefix + "_avg");
+        list.add(prefix + "_p50");
+        list.add(prefix + "_p95");
+        list.add(prefix + "_p99");
+        list.add(prefix + "_max");
+        names = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Records one sample.  Negative values are recorded as zero.
+     */
+    public void increment(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getAverage() {
+        long n = count.get();
+        return n == 0 ? 0.0 : (double) total.get() / (double) n;
+    }
+
+    /**
+     * Returns an upper estimate of the given percentile, or 0 if no samples were recorded.
+     *
+     * @param percentile between 0 and 100
+     */
+    public long getPercentile(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(n * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Override
+    public List<String> getNames() {
+        return names;
+    }
+
+    @Override
+    public List<Object> getData() {
+        List<Object> data = new ArrayList<Object>(6);
+        data.add(getCount());
+        data.add(getAverage());
+        data.add(getPercentile(50));
+        data.add(getPercentile(95));
+        data.add(getPercentile(99));
+        data.add(getMax());
+        return data;
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+}
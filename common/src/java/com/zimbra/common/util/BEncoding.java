@@ -16,10 +16,14 @@
  */
 package com.zimbra.common.util;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 
@@ -43,11 +47,24 @@ public final class BEncoding {
     }
 
     public static <T> T decode(String data) throws BEncodingException {
+        return decode(data, false);
+    }
+
+    /**
+     * Like {@link #decode(String)}, except that dictionaries come back as {@link LazyDictionary}
+     * views.  The whole string is still validated up front, but each value is only decoded the
+     * first time it is read, and re-encoding copies the original text of values never read.
+     */
+    public static <T> T decodeLazily(String data) throws BEncodingException {
+        return decode(data, true);
+    }
+
+    private static <T> T decode(String data, boolean lazy) throws BEncodingException {
         if (data == null)
             return null;
         try {
             Offset offset = new Offset();
-            Object result = decode(data.toCharArray(), offset);
+            Object result = decode(data, offset, lazy);
             if (offset.offset != data.length()) {
                 throw new BEncodingException("extra characters at end of encoded string");
             }
@@ -62,7 +79,9 @@ public final class BEncoding {
     }
 
     private static StringBuilder encode(StringBuilder sb, Object object) {
-        if (object instanceof Map) {
+        if (object instanceof LazyDictionary) {
+            ((LazyDictionary) object).encode(sb);
+        } else if (object instanceof Map) {
             SortedMap<?, ?> tree = (object instanceof SortedMap ?
                     (SortedMap<?, ?>) object : new TreeMap<Object, Object>((Map<?, ?>) object));
             sb.append('d');
@@ -93,16 +112,27 @@ public final class BEncoding {
 
     private static final class Offset {
         int offset;
+
+        Offset() {
+        }
+
+        Offset(int offset) {
+            this.offset = offset;
+        }
     }
 
-    private static Object decode(char[] buffer, Offset offset) throws BEncodingException {
+    private static Object decode(String data, Offset offset, boolean lazy) throws BEncodingException {
         Object key, value;
-        char c = buffer[offset.offset++];
+        char c = data.charAt(offset.offset++);
         switch (c) {
             case 'd':
+                if (lazy) {
+                    offset.offset--;
+                    return new LazyDictionary(data, offset);
+                }
                 Map<String, Object> map = new HashMap<String, Object>();
-                while ((key = decode(buffer, offset)) != null) {
-                    if ((value = decode(buffer, offset)) == null) {
+                while ((key = decode(data, offset, lazy)) != null) {
+                    if ((value = decode(data, offset, lazy)) == null) {
                         throw new BEncodingException("missing dictionary value for key " + key.toString());
                     }
                     map.put(key.toString(), value);
@@ -111,7 +141,7 @@ public final class BEncoding {
 
             case 'l':
                 List<Object> list = new ArrayList<Object>();
-                while ((key = decode(buffer, offset)) != null) {
+                while ((key = decode(data, offset, lazy)) != null) {
                     list.add(key);
                 }
                 return list;
@@ -120,21 +150,229 @@ public final class BEncoding {
                 return null;
 
             case 'i':
-                return Long.valueOf(readLong(buffer, offset, 'e'));
+                return Long.valueOf(readLong(data, offset, 'e'));
 
             default:
                 offset.offset--;
-                long length = readLong(buffer, offset, ':');
-                int start = offset.offset;
-                offset.offset += length;
-                return new String(buffer, start, (int) length);
+                int start = skipStringHeader(data, offset);
+                return data.substring(start, offset.offset);
         }
     }
 
-    private static long readLong(char[] buffer, Offset offset, char terminator) {
+    /**
+     * Advances past one encoded value without building it, validating it the same way
+     * {@link #decode(String, Offset, boolean)} would.  Returns {@code false} at the 'e' that
+     * closes a list or dictionary.
+     */
+    private static boolean skip(String data, Offset offset) throws BEncodingException {
+        char c = data.charAt(offset.offset++);
+        switch (c) {
+            case 'd':
+                while (skip(data, offset)) {
+                    if (!skip(data, offset)) {
+                        throw new BEncodingException("missing dictionary value");
+                    }
+                }
+                return true;
+            case 'l':
+                while (skip(data, offset)) {
+                }
+                return true;
+            case 'e':
+                return false;
+            case 'i':
+                readLong(data, offset, 'e');
+                return true;
+            default:
+                offset.offset--;
+                skipStringHeader(data, offset);
+                return true;
+        }
+    }
+
+    /** Reads a string's length prefix, moves past the string and returns where its text starts. */
+    private static int skipStringHeader(String data, Offset offset) {
+        long length = readLong(data, offset, ':');
+        int start = offset.offset;
+        if (length < 0 || start + length > data.length()) {
+            throw new StringIndexOutOfBoundsException("string length " + length + " at offset " + start);
+        }
+        offset.offset += (int) length;
+        return start;
+    }
+
+    private static long readLong(String data, Offset offset, char terminator) {
         int start = offset.offset;
-        while (buffer[offset.offset++] != terminator) ;
-        return Long.parseLong(new String(buffer, start, offset.offset - start - 1));
+        while (data.charAt(offset.offset++) != terminator) ;
+        int end = offset.offset - 1;
+        int i = start;
+        boolean negative = i < end && data.charAt(i) == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            // empty, or possibly out of range; let Long sort it out
+            return Long.parseLong(data.substring(start, end));
+        }
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = data.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Long.parseLong(data.substring(start, end));
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * A decoded dictionary that keeps the encoded string and the span of each value in it, and
+     * only decodes a value when it is first read.  Nested dictionaries are lazy as well.  Views
+     * are as mutable as the {@code HashMap} that {@link #decode(String)} returns; reads are safe
+     * from several threads, writes need external synchronization as usual.
+     */
+    public static final class LazyDictionary extends AbstractMap<Object, Object> {
+        private static final class Span {
+            final int start;
+            final int end;
+
+            Span(int start, int end) {
+                this.start = start;
+                this.end = end;
+            }
+        }
+
+        private final String data;
+        /** keys in encoding order; values are {@link Span}s until first read */
+        private final TreeMap<Object, Object> entries;
+
+        LazyDictionary(String data, Offset offset) throws BEncodingException {
+            this.data = data;
+            entries = new TreeMap<Object, Object>();
+            offset.offset++; // 'd'
+            Object key;
+            while ((key = decode(data, offset, false)) != null) {
+                int start = offset.offset;
+                if (!skip(data, offset)) {
+                    throw new BEncodingException("missing dictionary value for key " + key.toString());
+                }
+                entries.put(key.toString(), new Span(start, offset.offset));
+            }
+        }
+
+        /** Shallow copy, like {@code new TreeMap(other)}; values not yet read stay undecoded. */
+        public LazyDictionary(LazyDictionary other) {
+            data = other.data;
+            synchronized (other) {
+                entries = new TreeMap<Object, Object>(other.entries);
+            }
+        }
+
+        private Object decodeSpan(Object value) {
+            if (value instanceof Span) {
+                try {
+                    return decode(data, new Offset(((Span) value).start), true);
+                } catch (BEncodingException e) {
+                    // the span was validated when the dictionary was indexed
+                    throw new IllegalStateException(e);
+                }
+            }
+            return value;
+        }
+
+        private synchronized void resolve(Map.Entry<Object, Object> entry) {
+            Object value = entry.getValue();
+            if (value instanceof Span) {
+                entry.setValue(decodeSpan(value));
+            }
+        }
+
+        @Override
+        public synchronized Object get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            Object value = entries.get(key);
+            if (value instanceof Span) {
+                value = decodeSpan(value);
+                entries.put(key, value);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && entries.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return entries.size();
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            return decodeSpan(entries.put(key, value));
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return key instanceof String ? decodeSpan(entries.remove(key)) : null;
+        }
+
+        @Override
+        public void clear() {
+            entries.clear();
+        }
+
+        @Override
+        public Set<Map.Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<Object, Object>>() {
+                @Override
+                public Iterator<Map.Entry<Object, Object>> iterator() {
+                    final Iterator<Map.Entry<Object, Object>> it = entries.entrySet().iterator();
+                    return new Iterator<Map.Entry<Object, Object>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Map.Entry<Object, Object> next() {
+                            Map.Entry<Object, Object> entry = it.next();
+                            resolve(entry);
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            it.remove();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return entries.size();
+                }
+            };
+        }
+
+        synchronized void encode(StringBuilder sb) {
+            sb.append('d');
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                Object value = entry.getValue();
+                if (entry.getKey() != null && value != null) {
+                    BEncoding.encode(sb, entry.getKey().toString());
+                    if (value instanceof Span) {
+                        sb.append(data, ((Span) value).start, ((Span) value).end);
+                    } else {
+                        BEncoding.encode(sb, value);
+                    }
+                }
+            }
+            sb.append('e');
+        }
     }
 
 }
@@ -67,6 +67,9 @@ public class ZimbraServletOutputStream implements Appendable {
     // buffer to avoid frequent toString().getBytes()
     StringBuilder mBuffer = new StringBuilder(BUFFER_SIZE);
     
+    // when the first bytes were handed to the servlet stream, for time-to-first-byte stats
+    private long mFirstWriteTime = 0;
+    
     public ZimbraServletOutputStream(ServletOutputStream out) {
         mOut = out;
     }
@@ -100,9 +103,19 @@ public class ZimbraServletOutputStream implements Appendable {
     }
     
     private void write(String str) throws IOException {
+        if (mFirstWriteTime == 0)
+            mFirstWriteTime = System.currentTimeMillis();
         mOut.write(str.getBytes("utf-8"));
     }
     
+    /**
+     * @return the time (ms) at which data was first written to the underlying stream, or 0 if nothing has been
+     * written yet
+     */
+    public long getFirstWriteTime() {
+        return mFirstWriteTime;
+    }
+    
     public void flush() throws IOException {
         if (mBuffer.length() > 0) {
             write(mBuffer.toString());
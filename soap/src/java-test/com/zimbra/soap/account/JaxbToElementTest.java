@@ -224,6 +224,49 @@ public class JaxbToElementTest {
         }
     }
 
+    /**
+     * Marshallers are reused per thread, check that a failed marshal doesn't poison later ones and that
+     * concurrent callers each get output for their own object.
+     */
+    @Test
+    public void reusedMarshallers() throws Exception {
+        try {
+            JaxbUtil.jaxbToElement(new Object(), XMLElement.mFactory, true, false);
+            Assert.fail("marshalled an object with no @XmlRootElement");
+        } catch (ServiceException expected) {
+        }
+        final String expected = JaxbUtil.jaxbToElement(getInfoRespJaxb).toString();
+        final List<Throwable> failures = Lists.newArrayList();
+        List<Thread> threads = Lists.newArrayList();
+        for (int t = 0; t < 4; t++) {
+            final String id = "ds-" + t;
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int cnt = 0; cnt < 25; cnt++) {
+                            Assert.assertEquals(expected, JaxbUtil.jaxbToElement(getInfoRespJaxb).toString());
+                            DeleteDataSourceRequest req = new DeleteDataSourceRequest();
+                            req.addDataSource(Pop3DataSourceNameOrId.createForId(id));
+                            DeleteDataSourceRequest rt = JaxbUtil.elementToJaxb(JaxbUtil.jaxbToElement(req));
+                            Assert.assertEquals(id, rt.getDataSources().get(0).getId());
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertTrue("failures: " + failures, failures.isEmpty());
+    }
+
     private void validateLongString(String message,
                 String expected, String actual,
                 String expectedFile, String actualFile) {
@@ -20,8 +20,10 @@ package com.zimbra.soap;
 import java.io.ByteArrayInputStream;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
@@ -73,8 +75,26 @@ public final class JaxbUtil {
     private static final String ADMIN_JAXB_PACKAGE = "com.zimbra.soap.admin.message";
     private static final String MAIL_JAXB_PACKAGE = "com.zimbra.soap.mail.message";
     private static final String ADMIN_EXT_JAXB_PACKAGE = "com.zimbra.soap.adminext.message";
-    private static JAXBContext JAXB_CONTEXT;
-    private static Map <Class<?>,JAXBContext> classJaxbContexts;
+    private static final ConcurrentMap<Class<?>,JAXBContext> classJaxbContexts = Maps.newConcurrentMap();
+
+    /** Bound on the number of contexts for which each thread keeps a marshaller and an unmarshaller */
+    private static final int MAX_THREAD_CACHED_CONTEXTS = 32;
+
+    private static final ThreadLocal<Map<JAXBContext,Marshaller>> threadMarshallers =
+            new ThreadLocal<Map<JAXBContext,Marshaller>>() {
+        @Override
+        protected Map<JAXBContext,Marshaller> initialValue() {
+            return newThreadCache();
+        }
+    };
+
+    private static final ThreadLocal<Map<JAXBContext,Unmarshaller>> threadUnmarshallers =
+            new ThreadLocal<Map<JAXBContext,Unmarshaller>>() {
+        @Override
+        protected Map<JAXBContext,Unmarshaller> initialValue() {
+            return newThreadCache();
+        }
+    };
 
     static {
         MESSAGE_CLASSES = new Class<?>[] {
@@ -1151,11 +1171,22 @@ public final class JaxbUtil {
             com.zimbra.soap.admin.message.GetAddressListInfoRequest.class,
             com.zimbra.soap.admin.message.GetAddressListInfoResponse.class
         };
+    }
 
-        try {
-            JAXB_CONTEXT = JAXBContext.newInstance(MESSAGE_CLASSES);
-        } catch (JAXBException e) {
-            throw new RuntimeException("Unable to initialize JAXB", e);
+    /**
+     * Holds the context for all of {@code MESSAGE_CLASSES}.  Building it introspects every request and response
+     * class and takes several seconds, so it is deferred until the first call which needs it rather than being
+     * paid by everything which loads this class at startup.
+     */
+    private static final class ContextHolder {
+        private static final JAXBContext CONTEXT;
+
+        static {
+            try {
+                CONTEXT = JAXBContext.newInstance(MESSAGE_CLASSES);
+            } catch (JAXBException e) {
+                throw new RuntimeException("Unable to initialize JAXB", e);
+            }
         }
     }
 
@@ -1199,15 +1230,12 @@ public final class JaxbUtil {
             return JacksonUtil.jaxbToJSONElement(o);
         }
         try {
-            Marshaller marshaller;
-            if (useContextMarshaller) {
-                marshaller = getContext().createMarshaller();
-            } else {
-                marshaller = createMarshaller(o.getClass());
-            }
+            JAXBContext jaxb = useContextMarshaller ? getContext() : getJaxbContext(o.getClass());
+            Marshaller marshaller = borrowMarshaller(jaxb);
             // marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
             DocumentResult dr = new DocumentResult();
             marshaller.marshal(o, dr);
+            releaseMarshaller(jaxb, marshaller);
             Document theDoc = dr.getDocument();
             org.dom4j.Element rootElem = theDoc.getRootElement();
             if (removePrefixes) {
@@ -1257,18 +1285,55 @@ public final class JaxbUtil {
 
     private static JAXBContext getJaxbContext(Class<?> klass)
     throws JAXBException {
-        JAXBContext jaxb = null;
-        if (JaxbUtil.classJaxbContexts == null) {
-            JaxbUtil.classJaxbContexts = Maps.newHashMap();
-        }
-        if (JaxbUtil.classJaxbContexts.containsKey(klass)) {
-            jaxb = JaxbUtil.classJaxbContexts.get(klass);
-        } else {
+        JAXBContext jaxb = classJaxbContexts.get(klass);
+        if (jaxb == null) {
             jaxb = JAXBContext.newInstance(klass);
+            JAXBContext existing = classJaxbContexts.putIfAbsent(klass, jaxb);
+            if (existing != null) {
+                jaxb = existing;
+            }
         }
         return jaxb;
     }
 
+    private static <V> Map<JAXBContext,V> newThreadCache() {
+        return new LinkedHashMap<JAXBContext,V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<JAXBContext,V> eldest) {
+                return size() > MAX_THREAD_CACHED_CONTEXTS;
+            }
+        };
+    }
+
+    /**
+     * Marshallers are not thread safe, but creating one per call is a measurable share of the allocation done
+     * when marshalling a small object, so each thread keeps one per context.  The instance is taken out of the
+     * thread's cache while in use: a nested call gets a new one, and one used by a call which failed is never
+     * handed out again because the caller only releases it on success.
+     */
+    private static Marshaller borrowMarshaller(JAXBContext jaxb)
+    throws JAXBException {
+        Marshaller marshaller = threadMarshallers.get().remove(jaxb);
+        return marshaller != null ? marshaller : jaxb.createMarshaller();
+    }
+
+    private static void releaseMarshaller(JAXBContext jaxb, Marshaller marshaller) {
+        threadMarshallers.get().put(jaxb, marshaller);
+    }
+
+    /** Unmarshaller equivalent of {@link #borrowMarshaller(JAXBContext)} */
+    private static Unmarshaller borrowUnmarshaller(JAXBContext jaxb)
+    throws JAXBException {
+        Unmarshaller unmarshaller = threadUnmarshallers.get().remove(jaxb);
+        return unmarshaller != null ? unmarshaller : jaxb.createUnmarshaller();
+    }
+
+    private static void releaseUnmarshaller(JAXBContext jaxb, Unmarshaller unmarshaller) {
+        threadUnmarshallers.get().put(jaxb, unmarshaller);
+    }
+
     @SuppressWarnings({ "unchecked", "rawtypes" })
     public static Element jaxbToNamedElement(String name, String namespace, Object o, Element.ElementFactory factory)
     throws ServiceException {
@@ -1276,11 +1341,13 @@ public final class JaxbUtil {
             return JacksonUtil.jaxbToJSONElement(o, org.dom4j.QName.get(name, namespace));
         }
         try {
-            Marshaller marshaller = createMarshaller(o.getClass());
+            JAXBContext jaxb = getJaxbContext(o.getClass());
+            Marshaller marshaller = borrowMarshaller(jaxb);
             // marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
             DocumentResult dr = new DocumentResult();
             marshaller.marshal(new JAXBElement(new QName(namespace, name),
                     o.getClass(), o) , dr);
+            releaseMarshaller(jaxb, marshaller);
             Document theDoc = dr.getDocument();
             org.dom4j.Element rootElem = theDoc.getRootElement();
             return Element.convertDOM(rootElem, factory);
@@ -1555,15 +1622,19 @@ public final class JaxbUtil {
         }
         try {
             // LOG.warn("Dom to Xml:\n" + W3cDomUtil.asXML(document);
-            Unmarshaller unmarshaller;
             if (jaxbClassInContext) {
-                unmarshaller = getContext().createUnmarshaller();
-                return (T) unmarshaller.unmarshal(doc);
+                JAXBContext jaxb = getContext();
+                Unmarshaller unmarshaller = borrowUnmarshaller(jaxb);
+                T ret = (T) unmarshaller.unmarshal(doc);
+                releaseUnmarshaller(jaxb, unmarshaller);
+                return ret;
             } else {
                 org.w3c.dom.Element docElem = doc.getDocumentElement();
-                unmarshaller = createUnmarshaller(klass);
+                JAXBContext jaxb = getJaxbContext(klass);
+                Unmarshaller unmarshaller = borrowUnmarshaller(jaxb);
                 JAXBElement<T> ret =
                     (JAXBElement<T>) unmarshaller.unmarshal(docElem, klass);
+                releaseUnmarshaller(jaxb, unmarshaller);
                 return ret.getValue();
             }
         } catch (JAXBException ex) {
@@ -1603,6 +1674,7 @@ public final class JaxbUtil {
 
     /**
      * Only for use when marshalling request or response objects.
+     * Returns a new instance which the caller owns, so it is free to set properties on it.
      */
     public static Marshaller createMarshaller() {
         try {
@@ -1642,10 +1714,7 @@ public final class JaxbUtil {
     }
 
     private static JAXBContext getContext() {
-        if (JAXB_CONTEXT == null) {
-            throw new IllegalStateException("JAXB has not been initialized");
-        }
-        return JAXB_CONTEXT;
+        return ContextHolder.CONTEXT;
     }
 
     public static CreateItemNotification getCreatedItemSOAP(BaseItemInfo mod) throws ServiceException {
@@ -0,0 +1,77 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.common.soap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of a SearchResponse-sized {@link Element} tree to XML or JSON.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElementBenchmark {
+    private static final int HITS = 100;
+
+    @Param({ "xml", "json" })
+    public String format;
+
+    private Element response;
+
+    @Setup
+    public void setUp() throws Exception {
+        response = "json".equals(format) ? new Element.JSONElement(MailConstants.SEARCH_RESPONSE) :
+            new Element.XMLElement(MailConstants.SEARCH_RESPONSE);
+        response.addAttribute(MailConstants.A_SORTBY, "dateDesc").addAttribute(MailConstants.A_QUERY_OFFSET, 0)
+            .addAttribute(MailConstants.A_QUERY_MORE, true);
+        for (int i = 0; i < HITS; i++) {
+            Element m = response.addNonUniqueElement(MailConstants.E_MSG);
+            m.addAttribute(MailConstants.A_ID, 1000 + i).addAttribute(MailConstants.A_CONV_ID, -(1000 + i));
+            m.addAttribute(MailConstants.A_SIZE, 4096 + i).addAttribute(MailConstants.A_DATE, 1791194400000L + i);
+            m.addAttribute(MailConstants.A_FOLDER, "2").addAttribute(MailConstants.A_FLAGS, "ua");
+            m.addAttribute(MailConstants.A_REVISION, 2000 + i);
+            for (String addr : new String[] { "bob@example.com", "jdean@example.com", "alice@example.com" }) {
+                Element e = m.addNonUniqueElement(MailConstants.E_EMAIL);
+                e.addAttribute(MailConstants.A_ADDRESS, addr).addAttribute(MailConstants.A_PERSONAL, "Some <Person> & Co");
+                e.addAttribute(MailConstants.A_ADDRESS_TYPE, "t");
+            }
+            m.addNonUniqueElement(MailConstants.E_SUBJECT).setText("Benchmark message " + i);
+            m.addNonUniqueElement(MailConstants.E_FRAG).setText(
+                    "Line 0 of the quarterly numbers, nothing to see here. \"Quoted\" & escaped \u00e9\u2603");
+        }
+    }
+
+    @Benchmark
+    public String serialize() {
+        return response.toString();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Fixtures shared by the benchmarks.  The server runs against the same in-memory HSQLDB,
+ * mock provisioning and mock store as the unit tests.
+ */
+public final class BenchmarkSupport {
+    private static boolean serverInitialized;
+
+    private BenchmarkSupport() {
+    }
+
+    public static synchronized void initServer() throws Exception {
+        if (!serverInitialized) {
+            MailboxTestUtil.initServer();
+            serverInitialized = true;
+        }
+    }
+
+    /** Returns the mailbox of a newly created account; the server must already be initialized. */
+    public static Mailbox createMailbox(String name) throws Exception {
+        Map<String, Object> attrs = new HashMap<String, Object>();
+        attrs.put(Provisioning.A_zimbraId, UUID.randomUUID().toString());
+        Account acct = Provisioning.getInstance().createAccount(name + "@zimbra.com", "secret", attrs);
+        return MailboxManager.getInstance().getMailboxByAccount(acct);
+    }
+
+    /**
+     * Returns a multipart/mixed message with a text and an HTML alternative and a small
+     * attachment.  {@code n} goes into the Subject and Message-ID so successive messages don't
+     * thread into one conversation or get deduped.
+     */
+    public static byte[] message(int n) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            body.append("Line ").append(i).append(" of the quarterly numbers, nothing to see here.\r\n");
+        }
+        StringBuilder attachment = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            attachment.append("cm93LGNvbHVtbixjb2x1bW4sY29sdW1uLGNvbHVtbixjb2x1bW4sY29sdW1uLGNvbHVtbgo=\r\n");
+        }
+        String raw = "Return-Path: <bob@example.com>\r\n" +
+                "Received: from mta.example.com (mta.example.com [10.0.0.1])\r\n" +
+                "\tby mailbox.example.com with LMTP; Mon, 5 Oct 2026 10:00:00 +0000\r\n" +
+                "From: Bob Evans <bob@example.com>\r\n" +
+                "To: Jimmy Dean <jdean@example.com>, Alice <alice@example.com>\r\n" +
+                "Cc: Carol <carol@example.com>\r\n" +
+                "Subject: Benchmark message " + n + "\r\n" +
+                "Date: Mon, 5 Oct 2026 10:00:00 +0000\r\n" +
+                "Message-ID: <" + n + ".bench@example.com>\r\n" +
+                "MIME-Version: 1.0\r\n" +
+                "Content-Type: multipart/mixed; boundary=\"outer\"\r\n" +
+                "\r\n" +
+                "--outer\r\n" +
+                "Content-Type: multipart/alternative; boundary=\"inner\"\r\n" +
+                "\r\n" +
+                "--inner\r\n" +
+                "Content-Type: text/plain; charset=utf-8\r\n" +
+                "\r\n" +
+                body +
+                "--inner\r\n" +
+                "Content-Type: text/html; charset=utf-8\r\n" +
+                "\r\n" +
+                "<html><body><p>" + body + "</p></body></html>\r\n" +
+                "--inner--\r\n" +
+                "--outer\r\n" +
+                "Content-Type: text/csv; name=\"numbers.csv\"\r\n" +
+                "Content-Disposition: attachment; filename=\"numbers.csv\"\r\n" +
+                "Content-Transfer-Encoding: base64\r\n" +
+                "\r\n" +
+                attachment +
+                "--outer--\r\n";
+        return raw.getBytes(Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zimbra.cs.bench.BenchmarkSupport;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Message sequence operations on a selected {@link ImapFolder} holding {@link #SIZE} messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImapFolderBenchmark {
+    static final int SIZE = 20000;
+    private static final int LOOKUPS = 1000;
+
+    private ImapFolder i4folder;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initServer();
+        MailboxTestUtil.clearData();
+        Mailbox mbox = BenchmarkSupport.createMailbox("imapfolder");
+        ImapCredentials creds = new ImapCredentials(mbox.getAccount(), ImapCredentials.EnabledHack.NONE);
+        i4folder = new ImapFolder(new ImapPath("INBOX", creds), (byte) 0, null);
+        MailItem.Type type = MailItem.Type.MESSAGE;
+        for (int i = 1; i <= SIZE; i++) {
+            // leave gaps in the UIDs, as a real folder has after moves and deletes
+            i4folder.cache(new ImapMessage(1000 + i, type, 1000 + i * 3, 0, null), false);
+        }
+    }
+
+    /** FETCH/STORE style sequence-set resolution, by sequence number and by UID. */
+    @Benchmark
+    public void subsequence(Blackhole bh) throws Exception {
+        int lo = 1 + next++ % (SIZE / 2);
+        bh.consume(i4folder.getSubsequence(null, lo + ":" + (lo + 500) + ",7,42,*", false));
+        bh.consume(i4folder.getSubsequence(null, (1000 + lo * 3) + ":*", true));
+    }
+
+    /** Encoding a message set back to a sequence-set string, as for SEARCH and COPYUID. */
+    @Benchmark
+    public String encode() {
+        return ImapFolder.encodeSubsequence(i4folder.getAllMessages(), true);
+    }
+
+    /** Single message lookups by sequence number, UID and item id. */
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public void lookup(Blackhole bh) {
+        for (int i = 0; i < LOOKUPS; i++) {
+            int seq = 1 + (next++ % SIZE);
+            ImapMessage i4msg = i4folder.getBySequence(seq);
+            bh.consume(i4folder.getByImapId(i4msg.imapUid));
+            bh.consume(i4folder.getById(i4msg.msgId));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+}
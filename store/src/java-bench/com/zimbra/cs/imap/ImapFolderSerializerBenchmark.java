@@ -0,0 +1,109 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zimbra.common.mailbox.ItemIdentifier;
+import com.zimbra.cs.bench.BenchmarkSupport;
+import com.zimbra.cs.imap.ImapFlagCache.ImapFlag;
+import com.zimbra.cs.mailbox.Flag;
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Encoding and decoding an {@link ImapFolder} for the IMAP folder cache, with the compact
+ * {@link ImapFolderSerializer} snapshot format and with Java serialization.  The encoded size of
+ * each format is printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImapFolderSerializerBenchmark {
+
+    @Param({"10000", "100000"})
+    public int messages;
+
+    @Param({"snapshot", "java"})
+    public String format;
+
+    private ImapFolder i4folder;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initServer();
+        ImapFlagCache tagset = new ImapFlagCache();
+        tagset.cache(new ImapFlag("work", "work", 64, 0, true, true, true));
+        List<ImapMessage> i4list = new ArrayList<ImapMessage>(messages);
+        for (int i = 0; i < messages; i++) {
+            // a mix of flags and tags, and gaps in the UIDs as a real folder has after moves and deletes
+            String[] tags = i % 3 == 0 ? new String[] { "work" } : null;
+            ImapMessage i4msg = new ImapMessage(300 + i * 2, MailItem.Type.MESSAGE, 1000 + i * 3,
+                    i % 2 == 0 ? Flag.BITMASK_UNREAD : 0, tags);
+            i4msg.sequence = i + 1;
+            i4list.add(i4msg);
+        }
+        i4folder = new ImapFolder(new ItemIdentifier("12aa345b-2b47-44e6-8cb8-7fdfa18c1a9f", 2), 1234, null,
+                ImapHandler.ITEM_TYPES, tagset, i4list);
+        encoded = serialize();
+        System.out.printf("%s, %d messages: %d bytes encoded%n", format, messages, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        if (format.equals("snapshot")) {
+            return ImapFolderSerializer.serialize(i4folder);
+        }
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutputStream oout = new ObjectOutputStream(bout)) {
+            oout.writeObject(i4folder);
+        }
+        return bout.toByteArray();
+    }
+
+    @Benchmark
+    public ImapFolder deserialize() throws IOException, ClassNotFoundException {
+        if (format.equals("snapshot")) {
+            return ImapFolderSerializer.deserialize(encoded);
+        }
+        try (ObjectInputStream oin = new ObjectInputStream(new ByteArrayInputStream(encoded))) {
+            return (ImapFolder) oin.readObject();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zimbra.common.calendar.ParsedDateTime;
+import com.zimbra.common.calendar.ZCalendar.ZComponent;
+import com.zimbra.common.calendar.ZCalendar.ZVCalendar;
+import com.zimbra.common.mailbox.ContactConstants;
+import com.zimbra.common.util.BEncoding;
+import com.zimbra.cs.bench.BenchmarkSupport;
+import com.zimbra.cs.mailbox.calendar.Invite;
+import com.zimbra.cs.mailbox.calendar.ZOrganizer;
+import com.zimbra.cs.mime.ParsedContact;
+
+/**
+ * Decoding the metadata of a real appointment or contact the way a folder listing does,
+ * reading a few keys, with the eager {@link BEncoding#decode} and with the lazy view
+ * {@link Metadata} now uses.  The round trip variant re-encodes without changes, as a
+ * metadata update of an unrelated key does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataBenchmark {
+    public enum Kind {
+        CALENDAR, CONTACT
+    }
+
+    @Param({ "CALENDAR", "CONTACT" })
+    public Kind kind;
+
+    @Param({ "false", "true" })
+    public boolean lazy;
+
+    private String encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initServer();
+        MailboxTestUtil.clearData();
+        Mailbox mbox = BenchmarkSupport.createMailbox("metadata");
+        MailItem item = kind == Kind.CALENDAR ? createAppointment(mbox) : createContact(mbox);
+        encoded = item.encodeMetadata().toString();
+    }
+
+    private static MailItem createContact(Mailbox mbox) throws Exception {
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put(ContactConstants.A_firstName, "Jimmy");
+        fields.put(ContactConstants.A_lastName, "Dean");
+        fields.put(ContactConstants.A_fullName, "Jimmy Dean");
+        fields.put(ContactConstants.A_email, "jdean@example.com");
+        fields.put(ContactConstants.A_email2, "jimmy.dean@example.org");
+        fields.put(ContactConstants.A_company, "Example Sausage Company");
+        fields.put(ContactConstants.A_jobTitle, "Founder");
+        fields.put(ContactConstants.A_workPhone, "+1 555 0100");
+        fields.put(ContactConstants.A_mobilePhone, "+1 555 0101");
+        fields.put(ContactConstants.A_workStreet, "1 Main Street");
+        fields.put(ContactConstants.A_workCity, "Plainview");
+        fields.put(ContactConstants.A_workState, "TX");
+        fields.put(ContactConstants.A_workPostalCode, "79072");
+        fields.put(ContactConstants.A_notes, "Met at the county fair; prefers email.");
+        return mbox.createContact(null, new ParsedContact(fields), Mailbox.ID_FOLDER_CONTACTS, null);
+    }
+
+    private static MailItem createAppointment(Mailbox mbox) throws Exception {
+        ZVCalendar cal = new ZVCalendar();
+        cal.addComponent(new ZComponent("VEVENT"));
+        Invite invite = MailboxTestUtil.generateInvite(mbox.getAccount(), "Quarterly review", cal);
+        long start = System.currentTimeMillis();
+        invite.setDtStart(ParsedDateTime.fromUTCTime(start));
+        invite.setDtEnd(ParsedDateTime.fromUTCTime(start + 30 * 60 * 1000));
+        invite.setOrganizer(new ZOrganizer(mbox.getAccount().getName(), null));
+        invite.setUid(UUID.randomUUID().toString());
+        invite.setMethod("REQUEST");
+        invite.setName("Quarterly review");
+        invite.setLocation("Room 101");
+        invite.setFreeBusy("B");
+        invite.setIsOrganizer(true);
+        invite.setItemType(MailItem.Type.APPOINTMENT);
+        Mailbox.AddInviteData data = mbox.addInvite(null, invite, Mailbox.ID_FOLDER_CALENDAR);
+        return mbox.getCalendarItemById(null, data.calItemId);
+    }
+
+    private Map<?, ?> decode() throws Exception {
+        return lazy ? BEncoding.<Map<?, ?>>decodeLazily(encoded) : BEncoding.<Map<?, ?>>decode(encoded);
+    }
+
+    @Benchmark
+    public void read(Blackhole bh) throws Exception {
+        Map<?, ?> map = decode();
+        if (kind == Kind.CALENDAR) {
+            bh.consume(map.get(Metadata.FN_UID));
+            bh.consume(map.get(Metadata.FN_CALITEM_START));
+            bh.consume(map.get(Metadata.FN_CALITEM_END));
+        } else {
+            Map<?, ?> fields = (Map<?, ?>) map.get(Metadata.FN_FIELDS);
+            bh.consume(fields.get(ContactConstants.A_fullName));
+            bh.consume(fields.get(ContactConstants.A_email));
+        }
+    }
+
+    @Benchmark
+    public String roundTrip() throws Exception {
+        return BEncoding.encode(decode());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+}
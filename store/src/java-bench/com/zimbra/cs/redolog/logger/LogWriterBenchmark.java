@@ -0,0 +1,97 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.redolog.logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.bench.BenchmarkSupport;
+import com.zimbra.cs.redolog.RedoConfig;
+import com.zimbra.cs.redolog.RedoLogManager;
+import com.zimbra.cs.redolog.op.SetRetentionPolicy;
+
+/**
+ * Synchronous redo log writes of a typical record size through the {@link LogWriter} the
+ * server is configured with ({@code zimbra_redolog_group_commit}), from {@link #THREADS}
+ * benchmark threads sharing one writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(LogWriterBenchmark.THREADS)
+public class LogWriterBenchmark {
+    static final int THREADS = 8;
+    private static final int RECORD_SIZE = 512;
+
+    @Param({ "false", "true" })
+    public boolean groupCommit;
+
+    private final byte[] record = new byte[RECORD_SIZE];
+    private File dir;
+    private LogWriter writer;
+    private String savedGroupCommit;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkSupport.initServer();
+        Arrays.fill(record, (byte) 'r');
+        savedGroupCommit = LC.zimbra_redolog_group_commit.value();
+        LC.zimbra_redolog_group_commit.setDefault(Boolean.toString(groupCommit));
+        dir = File.createTempFile("redobench", "");
+        dir.delete();
+        dir.mkdirs();
+        File logfile = new File(dir, "redo.log");
+        RedoLogManager mgr = new RedoLogManager(logfile, new File(dir, "archive"), false);
+        writer = mgr.createLogWriter(mgr, logfile, RedoConfig.redoLogFsyncIntervalMS());
+        writer.open();
+    }
+
+    @Benchmark
+    public void log() throws Exception {
+        writer.log(new SetRetentionPolicy(), new ByteArrayInputStream(record), true /* synchronous */);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        writer.close();
+        LC.zimbra_redolog_group_commit.setDefault(savedGroupCommit);
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+}
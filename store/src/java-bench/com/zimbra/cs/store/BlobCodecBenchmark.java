@@ -0,0 +1,139 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.zimbra.common.util.ByteUtil;
+import com.zimbra.cs.bench.BenchmarkSupport;
+
+/**
+ * Compressing and decompressing a corpus of messages with each {@link BlobCodec}.  By default the
+ * corpus is generated; pass <tt>-p corpus=&lt;dir&gt;</tt> to use real blobs instead, e.g. a copy of a
+ * message volume.  Blobs that are already compressed are skipped.  Each operation is one pass over the
+ * whole corpus, and the corpus size and compression ratio are printed once per fork.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlobCodecBenchmark {
+    private static final int MAX_FILES = 10000;
+    private static final int GENERATED = 1000;
+
+    @Param({"GZIP", "DEFLATE"})
+    public BlobCodec codec;
+
+    @Param({""})
+    public String corpus;
+
+    private final List<byte[]> raw = new ArrayList<byte[]>();
+    private final List<byte[]> compressed = new ArrayList<byte[]>();
+    private final byte[] copyBuf = new byte[8192];
+
+    @Setup
+    public void setUp() throws IOException {
+        if (corpus.isEmpty()) {
+            for (int i = 0; i < GENERATED; i++) {
+                raw.add(BenchmarkSupport.message(i));
+            }
+        } else {
+            load(new File(corpus));
+            if (raw.isEmpty()) {
+                throw new IOException("no uncompressed blobs under " + corpus);
+            }
+        }
+        long rawBytes = 0, compressedBytes = 0;
+        for (byte[] data : raw) {
+            byte[] blob = encode(data);
+            compressed.add(blob);
+            rawBytes += data.length;
+            compressedBytes += blob.length;
+        }
+        System.out.printf("%s: %d blobs, %d bytes, ratio=%.3f%n", codec.getName(), raw.size(), rawBytes,
+                (double) compressedBytes / rawBytes);
+    }
+
+    private byte[] encode(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+        OutputStream out = codec.compress(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** Storing the corpus. */
+    @Benchmark
+    public void compress(Blackhole bh) throws IOException {
+        for (byte[] data : raw) {
+            bh.consume(encode(data));
+        }
+    }
+
+    /** Reading the corpus back. */
+    @Benchmark
+    public long decompress() throws IOException {
+        long total = 0;
+        for (byte[] data : compressed) {
+            InputStream in = codec.decompress(new ByteArrayInputStream(data));
+            for (int len; (len = in.read(copyBuf)) >= 0; ) {
+                total += len;
+            }
+            in.close();
+        }
+        return total;
+    }
+
+    private void load(File file) throws IOException {
+        if (raw.size() >= MAX_FILES) {
+            return;
+        }
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    load(child);
+                }
+            }
+        } else if (file.isFile() && file.length() > 0 && BlobCodec.detect(file) == null) {
+            raw.add(ByteUtil.getContent(file));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.soap;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+
+import org.dom4j.io.DocumentResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.Lists;
+import com.zimbra.common.soap.Element;
+import com.zimbra.soap.mail.message.GetFolderResponse;
+import com.zimbra.soap.mail.type.Folder;
+
+/**
+ * JAXB context construction and per-call marshalling cost.
+ * <ul>
+ * <li>{@code context} builds the context over every request and response class, which is what
+ * loading {@link JaxbUtil} used to cost at startup and now costs its first caller</li>
+ * <li>{@code classContext} builds the context for a single class</li>
+ * <li>{@code marshal} marshals a small {@link GetFolderResponse} with {@link JaxbUtil#jaxbToElement},
+ * reusing the thread's marshaller; {@code marshalFresh} does the same work with a new marshaller
+ * per call</li>
+ * <li>{@code unmarshal} converts the marshalled element back with {@link JaxbUtil#elementToJaxb}</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JaxbBenchmark {
+    private static final int FOLDERS = 5;
+
+    private Class<?>[] classes;
+    private GetFolderResponse response;
+    private Element element;
+
+    @Setup
+    public void setUp() throws Exception {
+        classes = JaxbUtil.getJaxbRequestAndResponseClasses().toArray(new Class<?>[0]);
+        Folder root = new Folder();
+        root.setId(1);
+        root.setName("USER_ROOT");
+        List<Folder> subfolders = Lists.newArrayList();
+        for (int i = 0; i < FOLDERS; i++) {
+            Folder folder = new Folder();
+            folder.setId(2 + i);
+            folder.setName("Folder " + i);
+            folder.setParentId("1");
+            folder.setUnreadCount(i);
+            folder.setItemCount(100 + i);
+            folder.setTotalSize(40960L + i);
+            subfolders.add(folder);
+        }
+        root.setSubfolders(subfolders);
+        response = new GetFolderResponse();
+        response.setFolder(root);
+        element = JaxbUtil.jaxbToElement(response);
+    }
+
+    @Benchmark
+    public JAXBContext context() throws Exception {
+        return JAXBContext.newInstance(classes);
+    }
+
+    @Benchmark
+    public JAXBContext classContext() throws Exception {
+        return JAXBContext.newInstance(GetFolderResponse.class);
+    }
+
+    @Benchmark
+    public Element marshal() throws Exception {
+        return JaxbUtil.jaxbToElement(response, Element.XMLElement.mFactory, false);
+    }
+
+    @Benchmark
+    public Element marshalFresh() throws Exception {
+        Marshaller marshaller = JaxbUtil.createMarshaller();
+        DocumentResult dr = new DocumentResult();
+        marshaller.marshal(response, dr);
+        return Element.convertDOM(dr.getDocument().getRootElement(), Element.XMLElement.mFactory);
+    }
+
+    @Benchmark
+    public Object unmarshal() throws Exception {
+        return JaxbUtil.elementToJaxb(element);
+    }
+}
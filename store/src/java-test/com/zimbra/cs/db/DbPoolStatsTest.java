@@ -0,0 +1,70 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.db;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.db.DbPool.DbConnection;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Unit test for {@link DbPoolStats}.
+ */
+public final class DbPoolStatsTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        DbPoolStats.reset();
+    }
+
+    @Test
+    public void caller() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        String previous = DbPoolStats.setRequest("TestRequest");
+        DbConnection conn = DbPool.getConnection(mbox, "test");
+        try {
+            DbUtil.executeUpdate(conn, "DELETE FROM mboxgroup1.mail_item WHERE mailbox_id = ?", mbox.getId());
+            DbUtil.executeUpdate(conn, "DELETE FROM mboxgroup1.mail_item WHERE mailbox_id = ?", mbox.getId());
+        } finally {
+            conn.closeQuietly();
+            DbPoolStats.setRequest(previous);
+        }
+
+        DbPoolStats.CallerStats stats = DbPoolStats.get("TestRequest/test");
+        Assert.assertEquals(1, stats.getWaitUs().getCount());
+        Assert.assertEquals(1, stats.getHoldMs().getCount());
+        Assert.assertEquals(2, stats.getQueries());
+        Assert.assertEquals(DbPoolStats.UNKNOWN, DbPoolStats.getCaller(null));
+    }
+}
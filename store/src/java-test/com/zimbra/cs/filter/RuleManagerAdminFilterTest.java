@@ -33,6 +33,8 @@ import com.zimbra.common.util.ArrayUtil;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.MockProvisioning;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.filter.RuleManager.AdminFilterType;
+import com.zimbra.cs.filter.RuleManager.FilterType;
 import com.zimbra.cs.mailbox.DeliveryContext;
 import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.mailbox.Mailbox;
@@ -42,6 +44,7 @@ import com.zimbra.cs.mailbox.Message;
 import com.zimbra.cs.mailbox.OperationContext;
 import com.zimbra.cs.mime.ParsedMessage;
 import com.zimbra.cs.service.util.ItemId;
+import com.zimbra.soap.mail.type.FilterRule;
 
 /**
  * Unit test for {@link RuleManager} with admin-defined rules.
@@ -639,5 +642,38 @@ public final class RuleManagerAdminFilterTest {
                 0, account.getName(), new DeliveryContext(), Mailbox.ID_FOLDER_INBOX, true);
         Assert.assertEquals(0, ids.size());
     }
-}
 
+    /**
+     * The admin SOAP handlers and LMTP delivery share the rules cache slot on the entry.
+     */
+    @Test
+    public void setAdminRulesFromXMLThenDeliver() throws Exception {
+        Account account = Provisioning.getInstance().getAccount(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(account);
+
+        RuleManager.clearCachedRules(account);
+        account.unsetAdminSieveScriptBefore();
+        account.unsetMailSieveScript();
+        account.unsetAdminSieveScriptAfter();
+
+        account.setAdminSieveScriptBefore("# admin-rule\n" + scriptAdminBefore);
+        List<FilterRule> rules = RuleManager.getAdminRulesAsXML(account, FilterType.INCOMING, AdminFilterType.BEFORE);
+        Assert.assertEquals(1, rules.size());
+
+        RuleManager.setAdminRulesFromXML(account, rules, FilterType.INCOMING, AdminFilterType.BEFORE);
+        rules = RuleManager.getAdminRulesAsXML(account, FilterType.INCOMING, AdminFilterType.BEFORE);
+        Assert.assertEquals(1, rules.size());
+        Assert.assertEquals("admin-rule", rules.get(0).getName());
+
+        List<ItemId> ids = RuleManager.applyRulesToIncomingMessage(new OperationContext(mbox),
+            mbox, new ParsedMessage(message.getBytes(), false),
+            0, account.getName(), new DeliveryContext(), Mailbox.ID_FOLDER_INBOX, true);
+        Assert.assertEquals(1, ids.size());
+        Message msg = mbox.getMessageById(null, ids.get(0).getId());
+        Assert.assertEquals("admin-defined-before", ArrayUtil.getFirstElement(msg.getTags()));
+
+        // and again now that delivery has used the cached plan
+        rules = RuleManager.getAdminRulesAsXML(account, FilterType.INCOMING, AdminFilterType.BEFORE);
+        Assert.assertEquals(1, rules.size());
+    }
+}
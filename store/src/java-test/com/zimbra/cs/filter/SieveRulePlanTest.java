@@ -0,0 +1,66 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.filter;
+
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+/**
+ * Unit test for {@link SieveRulePlan}.
+ */
+public final class SieveRulePlanTest {
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+    }
+
+    @Test
+    public void headerNames() throws Exception {
+        SieveRulePlan plan = SieveRulePlan.compile("require [\"fileinto\", \"variables\"];\n" +
+                "if header :contains [\"Subject\"] [\"Zimbra\"] { fileinto \"zimbra\"; }\n" +
+                "if anyof (address :domain :is \"From\" \"example.com\", exists \"X-Spam-Flag\") { stop; }\n" +
+                "if header :is \"${name}\" \"x\" { keep; }");
+        Assert.assertEquals(3, plan.getRuleCount());
+        Assert.assertTrue(plan.getHeaderNames().contains("subject"));
+        Assert.assertTrue(plan.getHeaderNames().contains("from"));
+        Assert.assertTrue(plan.getHeaderNames().contains("x-spam-flag"));
+        Assert.assertFalse(plan.getHeaderNames().contains("${name}"));
+        // action arguments are not test arguments
+        Assert.assertFalse(plan.getHeaderNames().contains("fileinto"));
+    }
+
+    @Test
+    public void shared() throws Exception {
+        String script = "if header :contains \"Subject\" \"admin\" { keep; }";
+        Assert.assertSame(SieveRulePlan.compileShared(script), SieveRulePlan.compileShared(script));
+        Assert.assertNotSame(SieveRulePlan.compile(script), SieveRulePlan.compile(script));
+    }
+
+    @Test
+    public void patterns() throws Exception {
+        Pattern pattern = FilterUtil.getSievePattern("*zim?ra*", Pattern.CASE_INSENSITIVE);
+        Assert.assertSame(pattern, FilterUtil.getSievePattern("*zim?ra*", Pattern.CASE_INSENSITIVE));
+        Assert.assertNotSame(pattern, FilterUtil.getSievePattern("*zim?ra*", 0));
+        Assert.assertTrue(pattern.matcher("Hello ZIMBRA world").matches());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.mailbox.ItemIdentifier;
+import com.zimbra.cs.imap.ImapFlagCache.ImapFlag;
+import com.zimbra.cs.mailbox.Flag;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+
+public class ImapFolderSerializerTest {
+    private static final String ACCOUNT_ID = "12aa345b-2b47-44e6-8cb8-7fdfa18c1a9f";
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+    }
+
+    private static ImapFolder newFolder(int count, String query) {
+        ImapFlagCache tagset = new ImapFlagCache();
+        tagset.cache(new ImapFlag("work", "work", 64, 0, true, true, true));
+        tagset.cache(new ImapFlag("$Junk", "$Junk", 0, ImapMessage.FLAG_SPAM, true, false, true));
+
+        List<ImapMessage> messages = new ArrayList<ImapMessage>(count);
+        for (int i = 0; i < count; i++) {
+            String[] tags = i % 3 == 0 ? new String[] { "work" } : (i % 3 == 1 ? new String[] { "work", "home" } : null);
+            MailItem.Type type = i % 100 == 0 ? MailItem.Type.CONTACT : MailItem.Type.MESSAGE;
+            ImapMessage i4msg = new ImapMessage(300 + i * 2, type, 1000 + i * 3, i % 2 == 0 ? Flag.BITMASK_UNREAD : 0, tags);
+            i4msg.sequence = i + 1;
+            if (i % 7 == 0) {
+                i4msg.sflags |= ImapMessage.FLAG_RECENT;
+            }
+            messages.add(i4msg);
+        }
+        return new ImapFolder(new ItemIdentifier(ACCOUNT_ID, 2), 1234, query,
+                query == null ? ImapHandler.ITEM_TYPES : EnumSet.of(MailItem.Type.MESSAGE), tagset, messages);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        ImapFolder i4folder = newFolder(500, null);
+        byte[] data = ImapFolderSerializer.serialize(i4folder);
+        Assert.assertTrue(ImapFolderSerializer.isSnapshot(data));
+
+        ImapFolder copy = ImapFolderSerializer.deserialize(data);
+        Assert.assertEquals(ACCOUNT_ID, copy.getItemIdentifier().accountId);
+        Assert.assertEquals(2, copy.getId());
+        Assert.assertEquals(1234, copy.getUIDValidity());
+        Assert.assertFalse(copy.isVirtual());
+        Assert.assertSame(ImapHandler.ITEM_TYPES, copy.getTypeConstraint());
+        Assert.assertEquals(500, copy.getSize());
+        for (int seq = 1; seq <= 500; seq++) {
+            ImapMessage expected = i4folder.getBySequence(seq);
+            ImapMessage actual = copy.getBySequence(seq);
+            Assert.assertEquals(expected.msgId, actual.msgId);
+            Assert.assertEquals(expected.imapUid, actual.imapUid);
+            Assert.assertEquals(expected.flags, actual.flags);
+            Assert.assertEquals(expected.sflags, actual.sflags);
+            Assert.assertEquals(expected.getType(), actual.getType());
+            Assert.assertArrayEquals(expected.tags, actual.tags);
+        }
+        // tag names come back interned
+        Assert.assertSame(copy.getBySequence(1).tags[0], copy.getBySequence(2).tags[0]);
+
+        ImapFlag work = copy.getTagset().getByImapName("work");
+        Assert.assertNotNull(work);
+        Assert.assertEquals(64, work.mId);
+        ImapFlag junk = copy.getTagset().getByImapName("$Junk");
+        Assert.assertEquals(ImapMessage.FLAG_SPAM, junk.mBitmask);
+        Assert.assertFalse(junk.mPermanent);
+    }
+
+    @Test
+    public void searchFolder() throws Exception {
+        ImapFolder copy = ImapFolderSerializer.deserialize(ImapFolderSerializer.serialize(newFolder(0, "in:inbox")));
+        Assert.assertTrue(copy.isVirtual());
+        Assert.assertEquals("in:inbox", copy.getQuery());
+        Assert.assertEquals(EnumSet.of(MailItem.Type.MESSAGE), copy.getTypeConstraint());
+        Assert.assertEquals(0, copy.getSize());
+    }
+
+    @Test
+    public void smallerThanJavaSerialization() throws Exception {
+        ImapFolder i4folder = newFolder(10000, null);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutputStream oout = new ObjectOutputStream(bout)) {
+            oout.writeObject(i4folder);
+        }
+        byte[] snapshot = ImapFolderSerializer.serialize(i4folder);
+        Assert.assertFalse(ImapFolderSerializer.isSnapshot(bout.toByteArray()));
+        Assert.assertTrue("compact=" + snapshot.length + " java=" + bout.size(), snapshot.length * 2 < bout.size());
+    }
+
+    @Test
+    public void unknownVersion() throws Exception {
+        byte[] data = ImapFolderSerializer.serialize(newFolder(10, null));
+        data[4] = (byte) (ImapFolderSerializer.VERSION + 1);
+        try {
+            ImapFolderSerializer.deserialize(data);
+            Assert.fail("snapshot from a different format version should be rejected");
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.DeliveryOptions;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
+import com.zimbra.cs.mime.ParsedMessage;
+
+public final class ImapStructureCacheTest {
+    private static final String MESSAGE = "From: sender@zimbra.com\r\nTo: rcpt@zimbra.com\r\n" +
+            "Subject: structure\r\nContent-Type: multipart/mixed; boundary=\"b\"\r\n\r\n" +
+            "--b\r\nContent-Type: text/plain\r\n\r\nhello\r\n--b\r\nContent-Type: text/html\r\n\r\n<b>hello</b>\r\n--b--\r\n";
+
+    private Mailbox mbox;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        Account acct = Provisioning.getInstance().createAccount("test@zimbra.com", "secret",
+                new HashMap<String, Object>());
+        mbox = MailboxManager.getInstance().getMailboxByAccount(acct);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private static final class MapStore implements ImapStructureCache.Store {
+        final Map<String, byte[]> map = new HashMap<String, byte[]>();
+
+        @Override
+        public byte[] get(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public void put(String key, byte[] value) {
+            map.put(key, value);
+        }
+    }
+
+    @Test
+    public void renderAndGet() throws Exception {
+        Message msg = mbox.addMessage(null, new ParsedMessage(MESSAGE.getBytes(), false),
+                new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX), null);
+        MapStore store = new MapStore();
+        ImapStructureCache cache = new ImapStructureCache(store);
+        Assert.assertNull(cache.get(msg));
+
+        ImapStructureCache.Entry rendered = cache.render(msg, ImapMessage.getMimeMessage(msg));
+        Assert.assertTrue(store.map.containsKey(cache.getKey(msg)));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos, false, Charsets.UTF_8.name());
+        ImapMessage.serializeStructure(ps, msg.getMimeMessage(false), true);
+        ps.flush();
+        Assert.assertArrayEquals(baos.toByteArray(), rendered.bodystructure);
+
+        // a fresh instance over the same store hits without touching the blob
+        ImapStructureCache.Entry cached = new ImapStructureCache(store).get(msg);
+        Assert.assertNotNull(cached);
+        Assert.assertArrayEquals(rendered.body, cached.body);
+        Assert.assertArrayEquals(rendered.bodystructure, cached.bodystructure);
+        Assert.assertArrayEquals(rendered.envelope, cached.envelope);
+    }
+
+    @Test
+    public void keyedByCharset() throws Exception {
+        Message msg = mbox.addMessage(null, new ParsedMessage(MESSAGE.getBytes(), false),
+                new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX), null);
+        MapStore store = new MapStore();
+        ImapStructureCache cache = new ImapStructureCache(store);
+        mbox.getAccount().setPrefMailDefaultCharset("utf-8");
+        cache.render(msg, ImapMessage.getMimeMessage(msg));
+        String key = cache.getKey(msg);
+        Assert.assertTrue(key.startsWith(msg.getDigest()));
+        Assert.assertNotNull(cache.get(msg));
+
+        // the same blob decoded for an account with another default charset is a different entry
+        mbox.getAccount().setPrefMailDefaultCharset("iso-2022-jp");
+        Assert.assertFalse(key.equals(cache.getKey(msg)));
+        Assert.assertNull(cache.get(msg));
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        Message msg = mbox.addMessage(null, new ParsedMessage(MESSAGE.getBytes(), false),
+                new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX), null);
+        ImapStructureCache cache = new ImapStructureCache(null);
+        Assert.assertNotNull(cache.render(msg, ImapMessage.getMimeMessage(msg)));
+        Assert.assertNull(cache.get(msg));
+    }
+
+    @Test
+    public void codec() throws Exception {
+        ImapStructureCache.Entry entry = new ImapStructureCache.Entry("(\"TEXT\")".getBytes(), new byte[0],
+                "(NIL \"s\")".getBytes());
+        ImapStructureCache.Entry decoded = ImapStructureCache.decode(ImapStructureCache.encode(entry));
+        Assert.assertArrayEquals(entry.body, decoded.body);
+        Assert.assertArrayEquals(entry.bodystructure, decoded.bodystructure);
+        Assert.assertArrayEquals(entry.envelope, decoded.envelope);
+
+        Assert.assertNull(ImapStructureCache.decode(null));
+        Assert.assertNull(ImapStructureCache.decode(new byte[] { 1, 0, 0 }));
+        Assert.assertNull(ImapStructureCache.decode(new byte[] { 1, 0x7f, 0, 0, 0, 0, 0, 0, 0 }));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.cs.mailbox.MailItem;
+
+public final class ImapThreadCacheTest {
+
+    private static ImapMessage message(int id) {
+        return new ImapMessage(id, MailItem.Type.MESSAGE, id, 0, null);
+    }
+
+    private static int[] ids(List<ImapMessage> thread) {
+        int[] ids = new int[thread.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = thread.get(i).msgId;
+        }
+        return ids;
+    }
+
+    @Test
+    public void thread() {
+        ImapThreadCache cache = new ImapThreadCache();
+        ImapMessage m1 = message(301), m2 = message(302), m3 = message(303), m4 = message(304), m5 = message(305);
+        cache.put(301, 300, 1000L);
+        cache.put(302, -302, 2000L);    // virtual conversation
+        cache.put(303, 310, 500L);
+        cache.put(304, 300, 3000L);
+        cache.put(305, 310, 1500L);
+
+        List<List<ImapMessage>> threads = cache.thread(Arrays.asList(m1, m2, m3, m4, m5));
+        Assert.assertEquals(3, threads.size());
+        Assert.assertArrayEquals(new int[] { 303, 305 }, ids(threads.get(0)));
+        Assert.assertArrayEquals(new int[] { 301, 304 }, ids(threads.get(1)));
+        Assert.assertArrayEquals(new int[] { 302 }, ids(threads.get(2)));
+    }
+
+    @Test
+    public void missesAndInvalidation() {
+        ImapThreadCache cache = new ImapThreadCache();
+        ImapMessage m1 = message(401), m2 = message(402);
+        cache.put(401, 400, 1000L);
+        Assert.assertEquals(Arrays.asList(m2), cache.getMisses(Arrays.asList(m1, m2)));
+
+        // uncached and expunged messages are left out of the threads
+        m1.setExpunged(true);
+        Assert.assertTrue(cache.thread(Arrays.asList(m1, m2)).isEmpty());
+
+        cache.invalidate(401);
+        Assert.assertNull(cache.get(401));
+        Assert.assertEquals(0, cache.size());
+    }
+}
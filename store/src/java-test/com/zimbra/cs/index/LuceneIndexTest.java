@@ -16,6 +16,23 @@
  */
 package com.zimbra.cs.index;
 
+import java.util.Collection;
+import java.util.Collections;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.db.DbMailItem;
+import com.zimbra.cs.db.DbPool;
+import com.zimbra.cs.db.DbPool.DbConnection;
+import com.zimbra.cs.mailbox.Contact;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+
 /**
  * Unit test for {@link LuceneIndex}.
  */
@@ -27,4 +44,71 @@ public final class LuceneIndexTest extends AbstractIndexStoreTest {
         // Default for LC.zimbra_class_index_store_factory.value() is USUALLY this
         return "com.zimbra.cs.index.LuceneIndex$Factory";
     }
+
+    @Test
+    public void nearRealTime() throws Exception {
+        LC.zimbra_index_lucene_nrt.setDefault(true);
+        LC.zimbra_index_lucene_nrt_commit_interval_ms.setDefault(600000);
+        try {
+            Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+            Contact contact = createContact(mbox, "James", "Peters", "test1@zimbra.com");
+            createContact(mbox, "Emma", "Peters", "test2@zimbra.com");
+            mbox.index.indexDeferredItems();
+
+            // nothing has been committed yet, the searcher reads from the open writer
+            IndexStore index = mbox.index.getIndexStore();
+            ZimbraIndexSearcher searcher = index.openSearcher();
+            Assert.assertEquals(2, searcher.search(
+                    new TermQuery(new Term(LuceneFields.L_CONTACT_DATA, "@zimbra.com")), 100).getTotalHits());
+            searcher.close();
+
+            Indexer indexer = index.openIndexer();
+            indexer.deleteDocument(Collections.singletonList(contact.getId()));
+            indexer.close();
+            searcher = index.openSearcher();
+            Assert.assertEquals(1, searcher.getIndexReader().numDocs());
+            searcher.close();
+
+            // shutdown flushes the coalesced commit, so a fresh reader of the directory sees the same state
+            IndexStore.getFactory().destroy();
+            searcher = index.openSearcher();
+            Assert.assertEquals(1, searcher.getIndexReader().numDocs());
+            searcher.close();
+        } finally {
+            LC.zimbra_index_lucene_nrt.setDefault(false);
+            LC.zimbra_index_lucene_nrt_commit_interval_ms.setDefault(5000);
+        }
+    }
+
+    @Test
+    public void nearRealTimeMarksIndexedOnCommit() throws Exception {
+        LC.zimbra_index_lucene_nrt.setDefault(true);
+        LC.zimbra_index_lucene_nrt_commit_interval_ms.setDefault(600000);
+        try {
+            Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+            Contact contact = createContact(mbox, "James", "Peters", "test1@zimbra.com");
+            mbox.index.indexDeferredItems();
+
+            // searchable, but still deferred in the DB so that a crash before the commit doesn't lose it
+            Assert.assertTrue(getIndexDeferredIds(mbox).contains(contact.getId()));
+
+            IndexStore.getFactory().destroy();
+            for (int i = 0; i < 50 && getIndexDeferredIds(mbox).contains(contact.getId()); i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertFalse(getIndexDeferredIds(mbox).contains(contact.getId()));
+        } finally {
+            LC.zimbra_index_lucene_nrt.setDefault(false);
+            LC.zimbra_index_lucene_nrt_commit_interval_ms.setDefault(5000);
+        }
+    }
+
+    private static Collection<Integer> getIndexDeferredIds(Mailbox mbox) throws Exception {
+        DbConnection conn = DbPool.getConnection(mbox);
+        try {
+            return DbMailItem.getIndexDeferredIds(conn, mbox).values();
+        } finally {
+            conn.closeQuietly();
+        }
+    }
 }
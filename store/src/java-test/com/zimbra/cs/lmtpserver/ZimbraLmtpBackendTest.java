@@ -0,0 +1,169 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.lmtpserver;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.account.Key;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.db.Db;
+import com.zimbra.cs.db.HSQLDB;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.store.StoreManager;
+import com.zimbra.cs.store.file.FileBlobStore;
+import com.zimbra.cs.volume.VolumeManager;
+
+/**
+ * Unit test for {@link ZimbraLmtpBackend}.
+ */
+public final class ZimbraLmtpBackendTest {
+
+    private static final int NUM_RCPTS = 5;
+    private static final int THREADS = 3;
+
+    private StoreManager originalStoreManager;
+    private String originalThreads;
+    private String originalMinRecipients;
+    private List<Mailbox> mboxes;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        System.setProperty("zimbra.native.required", "false");
+        // lanes write to the database concurrently
+        ((HSQLDB) Db.getInstance()).useMVCC(null);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        Provisioning prov = Provisioning.getInstance();
+        mboxes = new ArrayList<Mailbox>(NUM_RCPTS);
+        for (int i = 0; i < NUM_RCPTS; i++) {
+            String name = "rcpt" + i + "@zimbra.com";
+            Account acct = prov.get(Key.AccountBy.name, name);
+            if (acct == null) {
+                acct = prov.createAccount(name, "secret", new HashMap<String, Object>());
+            }
+            acct.setMailQuota(0);
+            mboxes.add(MailboxManager.getInstance().getMailboxByAccount(acct));
+        }
+
+        // the incoming blob has to be a real file to check that it's cleaned up
+        originalStoreManager = StoreManager.getInstance();
+        LC.zimbra_tmp_directory.setDefault(System.getProperty("user.dir") + "/build/tmp");
+        StoreManager.setInstance(new FileBlobStore());
+        StoreManager.getInstance().startup();
+
+        originalThreads = LC.zimbra_lmtp_delivery_threads.value();
+        originalMinRecipients = LC.zimbra_lmtp_parallel_delivery_min_recipients.value();
+        LC.zimbra_lmtp_parallel_delivery_min_recipients.setDefault(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        LC.zimbra_lmtp_delivery_threads.setDefault(originalThreads);
+        LC.zimbra_lmtp_parallel_delivery_min_recipients.setDefault(originalMinRecipients);
+        StoreManager.getInstance().shutdown();
+        StoreManager.setInstance(originalStoreManager);
+    }
+
+    @Test
+    public void parallel() throws Exception {
+        LC.zimbra_lmtp_delivery_threads.setDefault(THREADS);
+        deliver("<parallel@zimbra.com>");
+    }
+
+    @Test
+    public void serial() throws Exception {
+        LC.zimbra_lmtp_delivery_threads.setDefault(1);
+        deliver("<serial@zimbra.com>");
+    }
+
+    /**
+     * Delivers one message to every test mailbox and an unknown address.  One mailbox is over
+     * quota; when delivering in parallel it's one that lands on a pool lane rather than on the
+     * calling thread.
+     */
+    private void deliver(String messageId) throws Exception {
+        // the first recipient is always delivered serially, and the unknown recipient goes to
+        // lane 0, so pick a mailbox from another lane
+        Mailbox overQuota = null;
+        for (Mailbox mbox : mboxes.subList(1, NUM_RCPTS)) {
+            if (mbox.getId() % THREADS != 0) {
+                overQuota = mbox;
+                break;
+            }
+        }
+        Assert.assertNotNull(overQuota);
+        overQuota.getAccount().setMailQuota(1);
+
+        LmtpEnvelope env = new LmtpEnvelope();
+        env.setSender(new LmtpAddress("<sender@example.com>", null, null));
+        for (Mailbox mbox : mboxes) {
+            env.addLocalRecipient(new LmtpAddress("<" + mbox.getAccount().getName() + ">", null, null));
+        }
+        LmtpAddress unknown = new LmtpAddress("<unknown@zimbra.com>", null, null);
+        env.addLocalRecipient(unknown);
+
+        byte[] content = ("From: sender@example.com\r\n" +
+                "To: rcpt0@zimbra.com\r\n" +
+                "Subject: fanout\r\n" +
+                "Message-ID: " + messageId + "\r\n" +
+                "\r\n" +
+                "body\r\n").getBytes();
+        File incoming = new File(VolumeManager.getInstance().getCurrentMessageVolume().getIncomingDirectory().getPath());
+        int before = count(incoming);
+
+        new ZimbraLmtpBackend(LmtpConfig.getInstance()).deliver(env, new ByteArrayInputStream(content), content.length);
+
+        for (int i = 0; i < NUM_RCPTS; i++) {
+            Mailbox mbox = mboxes.get(i);
+            LmtpAddress rcpt = env.getLocalRecipients().get(i);
+            long count = mbox.getFolderById(null, Mailbox.ID_FOLDER_INBOX).getItemCount();
+            if (mbox == overQuota) {
+                Assert.assertEquals(rcpt.getEmailAddress(), LmtpReply.TEMPORARY_FAILURE_OVER_QUOTA,
+                        rcpt.getDeliveryStatus());
+                Assert.assertEquals(rcpt.getEmailAddress(), 0, count);
+            } else {
+                Assert.assertEquals(rcpt.getEmailAddress(), LmtpReply.DELIVERY_OK, rcpt.getDeliveryStatus());
+                Assert.assertEquals(rcpt.getEmailAddress(), 1, count);
+            }
+        }
+        Assert.assertEquals(LmtpReply.PERMANENT_FAILURE, unknown.getDeliveryStatus());
+        Assert.assertEquals("incoming blob deleted", before, count(incoming));
+    }
+
+    private static int count(File dir) {
+        String[] files = dir.list();
+        return files == null ? 0 : files.length;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableSet;
+import com.zimbra.common.mailbox.ContactConstants;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mime.ParsedContact;
+
+/**
+ * Unit test for {@link ContactPrefixIndex}.
+ */
+public final class ContactPrefixIndexTest {
+    private static final Set<Integer> CONTACTS = ImmutableSet.of(Mailbox.ID_FOLDER_CONTACTS);
+
+    @BeforeClass
+    public static void init() throws Exception {
+        System.setProperty("zimbra.config", "../store/src/java-test/localconfig-test.xml");
+        MailboxTestUtil.initServer();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Provisioning.getInstance().createAccount("prefix@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private Contact createContact(Mailbox mbox, String first, String last, String email) throws Exception {
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put(ContactConstants.A_firstName, first);
+        fields.put(ContactConstants.A_lastName, last);
+        fields.put(ContactConstants.A_email, email);
+        return mbox.createContact(null, new ParsedContact(fields), Mailbox.ID_FOLDER_CONTACTS, null);
+    }
+
+    @Test
+    public void search() throws Exception {
+        Account account = Provisioning.getInstance().getAccountByName("prefix@zimbra.com");
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(account);
+        Contact c1 = createContact(mbox, "Mary Ann", "Smith", "mas@zimbra.com");
+        Contact c2 = createContact(mbox, "Martin", "Jones", "Jones@Example.com");
+
+        ContactPrefixIndex index = ContactPrefixIndex.get(mbox);
+        Assert.assertNotNull(index);
+        Assert.assertEquals(Arrays.asList(c1.getId(), c2.getId()), index.search(Arrays.asList("mar"), CONTACTS));
+        Assert.assertEquals(Arrays.asList(c1.getId()), index.search(Arrays.asList("ann", "smi"), CONTACTS));
+        Assert.assertEquals(Arrays.asList(c2.getId()), index.search(Arrays.asList("jones@ex"), CONTACTS));
+        Assert.assertEquals(Collections.emptyList(), index.search(Arrays.asList("mar"),
+                ImmutableSet.of(Mailbox.ID_FOLDER_AUTO_CONTACTS)));
+        Assert.assertEquals(Arrays.asList(c2.getId()),
+                index.lookup(Arrays.asList("jones@example.com"), CONTACTS));
+    }
+
+    @Test
+    public void listener() throws Exception {
+        Account account = Provisioning.getInstance().getAccountByName("prefix@zimbra.com");
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(account);
+        Contact c1 = createContact(mbox, "First", "Last", "first@zimbra.com");
+        ContactPrefixIndex index = ContactPrefixIndex.get(mbox);
+        Assert.assertNotNull(index);
+        Assert.assertEquals(1, index.size());
+
+        Contact c2 = createContact(mbox, "Second", "Last", "second@zimbra.com");
+        Assert.assertEquals(Arrays.asList(c1.getId(), c2.getId()), index.search(Arrays.asList("la"), CONTACTS));
+
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put(ContactConstants.A_firstName, "Renamed");
+        fields.put(ContactConstants.A_lastName, "Person");
+        fields.put(ContactConstants.A_email, "first@zimbra.com");
+        mbox.modifyContact(null, c1.getId(), new ParsedContact(fields));
+        Assert.assertEquals(Arrays.asList(c2.getId()), index.search(Arrays.asList("la"), CONTACTS));
+        Assert.assertEquals(Arrays.asList(c1.getId()), index.search(Arrays.asList("ren"), CONTACTS));
+
+        mbox.move(null, c2.getId(), MailItem.Type.CONTACT, Mailbox.ID_FOLDER_AUTO_CONTACTS);
+        Assert.assertEquals(Collections.emptyList(), index.search(Arrays.asList("sec"), CONTACTS));
+
+        mbox.delete(null, c1.getId(), MailItem.Type.CONTACT);
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(Collections.emptyList(), index.search(Arrays.asList("ren"), CONTACTS));
+    }
+
+    @Test
+    public void autoComplete() throws Exception {
+        Account account = Provisioning.getInstance().getAccountByName("prefix@zimbra.com");
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(account);
+        createContact(mbox, "First", "Last", "test1@zimbra.com");
+        ContactAutoComplete autocomplete = new ContactAutoComplete(account, new OperationContext(mbox));
+        Assert.assertEquals(1, autocomplete.query("first last", null, 100).entries.size());
+        Assert.assertNotNull(ContactPrefixIndex.peek(mbox.getId()));
+
+        createContact(mbox, "Other", "Last", "test2@zimbra.com");
+        Assert.assertEquals(2, autocomplete.query("last", null, 100).entries.size());
+        Assert.assertEquals(1, autocomplete.query("test2", null, 100).entries.size());
+        Assert.assertEquals(0, autocomplete.query("zimbra", null, 100).entries.size());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.account.Key;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+
+/**
+ * Unit test for {@link ItemCacheBudget}.
+ */
+public final class ItemCacheBudgetTest {
+    private String originalWarmup;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test1@zimbra.com", "secret", new HashMap<String, Object>());
+        prov.createAccount("test2@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        // keep the background warmup from filling the caches behind the test's back
+        originalWarmup = LC.zimbra_mailbox_cache_warmup.value();
+        LC.zimbra_mailbox_cache_warmup.setDefault(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        LC.zimbra_mailbox_cache_warmup.setDefault(originalWarmup);
+    }
+
+    private static Mailbox getMailbox(String name) throws Exception {
+        Account account = Provisioning.getInstance().get(Key.AccountBy.name, name);
+        return MailboxManager.getInstance().getMailboxByAccount(account);
+    }
+
+    private static List<Integer> addMessages(Mailbox mbox, int count) throws Exception {
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        List<Integer> ids = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(mbox.addMessage(null, MailboxTestUtil.generateMessage("test" + i), dopt, null).getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void withinBudget() {
+        Assert.assertEquals(Long.MAX_VALUE, ItemCacheBudget.getFairShare(new long[] {100, 200, 300}, 600));
+        Assert.assertEquals(Long.MAX_VALUE, ItemCacheBudget.getFairShare(new long[0], 0));
+    }
+
+    @Test
+    public void fairShare() {
+        // small caches keep what they have, the rest is split evenly
+        Assert.assertEquals(250, ItemCacheBudget.getFairShare(new long[] {1000, 50, 400}, 550));
+        // everybody over an equal share
+        Assert.assertEquals(100, ItemCacheBudget.getFairShare(new long[] {300, 200, 400}, 300));
+    }
+
+    @Test
+    public void enforce() throws Exception {
+        Mailbox busy = getMailbox("test1@zimbra.com");
+        Mailbox quiet = getMailbox("test2@zimbra.com");
+        List<Integer> ids = addMessages(busy, 20);
+        addMessages(quiet, 2);
+        // touch the oldest message, so that it is the most recently used
+        busy.getMessageById(null, ids.get(0));
+
+        long busyBytes = busy.getItemCacheBytes();
+        long quietBytes = quiet.getItemCacheBytes();
+        Assert.assertTrue(quietBytes > 0);
+        Assert.assertTrue(busyBytes > quietBytes * 2);
+        // room for all of the quiet mailbox and half of the busy one
+        long limit = quietBytes + busyBytes / 2;
+        long share = ItemCacheBudget.getFairShare(new long[] {busyBytes, quietBytes}, limit);
+        Assert.assertEquals(busyBytes / 2, share);
+
+        ItemCacheBudget budget = new ItemCacheBudget(limit);
+        budget.register(busy);
+        budget.register(quiet);
+        budget.enforce();
+
+        // the busy mailbox gives up its least recently used items, the quiet one keeps its cache
+        Assert.assertTrue(busy.getItemCacheBytes() <= share);
+        Assert.assertTrue(busy.getItemCacheBytes() > 0);
+        Assert.assertTrue(busy.getItemCacheUsage().evictions > 0);
+        Assert.assertEquals(quietBytes, quiet.getItemCacheBytes());
+        Assert.assertEquals(0, quiet.getItemCacheUsage().evictions);
+        Assert.assertTrue(busy.getItemCacheBytes() + quiet.getItemCacheBytes() <= limit);
+
+        long misses = busy.getItemCacheUsage().misses;
+        busy.getMessageById(null, ids.get(0));
+        Assert.assertEquals(misses, busy.getItemCacheUsage().misses);
+        busy.getMessageById(null, ids.get(1));
+        Assert.assertTrue(busy.getItemCacheUsage().misses > misses);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.index.SearchParams;
+import com.zimbra.cs.index.SortBy;
+import com.zimbra.cs.index.ZimbraQueryResults;
+
+/**
+ * Unit test for {@link MailboxIndex} re-index.
+ */
+public final class MailboxIndexTest {
+    // more than one chunk of zimbra_index_max_transaction_items
+    private static final int COUNT = LC.zimbra_index_max_transaction_items.intValue() * 3 / 2;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning.getInstance().createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    private static List<Integer> addMessages(Mailbox mbox, String subject, int count) throws Exception {
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX);
+        List<Integer> ids = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(mbox.addMessage(null, MailboxTestUtil.generateMessage(subject + " token" + i), dopt, null).getId());
+        }
+        return ids;
+    }
+
+    private static int count(Mailbox mbox, String query) throws Exception {
+        SearchParams params = new SearchParams();
+        params.setQueryString(query);
+        params.setTypes(EnumSet.of(MailItem.Type.MESSAGE));
+        params.setSortBy(SortBy.NONE);
+        params.setQuick(true); // don't let the search index any deferred items itself
+        int count = 0;
+        try (ZimbraQueryResults results = mbox.index.search(new OperationContext(mbox), params)) {
+            while (results.hasNext()) {
+                results.getNext();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void reIndexAll() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        addMessages(mbox, "pipeline", COUNT);
+        MailboxTestUtil.index(mbox);
+
+        // drops the index and rebuilds it from scratch
+        MailboxIndex.ReIndexStatus status = mbox.index.reIndexInForeground(null);
+        Assert.assertTrue(status.getTotal() >= COUNT);
+        Assert.assertEquals(status.getTotal(), status.getProcessed());
+        Assert.assertEquals(0, status.getFailed());
+        Assert.assertEquals(0, status.getInFlight());
+
+        Assert.assertEquals(COUNT, count(mbox, "subject:pipeline"));
+        Assert.assertEquals(1, count(mbox, "subject:token0"));
+        Assert.assertEquals(1, count(mbox, "subject:token" + (COUNT - 1)));
+    }
+
+    @Test
+    public void reIndexTrailingSkipped() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        List<Integer> ids = addMessages(mbox, "pipeline", COUNT);
+        List<Integer> deleted = addMessages(mbox, "deleted", 3);
+        for (int id : deleted) {
+            mbox.delete(null, id, MailItem.Type.MESSAGE);
+        }
+        MailboxTestUtil.index(mbox);
+
+        // the list ends with items that no longer exist, so the last chunk is only flushed after the loop
+        List<Integer> reindex = new ArrayList<Integer>(ids);
+        reindex.addAll(deleted);
+        reindex.add(deleted.get(deleted.size() - 1) + 1000);
+        MailboxIndex.ReIndexStatus status = mbox.index.reIndexInForeground(reindex);
+        Assert.assertEquals(reindex.size(), status.getTotal());
+        Assert.assertEquals(reindex.size(), status.getProcessed());
+        Assert.assertEquals(0, status.getFailed());
+        Assert.assertEquals(0, status.getInFlight());
+
+        Assert.assertEquals(COUNT, count(mbox, "subject:pipeline"));
+        Assert.assertEquals(1, count(mbox, "subject:token" + (COUNT - 1)));
+        Assert.assertEquals(0, count(mbox, "subject:deleted"));
+    }
+}
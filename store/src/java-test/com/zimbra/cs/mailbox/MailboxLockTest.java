@@ -687,4 +687,37 @@ public class MailboxLockTest {
             t.join();
         }
     }
+
+    @Test
+    public void optimisticRead() throws ServiceException {
+        LC.zimbra_mailbox_lock_optimistic_read.setDefault(true);
+        try {
+            Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+            MailboxLock lock = new MailboxLock(mbox.getAccountId(), mbox);
+            long stamp = lock.tryOptimisticRead();
+            Assert.assertTrue(stamp != 0L);
+            Assert.assertTrue(lock.validate(stamp));
+
+            lock.lock(true);
+            Assert.assertEquals("no stamp while a writer holds the lock", 0L, lock.tryOptimisticRead());
+            lock.lock(true);
+            lock.release();
+            Assert.assertEquals("still write locked after nested release", 0L, lock.tryOptimisticRead());
+            lock.release();
+
+            Assert.assertFalse("writer invalidates earlier stamps", lock.validate(stamp));
+            Assert.assertTrue(lock.validate(lock.tryOptimisticRead()));
+            Assert.assertEquals(2, lock.getStats().getAcquires());
+            Assert.assertEquals(1, lock.getStats().getOptimisticFailures());
+        } finally {
+            LC.zimbra_mailbox_lock_optimistic_read.setDefault(false);
+        }
+    }
+
+    @Test
+    public void optimisticReadDisabled() throws ServiceException {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Assert.assertEquals(0L, mbox.lock.tryOptimisticRead());
+        Assert.assertFalse(mbox.lock.validate(0L));
+    }
 }
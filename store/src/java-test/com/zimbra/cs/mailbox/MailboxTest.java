@@ -44,6 +44,7 @@ import com.zimbra.common.util.ArrayUtil;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.MockProvisioning;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.db.DbMailItem;
 import com.zimbra.cs.index.BrowseTerm;
 import com.zimbra.cs.mailbox.util.TypedIdList;
 import com.zimbra.cs.mime.ParsedContact;
@@ -711,6 +712,33 @@ public final class MailboxTest {
         Assert.assertEquals(10L, mbox.getSize());
     }
 
+    @Test
+    public void warmItemCache() throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        DeliveryOptions dopt = new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX).setFlags(Flag.BITMASK_UNREAD);
+        int unread = mbox.addMessage(null, new ParsedMessage("Subject: unread".getBytes(), false), dopt, null).getId();
+        int read = mbox.addMessage(null, new ParsedMessage("Subject: read".getBytes(), false),
+                STANDARD_DELIVERY_OPTIONS, null).getId();
+        mbox.purge(MailItem.Type.MESSAGE);
+
+        mbox.warmItemCache();
+        mbox.beginReadTransaction("test", null);
+        try {
+            Assert.assertNotNull(mbox.getCachedItem(unread));
+            Assert.assertNotNull(mbox.getCachedItem(read));
+
+            // the two warmup queries never return the same row
+            List<MailItem.UnderlyingData> rows = DbMailItem.getWarmupItems(mbox, true, 10);
+            Assert.assertEquals(1, rows.size());
+            Assert.assertEquals(unread, rows.get(0).id);
+            rows = DbMailItem.getWarmupItems(mbox, false, 10);
+            Assert.assertEquals(1, rows.size());
+            Assert.assertEquals(read, rows.get(0).id);
+        } finally {
+            mbox.endTransaction(true);
+        }
+    }
+
     /**
      * @throws java.lang.Exception
      */
@@ -0,0 +1,138 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mime.ParsedMessage;
+
+/**
+ * Unit test for {@link MessageCache}.
+ */
+public final class MessageCacheTest {
+    private static final int MESSAGE_SIZE = 1000;
+
+    private int originalCacheSize;
+    private String originalMaxBytes;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning.getInstance().createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        originalCacheSize = Provisioning.getInstance().getLocalServer().getMessageCacheSize();
+        originalMaxBytes = LC.zimbra_message_cache_max_bytes.value();
+        MessageCache.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MessageCache.clear();
+        Provisioning.getInstance().getLocalServer().setMessageCacheSize(originalCacheSize);
+        LC.zimbra_message_cache_max_bytes.setDefault(originalMaxBytes);
+        MessageCache.loadSettings();
+    }
+
+    private static List<Message> addMessages(int count) throws Exception {
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        List<Message> msgs = new ArrayList<Message>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder("From: sender@zimbra.com\r\nSubject: message " + i + "\r\n\r\n");
+            while (sb.length() < MESSAGE_SIZE) {
+                sb.append((char) ('a' + i % 26));
+            }
+            msgs.add(mbox.addMessage(null, new ParsedMessage(sb.toString().getBytes(), false),
+                    new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX), null));
+        }
+        return msgs;
+    }
+
+    @Test
+    public void byteBounded() throws Exception {
+        // room for 100 messages by count, but only 5 by size
+        Provisioning.getInstance().getLocalServer().setMessageCacheSize(100);
+        LC.zimbra_message_cache_max_bytes.setDefault(5 * MESSAGE_SIZE);
+        MessageCache.loadSettings();
+
+        for (Message msg : addMessages(10)) {
+            Assert.assertEquals(MESSAGE_SIZE, msg.getSize());
+            MessageCache.getMimeMessage(msg, false);
+            Assert.assertTrue(MessageCache.contains(msg.getDigest()));
+            Assert.assertEquals(MessageCache.getSize() * MESSAGE_SIZE, MessageCache.getDataSize());
+        }
+        Assert.assertTrue(MessageCache.getSize() <= 5);
+        Assert.assertTrue(MessageCache.getDataSize() <= 5 * MESSAGE_SIZE);
+    }
+
+    @Test
+    public void countBounded() throws Exception {
+        Provisioning.getInstance().getLocalServer().setMessageCacheSize(3);
+        LC.zimbra_message_cache_max_bytes.setDefault(100 * MESSAGE_SIZE);
+        MessageCache.loadSettings();
+
+        for (Message msg : addMessages(10)) {
+            MessageCache.getMimeMessage(msg, false);
+        }
+        Assert.assertEquals(3, MessageCache.getSize());
+        Assert.assertEquals(3 * MESSAGE_SIZE, MessageCache.getDataSize());
+    }
+
+    @Test
+    public void clear() throws Exception {
+        Provisioning.getInstance().getLocalServer().setMessageCacheSize(100);
+        LC.zimbra_message_cache_max_bytes.setDefault(100 * MESSAGE_SIZE);
+        MessageCache.loadSettings();
+
+        List<Message> msgs = addMessages(5);
+        for (Message msg : msgs) {
+            MessageCache.getMimeMessage(msg, false);
+        }
+        // expanding again must not count the message a second time
+        long dataSize = MessageCache.getDataSize();
+        Assert.assertEquals(5 * MESSAGE_SIZE, dataSize);
+        for (Message msg : msgs) {
+            MessageCache.getMimeMessage(msg, true);
+        }
+        dataSize = MessageCache.getDataSize();
+        for (Message msg : msgs) {
+            MessageCache.getMimeMessage(msg, true);
+        }
+        Assert.assertEquals(dataSize, MessageCache.getDataSize());
+
+        MessageCache.purge(msgs.get(0).getDigest());
+        Assert.assertEquals(4, MessageCache.getSize());
+
+        MessageCache.clear();
+        Assert.assertEquals(0, MessageCache.getSize());
+        Assert.assertEquals(0, MessageCache.getDataSize());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox.calendar.cache;
+
+import java.util.HashMap;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.CalendarItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.calendar.cache.CalSummaryCache.CalendarDelta;
+
+/**
+ * Unit test for applying committed calendar item changes in {@link CalSummaryCache}.
+ */
+public final class CalSummaryCacheTest {
+    private Mailbox mbox;
+    private CalSummaryKey key;
+    private int folderModSeq;
+    private CalSummaryCache cache;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        key = new CalSummaryKey(mbox.getAccountId(), Mailbox.ID_FOLDER_CALENDAR);
+        folderModSeq = mbox.getFolderById(null, Mailbox.ID_FOLDER_CALENDAR).getImapMODSEQ();
+        cache = new CalSummaryCache(10) {
+            @Override
+            CalendarItemData expandItem(CalendarItem calItem, long rangeStart, long rangeEnd) {
+                return CalendarDataTest.item(calItem.getId(), calItem.getModifiedSequence());
+            }
+        };
+    }
+
+    private static CalendarItem calItem(int id, int modSeq) {
+        CalendarItem calItem = Mockito.mock(CalendarItem.class);
+        Mockito.when(calItem.getId()).thenReturn(id);
+        Mockito.when(calItem.getModifiedSequence()).thenReturn(modSeq);
+        return calItem;
+    }
+
+    private CalendarDelta delta(int prevModSeq, CalendarItem... calItems) {
+        CalendarDelta delta = new CalendarDelta(mbox, Mailbox.ID_FOLDER_CALENDAR);
+        delta.prevModSeq = prevModSeq;
+        for (CalendarItem calItem : calItems) {
+            delta.changes.put(calItem.getId(), calItem);
+        }
+        return delta;
+    }
+
+    @Test
+    public void advanceModSeq() throws Exception {
+        cache.putCachedCalendar(key, CalendarDataTest.calendar(folderModSeq - 1, CalendarDataTest.item(1, 5)));
+
+        CalendarData updated = cache.applyDelta(key, delta(folderModSeq - 1, calItem(1, 9)));
+        Assert.assertNotNull(updated);
+        Assert.assertSame(updated, cache.getCachedCalendar(key));
+        Assert.assertEquals(folderModSeq, updated.getModSeq());
+        Assert.assertEquals(9, updated.getCalendarItemData(1).getModMetadata());
+    }
+
+    @Test
+    public void keepModSeqAfterMissedChange() throws Exception {
+        // The cached data was built before some earlier transaction it never saw.
+        cache.putCachedCalendar(key, CalendarDataTest.calendar(folderModSeq - 2, CalendarDataTest.item(1, 5)));
+
+        Assert.assertNull(cache.applyDelta(key, delta(folderModSeq - 1, calItem(1, 9))));
+        CalendarData cached = cache.getCachedCalendar(key);
+        Assert.assertEquals(folderModSeq - 2, cached.getModSeq());
+        Assert.assertEquals(9, cached.getCalendarItemData(1).getModMetadata());
+    }
+
+    @Test
+    public void keepStaleMark() throws Exception {
+        CalendarData calData = CalendarDataTest.calendar(folderModSeq,
+                CalendarDataTest.item(1, 5), CalendarDataTest.item(2, 5));
+        calData.markItemStale(2);
+        cache.putCachedCalendar(key, calData);
+
+        Assert.assertNull(cache.applyDelta(key, delta(-1, calItem(1, 9))));
+        CalendarData cached = cache.getCachedCalendar(key);
+        Assert.assertNotSame(calData, cached);
+        Assert.assertEquals(folderModSeq, cached.getModSeq());
+        Assert.assertEquals(9, cached.getCalendarItemData(1).getModMetadata());
+        Assert.assertFalse(cached.isItemStale(1));
+        Assert.assertTrue(cached.isItemStale(2));
+    }
+
+    @Test
+    public void ignoreLateNotification() throws Exception {
+        CalendarItemData current = CalendarDataTest.item(1, 9);
+        cache.putCachedCalendar(key, CalendarDataTest.calendar(folderModSeq, current));
+
+        cache.applyDelta(key, delta(-1, calItem(1, 7)));
+        Assert.assertSame(current, cache.getCachedCalendar(key).getCalendarItemData(1));
+    }
+
+    @Test
+    public void lostRaceMarksItemStale() throws Exception {
+        final CalendarData reloaded = CalendarDataTest.calendar(folderModSeq, CalendarDataTest.item(1, 5));
+        cache = new CalSummaryCache(10) {
+            @Override
+            CalendarItemData expandItem(CalendarItem calItem, long rangeStart, long rangeEnd) {
+                // a reader reloads the calendar while the change is being expanded
+                putCachedCalendar(key, reloaded);
+                return CalendarDataTest.item(calItem.getId(), calItem.getModifiedSequence());
+            }
+        };
+        cache.putCachedCalendar(key, CalendarDataTest.calendar(folderModSeq, CalendarDataTest.item(1, 5)));
+
+        Assert.assertNull(cache.applyDelta(key, delta(-1, calItem(1, 9))));
+        Assert.assertSame(reloaded, cache.getCachedCalendar(key));
+        Assert.assertTrue(reloaded.isItemStale(1));
+        Assert.assertEquals(5, reloaded.getCalendarItemData(1).getModMetadata());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox.calendar.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Unit test for {@link CalendarData}.
+ */
+public final class CalendarDataTest {
+
+    static CalendarItemData item(int id, int modSeq) {
+        return new CalendarItemData(MailItem.Type.APPOINTMENT, 10, id, "", new String[0], "", modSeq, modSeq,
+                0L, 0L, 0L, "uid-" + id, false, false, true, null, null);
+    }
+
+    static CalendarData calendar(int modSeq, CalendarItemData... items) {
+        CalendarData calData = new CalendarData(10, modSeq, 1000L, 2000L);
+        for (CalendarItemData item : items) {
+            calData.addCalendarItem(item);
+        }
+        return calData;
+    }
+
+    @Test
+    public void withChanges() {
+        CalendarItemData one = item(1, 5);
+        CalendarItemData two = item(2, 5);
+        CalendarItemData three = item(3, 5);
+        CalendarData calData = calendar(7, one, two, three);
+        calData.markItemStale(2);
+        calData.markItemStale(3);
+
+        Map<Integer, CalendarItemData> changes = new HashMap<Integer, CalendarItemData>();
+        changes.put(1, null);
+        changes.put(3, item(3, 8));
+        changes.put(4, item(4, 8));
+        CalendarData updated = calData.withChanges(8, changes);
+
+        Assert.assertEquals(8, updated.getModSeq());
+        Assert.assertEquals(calData.getRangeStart(), updated.getRangeStart());
+        Assert.assertEquals(calData.getRangeEnd(), updated.getRangeEnd());
+        Assert.assertEquals(3, updated.getNumItems());
+        Assert.assertNull(updated.getCalendarItemData(1));
+        Assert.assertSame(two, updated.getCalendarItemData(2));
+        Assert.assertEquals(8, updated.getCalendarItemData(3).getModMetadata());
+        Assert.assertEquals(8, updated.getCalendarItemData(4).getModMetadata());
+        Assert.assertTrue(updated.isItemStale(2));
+        Assert.assertFalse(updated.isItemStale(3));
+        Assert.assertEquals(1, updated.getNumStaleItems());
+
+        // the original is left alone for readers still holding it
+        Assert.assertEquals(7, calData.getModSeq());
+        Assert.assertEquals(3, calData.getNumItems());
+        Assert.assertSame(one, calData.getCalendarItemData(1));
+        Assert.assertSame(three, calData.getCalendarItemData(3));
+        Assert.assertEquals(2, calData.getNumStaleItems());
+    }
+}
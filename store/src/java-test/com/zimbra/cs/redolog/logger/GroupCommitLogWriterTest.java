@@ -0,0 +1,123 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.redolog.logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.easymock.EasyMock;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.zimbra.cs.mailbox.MailboxOperation;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.redolog.RedoLogManager;
+import com.zimbra.cs.redolog.op.RedoableOp;
+
+public class GroupCommitLogWriterTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private RedoLogManager mockRedoLogManager;
+    private File logfile;
+    private GroupCommitLogWriter logWriter;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mockRedoLogManager = EasyMock.createNiceMock(RedoLogManager.class);
+        logfile = folder.newFile("logfile");
+        logWriter = new GroupCommitLogWriter(mockRedoLogManager, logfile);
+    }
+
+    private RedoableOp newOp() {
+        return EasyMock.createMockBuilder(RedoableOp.class).withConstructor(MailboxOperation.Preview).createMock();
+    }
+
+    @Test
+    public void openLogClose() throws Exception {
+        Assert.assertTrue("file starts empty", logWriter.isEmpty());
+        logWriter.open();
+        Assert.assertTrue("file empty after open", logWriter.isEmpty());
+
+        logWriter.log(newOp(), new ByteArrayInputStream("some bytes".getBytes()), false /* asynchronous */);
+        Assert.assertEquals("file size incorrect.", FileHeader.HEADER_LEN + 10, logWriter.getSize());
+        logWriter.close();
+        Assert.assertEquals("file length incorrect.", FileHeader.HEADER_LEN + 10, logfile.length());
+        final long createTime = logWriter.getCreateTime();
+        final long sequence = logWriter.getSequence();
+
+        logWriter = new GroupCommitLogWriter(mockRedoLogManager, logfile);
+        Assert.assertEquals("file size incorrect.", FileHeader.HEADER_LEN + 10, logWriter.getSize());
+        logWriter.open();
+        Assert.assertEquals(createTime, logWriter.getCreateTime());
+        Assert.assertEquals(sequence, logWriter.getSequence());
+        logWriter.close();
+    }
+
+    @Test
+    public void concurrentSynchronousLog() throws Exception {
+        logWriter.open();
+        final int numThreads = 8;
+        final int opsPerThread = 50;
+        final byte[] payload = "0123456789".getBytes();
+        final List<Throwable> errors = new ArrayList<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < numThreads; i++) {
+            threads.add(new Thread("GroupCommitLogWriterTest-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < opsPerThread; j++) {
+                            logWriter.log(newOp(), new ByteArrayInputStream(payload), true /* synchronous */);
+                        }
+                    } catch (Throwable t) {
+                        synchronized (errors) {
+                            errors.add(t);
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertTrue(errors.toString(), errors.isEmpty());
+        long expected = FileHeader.HEADER_LEN + (long) numThreads * opsPerThread * payload.length;
+        Assert.assertEquals(expected, logWriter.getSize());
+        logWriter.close();
+        Assert.assertEquals(expected, logfile.length());
+    }
+
+    @Test(expected = IOException.class)
+    public void logBeforeOpen() throws Exception {
+        logWriter.log(newOp(), new ByteArrayInputStream(new byte[0]), false);
+    }
+}
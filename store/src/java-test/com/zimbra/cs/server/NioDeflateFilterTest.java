@@ -0,0 +1,143 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.server;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * Unit test for {@link NioDeflateFilter}.
+ */
+public final class NioDeflateFilterTest {
+    private DummySession session;
+    private TestIoHandler handler;
+    private CompressionStats stats;
+
+    @Before
+    public void setUp() {
+        session = new DummySession();
+        handler = new TestIoHandler();
+        session.setHandler(handler);
+        stats = new CompressionStats();
+        session.getFilterChain().addLast("deflate", new NioDeflateFilter(stats, ZimbraLog.imap));
+        session.setAttribute(NioDeflateFilter.DISABLE_COMPRESSION_ONCE, true);
+    }
+
+    @Test
+    public void write() throws Exception {
+        session.write(IoBuffer.wrap("a001 OK DEFLATE active\r\n".getBytes(Charsets.US_ASCII)));
+        Assert.assertEquals("a001 OK DEFLATE active\r\n", new String(handler.sent.toByteArray(), Charsets.US_ASCII));
+        handler.sent.reset();
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            String line = "* " + i + " FETCH (UID " + (1000 + i) + " FLAGS (\\Seen))\r\n";
+            expected.append(line);
+            session.write(IoBuffer.wrap(line.getBytes(Charsets.US_ASCII)));
+        }
+        byte[] compressed = handler.sent.toByteArray();
+        Assert.assertTrue(compressed.length < expected.length());
+
+        // every write is sync flushed, so the stream inflates completely without being finished
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed);
+        byte[] raw = new byte[expected.length() * 2];
+        int len = inflater.inflate(raw);
+        inflater.end();
+        Assert.assertEquals(expected.toString(), new String(raw, 0, len, Charsets.US_ASCII));
+
+        Assert.assertEquals(1, stats.getSessions());
+        Assert.assertEquals(expected.length(), stats.getDeflateInputBytes());
+        Assert.assertEquals(compressed.length, stats.getDeflateOutputBytes());
+        Assert.assertTrue(stats.getRatio() > 1.0);
+    }
+
+    @Test
+    public void writeDirect() throws Exception {
+        session.write(IoBuffer.wrap("a001 OK DEFLATE active\r\n".getBytes(Charsets.US_ASCII)));
+        handler.sent.reset();
+
+        // larger than the staging array, as when a memory-mapped blob is written
+        byte[] content = new byte[200 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + i % 26);
+        }
+        ByteBuffer direct = ByteBuffer.allocateDirect(content.length);
+        direct.put(content).flip();
+        session.write(IoBuffer.wrap(direct.asReadOnlyBuffer()));
+
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(handler.sent.toByteArray());
+        byte[] raw = new byte[content.length + 1];
+        int len = inflater.inflate(raw);
+        inflater.end();
+        Assert.assertArrayEquals(content, Arrays.copyOf(raw, len));
+    }
+
+    @Test
+    public void read() throws Exception {
+        byte[] request = "a002 UID FETCH 1:* (FLAGS)\r\na003 NOOP\r\n".getBytes(Charsets.US_ASCII);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(request);
+        byte[] compressed = new byte[request.length * 2];
+        int len = deflater.deflate(compressed, 0, compressed.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+
+        // split mid-stream to make sure inflater state carries over between reads
+        int half = len / 2;
+        session.getFilterChain().fireMessageReceived(IoBuffer.wrap(Arrays.copyOfRange(compressed, 0, half)));
+        session.getFilterChain().fireMessageReceived(IoBuffer.wrap(Arrays.copyOfRange(compressed, half, len)));
+        Assert.assertArrayEquals(request, handler.received.toByteArray());
+        Assert.assertEquals(len, stats.getInflateInputBytes());
+        Assert.assertEquals(request.length, stats.getInflateOutputBytes());
+    }
+
+    private static final class TestIoHandler extends IoHandlerAdapter {
+        private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        @Override
+        public void messageSent(IoSession session, Object message) {
+            IoBuffer buf = (IoBuffer) message;
+            while (buf.hasRemaining()) {
+                sent.write(buf.get());
+            }
+        }
+
+        @Override
+        public void messageReceived(IoSession session, Object message) {
+            IoBuffer buf = (IoBuffer) message;
+            while (buf.hasRemaining()) {
+                received.write(buf.get());
+            }
+        }
+    }
+}
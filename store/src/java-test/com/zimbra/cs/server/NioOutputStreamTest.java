@@ -1,7 +1,7 @@
 /*
  * ***** BEGIN LICENSE BLOCK *****
  * Zimbra Collaboration Suite Server
- * Copyright (C) 2011, 2013, 2014, 2016 Synacor, Inc.
+ * Copyright (C) 2026 Synacor, Inc.
  *
  * This program is free software: you can redistribute it and/or modify it under
  * the terms of the GNU General Public License as published by the Free Software Foundation,
@@ -16,92 +16,133 @@
  */
 package com.zimbra.cs.server;
 
-import junit.framework.Assert;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.Inflater;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
 import org.apache.mina.core.service.IoHandlerAdapter;
 import org.apache.mina.core.session.DummySession;
 import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.DeliveryOptions;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
+import com.zimbra.cs.mime.ParsedMessage;
+import com.zimbra.cs.store.MappedBlob;
+import com.zimbra.cs.store.StoreManager;
+import com.zimbra.cs.store.file.FileBlobStore;
+
 /**
  * Unit test for {@link NioOutputStream}.
- *
- * @author ysasaki
  */
 public final class NioOutputStreamTest {
+    private static final int CHUNK_SIZE = 8 * 1024;
 
-    @Test
-    public void writeByte() throws Exception {
-        DummySession session = new DummySession();
-        TestIoHandler handler = new TestIoHandler();
-        session.setHandler(handler);
-        NioOutputStream out = new NioOutputStream(session, 10, Integer.MAX_VALUE, Integer.MAX_VALUE);
-        out.write('1');
-        out.write('2');
-        out.write('3');
-        out.write('4');
-        out.write('5');
-        out.write('6');
-        out.write('7');
-        out.write('8');
-        out.write('9');
-        out.write('0');
-        out.write('1');
-        out.close();
-        Assert.assertEquals(2, handler.getWriteCount());
-        Assert.assertEquals("12345678901", handler.toString());
+    private StoreManager originalStoreManager;
+    private String originalThreshold;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning.getInstance().createAccount("test@zimbra.com", "secret", new HashMap<String, Object>());
+        System.setProperty("zimbra.native.required", "false");
     }
 
-    @Test
-    public void writeByteArray() throws Exception {
-        DummySession session = new DummySession();
-        TestIoHandler handler = new TestIoHandler();
-        session.setHandler(handler);
-        NioOutputStream out = new NioOutputStream(session, 10, Integer.MAX_VALUE, Integer.MAX_VALUE);
-        byte[] b = new byte[] {'1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1'};
-        out.write(b, 0, 10);
-        out.write(new byte[] {' '}, 0, 1);
-        out.write(b, 0, 11);
-        out.close();
-        Assert.assertEquals(3, handler.getWriteCount());
-        Assert.assertEquals("1234567890 12345678901", handler.toString());
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        originalStoreManager = StoreManager.getInstance();
+        originalThreshold = LC.zimbra_blob_mmap_threshold_kb.value();
+        LC.zimbra_tmp_directory.setDefault(System.getProperty("user.dir") + "/build/tmp");
+        LC.zimbra_blob_mmap_threshold_kb.setDefault(1);
+        StoreManager.setInstance(new FileBlobStore());
+        StoreManager.getInstance().startup();
     }
 
-    @Test
-    public void writeString() throws Exception {
-        DummySession session = new DummySession();
-        TestIoHandler handler = new TestIoHandler();
-        session.setHandler(handler);
-        NioOutputStream out = new NioOutputStream(session, 10, Integer.MAX_VALUE, Integer.MAX_VALUE);
-        out.write("1234567890");
-        out.write(" ");
-        out.write("12345678901");
-        Assert.assertEquals(3, handler.getWriteCount());
-        Assert.assertEquals("1234567890 12345678901", handler.toString());
-        out.close();
+    @After
+    public void tearDown() throws Exception {
+        StoreManager.getInstance().shutdown();
+        StoreManager.setInstance(originalStoreManager);
+        LC.zimbra_blob_mmap_threshold_kb.setDefault(originalThreshold);
     }
 
-    private static final class TestIoHandler extends IoHandlerAdapter {
-        private int writes = 0;
-        private StringBuilder out = new StringBuilder();
+    /**
+     * Writes a memory-mapped message the way IMAP FETCH BODY[] does on a compressed session.  The
+     * mapping has to reach the deflate filter in chunk-sized pieces rather than as one buffer.
+     */
+    @Test
+    public void writeMappedCompressed() throws Exception {
+        StringBuilder sb = new StringBuilder("From: sender@zimbra.com\r\nSubject: mapped\r\n\r\n");
+        for (int i = 0; sb.length() < 200 * 1024; i++) {
+            sb.append("line ").append(i).append("\r\n");
+        }
+        byte[] content = sb.toString().getBytes(Charsets.US_ASCII);
+        Account acct = Provisioning.getInstance().getAccountByName("test@zimbra.com");
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(acct);
+        Message msg = mbox.addMessage(null, new ParsedMessage(content, false),
+                new DeliveryOptions().setFolderId(Mailbox.ID_FOLDER_INBOX), null);
+        MappedBlob blob = MappedBlob.open(msg.getBlob());
+        Assert.assertNotNull("message is mapped", blob);
 
-        @Override
-        public void messageSent(IoSession session, Object message) {
-            writes++;
-            IoBuffer buf = (IoBuffer) message;
-            while (buf.hasRemaining()) {
-                out.append((char) buf.get());
+        final List<Integer> writes = new ArrayList<Integer>();
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        DummySession session = new DummySession();
+        session.setHandler(new IoHandlerAdapter() {
+            @Override
+            public void messageSent(IoSession session, Object message) {
+                IoBuffer buf = (IoBuffer) message;
+                while (buf.hasRemaining()) {
+                    sent.write(buf.get());
+                }
             }
-        }
+        });
+        session.getFilterChain().addLast("deflate", new NioDeflateFilter(new CompressionStats(), ZimbraLog.imap));
+        // writes pass through the chain from the tail, so this sees what the deflate filter is given
+        session.getFilterChain().addLast("writes", new IoFilterAdapter() {
+            @Override
+            public void filterWrite(NextFilter next, IoSession session, WriteRequest req) {
+                writes.add(((IoBuffer) req.getMessage()).remaining());
+                next.filterWrite(session, req);
+            }
+        });
 
-        int getWriteCount() {
-            return writes;
-        }
+        NioOutputStream out = new NioOutputStream(session, CHUNK_SIZE, Integer.MAX_VALUE, 0);
+        byte[] prefix = ("* 1 FETCH (BODY[] {" + content.length + "}\r\n").getBytes(Charsets.US_ASCII);
+        out.write(prefix);
+        out.write(blob.getBuffer());
+        out.write(")\r\n");
+        out.flush();
 
-        @Override
-        public String toString() {
-            return out.toString();
+        Assert.assertTrue(writes.size() > content.length / CHUNK_SIZE);
+        for (int len : writes) {
+            Assert.assertTrue("write of " + len + " bytes", len <= CHUNK_SIZE);
         }
+
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(sent.toByteArray());
+        byte[] raw = new byte[content.length * 2];
+        int len = inflater.inflate(raw);
+        inflater.end();
+        Assert.assertEquals(prefix.length + content.length + 3, len);
+        Assert.assertArrayEquals(prefix, Arrays.copyOf(raw, prefix.length));
+        Assert.assertArrayEquals(content, Arrays.copyOfRange(raw, prefix.length, prefix.length + content.length));
     }
 }
@@ -0,0 +1,264 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.service.mail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.zimbra.common.mailbox.ContactConstants;
+import com.zimbra.common.soap.Element;
+import com.zimbra.common.soap.MailConstants;
+import com.zimbra.common.soap.SoapProtocol;
+import com.zimbra.common.soap.ZimbraNamespace;
+import com.zimbra.cs.account.Account;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.mailbox.ACL;
+import com.zimbra.cs.mailbox.DeliveryOptions;
+import com.zimbra.cs.mailbox.Flag;
+import com.zimbra.cs.mailbox.Folder;
+import com.zimbra.cs.mailbox.MailItem;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.MailboxTestUtil;
+import com.zimbra.cs.mailbox.Message;
+import com.zimbra.cs.mime.ParsedContact;
+import com.zimbra.cs.mime.ParsedMessage;
+import com.zimbra.cs.service.AuthProvider;
+import com.zimbra.soap.DocumentHandler;
+import com.zimbra.soap.SoapEngine;
+import com.zimbra.soap.ZimbraSoapContext;
+
+/**
+ * Checks that streamed Search, SearchConv and GetFolder responses serialize exactly like the fully built ones.
+ */
+public class StreamedResponseTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private Account acct;
+    private Mailbox mbox;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        MailboxTestUtil.initServer();
+        Provisioning prov = Provisioning.getInstance();
+        prov.createAccount("test@zimbra.com", "secret", Maps.<String, Object>newHashMap());
+
+        Map<String, Object> attrs = Maps.newHashMap();
+        attrs.put(Provisioning.A_zimbraId, UUID.randomUUID().toString());
+        prov.createAccount("test2@zimbra.com", "secret", attrs);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        MailboxTestUtil.clearData();
+        acct = Provisioning.getInstance().getAccountByName("test@zimbra.com");
+        mbox = MailboxManager.getInstance().getMailboxByAccount(acct);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        MailboxTestUtil.clearData();
+    }
+
+    @Test
+    public void searchMessages() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addMessage("message " + i, System.currentTimeMillis() - (5 - i) * DAY, new DeliveryOptions());
+        }
+        Element request = searchRequest("in:inbox", "message", "dateDesc");
+        for (SoapProtocol proto : new SoapProtocol[] { SoapProtocol.Soap12, SoapProtocol.SoapJS }) {
+            Element built = compare(new Search(), request, acct, proto, true);
+            Assert.assertEquals(proto + " hits", 5, built.listElements(MailConstants.E_MSG).size());
+        }
+    }
+
+    @Test
+    public void searchMixedHits() throws Exception {
+        long now = System.currentTimeMillis();
+        addMessage("older", now - 2 * DAY, new DeliveryOptions());
+        addMessage("newer", now - DAY, new DeliveryOptions());
+        Map<String, Object> fields = Maps.newHashMap();
+        fields.put(ContactConstants.A_firstName, "Jimmy");
+        fields.put(ContactConstants.A_email, "jdean@example.com");
+        mbox.createContact(null, new ParsedContact(fields), Mailbox.ID_FOLDER_CONTACTS, null);
+
+        for (SoapProtocol proto : new SoapProtocol[] { SoapProtocol.Soap12, SoapProtocol.SoapJS }) {
+            // messages are queued for streaming until the contact hit makes the response fall back
+            Element built = compare(new Search(), searchRequest("in:inbox OR in:contacts", "message,contact",
+                    "dateAsc"), acct, proto, false);
+            if (proto == SoapProtocol.Soap12) {
+                Assert.assertEquals("hits in order",
+                        Lists.newArrayList(MailConstants.E_MSG, MailConstants.E_MSG, MailConstants.E_CONTACT),
+                        hitNames(built));
+            }
+            // the contact comes first, so streaming never starts
+            compare(new Search(), searchRequest("in:inbox OR in:contacts", "message,contact", "dateDesc"),
+                    acct, proto, false);
+        }
+    }
+
+    @Test
+    public void searchConvMisses() throws Exception {
+        long now = System.currentTimeMillis();
+        Message msg1 = addMessage("conversation", now - 2 * DAY, new DeliveryOptions().setFlags(Flag.BITMASK_FLAGGED));
+        Message msg2 = addMessage("Re: conversation", now - DAY,
+                new DeliveryOptions().setConversationId(msg1.getConversationId()));
+        int convId = mbox.getMessageById(null, msg2.getId()).getConversationId();
+
+        // only the flagged message matches; the other one is a miss
+        Element request = new Element.XMLElement(MailConstants.SEARCH_CONV_REQUEST);
+        request.addAttribute(MailConstants.A_CONV_ID, convId);
+        request.addAttribute(MailConstants.E_QUERY, "is:flagged", Element.Disposition.CONTENT);
+        for (SoapProtocol proto : new SoapProtocol[] { SoapProtocol.Soap12, SoapProtocol.SoapJS }) {
+            Element built = compare(new SearchConv(), request, acct, proto, true);
+            Assert.assertEquals(proto + " hit and miss", 2, built.listElements(MailConstants.E_MSG).size());
+        }
+    }
+
+    @Test
+    public void batchNeverStreams() throws Exception {
+        addMessage("batched", System.currentTimeMillis() - DAY, new DeliveryOptions());
+        Element batch = new Element.XMLElement(ZimbraNamespace.E_BATCH_REQUEST);
+        Element request = batch.addNonUniqueElement(searchRequest("in:inbox", "message", "dateDesc"));
+
+        // SoapEngine marks the enclosing BatchRequest, not the sub-request
+        Map<String, Object> context = getRequestContext(acct, SoapProtocol.Soap12);
+        context.put(SoapEngine.STREAMABLE_REQUEST, batch);
+        Element response = new Search().handle(request, context);
+        Assert.assertFalse("not streamed", isStreamed(response));
+        Assert.assertEquals("hit readable", 1, response.listElements(MailConstants.E_MSG).size());
+    }
+
+    @Test
+    public void proxyNeverStreams() throws Exception {
+        Account acct2 = Provisioning.getInstance().getAccountByName("test2@zimbra.com");
+        Mailbox mbox2 = MailboxManager.getInstance().getMailboxByAccount(acct2);
+        Folder.FolderOptions fopt = new Folder.FolderOptions().setDefaultView(MailItem.Type.DOCUMENT);
+        Folder folder = mbox2.createFolder(null, "foo", fopt);
+        mbox2.createFolder(null, "bar", folder.getId(), fopt);
+        mbox2.grantAccess(null, folder.getId(), acct.getId(), ACL.GRANTEE_USER, ACL.RIGHT_READ, null);
+        int mptId = mbox.createMountpoint(null, Mailbox.ID_FOLDER_USER_ROOT, "remote", acct2.getId(),
+                folder.getId(), folder.getUuid(), MailItem.Type.DOCUMENT, 0, (byte) 2, false).getId();
+
+        // the remote folder's children come back through a local proxy, which has to be fully built to be read
+        Element request = new Element.XMLElement(MailConstants.GET_FOLDER_REQUEST);
+        request.addNonUniqueElement(MailConstants.E_FOLDER).addAttribute(MailConstants.A_FOLDER, mptId);
+        for (SoapProtocol proto : new SoapProtocol[] { SoapProtocol.Soap12, SoapProtocol.SoapJS }) {
+            Element built = compare(new GetFolder(), request, acct, proto, false);
+            Element mount = built.getElement(MailConstants.E_MOUNT);
+            Assert.assertEquals(proto + " proxied subfolder", "bar",
+                    mount.getElement(MailConstants.E_FOLDER).getAttribute(MailConstants.A_NAME));
+        }
+    }
+
+    @Test
+    public void getFolderChildOrder() throws Exception {
+        Account acct2 = Provisioning.getInstance().getAccountByName("test2@zimbra.com");
+        Mailbox mbox2 = MailboxManager.getInstance().getMailboxByAccount(acct2);
+        Folder remote = mbox2.createFolder(null, "shared", new Folder.FolderOptions());
+
+        // interleave the three kinds of subfolder so that JSON has to group them and XML must not
+        mbox.createFolder(null, "/a", new Folder.FolderOptions());
+        mbox.createMountpoint(null, Mailbox.ID_FOLDER_USER_ROOT, "b", acct2.getId(), remote.getId(),
+                remote.getUuid(), MailItem.Type.MESSAGE, 0, (byte) 0, false);
+        mbox.createSearchFolder(null, Mailbox.ID_FOLDER_USER_ROOT, "c", "is:unread", "message", "dateDesc", 0,
+                (byte) 0);
+        mbox.createFolder(null, "/d/e/f", new Folder.FolderOptions());
+        mbox.createSearchFolder(null, Mailbox.ID_FOLDER_INBOX, "g", "is:flagged", "message", "dateDesc", 0,
+                (byte) 0);
+
+        Element request = new Element.XMLElement(MailConstants.GET_FOLDER_REQUEST);
+        for (SoapProtocol proto : new SoapProtocol[] { SoapProtocol.Soap12, SoapProtocol.SoapJS }) {
+            compare(new GetFolder(), request, acct, proto, true);
+        }
+        request.addAttribute(MailConstants.A_FOLDER_DEPTH, 1);
+        for (SoapProtocol proto : new SoapProtocol[] { SoapProtocol.Soap12, SoapProtocol.SoapJS }) {
+            compare(new GetFolder(), request, acct, proto, true);
+        }
+    }
+
+    private Message addMessage(String subject, long date, DeliveryOptions dopt) throws Exception {
+        String raw = "From: Bob Evans <bob@example.com>\r\nTo: Jimmy Dean <jdean@example.com>\r\n" +
+                "Subject: " + subject + "\r\n\r\nnothing to see here\r\n";
+        return mbox.addMessage(null, new ParsedMessage(raw.getBytes("UTF-8"), date, false),
+                dopt.setFolderId(Mailbox.ID_FOLDER_INBOX), null);
+    }
+
+    private static Element searchRequest(String query, String types, String sortBy) {
+        Element request = new Element.XMLElement(MailConstants.SEARCH_REQUEST);
+        request.addAttribute(MailConstants.A_SEARCH_TYPES, types).addAttribute(MailConstants.A_SORTBY, sortBy);
+        request.addAttribute(MailConstants.E_QUERY, query, Element.Disposition.CONTENT);
+        return request;
+    }
+
+    private static Map<String, Object> getRequestContext(Account acct, SoapProtocol responseProto) throws Exception {
+        Map<String, Object> context = ServiceTestUtil.getRequestContext(acct);
+        context.put(SoapEngine.ZIMBRA_CONTEXT, new ZimbraSoapContext(AuthProvider.getAuthToken(acct), acct.getId(),
+                SoapProtocol.Soap12, responseProto));
+        return context;
+    }
+
+    /**
+     * Handles {@code request} once without and once with the streamable mark SoapEngine puts on a top-level
+     * request, and checks that both responses are written out the same way.
+     *
+     * @return the fully built response
+     */
+    private static Element compare(DocumentHandler handler, Element request, Account acct, SoapProtocol proto,
+            boolean expectStreamed) throws Exception {
+        Element built = handler.handle(request, getRequestContext(acct, proto));
+        Assert.assertFalse(proto + " built", isStreamed(built));
+
+        Map<String, Object> context = getRequestContext(acct, proto);
+        context.put(SoapEngine.STREAMABLE_REQUEST, request);
+        Element streamed = handler.handle(request, context);
+        Assert.assertEquals(proto + " streamed", expectStreamed, isStreamed(streamed));
+
+        Assert.assertEquals(proto + " output", marshal(built), marshal(streamed));
+        return built;
+    }
+
+    private static boolean isStreamed(Element response) {
+        // pretty-printing leaves a marker in place of each stream
+        return response.prettyPrint().contains("streamed ");
+    }
+
+    private static String marshal(Element response) throws Exception {
+        StringBuilder out = new StringBuilder();
+        response.marshal(out);
+        return out.toString();
+    }
+
+    private static List<String> hitNames(Element response) {
+        List<String> names = Lists.newArrayList();
+        for (Element hit : response.listElements()) {
+            if (!MailConstants.E_INFO.equals(hit.getName())) {
+                names.add(hit.getName());
+            }
+        }
+        return names;
+    }
+}
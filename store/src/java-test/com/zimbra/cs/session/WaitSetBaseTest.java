@@ -0,0 +1,189 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.session;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Unit test for the signal queueing in {@link WaitSetBase}.
+ */
+public final class WaitSetBaseTest {
+
+    private static final class TestWaitSet extends WaitSetBase {
+        private long cbSeqNo = 0;
+        private long currentSeqNo = 1;
+
+        TestWaitSet() {
+            super("owner", "ws", EnumSet.of(MailItem.Type.MESSAGE));
+        }
+
+        synchronized void doWait(WaitSetCallback cb, String lastKnownSeqNo) {
+            cancelExistingCB();
+            mCb = cb;
+            cbSeqNo = Long.parseLong(lastKnownSeqNo);
+            trySendData();
+        }
+
+        void signal(String accountId) {
+            queueSignal(accountId, null, null);
+            signalWaiter();
+        }
+
+        @Override
+        public List<WaitSetError> removeAccounts(List<String> accts) {
+            return Lists.newArrayList();
+        }
+
+        @Override
+        public List<WaitSetError> doWait(WaitSetCallback cb, String lastKnownSeqNo, List<WaitSetAccount> addAccounts,
+                List<WaitSetAccount> updateAccounts) {
+            doWait(cb, lastKnownSeqNo);
+            return Lists.newArrayList();
+        }
+
+        @Override
+        protected Map<String, WaitSetAccount> destroy() {
+            clearSignals();
+            return null;
+        }
+
+        @Override
+        protected int countSessions() {
+            return 0;
+        }
+
+        @Override
+        protected boolean cbSeqIsCurrent() {
+            return cbSeqNo == currentSeqNo;
+        }
+
+        @Override
+        protected String toNextSeqNo() {
+            return Long.toString(++currentSeqNo);
+        }
+    }
+
+    private static WaitSetCallback newCallback() {
+        WaitSetCallback cb = new WaitSetCallback();
+        cb.completedLatch = new CountDownLatch(1);
+        return cb;
+    }
+
+    @Test
+    public void queuedUntilWait() throws Exception {
+        TestWaitSet ws = new TestWaitSet();
+        ws.signal("a");
+        ws.signal("b");
+        ws.signal("a");
+        Assert.assertEquals(2, ws.getPendingSignalCount());
+
+        WaitSetCallback cb = newCallback();
+        ws.doWait(cb, "1");
+        Assert.assertTrue(cb.completed);
+        Assert.assertEquals(Sets.newHashSet("a", "b"), cb.signalledAccounts);
+        Assert.assertEquals(0, ws.getPendingSignalCount());
+
+        // nothing new, the next callback waits until the next signal
+        String seqNo = cb.seqNo;
+        cb = newCallback();
+        ws.doWait(cb, seqNo);
+        Assert.assertFalse(cb.completed);
+        ws.signal("c");
+        Assert.assertTrue(cb.completed);
+        Assert.assertEquals(Sets.newHashSet("c"), cb.signalledAccounts);
+    }
+
+    @Test
+    public void cancelled() throws Exception {
+        TestWaitSet ws = new TestWaitSet();
+        ws.signal("a");
+        ws.signal("b");
+        ws.cancelSignal("a");
+        WaitSetCallback cb = newCallback();
+        ws.doWait(cb, "1");
+        Assert.assertEquals(Sets.newHashSet("b"), cb.signalledAccounts);
+    }
+
+    @Test
+    public void concurrentSignals() throws Exception {
+        final TestWaitSet ws = new TestWaitSet();
+        final int threads = 8;
+        final int accountsPerThread = 500;
+        List<Thread> signallers = Lists.newArrayList();
+        for (int t = 0; t < threads; t++) {
+            final int base = t * accountsPerThread;
+            signallers.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < accountsPerThread; i++) {
+                        ws.signal("acct-" + (base + i));
+                    }
+                }
+            });
+        }
+        for (Thread thread : signallers) {
+            thread.start();
+        }
+        Set<String> received = Sets.newHashSet();
+        String seqNo = "1";
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received.size() < threads * accountsPerThread && System.currentTimeMillis() < deadline) {
+            WaitSetCallback cb = newCallback();
+            ws.doWait(cb, seqNo);
+            cb.completedLatch.await(100, TimeUnit.MILLISECONDS);
+            ws.doneWaiting(cb);
+            // dataReady() is called under the WaitSet monitor, so cb can't change after doneWaiting()
+            synchronized (cb) {
+                if (cb.completed) {
+                    received.addAll(cb.signalledAccounts);
+                    seqNo = cb.seqNo;
+                }
+            }
+        }
+        for (Thread thread : signallers) {
+            thread.join();
+        }
+        Assert.assertEquals(threads * accountsPerThread, received.size());
+    }
+
+    @Test
+    public void mergeModifications() throws Exception {
+        PendingLocalModifications first = new PendingLocalModifications();
+        first.changedTypes.add(MailItem.Type.MESSAGE);
+        PendingLocalModifications second = new PendingLocalModifications();
+        second.changedTypes.add(MailItem.Type.CONTACT);
+
+        PendingModifications<?> merged = WaitSetBase.mergeModifications(first, second);
+        Assert.assertNotSame(first, merged);
+        Assert.assertEquals(EnumSet.of(MailItem.Type.MESSAGE, MailItem.Type.CONTACT), merged.changedTypes);
+        // the originals are shared with other listeners and must not change
+        Assert.assertEquals(EnumSet.of(MailItem.Type.MESSAGE), first.changedTypes);
+        Assert.assertEquals(EnumSet.of(MailItem.Type.CONTACT), second.changedTypes);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.zimbra.common.util.ByteUtil;
+
+public final class BlobCodecTest {
+
+    private static final byte[] CONTENT = ("From: test@zimbra.com\r\nSubject: codec\r\n\r\n" +
+            "The quick brown fox jumps over the lazy dog.  The quick brown fox jumps over the lazy dog.\r\n").getBytes();
+
+    private static byte[] compress(BlobCodec codec, byte[] data) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = codec.compress(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        for (BlobCodec codec : BlobCodec.values()) {
+            byte[] compressed = compress(codec, CONTENT);
+            Assert.assertEquals(codec, BlobCodec.detect(compressed, compressed.length));
+            InputStream in = codec.decompress(new ByteArrayInputStream(compressed));
+            Assert.assertArrayEquals(codec.getName(), CONTENT, ByteUtil.getContent(in, -1));
+            in = BlobCodec.decompressAny(new ByteArrayInputStream(compressed));
+            Assert.assertArrayEquals(codec.getName(), CONTENT, ByteUtil.getContent(in, -1));
+        }
+    }
+
+    @Test
+    public void detect() throws Exception {
+        Assert.assertNull(BlobCodec.detect(CONTENT, CONTENT.length));
+        Assert.assertNull(BlobCodec.detect(new byte[0], 0));
+
+        File file = File.createTempFile("codec", ".blob");
+        try {
+            OutputStream out = BlobCodec.DEFLATE.compress(new FileOutputStream(file));
+            out.write(CONTENT);
+            out.close();
+            Assert.assertEquals(BlobCodec.DEFLATE, BlobCodec.detect(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void fromName() {
+        Assert.assertEquals(BlobCodec.GZIP, BlobCodec.fromName(null));
+        Assert.assertEquals(BlobCodec.GZIP, BlobCodec.fromName("bogus"));
+        Assert.assertEquals(BlobCodec.DEFLATE, BlobCodec.fromName("Deflate"));
+        Assert.assertFalse(BlobCodec.isKnown("bogus"));
+    }
+}
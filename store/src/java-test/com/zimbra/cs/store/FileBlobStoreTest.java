@@ -16,8 +16,18 @@
  */
 package com.zimbra.cs.store;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
 import org.junit.BeforeClass;
+import org.junit.Test;
 
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.cs.account.MockProvisioning;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
 import com.zimbra.cs.store.file.FileBlobStore;
 
 public class FileBlobStoreTest extends AbstractStoreManagerTest {
@@ -33,4 +43,26 @@ public class FileBlobStoreTest extends AbstractStoreManagerTest {
     protected StoreManager getStoreManager() {
         return new FileBlobStore();
     }
+
+    @Test
+    public void mapped() throws Exception {
+        byte[] bytes = new byte[(LC.zimbra_blob_mmap_threshold_kb.intValue() + 1) * 1024];
+        new Random().nextBytes(bytes);
+
+        StoreManager sm = StoreManager.getInstance();
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(MockProvisioning.DEFAULT_ACCOUNT_ID);
+        Blob blob = sm.storeIncoming(new ByteArrayInputStream(bytes));
+        MailboxBlob mblob = sm.link(sm.stage(blob, mbox), mbox, 0, 0);
+
+        Assert.assertEquals(mblob.getLocalBlob().getFile(), sm.getUncompressedFile(mblob));
+        MappedBlob mapped = MappedBlob.open(mblob);
+        Assert.assertNotNull(mapped);
+        Assert.assertEquals(bytes.length, mapped.getSize());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        mapped.writeTo(out);
+        Assert.assertArrayEquals(bytes, out.toByteArray());
+
+        sm.delete(mblob);
+        Assert.assertNull(MappedBlob.open(null));
+    }
 }
@@ -122,6 +122,39 @@ public class FileDescriptorCacheTest {
         assertEquals(2, fdc.getSize());
     }
 
+    @Test
+    public void resize() throws Exception {
+        FileCache<String> uc = FileCache.Builder.createWithStringKey(uncompressedDir, false).build();
+        FileDescriptorCache fdc = new FileDescriptorCache(uc);
+        fdc.setMaxSize(1000);
+        assertEquals(8, fdc.getShardCount());
+
+        List<File> files = Lists.newArrayList();
+        byte[] buf = new byte[10];
+        for (int i = 0; i < 5; i++) {
+            File file = File.createTempFile(NAME_PREFIX, ".tmp.gz");
+            tempFiles.add(file);
+            files.add(file);
+            write(file, "content " + i);
+            fdc.read(file.getPath(), ("content " + i).length(), 0, buf, 0, buf.length);
+        }
+        assertEquals(5, fdc.getSize());
+        assertEquals(5, fdc.getOpenCount());
+
+        // Shrinking moves the entries to a single shard and evicts the oldest ones.
+        fdc.setMaxSize(2);
+        assertEquals(1, fdc.getShardCount());
+        assertEquals(2, fdc.getSize());
+        assertEquals(2, fdc.getOpenCount());
+
+        fdc.read(files.get(0).getPath(), "content 0".length(), 0, buf, 0, buf.length);
+        assertTrue(fdc.contains(files.get(0).getPath()));
+        assertEquals(2, fdc.getSize());
+
+        fdc.shutdown();
+        assertEquals(0, fdc.getSize());
+    }
+
     private void write(File file, String content)
     throws IOException {
         OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
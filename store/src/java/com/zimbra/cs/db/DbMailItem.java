@@ -2417,6 +2417,47 @@ public class DbMailItem {
         }
     }
 
+    /**
+     * Returns the most recent unread or read messages of the mailbox, newest first, to pre-populate the mailbox's
+     * item cache.  The two sets don't overlap, so callers can load both without fetching any row twice.
+     *
+     * @param unread true to return unread messages, false to return read ones
+     * @param limit maximum number of messages to return
+     */
+    public static List<UnderlyingData> getWarmupItems(Mailbox mbox, boolean unread, int limit)
+            throws ServiceException {
+        List<UnderlyingData> result = new ArrayList<UnderlyingData>();
+        if (limit <= 0) {
+            return result;
+        }
+
+        DbConnection conn = mbox.getOperationConnection();
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            StringBuilder sql = new StringBuilder("SELECT ").append(DB_FIELDS)
+                    .append(" FROM ").append(getMailItemTableName(mbox, " mi"))
+                    .append(" WHERE ").append(IN_THIS_MAILBOX_AND).append("type IN ").append(MESSAGE_TYPES);
+            sql.append(unread ? " AND unread > 0" : " AND unread = 0");
+            sql.append(" ORDER BY date DESC");
+            if (Db.supports(Db.Capability.LIMIT_CLAUSE)) {
+                sql.append(' ').append(Db.getInstance().limit(limit));
+            }
+            stmt = conn.prepareStatement(sql.toString());
+            setMailboxId(stmt, mbox, 1);
+            rs = stmt.executeQuery();
+            while (rs.next() && result.size() < limit) {
+                result.add(constructItem(rs));
+            }
+            return result;
+        } catch (SQLException e) {
+            throw ServiceException.FAILURE("fetching recent messages for item cache warmup", e);
+        } finally {
+            DbPool.closeResults(rs);
+            DbPool.closeStatement(stmt);
+        }
+    }
+
     public static List<UnderlyingData> getByFolder(Folder folder, MailItem.Type type, SortBy sort)
     throws ServiceException {
         if (Mailbox.isCachedType(type)) {
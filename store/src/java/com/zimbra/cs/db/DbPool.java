@@ -59,6 +59,10 @@ public class DbPool {
         private final Connection connection;
         private Throwable mStackTrace;
         Integer mboxId;
+        // set for connections checked out of the pool, see DbPoolStats
+        private String caller;
+        private long acquiredAt;
+        private int queries;
 
         DbConnection(Connection conn) {
             connection = conn;
@@ -112,11 +116,26 @@ public class DbPool {
         }
 
         public PreparedStatement prepareStatement(String sql) throws SQLException {
-            return new StatTrackingPreparedStatement(connection.prepareStatement(sql), sql);
+            StatTrackingPreparedStatement stmt = new StatTrackingPreparedStatement(connection.prepareStatement(sql), sql);
+            stmt.setConnection(this);
+            return stmt;
         }
 
         public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
-            return new StatTrackingPreparedStatement(connection.prepareStatement(sql, autoGeneratedKeys), sql);
+            StatTrackingPreparedStatement stmt = new StatTrackingPreparedStatement(
+                    connection.prepareStatement(sql, autoGeneratedKeys), sql);
+            stmt.setConnection(this);
+            return stmt;
+        }
+
+        /** Counts a statement executed on this connection. */
+        void countQuery() {
+            queries++;
+        }
+
+        void setCaller(String caller) {
+            this.caller = caller;
+            this.acquiredAt = System.nanoTime();
         }
 
         public void rollback() throws ServiceException {
@@ -160,6 +179,10 @@ public class DbPool {
                         sConnectionStackCounter.decrement(stackTrace);
                     }
                 }
+                if (caller != null) {
+                    DbPoolStats.recordRelease(caller, mboxId, System.nanoTime() - acquiredAt, queries);
+                    caller = null;
+                }
             }
         }
 
@@ -323,6 +346,15 @@ public class DbPool {
     }
 
     public static DbConnection getConnection(Mailbox mbox) throws ServiceException {
+        return getConnection(mbox, null);
+    }
+
+    /**
+     * Returns a connection to use for the zimbra database or the given mailbox.
+     *
+     * @param operation the operation the connection is used for, to break down {@link DbPoolStats} by caller
+     */
+    public static DbConnection getConnection(Mailbox mbox, String operation) throws ServiceException {
         if (!isInitialized()) {
             throw ServiceException.FAILURE("Database connection pool not initialized.", null);
         }
@@ -338,7 +370,10 @@ public class DbPool {
             Connection dbconn = null;
             DbConnection conn = null;
             try {
+                long waitStart = System.nanoTime();
                 dbconn = pool.getConnection();
+                String caller = DbPoolStats.getCaller(operation);
+                DbPoolStats.recordAcquire(caller, System.nanoTime() - waitStart);
 
                 if (dbconn.getAutoCommit() != false)
                     dbconn.setAutoCommit(false);
@@ -349,6 +384,7 @@ public class DbPool {
                     dbconn.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
 
                 conn = new DbConnection(dbconn, mboxId);
+                conn.setCaller(caller);
                 Db.getInstance().postOpen(conn);
             } catch (SQLException e) {
                 try {
@@ -527,6 +563,22 @@ public class DbPool {
         return sConnectionPool.getNumActive();
     }
 
+    /**
+     * Returns the number of connections sitting idle in the pool.
+     */
+    public static int getIdleSize() {
+        GenericObjectPool pool = sConnectionPool;
+        return pool != null ? pool.getNumIdle() : 0;
+    }
+
+    /**
+     * Returns the maximum number of connections the pool hands out.
+     */
+    public static int getMaxSize() {
+        GenericObjectPool pool = sConnectionPool;
+        return pool != null ? pool.getMaxActive() : 0;
+    }
+
     /**
      * This is only to be used by DbOfflineMigration to completely close connection to Derby.
      * Note that this doesn't permanently shutdown.  A new getPool() call will restart connections.
@@ -0,0 +1,195 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.stats.Histogram;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.stats.ZimbraPerf;
+
+/**
+ * Connection wait time, hold time and query count of {@link DbPool} connections, broken down by the operation that
+ * checked the connection out. The caller of a connection is the SOAP command being handled by the current thread (see
+ * {@link #setRequest(String)}), followed by the mailbox operation or transaction name when the connection was opened
+ * by a mailbox transaction, e.g. {@code SearchRequest/search}.
+ */
+public final class DbPoolStats {
+
+    static final String UNKNOWN = "unknown";
+    static final String OTHER = "other";
+
+    // guards against an unbounded number of distinct caller names; the excess is lumped into OTHER
+    private static final int MAX_CALLERS = 500;
+
+    private static final ThreadLocal<String> REQUEST = new ThreadLocal<String>();
+    private static final ConcurrentMap<String, CallerStats> CALLERS = new ConcurrentHashMap<String, CallerStats>();
+    private static final AtomicLong SLOW_HOLDS = new AtomicLong();
+
+    private DbPoolStats() {
+    }
+
+    /**
+     * Sets the name of the request handled by the current thread, to be used as the caller of the connections it opens.
+     *
+     * @param name request name, or null to clear it
+     * @return the previous request name, to be restored when the request is done
+     */
+    public static String setRequest(String name) {
+        String previous = REQUEST.get();
+        if (name == null) {
+            REQUEST.remove();
+        } else {
+            REQUEST.set(name);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the caller name for a connection opened by the current thread.
+     *
+     * @param operation the mailbox operation opening the connection, or null
+     */
+    static String getCaller(String operation) {
+        String request = REQUEST.get();
+        if (operation == null) {
+            return request != null ? request : UNKNOWN;
+        }
+        return request != null ? request + '/' + operation : operation;
+    }
+
+    static CallerStats get(String caller) {
+        CallerStats stats = CALLERS.get(caller);
+        if (stats == null) {
+            if (CALLERS.size() >= MAX_CALLERS) {
+                caller = OTHER;
+            }
+            stats = new CallerStats(caller);
+            CallerStats existing = CALLERS.putIfAbsent(caller, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Records a connection checked out of the pool.
+     *
+     * @param waitNanos time spent waiting for the pool
+     */
+    static void recordAcquire(String caller, long waitNanos) {
+        long us = TimeUnit.NANOSECONDS.toMicros(waitNanos);
+        ZimbraPerf.HISTOGRAM_DB_CONN_WAIT_US.increment(us);
+        get(caller).waitUs.increment(us);
+    }
+
+    /**
+     * Records a connection returned to the pool, and logs it if it was held longer than
+     * {@code zimbra_db_conn_slow_hold_threshold_ms}.
+     *
+     * @param holdNanos time the connection was checked out
+     * @param queries number of statements executed on the connection
+     */
+    static void recordRelease(String caller, Integer mboxId, long holdNanos, int queries) {
+        long ms = TimeUnit.NANOSECONDS.toMillis(holdNanos);
+        ZimbraPerf.HISTOGRAM_DB_CONN_HOLD_MS.increment(ms);
+        ZimbraPerf.HISTOGRAM_DB_CONN_QUERIES.increment(queries);
+        CallerStats stats = get(caller);
+        stats.holdMs.increment(ms);
+        stats.queries.addAndGet(queries);
+
+        long threshold = LC.zimbra_db_conn_slow_hold_threshold_ms.longValue();
+        if (threshold > 0 && ms >= threshold) {
+            SLOW_HOLDS.incrementAndGet();
+            stats.slowHolds.incrementAndGet();
+            ZimbraLog.dbconn.warn("Slow connection hold: caller=%s,mailbox=%d,holdMs=%d,queries=%d",
+                    caller, mboxId, ms, queries);
+        }
+    }
+
+    /**
+     * Returns the number of connections held longer than {@code zimbra_db_conn_slow_hold_threshold_ms}.
+     */
+    public static long getSlowHolds() {
+        return SLOW_HOLDS.get();
+    }
+
+    public static List<CallerStats> getCallers() {
+        return new ArrayList<CallerStats>(CALLERS.values());
+    }
+
+    public static void reset() {
+        CALLERS.clear();
+        SLOW_HOLDS.set(0);
+    }
+
+    /**
+     * Counters of a single caller.
+     */
+    public static final class CallerStats {
+        private final String name;
+        private final Histogram waitUs = new Histogram("wait_us");
+        private final Histogram holdMs = new Histogram("hold_ms");
+        private final AtomicLong queries = new AtomicLong();
+        private final AtomicLong slowHolds = new AtomicLong();
+
+        CallerStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the time this caller spent waiting for connections, in microseconds.
+         */
+        public Histogram getWaitUs() {
+            return waitUs;
+        }
+
+        /**
+         * Returns the time this caller held connections, in milliseconds.
+         */
+        public Histogram getHoldMs() {
+            return holdMs;
+        }
+
+        public long getQueries() {
+            return queries.get();
+        }
+
+        public long getSlowHolds() {
+            return slowHolds.get();
+        }
+
+        @Override
+        public String toString() {
+            return "caller=" + name + ",acquires=" + waitUs.getCount() + ",waitUs=" + waitUs.getTotal() +
+                    ",waitP99Us=" + waitUs.getPercentile(99) + ",waitMaxUs=" + waitUs.getMax() +
+                    ",holdMs=" + holdMs.getTotal() + ",holdP99Ms=" + holdMs.getPercentile(99) +
+                    ",holdMaxMs=" + holdMs.getMax() + ",queries=" + getQueries() + ",slowHolds=" + getSlowHolds();
+        }
+    }
+}
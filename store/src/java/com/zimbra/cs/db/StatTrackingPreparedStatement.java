@@ -57,6 +57,7 @@ public class StatTrackingPreparedStatement implements PreparedStatement {
     private final PreparedStatement stmt;
     private String queryString;
     private ActivityTracker tracker = ZimbraPerf.SQL_TRACKER;
+    private DbPool.DbConnection conn;
 
     public StatTrackingPreparedStatement(PreparedStatement stmt) {
         this.stmt = stmt;
@@ -75,6 +76,12 @@ public class StatTrackingPreparedStatement implements PreparedStatement {
         this.tracker = tracker;
     }
 
+    /* Connection whose query count is incremented by each execution, for DbPoolStats.
+     */
+    void setConnection(DbPool.DbConnection conn) {
+        this.conn = conn;
+    }
+
     /* The PreparedStatement interface doesn't allow access the actual SQL query
      * to be executed, so it needs to be provided explicitly in the constructor
      * or using this method. If the sql string is not available, nothing will be tracked.
@@ -106,6 +113,9 @@ public class StatTrackingPreparedStatement implements PreparedStatement {
     }
 
     private void trackQueryStats(String sql, long startTime) {
+        if (conn != null) {
+            conn.countQuery();
+        }
         if (sql != null) {
             tracker.addStat(getQueryType(sql), startTime);
         }
@@ -45,6 +45,8 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.jsieve.exception.SyntaxException;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Sets;
 import com.sun.mail.smtp.SMTPMessage;
 import com.zimbra.client.ZFolder;
@@ -998,6 +1000,30 @@ public final class FilterUtil {
 		return processedStr;
 	}
 
+    /**
+     * Compiled Sieve <tt>:matches</tt> patterns keyed by flags and pattern, shared by all
+     * deliveries so a rule's pattern is compiled once rather than on every evaluation.
+     */
+    private static final Cache<String, Pattern> SIEVE_PATTERNS = CacheBuilder.newBuilder()
+            .maximumSize(LC.zimbra_filter_pattern_cache_size.intValue())
+            .build();
+
+    /**
+     * Returns the compiled java regex for a Sieve pattern.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the converted pattern is invalid
+     * @see #sieveToJavaRegex(String)
+     */
+    public static Pattern getSievePattern(String pattern, int flags) {
+        String key = flags + ":" + pattern;
+        Pattern compiled = SIEVE_PATTERNS.getIfPresent(key);
+        if (compiled == null) {
+            compiled = Pattern.compile(sieveToJavaRegex(pattern), flags);
+            SIEVE_PATTERNS.put(key, compiled);
+        }
+        return compiled;
+    }
+
     /**
      * Converts a Sieve pattern in a java regex pattern
      */
@@ -37,6 +37,7 @@ import com.zimbra.cs.mailbox.OperationContext;
 import com.zimbra.cs.mime.ParsedMessage;
 import com.zimbra.cs.service.util.ItemId;
 import com.zimbra.cs.service.util.SpamHandler;
+import com.zimbra.cs.stats.ZimbraPerf;
 import com.zimbra.soap.mail.type.FilterRule;
 
 import org.apache.jsieve.ConfigurationManager;
@@ -144,14 +145,14 @@ public final class RuleManager {
             script = "";
         }
         try {
-            Node node = parse(script);
+            SieveRulePlan plan = SieveRulePlan.compile(script);
             // evaluate against dummy mail adapter to catch more errors
-            SIEVE_FACTORY.evaluate(new DummyMailAdapter(), node);
+            SIEVE_FACTORY.evaluate(new DummyMailAdapter(), plan.getNode());
             // save
             Map<String, Object> attrs = new HashMap<String, Object>();
             attrs.put(sieveScriptAttrName, script);
             Provisioning.getInstance().modifyAttrs(entry, attrs);
-            entry.setCachedData(rulesCacheKey, node);
+            entry.setCachedData(rulesCacheKey, plan);
         } catch (ParseException e) {
             ZimbraLog.filter.error("Unable to parse script:\n" + script);
             throw ServiceException.PARSE_ERROR("parsing Sieve script", e);
@@ -210,11 +211,23 @@ public final class RuleManager {
      */
     public static Node getRulesNode(Account account, String rulesCacheKey)
         throws ParseException, ServiceException {
+        return getRulesPlan(account, rulesCacheKey).getNode();
+    }
+
+    /**
+     * Returns the compiled filter rules for the given account, compiling and caching them on the
+     * <tt>Account</tt> if necessary.  Plans for admin scripts are shared by all accounts with the
+     * same script text.
+     *
+     * @see #getRulesNode(Account, String)
+     */
+    private static SieveRulePlan getRulesPlan(Account account, String rulesCacheKey)
+        throws ParseException, ServiceException {
 
         String sieveScriptAttrName = getScriptAttributeName(rulesCacheKey);
 
-        Node node = (Node) account.getCachedData(rulesCacheKey);
-        if (null == node) {
+        SieveRulePlan plan = (SieveRulePlan) account.getCachedData(rulesCacheKey);
+        if (null == plan) {
             String script = getRules(account, sieveScriptAttrName);
 
             if (null == script) {
@@ -223,10 +236,24 @@ public final class RuleManager {
 
             ZimbraLog.filter.debug("attrName[%s] rule[%s]", sieveScriptAttrName, script);
 
-            node = parse(script);
-            account.setCachedData(rulesCacheKey, node);
+            if (FILTER_RULES_CACHE_KEY.equals(rulesCacheKey) || OUTGOING_FILTER_RULES_CACHE_KEY.equals(rulesCacheKey)) {
+                plan = SieveRulePlan.compile(script);
+            } else {
+                plan = SieveRulePlan.compileShared(script);
+            }
+            account.setCachedData(rulesCacheKey, plan);
+        }
+        return plan;
+    }
+
+    private static SieveRulePlan[] getRulesPlans(Account account, String[] filters, ZimbraMailAdapter mailAdapter)
+        throws ParseException, ServiceException {
+        SieveRulePlan[] plans = new SieveRulePlan[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            plans[i] = getRulesPlan(account, filters[i]);
+            mailAdapter.addHeaderInterest(plans[i].getHeaderNames());
         }
-        return node;
+        return plans;
     }
 
     /**
@@ -408,11 +435,13 @@ public final class RuleManager {
         try {
             boolean applyRules = true;
             Account account = mailbox.getAccount();
-            for (String filter : filters) {
+            SieveRulePlan[] plans = getRulesPlans(account, filters, mailAdapter);
+            for (int i = 0; i < filters.length; i++) {
+                String filter = filters[i];
                 // Determine whether to apply rules
-                Node node = getRulesNode(account, filter);
+                SieveRulePlan plan = plans[i];
 
-                if (null == node) {
+                if (null == plan) {
                     applyRules = false;
                 }
                 if (SpamHandler.isSpam(handler.getMimeMessage()) &&
@@ -425,7 +454,7 @@ public final class RuleManager {
                     if (filter.equals(FILTER_RULES_CACHE_KEY)) {
                         mailAdapter.setUserScriptExecuting(true);
                     }
-                    boolean proceed = evaluateScript(mailAdapter, node);
+                    boolean proceed = evaluateScript(mailAdapter, plan, filter);
                     if (!proceed) {
                         continue;
                     }
@@ -476,13 +505,15 @@ public final class RuleManager {
 
         try {
             Account account = mailbox.getAccount();
-            for (String filter : filters) {
-                Node node = getRulesNode(account, filter);
-                if (null != node) {
+            SieveRulePlan[] plans = getRulesPlans(account, filters, mailAdapter);
+            for (int i = 0; i < filters.length; i++) {
+                String filter = filters[i];
+                SieveRulePlan plan = plans[i];
+                if (null != plan) {
                     if (filter.equals(OUTGOING_FILTER_RULES_CACHE_KEY)) {
                         mailAdapter.setUserScriptExecuting(true);
                     }
-                    boolean proceed = evaluateScript(mailAdapter, node);
+                    boolean proceed = evaluateScript(mailAdapter, plan, filter);
                     if (!proceed) {
                         continue;
                     }
@@ -512,9 +543,11 @@ public final class RuleManager {
         return addedMessageIds;
     }
 
-    private static boolean evaluateScript(ZimbraMailAdapter mailAdapter, Node node) throws SieveException {
+    private static boolean evaluateScript(ZimbraMailAdapter mailAdapter, SieveRulePlan plan, String filter)
+            throws SieveException {
+        long start = System.currentTimeMillis();
         try {
-            SIEVE_FACTORY.evaluate(mailAdapter, node);
+            SIEVE_FACTORY.evaluate(mailAdapter, plan.getNode());
         } catch (SieveException e) {
             if (editHeaderUserScriptError.equals(e.getMessage())) {
                 ZimbraLog.filter.info(
@@ -525,6 +558,12 @@ public final class RuleManager {
             } else {
                 throw e;
             }
+        } finally {
+            ZimbraPerf.STOPWATCH_FILTER.stop(start);
+            if (ZimbraLog.filter.isDebugEnabled()) {
+                ZimbraLog.filter.debug("evaluated %s: rules=%d, elapsed=%dms", filter.substring(filter.lastIndexOf('.') + 1),
+                        plan.getRuleCount(), System.currentTimeMillis() - start);
+            }
         }
         if (!mailAdapter.getAccount().isSieveEditHeaderEnabled()) {
             if (mailAdapter.isAddHeaderPresent()) {
@@ -841,18 +880,19 @@ public final class RuleManager {
         String rulesCacheKey = getAdminScriptCacheKey(filterType, afType);
         String adminRuleAttrName = getAdminScriptAttributeName(filterType, afType);
 
-        Node node = (Node) entry.getCachedData(rulesCacheKey);
-        if (null == node) {
+        // Shares the cache slot with getRulesPlan(Account, String), so it holds the compiled plan, not the bare node
+        SieveRulePlan plan = (SieveRulePlan) entry.getCachedData(rulesCacheKey);
+        if (null == plan) {
             String adminRule = entry.getAttr(adminRuleAttrName);
 
             if (null == adminRule) {
                 adminRule = "";
             }
             ZimbraLog.filter.debug("filterType[%s] rule[%s]", filterType == FilterType.INCOMING ? "incoming" : "outgoing", adminRule);
-            node = parse(adminRule);
-            entry.setCachedData(rulesCacheKey, node);
+            plan = SieveRulePlan.compileShared(adminRule);
+            entry.setCachedData(rulesCacheKey, plan);
         }
-        return node;
+        return plan.getNode();
     }
 
     public static void setAdminRulesFromXML(Entry entry, List<FilterRule> rules, FilterType filterType, AdminFilterType afType) throws ServiceException {
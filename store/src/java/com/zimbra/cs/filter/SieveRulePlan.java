@@ -0,0 +1,149 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.filter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jsieve.parser.SieveNode;
+import org.apache.jsieve.parser.generated.ASTcommand;
+import org.apache.jsieve.parser.generated.ASTtest;
+import org.apache.jsieve.parser.generated.Node;
+import org.apache.jsieve.parser.generated.ParseException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.zimbra.common.localconfig.LC;
+
+/**
+ * A parsed Sieve script plus what can be worked out about it ahead of evaluation.
+ * <p>
+ * Besides the jsieve parse tree, a plan records the names of the headers its tests may read, so
+ * {@link ZimbraMailAdapter} can pull all of them out of the message in a single pass, and the
+ * number of top-level rules, for logging.  Plans are immutable and may be evaluated by several
+ * deliveries at once.  Admin before/after scripts are usually inherited from a COS or domain, so
+ * plans for those are shared by every account whose script text is identical.
+ */
+public final class SieveRulePlan {
+
+    private static final Cache<String, SieveRulePlan> SHARED = CacheBuilder.newBuilder()
+            .maximumSize(LC.zimbra_filter_shared_plan_cache_size.intValue())
+            .build();
+
+    private final Node node;
+    private final Set<String> headerNames;
+    private final int ruleCount;
+
+    private SieveRulePlan(Node node) {
+        this.node = node;
+        Set<String> names = new HashSet<String>();
+        this.ruleCount = collect(node, false, names);
+        this.headerNames = Collections.unmodifiableSet(names);
+    }
+
+    /**
+     * Parses the script into a new plan.
+     */
+    public static SieveRulePlan compile(String script) throws ParseException {
+        return new SieveRulePlan(RuleManager.parse(script));
+    }
+
+    /**
+     * Returns a plan for the script, reusing one already compiled for identical script text.
+     */
+    public static SieveRulePlan compileShared(String script) throws ParseException {
+        SieveRulePlan plan = SHARED.getIfPresent(script);
+        if (plan == null) {
+            plan = compile(script);
+            SHARED.put(script, plan);
+        }
+        return plan;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * Returns the lower-cased names of the headers referenced by string arguments of the script's
+     * tests.  This is a superset: it also contains match keys and comparator names, which simply
+     * never match a header.  Header names built from variables are resolved at evaluation time and
+     * are not included.
+     */
+    public Set<String> getHeaderNames() {
+        return headerNames;
+    }
+
+    /**
+     * Returns the number of <tt>if</tt> (and disabled <tt>if</tt>) commands in the script.
+     */
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Adds candidate header names found under <tt>parent</tt> to <tt>names</tt> and returns the
+     * number of rules found.
+     */
+    private static int collect(Node parent, boolean inTest, Set<String> names) {
+        int rules = 0;
+        int numChildren = parent.jjtGetNumChildren();
+        for (int i = 0; i < numChildren; i++) {
+            Node child = parent.jjtGetChild(i);
+            if (child instanceof ASTcommand) {
+                String name = ((SieveNode) child).getName();
+                if ("if".equalsIgnoreCase(name) || "disabled_if".equalsIgnoreCase(name)) {
+                    rules++;
+                }
+            }
+            boolean test = inTest || child instanceof ASTtest;
+            if (test) {
+                Object value = ((SieveNode) child).getValue();
+                if (value instanceof String) {
+                    String name = unquote((String) value);
+                    if (isFieldName(name)) {
+                        names.add(name.toLowerCase());
+                    }
+                }
+            }
+            rules += collect(child, test, names);
+        }
+        return rules;
+    }
+
+    private static String unquote(String s) {
+        if (s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"') {
+            return s.substring(1, s.length() - 1);
+        }
+        return s;
+    }
+
+    /** RFC 5322 field names are printable ASCII other than colon. */
+    private static boolean isFieldName(String s) {
+        if (s.isEmpty() || s.length() > 76 || s.contains("${")) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c <= ' ' || c > '~' || c == ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -151,6 +151,12 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
     private boolean isReplaceHeaderPresent = false;
     private boolean isUserScriptExecuting = false;
 
+    /** Lower-cased names of the headers the scripts being evaluated may read. */
+    private final Set<String> headerInterest = new HashSet<String>();
+    /** Decoded header values by lower-cased name, valid for {@link #headerCacheMsg} only. */
+    private final Map<String, String[]> headerCache = new HashMap<String, String[]>();
+    private MimeMessage headerCacheMsg;
+
     public ZimbraMailAdapter(Mailbox mailbox, FilterHandler handler) {
         this.mailbox = mailbox;
         this.handler = handler;
@@ -672,6 +678,63 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
         return hdrs;
     }
 
+    /**
+     * Adds header names that are read by the scripts about to be evaluated.  The first header
+     * lookup then extracts all of them in one pass over the message headers.
+     */
+    public void addHeaderInterest(Collection<String> names) {
+        headerInterest.addAll(names);
+    }
+
+    private String[] getHeaders(MimeMessage msg, String name) {
+        if (msg != headerCacheMsg) {
+            headerCache.clear();
+            headerCacheMsg = msg;
+            if (!headerInterest.isEmpty()) {
+                prefetchHeaders(msg);
+            }
+        }
+        String key = name.toLowerCase();
+        String[] headers = headerCache.get(key);
+        if (headers == null) {
+            headers = Mime.getHeaders(msg, name);
+            headerCache.put(key, headers);
+        }
+        return headers.clone();
+    }
+
+    private void prefetchHeaders(MimeMessage msg) {
+        Map<String, List<String>> values = new HashMap<String, List<String>>();
+        for (String name : headerInterest) {
+            values.put(name, new ArrayList<String>(1));
+        }
+        try {
+            @SuppressWarnings("unchecked")
+            Enumeration<Header> allHeaders = msg.getAllHeaders();
+            while (allHeaders.hasMoreElements()) {
+                Header header = allHeaders.nextElement();
+                List<String> list = values.get(header.getName().toLowerCase());
+                if (list != null) {
+                    list.add(Mime.decodeHeader(header.getValue()));
+                }
+            }
+        } catch (MessagingException e) {
+            ZimbraLog.filter.debug("Unable to prefetch headers", e);
+            return;
+        }
+        for (Map.Entry<String, List<String>> e : values.entrySet()) {
+            headerCache.put(e.getKey(), e.getValue().toArray(new String[e.getValue().size()]));
+        }
+    }
+
+    /**
+     * Forgets cached header values; called whenever the message headers are edited.
+     */
+    private void clearHeaderCache() {
+        headerCache.clear();
+        headerCacheMsg = null;
+    }
+
     @Override
     public List<String> getHeader(String name) {
         MimeMessage msg;
@@ -682,7 +745,7 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
             return Collections.emptyList();
         }
 
-        String[] headers = Mime.getHeaders(msg, name);
+        String[] headers = getHeaders(msg, name);
         if (headers == null) {
             return Collections.emptyList();
         }
@@ -919,6 +982,7 @@ public class ZimbraMailAdapter implements MailAdapter, EnvelopeAccessors {
     }
 
     public void updateIncomingBlob() {
+        clearHeaderCache();
         DeliveryContext ctxt = handler.getDeliveryContext();
         if (ctxt != null) {
             StoreManager sm = StoreManager.getInstance();
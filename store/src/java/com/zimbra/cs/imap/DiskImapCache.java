@@ -93,6 +93,15 @@ final class DiskImapCache implements ImapSessionManager.Cache<String, ImapFolder
         FileOutputStream fos = null;
         ObjectOutputStream oos = null;
         try {
+            if (LC.imap_compact_folder_cache.booleanValue()) {
+                byte[] snapshot;
+                synchronized (folder) {
+                    snapshot = ImapFolderSerializer.serialize(folder);
+                }
+                fos = new FileOutputStream(pagefile);
+                fos.write(snapshot);
+                return;
+            }
             oos = new ObjectOutputStream(fos = new FileOutputStream(pagefile));
             synchronized (folder) {
                 oos.writeObject(folder);
@@ -116,6 +125,10 @@ final class DiskImapCache implements ImapSessionManager.Cache<String, ImapFolder
         FileInputStream fis = null;
         ObjectInputStream ois = null;
         try {
+            byte[] data = ByteUtil.getContent(pagefile);
+            if (ImapFolderSerializer.isSnapshot(data)) {
+                return ImapFolderSerializer.deserialize(data);
+            }
             // read serialized ImapFolder from cache
             ois = new SecureObjectInputStream(fis = new FileInputStream(pagefile), ImapFolder.class.getName());
             return (ImapFolder) ois.readObject();
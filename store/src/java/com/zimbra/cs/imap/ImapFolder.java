@@ -89,6 +89,7 @@ public final class ImapFolder implements ImapListener.ImapFolderData, java.io.Se
         protected boolean tagsAreDirty;
         protected boolean notificationsSuspended;
         protected ImapMessageSet savedSearchResults;
+        protected volatile ImapThreadCache threadCache;
         protected final Map<Integer, DirtyMessage> dirtyMessages = new ConcurrentSkipListMap<Integer, DirtyMessage>();
 
         protected SessionData(ImapPath path, byte params, ImapHandler handler) throws ServiceException {
@@ -123,6 +124,19 @@ public final class ImapFolder implements ImapListener.ImapFolderData, java.io.Se
         this.tags = new ImapFlagCache();
     }
 
+    /** Rebuilds a cached folder from an {@link ImapFolderSerializer} snapshot.
+     *  Like a Java-deserialized folder, it must be {@link #restore restored}
+     *  before use. */
+    ImapFolder(ItemIdentifier folderIdentifier, int uidValidity, String query, Set<MailItem.Type> typeConstraint,
+            ImapFlagCache tags, List<ImapMessage> messages) {
+        this.folderIdentifier = folderIdentifier;
+        this.uidValidity = uidValidity;
+        this.query = query;
+        this.typeConstraint = typeConstraint;
+        this.tags = tags;
+        this.sequence.addAll(messages);
+    }
+
     protected void setInitialSize() {
         SessionData sdata = sessionData;
         if (sdata != null) {
@@ -685,6 +699,18 @@ public final class ImapFolder implements ImapListener.ImapFolderData, java.io.Se
         }
     }
 
+    /** Returns the session's THREAD cache for this folder, or {@code null} if the folder has no session. */
+    protected ImapThreadCache getThreadCache() {
+        SessionData sdata = sessionData;
+        if (sdata == null) {
+            return null;
+        }
+        if (sdata.threadCache == null) {
+            sdata.threadCache = new ImapThreadCache();
+        }
+        return sdata.threadCache;
+    }
+
     protected ImapMessageSet getSavedSearchResults() {
         SessionData sdata = sessionData;
         if (sdata == null) {
@@ -1207,6 +1233,14 @@ public final class ImapFolder implements ImapListener.ImapFolderData, java.io.Se
         boolean inFolder = isVirtual() || fId == folderIdentifier.id;
 
         ImapMessage i4msg = getById(itemId);
+        if (i4msg != null && (chg.why & Change.PARENT) != 0) {
+            // the message moved to another conversation, so its THREAD placement has to be reloaded
+            SessionData sdata = sessionData;
+            ImapThreadCache threadCache = sdata == null ? null : sdata.threadCache;
+            if (threadCache != null) {
+                threadCache.invalidate(itemId);
+            }
+        }
         if (i4msg == null) {
             if (inFolder && !isVirtual()) {
                 added.add(item);
@@ -0,0 +1,331 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.base.Function;
+import com.zimbra.common.mailbox.ItemIdentifier;
+import com.zimbra.cs.imap.ImapFlagCache.ImapFlag;
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Compact binary snapshot of an {@link ImapFolder} for the IMAP session caches.
+ * <p>
+ * Java serialization writes one object graph node per {@link ImapMessage} and per tag name, which for a large INBOX
+ * is both slow and several times bigger than the data itself.  This format stores the message list column by column
+ * instead: msgIds and UIDs are delta-encoded varints, flags and session flags are varints, and tag names are written
+ * once into a string table and referenced by index.  Tag strings are shared between messages again on load.
+ * <p>
+ * Snapshots start with {@link #MAGIC} followed by a format version so that cache entries written by a different
+ * release are recognized and rejected (treated as a cache miss) rather than misread.
+ */
+final class ImapFolderSerializer {
+    /** "I4F" + 0x01; never a valid {@link java.io.ObjectOutputStream} stream header. */
+    static final int MAGIC = 0x49344601;
+    static final byte VERSION = 1;
+
+    private static final int FLAG_POSITIVE  = 0x01;
+    private static final int FLAG_PERMANENT = 0x02;
+    private static final int FLAG_LISTED    = 0x04;
+
+    private ImapFolderSerializer() {
+    }
+
+    /** Returns whether {@code data} starts with the compact snapshot header. */
+    static boolean isSnapshot(byte[] data) {
+        return data != null && data.length >= 5 &&
+                ((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF)) == MAGIC;
+    }
+
+    /** Serializes the folder.  Callers must hold the folder's monitor, as
+     *  they would for Java serialization. */
+    static byte[] serialize(ImapFolder i4folder) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(Math.max(256, i4folder.getSize() * 8));
+        DataOutputStream out = new DataOutputStream(bout);
+        write(i4folder, out);
+        out.flush();
+        return bout.toByteArray();
+    }
+
+    static ImapFolder deserialize(byte[] data) throws IOException {
+        return read(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    static void write(ImapFolder i4folder, DataOutput out) throws IOException {
+        final List<ImapMessage> messages = new ArrayList<ImapMessage>(i4folder.getSize());
+        i4folder.traverse(new Function<ImapMessage, Void>() {
+            @Override
+            public Void apply(ImapMessage i4msg) {
+                messages.add(i4msg);
+                return null;
+            }
+        });
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        ItemIdentifier ident = i4folder.getItemIdentifier();
+        writeString(out, ident.accountId);
+        writeSignedVarint(out, ident.id);
+        writeSignedVarint(out, ident.subPartId);
+        out.writeInt(i4folder.getUIDValidity());
+        writeString(out, i4folder.isVirtual() ? i4folder.getQuery() : null);
+
+        // 0 stands for the shared default type set, so the common case doesn't allocate a copy on load
+        Set<MailItem.Type> types = i4folder.getTypeConstraint();
+        if (types == ImapHandler.ITEM_TYPES) {
+            writeVarint(out, 0);
+        } else {
+            writeVarint(out, types.size() + 1);
+            for (MailItem.Type type : types) {
+                out.writeByte(type.toByte());
+            }
+        }
+
+        List<ImapFlag> flags = new ArrayList<ImapFlag>();
+        for (ImapFlag i4flag : i4folder.getTagset()) {
+            flags.add(i4flag);
+        }
+        writeVarint(out, flags.size());
+        for (ImapFlag i4flag : flags) {
+            writeString(out, i4flag.mName);
+            writeString(out, i4flag.mImapName);
+            writeSignedVarint(out, i4flag.mId);
+            out.writeLong(i4flag.mBitmask);
+            out.writeByte((i4flag.mPositive ? FLAG_POSITIVE : 0) | (i4flag.mPermanent ? FLAG_PERMANENT : 0) |
+                    (i4flag.mListed ? FLAG_LISTED : 0));
+        }
+
+        int count = messages.size();
+        writeVarint(out, count);
+
+        int prev = 0;
+        for (ImapMessage i4msg : messages) {
+            writeSignedVarint(out, i4msg.msgId - prev);
+            prev = i4msg.msgId;
+        }
+        prev = 0;
+        for (ImapMessage i4msg : messages) {
+            writeSignedVarint(out, i4msg.imapUid - prev);
+            prev = i4msg.imapUid;
+        }
+        for (ImapMessage i4msg : messages) {
+            writeVarint(out, i4msg.flags);
+        }
+        for (ImapMessage i4msg : messages) {
+            writeVarint(out, i4msg.sflags & 0xFFFF);
+        }
+
+        // sequence numbers are almost always 1..n; only spell them out when they aren't
+        boolean ordinal = true;
+        for (int i = 0; i < count && ordinal; i++) {
+            ordinal = messages.get(i).sequence == i + 1;
+        }
+        out.writeBoolean(ordinal);
+        if (!ordinal) {
+            for (ImapMessage i4msg : messages) {
+                writeSignedVarint(out, i4msg.sequence);
+            }
+        }
+
+        Map<String, Integer> tagIndex = new HashMap<String, Integer>();
+        List<String> tagTable = new ArrayList<String>();
+        for (ImapMessage i4msg : messages) {
+            if (i4msg.tags != null) {
+                for (String tag : i4msg.tags) {
+                    if (!tagIndex.containsKey(tag)) {
+                        tagIndex.put(tag, tagTable.size());
+                        tagTable.add(tag);
+                    }
+                }
+            }
+        }
+        writeVarint(out, tagTable.size());
+        for (String tag : tagTable) {
+            writeString(out, tag);
+        }
+        // per message: 0 for null, otherwise tag count + 1 followed by table indexes
+        for (ImapMessage i4msg : messages) {
+            if (i4msg.tags == null) {
+                writeVarint(out, 0);
+            } else {
+                writeVarint(out, i4msg.tags.length + 1);
+                for (String tag : i4msg.tags) {
+                    writeVarint(out, tagIndex.get(tag));
+                }
+            }
+        }
+    }
+
+    static ImapFolder read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not an ImapFolder snapshot");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported ImapFolder snapshot version " + version);
+        }
+
+        String accountId = readString(in);
+        int id = readSignedVarint(in);
+        int subPartId = readSignedVarint(in);
+        ItemIdentifier ident = new ItemIdentifier(accountId, id, subPartId);
+        int uidValidity = in.readInt();
+        String query = readString(in);
+
+        Set<MailItem.Type> types;
+        int typeCount = readVarint(in);
+        if (typeCount == 0) {
+            types = ImapHandler.ITEM_TYPES;
+        } else {
+            types = EnumSet.noneOf(MailItem.Type.class);
+            for (int i = 1; i < typeCount; i++) {
+                types.add(MailItem.Type.of(in.readByte()));
+            }
+        }
+
+        ImapFlagCache tagset = new ImapFlagCache();
+        int flagCount = readVarint(in);
+        for (int i = 0; i < flagCount; i++) {
+            String name = readString(in);
+            String imapName = readString(in);
+            int flagId = readSignedVarint(in);
+            long bitmask = in.readLong();
+            int bits = in.readByte();
+            tagset.cache(new ImapFlag(name, imapName, flagId, bitmask, (bits & FLAG_POSITIVE) != 0,
+                    (bits & FLAG_PERMANENT) != 0, (bits & FLAG_LISTED) != 0));
+        }
+
+        int count = readVarint(in);
+        int[] msgIds = new int[count];
+        int[] uids = new int[count];
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            msgIds[i] = prev += readSignedVarint(in);
+        }
+        prev = 0;
+        for (int i = 0; i < count; i++) {
+            uids[i] = prev += readSignedVarint(in);
+        }
+        int[] flags = new int[count];
+        for (int i = 0; i < count; i++) {
+            flags[i] = readVarint(in);
+        }
+        short[] sflags = new short[count];
+        for (int i = 0; i < count; i++) {
+            sflags[i] = (short) readVarint(in);
+        }
+        int[] sequence = null;
+        if (!in.readBoolean()) {
+            sequence = new int[count];
+            for (int i = 0; i < count; i++) {
+                sequence[i] = readSignedVarint(in);
+            }
+        }
+
+        String[] tagTable = new String[readVarint(in)];
+        for (int i = 0; i < tagTable.length; i++) {
+            tagTable[i] = readString(in);
+        }
+
+        List<ImapMessage> messages = new ArrayList<ImapMessage>(count);
+        for (int i = 0; i < count; i++) {
+            String[] tags = null;
+            int tagCount = readVarint(in);
+            if (tagCount > 0) {
+                tags = new String[tagCount - 1];
+                for (int t = 0; t < tags.length; t++) {
+                    tags[t] = tagTable[readVarint(in)];
+                }
+            }
+            ImapMessage i4msg = new ImapMessage(msgIds[i], MailItem.Type.MESSAGE, uids[i], 0, tags);
+            i4msg.flags = flags[i];
+            i4msg.sflags = sflags[i];
+            i4msg.sequence = sequence == null ? i + 1 : sequence[i];
+            messages.add(i4msg);
+        }
+
+        return new ImapFolder(ident, uidValidity, query, types, tagset, messages);
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeSignedVarint(DataOutput out, int value) throws IOException {
+        writeVarint(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed varint in ImapFolder snapshot");
+    }
+
+    private static int readSignedVarint(DataInput in) throws IOException {
+        int raw = readVarint(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /** Length-prefixed UTF-8; unlike {@link DataOutput#writeUTF} there is no 64K limit on search queries. */
+    private static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            writeVarint(out, 0);
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length + 1);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int len = readVarint(in);
+        if (len == 0) {
+            return null;
+        }
+        if (len < 0) {
+            throw new IOException("malformed string in ImapFolder snapshot");
+        }
+        byte[] bytes = new byte[len - 1];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
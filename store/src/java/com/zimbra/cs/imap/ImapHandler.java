@@ -134,10 +134,10 @@ public abstract class ImapHandler {
     protected enum ImapExtension { CONDSTORE, QRESYNC }
 
     private static final Set<String> SUPPORTED_EXTENSIONS = new LinkedHashSet<String>(Arrays.asList(
-        "ACL", "BINARY", "CATENATE", "CHILDREN", "CONDSTORE", "ENABLE", "ESEARCH", "ESORT",
+        "ACL", "BINARY", "CATENATE", "CHILDREN", "COMPRESS=DEFLATE", "CONDSTORE", "ENABLE", "ESEARCH", "ESORT",
         "I18NLEVEL=1", "ID", "IDLE", "LIST-EXTENDED", "LIST-STATUS", "LITERAL+", "LOGIN-REFERRALS",
         "MULTIAPPEND", "NAMESPACE", "QRESYNC", "QUOTA", "RIGHTS=ektx", "SASL-IR", "SEARCHRES",
-        "SORT", "THREAD=ORDEREDSUBJECT", "UIDPLUS", "UNSELECT", "WITHIN", "XLIST"
+        "SORT", "THREAD=ORDEREDSUBJECT", "THREAD=REFERENCES", "UIDPLUS", "UNSELECT", "WITHIN", "XLIST"
     ));
 
     private static final long MAXIMUM_IDLE_PROCESSING_MILLIS = 15 * Constants.MILLIS_PER_SECOND;
@@ -224,6 +224,7 @@ public abstract class ImapHandler {
     protected Authenticator authenticator;
     protected ImapCredentials credentials;
     protected boolean startedTLS;
+    protected boolean startedCompression;
     protected String lastCommand;
     protected int consecutiveError;
     private ImapProxy imapProxy;
@@ -274,6 +275,11 @@ public abstract class ImapHandler {
     protected abstract void enableInactivityTimer() throws IOException;
     protected abstract void completeAuthentication() throws IOException;
     protected abstract boolean doSTARTTLS(String tag) throws IOException;
+
+    /**
+     * Sends the tagged OK for COMPRESS and switches the connection to DEFLATE in both directions.
+     */
+    protected abstract void startCompression(String tag) throws IOException;
     protected abstract InetSocketAddress getLocalAddress();
 
     protected ImapCredentials getCredentials() {
@@ -536,6 +542,11 @@ public abstract class ImapHandler {
                 } else if (command.equals("CHECK")) {
                     checkEOF(tag, req);
                     return doCHECK(tag);
+                } else if (command.equals("COMPRESS") && extensionEnabled("COMPRESS=DEFLATE")) {
+                    req.skipSpace();
+                    String mechanism = req.readATOM();
+                    checkEOF(tag, req);
+                    return doCOMPRESS(tag, mechanism);
                 }
                 break;
             case 'D':
@@ -952,15 +963,18 @@ public abstract class ImapHandler {
                 }
                 break;
             case 'T':
-                if (command.equals("THREAD") && extensionEnabled("THREAD=ORDEREDSUBJECT")) {
+                if (command.equals("THREAD") && threadEnabled()) {
                     req.skipSpace();
-                    req.skipAtom("ORDEREDSUBJECT");
+                    String algorithm = req.readATOM();
+                    if (!SUPPORTED_EXTENSIONS.contains("THREAD=" + algorithm) || !extensionEnabled("THREAD=" + algorithm)) {
+                        throw new ImapParseException(tag, "unsupported THREAD algorithm: " + algorithm);
+                    }
                     req.skipSpace();
                     Charset charset = req.readCharset();
                     req.skipSpace();
                     ImapSearch i4search = req.readSearch(charset);
                     checkEOF(tag, req);
-                    return isProxied ? imapProxy.proxy(req) : doTHREAD(tag, i4search, byUID);
+                    return isProxied ? imapProxy.proxy(req) : doTHREAD(tag, algorithm, i4search, byUID);
                 }
                 break;
             case 'U':
@@ -968,7 +982,7 @@ public abstract class ImapHandler {
                     req.skipSpace();  command = req.readATOM();
                     if (command.equals("FETCH") || command.equals("SEARCH") || command.equals("COPY") || command.equals("STORE") ||
                             (command.equals("EXPUNGE") && extensionEnabled("UIDPLUS")) || (command.equals("SORT") && extensionEnabled("SORT")) ||
-                            (command.equals("THREAD") && extensionEnabled("THREAD=ORDEREDSUBJECT"))) {
+                            (command.equals("THREAD") && threadEnabled())) {
                         byUID = true;
                         lastCommand += " " + command;
                         continue;
@@ -1246,6 +1260,7 @@ public abstract class ImapHandler {
         // [BINARY]           RFC 3516: IMAP4 Binary Content Extension
         // [CATENATE]         RFC 4469: Internet Message Access Protocol (IMAP) CATENATE Extension
         // [CHILDREN]         RFC 3348: IMAP4 Child Mailbox Extension
+        // [COMPRESS=DEFLATE] RFC 4978: The IMAP COMPRESS Extension
         // [CONDSTORE]        RFC 4551: IMAP Extension for Conditional STORE Operation or Quick Flag Changes Resynchronization
         // [ENABLE]           RFC 5161: The IMAP ENABLE Extension
         // [ESEARCH]          RFC 4731: IMAP4 Extension to SEARCH Command for Controlling What Kind of Information Is Returned
@@ -1266,6 +1281,7 @@ public abstract class ImapHandler {
         // [SEARCHRES]        RFC 5182: IMAP Extension for Referencing the Last SEARCH Result
         // [SORT]             RFC 5256: Internet Message Access Protocol - SORT and THREAD Extensions
         // [THREAD=ORDEREDSUBJECT]  RFC 5256: Internet Message Access Protocol - SORT and THREAD Extensions
+        // [THREAD=REFERENCES]      RFC 5256: Internet Message Access Protocol - SORT and THREAD Extensions
         // [UIDPLUS]          RFC 4315: Internet Message Access Protocol (IMAP) - UIDPLUS extension
         // [UNSELECT]         RFC 3691: IMAP UNSELECT command
         // [WITHIN]           RFC 5032: WITHIN Search Extension to the IMAP Protocol
@@ -1297,6 +1313,10 @@ public abstract class ImapHandler {
         return capability.toString();
     }
 
+    private boolean threadEnabled() {
+        return extensionEnabled("THREAD=ORDEREDSUBJECT") || extensionEnabled("THREAD=REFERENCES");
+    }
+
     protected boolean extensionEnabled(String extension) {
         if (config.isCapabilityDisabled(extension)) {
             // check whether the extension is explicitly disabled on the server
@@ -3430,6 +3450,19 @@ public abstract class ImapHandler {
         return true;
     }
 
+    private boolean doCOMPRESS(String tag, String mechanism) throws IOException {
+        if (!mechanism.equalsIgnoreCase("DEFLATE")) {
+            sendBAD(tag, "unsupported compression mechanism: " + mechanism);
+            return true;
+        } else if (startedCompression) {
+            sendNO(tag, "[COMPRESSIONACTIVE] DEFLATE active via COMPRESS");
+            return true;
+        }
+        startCompression(tag);
+        startedCompression = true;
+        return true;
+    }
+
     private boolean doCLOSE(String tag) throws IOException, ImapException {
         if (!checkState(tag, State.SELECTED)) {
             return true;
@@ -3772,7 +3805,7 @@ public abstract class ImapHandler {
         return mbox.searchImap(getContext(), params);
     }
 
-    private boolean doTHREAD(String tag, ImapSearch i4search, boolean byUID)
+    private boolean doTHREAD(String tag, String algorithm, ImapSearch i4search, boolean byUID)
             throws IOException, ImapException {
         if (!checkState(tag, State.SELECTED)) {
             return true;
@@ -3794,36 +3827,17 @@ public abstract class ImapHandler {
         if (requiresMODSEQ && !sessionActivated(ImapExtension.CONDSTORE)) {
             throw new ImapParseException(tag, "NOMODSEQ", "cannot THREAD MODSEQ in this mailbox", true);
         }
-        LinkedHashMap<Integer, List<ImapMessage>> threads = new LinkedHashMap<Integer, List<ImapMessage>>();
+        // Both algorithms use the mailbox's conversations as threads.
+        // RFC 5256 3: "The searched messages are sorted by base subject and then
+        //              by the sent date.  The messages are then split into separate
+        //              threads, with each thread containing messages with the same
+        //              base subject text.  Finally, the threads are sorted by the
+        //              sent date of the first message in the thread."
+        List<List<ImapMessage>> threads;
         try {
-            // RFC 5256 3: "The searched messages are sorted by base subject and then
-            //              by the sent date.  The messages are then split into separate
-            //              threads, with each thread containing messages with the same
-            //              base subject text.  Finally, the threads are sorted by the
-            //              sent date of the first message in the thread."
-            ZimbraQueryHitResults zqr = runSearch(i4search, i4folder, SortBy.DATE_ASC, SearchParams.Fetch.PARENT);
-            try {
-                for (ZimbraQueryHit hit = zqr.getNext(); hit != null; hit = zqr.getNext()) {
-                    ImapMessage i4msg = i4folder.getById(hit.getItemId());
-                    if (i4msg == null || i4msg.isExpunged()) {
-                        continue;
-                    }
-                    int parentId = hit.getParentId();
-                    if (parentId <= 0) {
-                        threads.put(-i4msg.msgId, Arrays.asList(i4msg));
-                        continue;
-                    }
-
-                    List<ImapMessage> contents = threads.get(parentId);
-                    if (contents == null) {
-                        (contents = new LinkedList<ImapMessage>()).add(i4msg);
-                        threads.put(parentId, contents);
-                    } else {
-                        contents.add(i4msg);
-                    }
-                }
-            } finally {
-                zqr.close();
+            threads = i4search.canBeRunLocally() ? threadFromCache(i4search, i4folder) : null;
+            if (threads == null) {
+                threads = threadFromSearch(i4search, i4folder);
             }
         } catch (ServiceException e) {
             ZimbraLog.imap.warn("THREAD failed", e);
@@ -3831,16 +3845,24 @@ public abstract class ImapHandler {
             return true;
         }
 
+        boolean references = algorithm.equals("REFERENCES");
         StringBuilder result = new StringBuilder("THREAD");
         if (!threads.isEmpty()) {
             result.append(' ');
-            for (List<ImapMessage> thread : threads.values()) {
-                // ORDEREDSUBJECT: "(A)" for singletons, "(A B)" for pairs, "(A (B)(C)(D)(E))" for larger threads
+            for (List<ImapMessage> thread : threads) {
                 Iterator<ImapMessage> it = thread.iterator();
                 result.append('(').append(getMessageId(it.next(), byUID));
                 if (it.hasNext()) {
                     result.append(' ');
-                    if (thread.size() == 2) {
+                    if (references) {
+                        // REFERENCES: conversations carry no reply structure, so each message is treated as a
+                        // reply to the previous one: "(A B C D)"
+                        result.append(getMessageId(it.next(), byUID));
+                        while (it.hasNext()) {
+                            result.append(' ').append(getMessageId(it.next(), byUID));
+                        }
+                    } else if (thread.size() == 2) {
+                        // ORDEREDSUBJECT: "(A)" for singletons, "(A B)" for pairs, "(A (B)(C)(D)(E))" for larger threads
                         result.append(getMessageId(it.next(), byUID));
                     } else {
                         while (it.hasNext()) {
@@ -3858,6 +3880,84 @@ public abstract class ImapHandler {
         return true;
     }
 
+    /**
+     * Threads the messages matching a locally evaluable search using the session's {@link ImapThreadCache}, loading
+     * only the messages the cache hasn't seen yet. Returns {@code null} if the cache can't be used.
+     */
+    private List<List<ImapMessage>> threadFromCache(ImapSearch i4search, ImapFolder i4folder)
+            throws ImapParseException, ServiceException {
+        ImapThreadCache cache = i4folder.getThreadCache();
+        MailboxStore mbox = i4folder.getMailbox();
+        if (cache == null || mbox == null) {
+            return null;
+        }
+        ImapMessageSet i4set;
+        mbox.lock(false);
+        try {
+            i4set = i4search.evaluate(i4folder);
+            i4set.remove(null);
+        } finally {
+            mbox.unlock();
+        }
+        List<ImapMessage> misses = cache.getMisses(i4set);
+        if (!misses.isEmpty()) {
+            if (cache.size() > i4folder.getSize()) {
+                cache.retain(i4folder);
+            }
+            String folderOwner = i4folder.getFolder().getFolderItemIdentifier().accountId;
+            String accountId = folderOwner != null ? folderOwner : mbox.getAccountId();
+            for (List<ImapMessage> batch : Lists.partition(misses, LARGEST_FOLDER_BATCH)) {
+                List<ItemIdentifier> iids = new ArrayList<ItemIdentifier>(batch.size());
+                for (ImapMessage i4msg : batch) {
+                    if (!i4msg.isExpunged()) {
+                        iids.add(ItemIdentifier.fromAccountIdAndItemId(accountId, i4msg.msgId));
+                    }
+                }
+                try {
+                    for (ZimbraMailItem item : mbox.getItemsById(getContext(), iids)) {
+                        cache.put(item);
+                    }
+                } catch (ServiceException e) {
+                    // e.g. out of sync with the mailbox; let the search sort it out
+                    ZimbraLog.imap.debug("unable to load THREAD data for %d messages, falling back to search",
+                            iids.size(), e);
+                    return null;
+                }
+            }
+        }
+        return cache.thread(i4set);
+    }
+
+    private List<List<ImapMessage>> threadFromSearch(ImapSearch i4search, ImapFolder i4folder)
+            throws ImapParseException, ServiceException {
+        LinkedHashMap<Integer, List<ImapMessage>> threads = new LinkedHashMap<Integer, List<ImapMessage>>();
+        ZimbraQueryHitResults zqr = runSearch(i4search, i4folder, SortBy.DATE_ASC, SearchParams.Fetch.PARENT);
+        try {
+            for (ZimbraQueryHit hit = zqr.getNext(); hit != null; hit = zqr.getNext()) {
+                ImapMessage i4msg = i4folder.getById(hit.getItemId());
+                if (i4msg == null || i4msg.isExpunged()) {
+                    continue;
+                }
+                int parentId = hit.getParentId();
+                if (parentId <= 0) {
+                    threads.put(-i4msg.msgId, Arrays.asList(i4msg));
+                    continue;
+                }
+
+                List<ImapMessage> contents = threads.get(parentId);
+                if (contents == null) {
+                    (contents = new LinkedList<ImapMessage>()).add(i4msg);
+                    threads.put(parentId, contents);
+                } else {
+                    contents.add(i4msg);
+                }
+            }
+        } finally {
+            zqr.close();
+        }
+        return new ArrayList<List<ImapMessage>>(threads.values());
+    }
+
     protected boolean doFETCH(String tag, String sequenceSet, int attributes, List<ImapPartSpecifier> parts,
             boolean byUID, int changedSince) throws IOException, ImapException {
         checkCommandThrottle(new FetchCommand(sequenceSet, attributes, parts));
@@ -4010,7 +4110,7 @@ public abstract class ImapHandler {
                     boolean markMessage = markRead && (i4msg.flags & Flag.BITMASK_UNREAD) != 0;
                     boolean empty = true;
                     ZimbraMailItem item = null;
-                    MimeMessage mm;
+                    MimeMessage mm = null;
                     if (!fullMessage.isEmpty() || (parts != null && !parts.isEmpty()) || (attributes & ~FETCH_FROM_CACHE) != 0) {
                         if (lock == null && LC.imap_throttle_fetch.booleanValue()) {
                             lock = commandThrottle.lock(credentials.getAccountId());
@@ -4054,33 +4154,42 @@ public abstract class ImapHandler {
                         }
                     }
 
-                    if ((parts != null && !parts.isEmpty()) || (attributes & FETCH_FROM_MIME) != 0) {
+                    // BODY/BODYSTRUCTURE/ENVELOPE come from the structure cache when possible so that
+                    // header-only syncs don't have to read and parse the blob
+                    ImapStructureCache.Entry structure = null;
+                    if ((attributes & FETCH_FROM_MIME) != 0) {
+                        structure = ImapStructureCache.getInstance().get(item);
+                    }
+                    if ((parts != null && !parts.isEmpty()) || ((attributes & FETCH_FROM_MIME) != 0 && structure == null)) {
                         mm = ImapMessage.getMimeMessage(item);
-                        if ((attributes & FETCH_BODY) != 0) {
-                            result.print(empty ? "" : " ");
-                            result.print("BODY ");
-                            ImapMessage.serializeStructure(result, mm, false);
-                            empty = false;
+                        if (structure == null && (attributes & FETCH_FROM_MIME) != 0) {
+                            structure = ImapStructureCache.getInstance().render(item, mm);
                         }
-                        if ((attributes & FETCH_BODYSTRUCTURE) != 0) {
-                            result.print(empty ? "" : " ");
-                            result.print("BODYSTRUCTURE ");
-                            ImapMessage.serializeStructure(result, mm, true);
-                            empty = false;
-                        }
-                        if ((attributes & FETCH_ENVELOPE) != 0) {
+                    }
+                    if ((attributes & FETCH_BODY) != 0) {
+                        result.print(empty ? "" : " ");
+                        result.print("BODY ");
+                        result.write(structure.body);
+                        empty = false;
+                    }
+                    if ((attributes & FETCH_BODYSTRUCTURE) != 0) {
+                        result.print(empty ? "" : " ");
+                        result.print("BODYSTRUCTURE ");
+                        result.write(structure.bodystructure);
+                        empty = false;
+                    }
+                    if ((attributes & FETCH_ENVELOPE) != 0) {
+                        result.print(empty ? "" : " ");
+                        result.print("ENVELOPE ");
+                        result.write(structure.envelope);
+                        empty = false;
+                    }
+                    if (parts != null && mm != null) {
+                        for (ImapPartSpecifier pspec : parts) {
                             result.print(empty ? "" : " ");
-                            result.print("ENVELOPE ");
-                            ImapMessage.serializeEnvelope(result, mm);
+                            pspec.write(result, output, mm);
                             empty = false;
                         }
-                        if (parts != null) {
-                            for (ImapPartSpecifier pspec : parts) {
-                                result.print(empty ? "" : " ");
-                                pspec.write(result, output, mm);
-                                empty = false;
-                            }
-                        }
                     }
 
                     // 6.4.5: "The \Seen flag is implicitly set; if this causes the flags to
@@ -37,7 +37,10 @@ import com.zimbra.common.util.InputStreamWithSize;
 import com.zimbra.common.util.StartOutOfBoundsException;
 import com.zimbra.common.util.StringUtil;
 import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.mailbox.Message;
 import com.zimbra.cs.mime.Mime;
+import com.zimbra.cs.server.NioOutputStream;
+import com.zimbra.cs.store.MappedBlob;
 
 class ImapPartSpecifier {
     static class BinaryDecodingException extends Exception {
@@ -182,6 +185,20 @@ class ImapPartSpecifier {
 
     void write(PrintStream ps, OutputStream os, ZimbraMailItem zmi)
     throws IOException, BinaryDecodingException, ServiceException {
+        // large local messages go to the NIO session as a memory-mapped buffer instead of through BlobInputStream
+        if (os instanceof NioOutputStream && zmi instanceof Message && isEntireMessage() && octetStart == -1 &&
+                !command.startsWith("BINARY")) {
+            MappedBlob blob = MappedBlob.open(((Message) zmi).getBlob());
+            if (blob != null) {
+                ps.print(this);
+                ps.print(" {");
+                ps.print(blob.getSize());
+                ps.write('}');   /* } added to fix vim buggy brace matching code */
+                os.write(ImapHandler.LINE_SEPARATOR_BYTES);
+                ((NioOutputStream) os).write(blob.getBuffer());
+                return;
+            }
+        }
         write(ps, os, new ZimbraMailItemGettableInputStreamWithSize(zmi));
     }
 
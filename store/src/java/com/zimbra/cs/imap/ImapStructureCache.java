@@ -0,0 +1,297 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.ehcache.Cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.mailbox.ZimbraMailItem;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.common.util.memcached.MemcachedKey;
+import com.zimbra.common.util.memcached.MemcachedMap;
+import com.zimbra.common.util.memcached.MemcachedSerializer;
+import com.zimbra.cs.mailbox.Message;
+import com.zimbra.cs.memcached.MemcachedConnector;
+import com.zimbra.cs.memcached.MemcachedKeyPrefix;
+import com.zimbra.cs.stats.ZimbraPerf;
+import com.zimbra.cs.util.EhcacheManager;
+
+/**
+ * Cache of the serialized {@code BODY}, {@code BODYSTRUCTURE} and {@code ENVELOPE} FETCH attributes of a message.
+ * <p>
+ * All three are derived from the message blob and from the default charset of the owning account, which is used to
+ * decode unlabeled 8-bit headers.  Entries are keyed by both, so an entry never goes stale and accounts with different
+ * charsets don't see each other's decoding of the same blob.  They are rendered the first time a client fetches any
+ * of them and persisted in memcached (shared across IMAP servers) or in a disk backed Ehcache, so that header-only
+ * syncs of large mailboxes don't have to read and parse every blob.
+ */
+final class ImapStructureCache {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static ImapStructureCache instance;
+
+    private final Store store;
+
+    /** Persistent tier the rendered attributes are kept in. */
+    interface Store {
+        byte[] get(String key);
+        void put(String key, byte[] value);
+    }
+
+    /** The rendered FETCH attributes of one message blob. */
+    static final class Entry {
+        final byte[] body;
+        final byte[] bodystructure;
+        final byte[] envelope;
+
+        Entry(byte[] body, byte[] bodystructure, byte[] envelope) {
+            this.body = body;
+            this.bodystructure = bodystructure;
+            this.envelope = envelope;
+        }
+    }
+
+    @VisibleForTesting
+    ImapStructureCache(Store store) {
+        this.store = store;
+    }
+
+    static synchronized ImapStructureCache getInstance() {
+        if (instance == null) {
+            instance = new ImapStructureCache(createStore());
+        }
+        return instance;
+    }
+
+    private static Store createStore() {
+        if (!LC.imap_structure_cache.booleanValue()) {
+            return null;
+        }
+        try {
+            if (MemcachedConnector.isConnected()) {
+                ZimbraLog.imap.info("Using Memcached for BODYSTRUCTURE cache");
+                return new MemcachedStore();
+            } else if (LC.imap_use_ehcache.booleanValue()) {
+                return new EhcacheStore();
+            }
+        } catch (Exception e) {
+            ZimbraLog.imap.warn("unable to initialize BODYSTRUCTURE cache", e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cached attributes of the given item, or {@code null} if they haven't been rendered yet or the item
+     * isn't cacheable.
+     */
+    Entry get(ZimbraMailItem item) {
+        String key = getKey(item);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = null;
+        try {
+            entry = decode(store.get(key));
+        } catch (RuntimeException e) {
+            ZimbraLog.imap.warn("failed to load BODYSTRUCTURE from cache", e);
+        }
+        ZimbraPerf.COUNTER_IMAP_STRUCTURE_CACHE.increment(entry == null ? 0 : 100);
+        return entry;
+    }
+
+    /**
+     * Renders the attributes of the given item from its parsed MIME and caches them when the item is cacheable.
+     */
+    Entry render(ZimbraMailItem item, MimeMessage mm) throws IOException, MessagingException {
+        Entry entry = new Entry(serializeStructure(mm, false), serializeStructure(mm, true), serializeEnvelope(mm));
+        String key = getKey(item);
+        if (key != null) {
+            try {
+                store.put(key, encode(entry));
+            } catch (RuntimeException e) {
+                ZimbraLog.imap.warn("failed to store BODYSTRUCTURE into cache", e);
+            }
+        }
+        return entry;
+    }
+
+    @VisibleForTesting
+    String getKey(ZimbraMailItem item) {
+        // remote items don't expose their blob digest, and content-addressing is what keeps entries valid
+        if (store == null || !(item instanceof Message)) {
+            return null;
+        }
+        Message msg = (Message) item;
+        String charset;
+        try {
+            // Message.getMimeMessage() decodes with the account's default charset
+            charset = Strings.nullToEmpty(msg.getAccount().getPrefMailDefaultCharset());
+        } catch (ServiceException e) {
+            return null;
+        }
+        return msg.getDigest() + ':' + charset;
+    }
+
+    private static byte[] serializeStructure(MimeMessage mm, boolean extensions)
+            throws IOException, MessagingException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos, false, Charsets.UTF_8.name());
+        ImapMessage.serializeStructure(ps, mm, extensions);
+        ps.flush();
+        return baos.toByteArray();
+    }
+
+    private static byte[] serializeEnvelope(MimeMessage mm) throws IOException, MessagingException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintStream ps = new PrintStream(baos, false, Charsets.UTF_8.name());
+        ImapMessage.serializeEnvelope(ps, mm);
+        ps.flush();
+        return baos.toByteArray();
+    }
+
+    @VisibleForTesting
+    static byte[] encode(Entry entry) {
+        ByteBuffer buf = ByteBuffer.allocate(9 + entry.body.length + entry.bodystructure.length + entry.envelope.length);
+        buf.put(FORMAT_VERSION);
+        buf.putInt(entry.body.length).put(entry.body);
+        buf.putInt(entry.bodystructure.length).put(entry.bodystructure);
+        buf.put(entry.envelope);
+        return buf.array();
+    }
+
+    @VisibleForTesting
+    static Entry decode(byte[] data) {
+        if (data == null || data.length < 9 || data[0] != FORMAT_VERSION) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data, 1, data.length - 1);
+        byte[] body = readChunk(buf);
+        byte[] bodystructure = body == null ? null : readChunk(buf);
+        if (bodystructure == null) {
+            ZimbraLog.imap.debug("discarding corrupt BODYSTRUCTURE cache entry");
+            return null;
+        }
+        byte[] envelope = new byte[buf.remaining()];
+        buf.get(envelope);
+        return new Entry(body, bodystructure, envelope);
+    }
+
+    private static byte[] readChunk(ByteBuffer buf) {
+        if (buf.remaining() < 4) {
+            return null;
+        }
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining()) {
+            return null;
+        }
+        byte[] chunk = new byte[length];
+        buf.get(chunk);
+        return chunk;
+    }
+
+    private static final class EhcacheStore implements Store {
+        private final Cache<String, byte[]> ehcache;
+
+        EhcacheStore() {
+            EhcacheManager.Service service = !ImapDaemon.isRunningImapInsideMailboxd()
+                    ? EhcacheManager.Service.IMAP
+                    : EhcacheManager.Service.MAILBOX;
+            ehcache = EhcacheManager.getInstance(service).getImapStructureEhcache();
+            if (ehcache == null) {
+                throw new IllegalStateException(EhcacheManager.IMAP_STRUCTURE_CACHE + " is not configured");
+            }
+        }
+
+        @Override
+        public byte[] get(String key) {
+            return ehcache.get(key);
+        }
+
+        @Override
+        public void put(String key, byte[] value) {
+            ehcache.put(key, value);
+        }
+    }
+
+    private static final class MemcachedStore implements Store {
+        // don't wait for acks; a lost write just means the next FETCH renders the entry again
+        private final MemcachedMap<StructureKey, byte[]> map = new MemcachedMap<StructureKey, byte[]>(
+                MemcachedConnector.getClient(), new StructureSerializer(), false);
+
+        @Override
+        public byte[] get(String key) {
+            try {
+                return map.get(new StructureKey(key));
+            } catch (ServiceException e) {
+                ZimbraLog.imap.warn("Failed to load from cache", e);
+                return null;
+            }
+        }
+
+        @Override
+        public void put(String key, byte[] value) {
+            try {
+                map.put(new StructureKey(key), value);
+            } catch (ServiceException e) {
+                ZimbraLog.imap.warn("Failed to store into cache", e);
+            }
+        }
+    }
+
+    private static final class StructureSerializer implements MemcachedSerializer<byte[]> {
+        @Override
+        public Object serialize(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] deserialize(Object obj) {
+            return (byte[]) obj;
+        }
+    }
+
+    private static final class StructureKey implements MemcachedKey {
+        private final String key;
+
+        StructureKey(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public String getKeyPrefix() {
+            return MemcachedKeyPrefix.IMAP_STRUCTURE;
+        }
+
+        @Override
+        public String getKeyValue() {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.imap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.zimbra.client.ZMessage;
+import com.zimbra.common.mailbox.ItemIdentifier;
+import com.zimbra.common.mailbox.ZimbraMailItem;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.cs.mailbox.MailItem;
+
+/**
+ * Per-session cache of the conversation and date of each message in the selected folder, which is all THREAD needs
+ * to group and order messages. Entries are loaded on demand for messages not seen before and dropped when a
+ * notification reports that a message changed conversations, so a repeated THREAD only touches the mailbox for new
+ * mail.
+ */
+final class ImapThreadCache {
+    static final class Entry {
+        final int conversationId;
+        final long date;
+
+        Entry(int conversationId, long date) {
+            this.conversationId = conversationId;
+            this.date = date;
+        }
+    }
+
+    private final Map<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+    Entry get(int msgId) {
+        return entries.get(msgId);
+    }
+
+    void put(ZimbraMailItem item) throws ServiceException {
+        put(item.getIdInMailbox(), getConversationId(item), item.getDate());
+    }
+
+    void put(int msgId, int conversationId, long date) {
+        entries.put(msgId, new Entry(conversationId, date));
+    }
+
+    void invalidate(int msgId) {
+        entries.remove(msgId);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /** Returns the messages that have no cache entry yet. */
+    List<ImapMessage> getMisses(Collection<ImapMessage> i4msgs) {
+        List<ImapMessage> misses = new ArrayList<ImapMessage>();
+        for (ImapMessage i4msg : i4msgs) {
+            if (!entries.containsKey(i4msg.msgId)) {
+                misses.add(i4msg);
+            }
+        }
+        return misses;
+    }
+
+    /** Drops the entries of messages that are no longer in the folder. */
+    void retain(ImapFolder i4folder) {
+        for (Integer msgId : entries.keySet()) {
+            ImapMessage i4msg = i4folder.getById(msgId);
+            if (i4msg == null || i4msg.isExpunged()) {
+                entries.remove(msgId);
+            }
+        }
+    }
+
+    /**
+     * Splits the given messages into threads, one per conversation. Messages within a thread are ordered by date and
+     * threads by the date of their first message. Messages without a cache entry are skipped.
+     */
+    List<List<ImapMessage>> thread(Collection<ImapMessage> i4msgs) {
+        // snapshot the entries so that concurrent invalidation can't change them while sorting
+        final Map<ImapMessage, Entry> snapshot = new IdentityHashMap<ImapMessage, Entry>(i4msgs.size());
+        List<ImapMessage> sorted = new ArrayList<ImapMessage>(i4msgs.size());
+        for (ImapMessage i4msg : i4msgs) {
+            Entry entry = i4msg == null || i4msg.isExpunged() ? null : entries.get(i4msg.msgId);
+            if (entry != null) {
+                snapshot.put(i4msg, entry);
+                sorted.add(i4msg);
+            }
+        }
+        Collections.sort(sorted, new Comparator<ImapMessage>() {
+            @Override
+            public int compare(ImapMessage m1, ImapMessage m2) {
+                long d1 = snapshot.get(m1).date, d2 = snapshot.get(m2).date;
+                if (d1 != d2) {
+                    return d1 < d2 ? -1 : 1;
+                }
+                return m1.msgId - m2.msgId;
+            }
+        });
+
+        LinkedHashMap<Integer, List<ImapMessage>> threads = new LinkedHashMap<Integer, List<ImapMessage>>();
+        for (ImapMessage i4msg : sorted) {
+            int convId = snapshot.get(i4msg).conversationId;
+            // messages in no conversation (or a virtual one) are threads of their own
+            Integer key = convId <= 0 ? -i4msg.msgId : convId;
+            List<ImapMessage> thread = threads.get(key);
+            if (thread == null) {
+                threads.put(key, thread = new ArrayList<ImapMessage>(1));
+            }
+            thread.add(i4msg);
+        }
+        return new ArrayList<List<ImapMessage>>(threads.values());
+    }
+
+    private static int getConversationId(ZimbraMailItem item) {
+        if (item instanceof MailItem) {
+            return ((MailItem) item).getParentId();
+        } else if (item instanceof ZMessage) {
+            String convId = ((ZMessage) item).getConversationId();
+            if (convId != null) {
+                try {
+                    return new ItemIdentifier(convId, null).id;
+                } catch (ServiceException e) {
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Set;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 
 import com.google.common.io.Closeables;
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.mailbox.ItemIdentifier;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
@@ -112,6 +113,13 @@ final class MemcachedImapCache implements ImapSessionManager.Cache<String, ImapF
 
         @Override
         public Object serialize(ImapFolder folder) throws ServiceException {
+            if (LC.imap_compact_folder_cache.booleanValue()) {
+                try {
+                    return ImapFolderSerializer.serialize(folder);
+                } catch (Exception e) {
+                    throw ServiceException.FAILURE("Failed to serialize ImapFolder", e);
+                }
+            }
             ByteArrayOutputStream bout = new ByteArrayOutputStream();
             try (ObjectOutputStream oout = new ObjectOutputStream(bout)) {
                 oout.writeObject(folder);
@@ -126,6 +134,9 @@ final class MemcachedImapCache implements ImapSessionManager.Cache<String, ImapF
             ObjectInputStream in = null;
 
             try {
+                if (ImapFolderSerializer.isSnapshot((byte[]) obj)) {
+                    return ImapFolderSerializer.deserialize((byte[]) obj);
+                }
                 in = new SecureObjectInputStream(new ByteArrayInputStream((byte[]) obj), this.validClassNames);
                 return (ImapFolder) in.readObject();
             } catch (Exception e) {
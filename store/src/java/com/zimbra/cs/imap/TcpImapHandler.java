@@ -22,6 +22,10 @@ import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
@@ -207,6 +211,8 @@ final class TcpImapHandler extends ProtocolHandler {
     }
 
     private final class HandlerDelegate extends ImapHandler {
+        private Deflater deflater;
+        private Inflater inflater;
 
         HandlerDelegate(ImapConfig config) {
             super(config);
@@ -278,6 +284,16 @@ final class TcpImapHandler extends ProtocolHandler {
                     authenticator.dispose();
                     authenticator = null;
                 }
+                if (deflater != null) {
+                    ZimbraLog.imap.debug("COMPRESS=DEFLATE: wrote %d bytes for %d, read %d bytes for %d",
+                            deflater.getBytesWritten(), deflater.getBytesRead(),
+                            inflater.getBytesRead(), inflater.getBytesWritten());
+                    // streams don't release a caller-supplied (de)compressor on close
+                    deflater.end();
+                    inflater.end();
+                    deflater = null;
+                    inflater = null;
+                }
             } catch (IOException e) {
                 if (ZimbraLog.imap.isDebugEnabled()) {
                     ZimbraLog.imap.debug("TCP:I/O error while closing connection", e);
@@ -351,6 +367,16 @@ final class TcpImapHandler extends ProtocolHandler {
             return true;
         }
 
+        @Override
+        protected void startCompression(String tag) throws IOException {
+            sendOK(tag, "DEFLATE active");
+            // the client waits for the OK before compressing, so nothing compressed is buffered in the old stream
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            inflater = new Inflater(true);
+            input = new TcpServerInputStream(new InflaterInputStream(input, inflater));
+            output = new BufferedOutputStream(new DeflaterOutputStream(output, deflater, true));
+        }
+
         @Override
         protected InetSocketAddress getLocalAddress() {
             return (InetSocketAddress) socket.getLocalSocketAddress();
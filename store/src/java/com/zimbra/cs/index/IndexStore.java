@@ -83,6 +83,17 @@ public abstract class IndexStore {
      */
     public abstract boolean verify(PrintStream out) throws IOException;
 
+    /**
+     * Returns true if the documents added by the {@link Indexer}s closed so far are committed.  Otherwise returns
+     * false, and runs {@code onCommit} once they are, usually in another thread.  Items must not be marked indexed in
+     * the database before their documents are committed, or a crash loses them for good.
+     * <p>
+     * Index stores that commit whenever an {@link Indexer} is closed always return true.
+     */
+    public boolean isCommitted(Runnable onCommit) {
+        return true;
+    }
+
     public static Factory getFactory() {
         if (factory == null) {
             setFactory(LC.zimbra_class_index_store_factory.value());
@@ -19,10 +19,14 @@ package com.zimbra.cs.index;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -48,6 +52,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.NoSuchDirectoryException;
 import org.apache.lucene.util.Version;
 
@@ -57,6 +62,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
 import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 import com.zimbra.common.localconfig.LC;
@@ -66,6 +72,7 @@ import com.zimbra.cs.mailbox.Folder;
 import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.MailboxIndex;
+import com.zimbra.cs.stats.ZimbraPerf;
 import com.zimbra.cs.util.IOUtil;
 import com.zimbra.cs.volume.Volume;
 import com.zimbra.cs.volume.VolumeManager;
@@ -114,10 +121,23 @@ public final class LuceneIndex extends IndexStore {
         })
         .build();
 
+    // near-real-time mode: deferred commits waiting to run, so that they can be flushed on shutdown
+    private static final ScheduledExecutorService COMMIT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("IndexCommit-%d").setDaemon(true).build());
+    private static final ConcurrentMap<LuceneIndex, DeferredCommitTask> DEFERRED_COMMITS =
+            new ConcurrentHashMap<LuceneIndex, DeferredCommitTask>();
+
     private final Mailbox mailbox;
     private final LuceneDirectory luceneDirectory;
     private final AtomicBoolean pendingDelete = new AtomicBoolean(false);
     private final WriterInfo writerInfo = new WriterInfo();
+    // documents added or deleted since the last commit
+    private final AtomicInteger uncommittedChanges = new AtomicInteger();
+    private long lastCommitTime = System.currentTimeMillis(); // guarded by this
+    private DeferredCommitTask deferredCommit; // guarded by this
+    // callbacks of isCommitted(), waiting for the next commit and whose commit has completed
+    private final List<Runnable> commitCallbacks = new ArrayList<Runnable>(); // guarded by this
+    private final List<Runnable> committedCallbacks = new ArrayList<Runnable>(); // guarded by this
 
     /**
      * Holds information related to writers to the index.
@@ -245,6 +265,7 @@ public final class LuceneIndex extends IndexStore {
     @Override
     public void deleteIndex() throws IOException {
         pendingDelete.set(true);
+        flushDeferredCommit();
         writerInfo.getHasNoWritersLock().lock();
         try {
             if (writerInfo.getWriterRef() != null) {
@@ -389,7 +410,8 @@ public final class LuceneIndex extends IndexStore {
         READER_THROTTLE.acquireUninterruptibly();
         long start = System.currentTimeMillis();
         try {
-            searcher = new IndexSearcherImpl(openIndexReader(true));
+            IndexReader nrtReader = openNearRealTimeReader();
+            searcher = new IndexSearcherImpl(nrtReader != null ? nrtReader : openIndexReader(true));
         } catch (IOException e) {
             // Handle the special case of trying to open a not-yet-created index, by opening for write and immediately
             // closing. Index directory should get initialized as a result.
@@ -408,7 +430,9 @@ public final class LuceneIndex extends IndexStore {
             }
         }
 
-        ZimbraLog.search.debug("OpenLuceneSearcher %s,elapsed=%d", searcher, System.currentTimeMillis() - start);
+        long elapsed = System.currentTimeMillis() - start;
+        ZimbraLog.search.debug("OpenLuceneSearcher %s,elapsed=%d", searcher, elapsed);
+        recordReaderOpen(searcher, elapsed);
         searcher.inc();
         if (mailbox.isGalSyncMailbox()) {
             IOUtil.closeQuietly(GAL_SEARCHER_CACHE.put(mailbox.getId(), searcher));
@@ -418,6 +442,74 @@ public final class LuceneIndex extends IndexStore {
         return searcher;
     }
 
+    private static boolean isNearRealTime() {
+        return LC.zimbra_index_lucene_nrt.booleanValue();
+    }
+
+    /**
+     * In near-real-time mode, opens a reader from the currently open writer, if any, so that searches see documents
+     * that have been indexed but not committed yet.
+     *
+     * @return the reader, or null if there is no writer or near-real-time mode is off
+     */
+    private IndexReader openNearRealTimeReader() {
+        assert(Thread.holdsLock(this));
+        IndexWriterRef ref = writerInfo.getWriterRef();
+        if (ref == null || !isNearRealTime()) {
+            return null;
+        }
+        try {
+            return ref.openReader(null);
+        } catch (IOException e) {
+            ZimbraLog.search.warn("Failed to open near-real-time reader, falling back to committed index", e);
+            return null;
+        } catch (AlreadyClosedException e) {
+            return null;
+        }
+    }
+
+    private static void recordReaderOpen(IndexSearcherImpl searcher, long elapsed) {
+        ZimbraPerf.HISTOGRAM_IDX_READER_OPEN_MS.increment(elapsed);
+        IndexReader[] segments =
+                ((ZimbraLuceneIndexReader) searcher.getIndexReader()).getLuceneReader().getSequentialSubReaders();
+        ZimbraPerf.HISTOGRAM_IDX_SEGMENTS.increment(segments == null ? 1 : segments.length);
+    }
+
+    /**
+     * Replaces the cached searcher, if there is one, with a searcher over the latest index state: the given writer's
+     * uncommitted changes if {@code writer} is not null, otherwise the last commit.
+     */
+    private void refreshSearcher(IndexWriterRef writer) throws IOException {
+        ZimbraIndexSearcher searcher = null;
+        if (mailbox.isGalSyncMailbox()) {
+            searcher = GAL_SEARCHER_CACHE.get(mailbox.getId());
+        } else {
+            searcher = SEARCHER_CACHE.getIfPresent(mailbox.getId());
+        }
+        if (searcher == null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ZimbraLuceneIndexReader ndxReader = (ZimbraLuceneIndexReader) searcher.getIndexReader();
+        IndexReader newReader = writer == null ? IndexReader.openIfChanged(ndxReader.getLuceneReader(), true) :
+            writer.openReader(ndxReader.getLuceneReader());
+        if (newReader == null) {
+            return;
+        }
+        IndexSearcherImpl newSearcher = new IndexSearcherImpl(newReader);
+        recordReaderOpen(newSearcher, System.currentTimeMillis() - start);
+        if (mailbox.isGalSyncMailbox()) {
+            //make sure that we close the previous value associated with the key
+            IOUtil.closeQuietly(GAL_SEARCHER_CACHE.put(mailbox.getId(), newSearcher));
+        } else {
+            // Bug: 69870
+            // No need to close the previous value associated with the key here.
+            // CacheBuilder sends a callback using removalListener onRemoval(..)
+            // which eventually closes IndexSearcher
+            SEARCHER_CACHE.asMap().put(mailbox.getId(), newSearcher);
+        }
+    }
+
     /**
      * Check to see if it is OK for us to create an index in the specified directory.
      *
@@ -499,7 +591,13 @@ public final class LuceneIndex extends IndexStore {
         boolean success = false;
         try {
             try {
+                long start = System.currentTimeMillis();
                 writerInfo.getWriterRef().get().commit();
+                lastCommitTime = System.currentTimeMillis();
+                uncommittedChanges.set(0);
+                committedCallbacks.addAll(commitCallbacks);
+                commitCallbacks.clear();
+                ZimbraPerf.HISTOGRAM_IDX_COMMIT_MS.increment(lastCommitTime - start);
             } catch (CorruptIndexException e) {
                 try {
                     writerInfo.getWriterRef().get().close(false);
@@ -527,6 +625,121 @@ public final class LuceneIndex extends IndexStore {
         }
     }
 
+    /**
+     * Ends an indexing batch in near-real-time mode. Commits right away once the commit interval has passed or enough
+     * changes have piled up; otherwise the batch's writer reference is handed to a deferred commit, which keeps the
+     * writer open so that the batches arriving in the meantime end up in a single commit instead of one tiny segment
+     * each. Either way the caller's reference is consumed.
+     */
+    private synchronized void commitOrDefer(IndexWriterRef ref) throws IOException {
+        long delay = LC.zimbra_index_lucene_nrt_commit_interval_ms.longValue() -
+                (System.currentTimeMillis() - lastCommitTime);
+        if (delay <= 0 || uncommittedChanges.get() >= LC.zimbra_index_lucene_nrt_commit_max_changes.intValue()) {
+            commitWriter();
+        } else if (deferredCommit != null) {
+            ref.dec(); // the deferred commit keeps the writer open
+        } else {
+            DeferredCommitTask task = new DeferredCommitTask(ref);
+            deferredCommit = task;
+            DEFERRED_COMMITS.put(this, task);
+            try {
+                COMMIT_SCHEDULER.schedule(task, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                deferredCommit = null;
+                DEFERRED_COMMITS.remove(this);
+                commitWriter();
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isCommitted(Runnable onCommit) {
+        if (uncommittedChanges.get() == 0) {
+            return true;
+        }
+        commitCallbacks.add(onCommit);
+        return false;
+    }
+
+    /**
+     * Runs the callbacks of {@link #isCommitted(Runnable)} whose documents have been committed. Must be called without
+     * holding the lock of this index, as the callbacks may need the mailbox lock.
+     */
+    private void runCommitCallbacks() {
+        List<Runnable> callbacks;
+        synchronized (this) {
+            if (committedCallbacks.isEmpty()) {
+                return;
+            }
+            callbacks = new ArrayList<Runnable>(committedCallbacks);
+            committedCallbacks.clear();
+        }
+        for (Runnable callback : callbacks) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                ZimbraLog.index.error("Failed to run commit callback", e);
+            }
+        }
+    }
+
+    /**
+     * Runs the pending deferred commit now, if there is one.
+     */
+    private void flushDeferredCommit() {
+        DeferredCommitTask task;
+        synchronized (this) {
+            task = deferredCommit;
+        }
+        if (task != null) {
+            try {
+                task.commit();
+            } catch (IOException e) {
+                ZimbraLog.index.error("Failed to commit IndexWriter", e);
+            }
+        }
+    }
+
+    private synchronized void runDeferredCommit(DeferredCommitTask task) throws IOException {
+        assert(deferredCommit == task);
+        deferredCommit = null;
+        DEFERRED_COMMITS.remove(this, task);
+        if (uncommittedChanges.get() > 0) {
+            commitWriter(); // consumes the task's reference
+        } else {
+            task.ref.dec();
+        }
+    }
+
+    /**
+     * Commits the changes coalesced by {@link LuceneIndex#commitOrDefer(IndexWriterRef)}. Runs once, either when
+     * scheduled or when flushed early.
+     */
+    private final class DeferredCommitTask extends MailboxIndex.IndexTask {
+        private final IndexWriterRef ref;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+
+        DeferredCommitTask(IndexWriterRef ref) {
+            super(ref.getIndex().mailbox);
+            this.ref = ref;
+        }
+
+        void commit() throws IOException {
+            if (done.compareAndSet(false, true)) {
+                try {
+                    runDeferredCommit(this);
+                } finally {
+                    runCommitCallbacks();
+                }
+            }
+        }
+
+        @Override
+        protected void exec() throws IOException {
+            commit();
+        }
+    }
+
     /**
      * Called by {@link IndexWriterRef#dec()}. Can be called by the thread that opened the writer or the merge thread.
      */
@@ -778,6 +991,10 @@ public final class LuceneIndex extends IndexStore {
 
         @Override
         public void destroy() {
+            // don't lose the changes that near-real-time mode has not committed yet
+            for (LuceneIndex index : DEFERRED_COMMITS.keySet()) {
+                index.flushDeferredCommit();
+            }
             SEARCHER_CACHE.asMap().clear();
 
             for (IndexSearcherImpl searcher : GAL_SEARCHER_CACHE.values()) {
@@ -796,30 +1013,20 @@ public final class LuceneIndex extends IndexStore {
 
         @Override
         public void close() throws IOException {
-            writer.index.commitWriter();
-            ZimbraIndexSearcher searcher = null;
-            if (writer.getIndex().mailbox.isGalSyncMailbox()) {
-                searcher = GAL_SEARCHER_CACHE.get(writer.getIndex().mailbox.getId());
-            } else {
-                searcher = SEARCHER_CACHE.getIfPresent(writer.getIndex().mailbox.getId());
-            }
-            if (searcher != null) {
-                ZimbraLuceneIndexReader ndxReader = (ZimbraLuceneIndexReader)searcher.getIndexReader();
-                IndexReader newReader = IndexReader.openIfChanged(ndxReader.getLuceneReader(), true);
-                if (newReader != null) {
-                    if (writer.getIndex().mailbox.isGalSyncMailbox()) {
-                        //make sure that we close the previous value associated with the key
-                        IOUtil.closeQuietly(GAL_SEARCHER_CACHE.put(writer.getIndex().mailbox.getId(),
-                                new IndexSearcherImpl(newReader)));
-                    } else {
-                        // Bug: 69870
-                        // No need to close the previous value associated with the key here.
-                        // CacheBuilder sends a callback using removalListener onRemoval(..)
-                        // which eventually closes IndexSearcher
-                        SEARCHER_CACHE.asMap().put(writer.getIndex().mailbox.getId(),
-                            new IndexSearcherImpl(newReader));
+            try {
+                if (isNearRealTime()) {
+                    // refresh from the writer while this indexer still holds a reference to it
+                    try {
+                        writer.index.refreshSearcher(writer);
+                    } finally {
+                        writer.index.commitOrDefer(writer);
                     }
+                } else {
+                    writer.index.commitWriter();
+                    writer.index.refreshSearcher(null);
                 }
+            } finally {
+                writer.index.runCommitCallbacks();
             }
         }
 
@@ -882,6 +1089,7 @@ public final class LuceneIndex extends IndexStore {
                     writer.get().addDocument(luceneDoc);
                 }
             }
+            writer.index.uncommittedChanges.addAndGet(docs.size());
         }
 
         /**
@@ -898,6 +1106,7 @@ public final class LuceneIndex extends IndexStore {
                 writer.get().deleteDocuments(term);
                 ZimbraLog.index.debug("Deleted documents id=%d", id);
             }
+            writer.index.uncommittedChanges.addAndGet(ids.size());
         }
     }
 
@@ -922,6 +1131,16 @@ public final class LuceneIndex extends IndexStore {
             return index;
         }
 
+        /**
+         * Opens a near-real-time reader that sees this writer's uncommitted changes, or, if {@code old} is not null,
+         * reopens {@code old} to the writer's current state.
+         *
+         * @return the new reader, or null if {@code old} is already current
+         */
+        IndexReader openReader(IndexReader old) throws IOException {
+            return old == null ? IndexReader.open(writer, true) : IndexReader.openIfChanged(old, writer, true);
+        }
+
         void inc() {
             count.incrementAndGet();
         }
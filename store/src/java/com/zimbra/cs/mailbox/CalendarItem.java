@@ -1307,6 +1307,17 @@ public abstract class CalendarItem extends MailItem {
         return null;
     }
 
+    /**
+     * Estimated heap size of one {@link Invite}.  Invites carry their parsed iCalendar components, which dwarf the
+     * rest of the item.
+     */
+    static final int INVITE_HEAP_SIZE = 4096;
+
+    @Override
+    int estimateHeapSize() {
+        return super.estimateHeapSize() + (mInvites == null ? 0 : INVITE_HEAP_SIZE * mInvites.size());
+    }
+
     public Invite[] getInvites() {
         int num = mInvites.size();
         if (num == 1) {
@@ -288,6 +288,20 @@ public class Contact extends MailItem {
         return fields.get(fieldName);
     }
 
+    /** Estimated heap size of one field's map entry and the headers of its two strings. */
+    static final int FIELD_HEAP_SIZE = 64;
+
+    @Override
+    int estimateHeapSize() {
+        int size = super.estimateHeapSize();
+        if (fields != null) {
+            for (Map.Entry<String, String> field : fields.entrySet()) {
+                size += FIELD_HEAP_SIZE + 2 * (length(field.getKey()) + length(field.getValue()));
+            }
+        }
+        return size;
+    }
+
     /** Returns a new <tt>Map</tt> containing all the contact's field/value pairs. */
     public Map<String, String> getAllFields() {
         return new HashMap<String, String>(fields);
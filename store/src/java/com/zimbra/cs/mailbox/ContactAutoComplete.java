@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -423,14 +424,21 @@ public class ContactAutoComplete {
         final String searchContactFolderQuery = generateFolderQuery(listFolders);
 
         long t0 = System.currentTimeMillis();
-        //Search in ranking table first.
-        addExistingContactsFromRankingTable(str, searchContactFolderQuery, mountpoints, limit, result);
+        Mailbox mbox = MailboxManager.getInstance().getMailboxByAccountId(getRequestedAcctId());
+        ContactPrefixIndex index = ContactPrefixIndex.get(mbox);
         long t1 = System.currentTimeMillis();
+        if (index != null) {
+            queryIndex(mbox, index, str, listFolders, mountpoints, limit, result);
+        } else {
+            //Search in ranking table first.
+            addExistingContactsFromRankingTable(str, searchContactFolderQuery, mountpoints, limit, result);
+            t1 = System.currentTimeMillis();
 
-        // search other folders
-        if (result.entries.size() < limit) {
-            String query = searchContactFolderQuery + generateQuery(str);
-            queryFolders(str, query, mountpoints, limit, result);
+            // search other folders
+            if (result.entries.size() < limit) {
+                String query = searchContactFolderQuery + generateQuery(str);
+                queryFolders(str, query, mountpoints, limit, result);
+            }
         }
         long t2 = System.currentTimeMillis();
 
@@ -440,8 +448,8 @@ public class ContactAutoComplete {
 
         long t3 = System.currentTimeMillis();
 
-        ZimbraLog.gal.info("autocomplete: overall=%dms, ranking=%dms, folder=%dms, gal=%dms",
-                t3 - t0, t1 - t0, t2 - t1, t3 - t2);
+        ZimbraLog.gal.info("autocomplete: overall=%dms, ranking=%dms, folder=%dms, gal=%dms, indexed=%b",
+                t3 - t0, t1 - t0, t2 - t1, t3 - t2, index != null);
         return result;
     }
 
@@ -809,15 +817,11 @@ public class ContactAutoComplete {
                 if (hit instanceof ContactHit) {
                     Contact c = ((ContactHit) hit).getContact();
                     ZimbraLog.gal.debug("hit: %d", c.getId());
-                    fields = c.getFields();
-                    id = new ItemId(c);
-                    fid = c.getFolderId();
-                    if(returnFullContactData) {
-                        List<Attachment> contactAttachments = c.getAttachments();
-                        if (contactAttachments != null && contactAttachments.size() != 0) {
-                            fields.put("image", c.getId() + "_" + contactAttachments.get(0).getName());
-                        }
+                    addMatchedContact(str, c, result);
+                    if (!result.canBeCached) {
+                        return;
                     }
+                    continue;
                 } else if (hit instanceof ProxiedHit) {
                     fields = new HashMap<String, String>();
                     Element top = ((ProxiedHit) hit).getElement();
@@ -858,6 +862,79 @@ public class ContactAutoComplete {
         }
     }
 
+    private void addMatchedContact(String str, Contact c, AutoCompleteResult result) {
+        Map<String, String> fields = c.getFields();
+        if (returnFullContactData) {
+            List<Attachment> contactAttachments = c.getAttachments();
+            if (contactAttachments != null && contactAttachments.size() != 0) {
+                fields.put("image", c.getId() + "_" + contactAttachments.get(0).getName());
+            }
+        }
+        addMatchedContacts(str, fields, c.getFolderId(), new ItemId(c), result);
+    }
+
+    /**
+     * Matches local contact folders against the in-memory {@link ContactPrefixIndex} instead of
+     * Lucene.  Contacts in the ranking table are still offered first; mountpoints are still
+     * searched through the (proxied) folder search.
+     */
+    private void queryIndex(Mailbox mbox, ContactPrefixIndex index, String str, List<Folder> folders,
+            Map<ItemId, Mountpoint> mountpoints, int limit, AutoCompleteResult result) throws ServiceException {
+        Set<Integer> localFolders = new HashSet<Integer>();
+        List<Folder> remoteFolders = new ArrayList<Folder>();
+        for (Folder folder : folders) {
+            if (folder instanceof Mountpoint) {
+                remoteFolders.add(folder);
+            } else {
+                localFolders.add(folder.getId());
+            }
+        }
+
+        List<String> emailAddress = Lists.newArrayListWithExpectedSize(limit);
+        for (ContactEntry contactEntry : result.rankings.search(str)) {
+            if (emailAddress.size() == limit) {
+                break;
+            }
+            String email = contactEntry.getEmail();
+            if (!StringUtil.isNullOrEmpty(email)) {
+                emailAddress.add(email);
+            }
+        }
+        List<String> tokens = Lists.newArrayListWithExpectedSize(1);
+        for (String token : TOKEN_SPLITTER.split(str)) {
+            tokens.add(token.toLowerCase());
+        }
+
+        Set<Integer> seen = new HashSet<Integer>();
+        addIndexedContacts(mbox, str, index.lookup(emailAddress, localFolders), seen, result);
+        if (result.canBeCached) {
+            addIndexedContacts(mbox, str, index.search(tokens, localFolders), seen, result);
+        }
+        if (result.entries.size() < limit && !remoteFolders.isEmpty()) {
+            queryFolders(str, generateFolderQuery(remoteFolders) + generateQuery(str), mountpoints, limit, result);
+        }
+    }
+
+    private void addIndexedContacts(Mailbox mbox, String str, List<Integer> ids, Set<Integer> seen,
+            AutoCompleteResult result) throws ServiceException {
+        for (int id : ids) {
+            if (!seen.add(id)) {
+                continue;
+            }
+            Contact c;
+            try {
+                c = mbox.getContactById(octxt, id);
+            } catch (MailServiceException.NoSuchItemException e) {
+                continue; // deleted since the index was read
+            }
+            ZimbraLog.gal.debug("indexed hit: %d", id);
+            addMatchedContact(str, c, result);
+            if (!result.canBeCached) {
+                return;
+            }
+        }
+    }
+
     private String generateFolderQuery(Collection<Folder> folders) {
         StringBuilder buf = new StringBuilder("(");
         boolean first = true;
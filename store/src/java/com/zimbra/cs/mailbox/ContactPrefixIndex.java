@@ -0,0 +1,370 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.mailbox.ContactConstants;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.mailbox.MailItem.Type;
+import com.zimbra.cs.session.PendingModifications.Change;
+import com.zimbra.cs.session.PendingModifications.ModificationKey;
+import com.zimbra.cs.stats.ZimbraPerf;
+
+/**
+ * In-memory prefix index over the name and email tokens of the contacts in a mailbox, used by
+ * {@link ContactAutoComplete} to find candidate contacts without a Lucene search.
+ * <p>
+ * The index is built on first use from the mailbox's contact list and then kept current by
+ * {@link Listener} as contacts are created, modified and deleted.  It only narrows the set of
+ * candidates; {@link ContactAutoComplete#addMatchedContacts} still decides what actually matches,
+ * so every token that the matching rules could match on must be indexed here.
+ */
+public final class ContactPrefixIndex {
+
+    private static final Splitter TOKEN_SPLITTER =
+            Splitter.on(CharMatcher.whitespace()).omitEmptyStrings().trimResults();
+
+    /** Contact fields whose whitespace separated words are matched by prefix. */
+    private static final String[] NAME_FIELDS = {
+        ContactConstants.A_firstName, ContactConstants.A_middleName, ContactConstants.A_lastName,
+        ContactConstants.A_fullName, ContactConstants.A_nickname,
+        ContactConstants.A_phoneticFirstName, ContactConstants.A_phoneticLastName
+    };
+
+    private static final Cache<Integer, ContactPrefixIndex> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(LC.contact_autocomplete_index_cache_size.intValue())
+            .expireAfterAccess(LC.contact_autocomplete_index_idle_minutes.longValue(), TimeUnit.MINUTES)
+            .build();
+
+    private static final class Entry {
+        final int folderId;
+        final String[] tokens;
+
+        Entry(int folderId, String[] tokens) {
+            this.folderId = folderId;
+            this.tokens = tokens;
+        }
+    }
+
+    private final int mailboxId;
+    private final boolean oversized;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Set<Integer>> tokens = new TreeMap<String, Set<Integer>>();
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+    private ContactPrefixIndex(int mailboxId, boolean oversized) {
+        this.mailboxId = mailboxId;
+        this.oversized = oversized;
+    }
+
+    /**
+     * Returns the index for the mailbox, building it if necessary.
+     *
+     * @return null if the index is disabled, the mailbox has too many contacts to index, or the
+     * mailbox changed while the index was being built; callers fall back to a Lucene search
+     */
+    public static ContactPrefixIndex get(Mailbox mbox) {
+        if (!LC.contact_autocomplete_index_enabled.booleanValue()) {
+            return null;
+        }
+        ContactPrefixIndex index = CACHE.getIfPresent(mbox.getId());
+        if (index != null) {
+            ZimbraPerf.COUNTER_CONTACT_AC_INDEX.increment(index.oversized ? 0 : 100);
+            return index.oversized ? null : index;
+        }
+        ZimbraPerf.COUNTER_CONTACT_AC_INDEX.increment(0);
+        try {
+            return build(mbox);
+        } catch (ServiceException e) {
+            ZimbraLog.gal.warn("unable to build autocomplete index for mailbox %d", mbox.getId(), e);
+            return null;
+        }
+    }
+
+    private static ContactPrefixIndex build(Mailbox mbox) throws ServiceException {
+        long start = System.currentTimeMillis();
+        int changeId = mbox.getLastChangeID();
+        List<MailItem> contacts = mbox.getItemList(new OperationContext(mbox), MailItem.Type.CONTACT);
+        if (contacts.size() > LC.contact_autocomplete_index_max_contacts.intValue()) {
+            ZimbraLog.gal.debug("not indexing %d contacts in mailbox %d for autocomplete",
+                    contacts.size(), mbox.getId());
+            CACHE.put(mbox.getId(), new ContactPrefixIndex(mbox.getId(), true));
+            return null;
+        }
+        ContactPrefixIndex index = new ContactPrefixIndex(mbox.getId(), false);
+        for (MailItem item : contacts) {
+            index.add((Contact) item);
+        }
+        CACHE.put(mbox.getId(), index);
+        // a change committed after the contact list was read may have been notified before the
+        // index was published; drop it rather than serve results that miss that change
+        if (mbox.getLastChangeID() != changeId) {
+            CACHE.invalidate(mbox.getId());
+            return null;
+        }
+        ZimbraLog.gal.debug("built autocomplete index for mailbox %d: contacts=%d, tokens=%d, elapsed=%dms",
+                mbox.getId(), contacts.size(), index.tokens.size(), System.currentTimeMillis() - start);
+        return index;
+    }
+
+    private static void invalidate(int mailboxId) {
+        CACHE.invalidate(mailboxId);
+    }
+
+    /** Drops the index of a deleted mailbox, since its id may be reused. */
+    static void purgeMailbox(Mailbox mbox) {
+        invalidate(mbox.getId());
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        CACHE.invalidateAll();
+    }
+
+    @VisibleForTesting
+    static ContactPrefixIndex peek(int mailboxId) {
+        return CACHE.getIfPresent(mailboxId);
+    }
+
+    /**
+     * Returns the ids of the contacts in the given folders that have, for every query token, an
+     * indexed token starting with it.  Ids are in ascending order.
+     *
+     * @param queryTokens lower-cased query tokens
+     */
+    public List<Integer> search(List<String> queryTokens, Set<Integer> folderIds) {
+        if (queryTokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+        lock.readLock().lock();
+        try {
+            Set<Integer> result = null;
+            for (String prefix : queryTokens) {
+                Set<Integer> ids = new TreeSet<Integer>();
+                for (Map.Entry<String, Set<Integer>> e : tokens.tailMap(prefix, true).entrySet()) {
+                    if (!e.getKey().startsWith(prefix)) {
+                        break;
+                    }
+                    if (result == null) {
+                        ids.addAll(e.getValue());
+                    } else {
+                        for (Integer id : e.getValue()) {
+                            if (result.contains(id)) {
+                                ids.add(id);
+                            }
+                        }
+                    }
+                }
+                result = ids;
+                if (result.isEmpty()) {
+                    break;
+                }
+            }
+            return filter(result, folderIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ids of the contacts in the given folders that have one of the given email
+     * addresses.
+     */
+    public List<Integer> lookup(Collection<String> emails, Set<Integer> folderIds) {
+        lock.readLock().lock();
+        try {
+            Set<Integer> result = new LinkedHashSet<Integer>();
+            for (String email : emails) {
+                Set<Integer> ids = tokens.get(email.toLowerCase());
+                if (ids != null) {
+                    result.addAll(ids);
+                }
+            }
+            return filter(result, folderIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Integer> filter(Collection<Integer> ids, Set<Integer> folderIds) {
+        List<Integer> result = new ArrayList<Integer>(ids.size());
+        for (Integer id : ids) {
+            Entry entry = entries.get(id);
+            if (entry != null && folderIds.contains(entry.folderId)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void add(Contact contact) {
+        Set<String> words = new LinkedHashSet<String>();
+        for (Map.Entry<String, String> field : contact.getFields().entrySet()) {
+            String value = field.getValue();
+            if (value == null || value.isEmpty()) {
+                continue;
+            }
+            // email fields are configurable per account; index anything that looks like an address
+            if (value.indexOf('@') >= 0) {
+                words.add(value.toLowerCase());
+            }
+        }
+        for (String name : NAME_FIELDS) {
+            String value = contact.get(name);
+            if (value != null) {
+                for (String word : TOKEN_SPLITTER.split(value)) {
+                    words.add(word.toLowerCase());
+                }
+            }
+        }
+        Entry entry = new Entry(contact.getFolderId(), words.toArray(new String[words.size()]));
+        lock.writeLock().lock();
+        try {
+            removeLocked(contact.getId());
+            entries.put(contact.getId(), entry);
+            for (String word : entry.tokens) {
+                Set<Integer> ids = tokens.get(word);
+                if (ids == null) {
+                    ids = new TreeSet<Integer>();
+                    tokens.put(word, ids);
+                }
+                ids.add(contact.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(int id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        for (String word : entry.tokens) {
+            Set<Integer> ids = tokens.get(word);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                tokens.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Applies committed contact changes to the index of the mailbox, if one is loaded.
+     */
+    public static class Listener extends MailboxListener {
+        private static final Set<Type> TYPES = EnumSet.of(MailItem.Type.CONTACT);
+
+        @Override
+        public void notify(ChangeNotification notification) {
+            if (notification.mods.deleted != null) {
+                ContactPrefixIndex index = null;
+                for (Map.Entry<ModificationKey, Change> e : notification.mods.deleted.entrySet()) {
+                    if (e.getValue().what != MailItem.Type.CONTACT) {
+                        continue;
+                    }
+                    if (index == null) {
+                        index = find(notification);
+                        if (index == null) {
+                            break;
+                        } else if (index.oversized) {
+                            // the mailbox may now be small enough to index
+                            invalidate(index.mailboxId);
+                            break;
+                        }
+                    }
+                    index.remove(e.getKey().getItemId());
+                }
+            }
+            if (notification.mods.created != null) {
+                for (Object item : notification.mods.created.values()) {
+                    if (item instanceof Contact) {
+                        apply((Contact) item);
+                    }
+                }
+            }
+            if (notification.mods.modified != null) {
+                for (Change change : notification.mods.modified.values()) {
+                    if (change.what instanceof Contact) {
+                        apply((Contact) change.what);
+                    }
+                }
+            }
+        }
+
+        private static ContactPrefixIndex find(ChangeNotification notification) {
+            try {
+                Mailbox mbox = MailboxManager.getInstance().getMailboxByAccount(notification.mailboxAccount,
+                        MailboxManager.FetchMode.ONLY_IF_CACHED);
+                return mbox == null ? null : CACHE.getIfPresent(mbox.getId());
+            } catch (ServiceException e) {
+                return null;
+            }
+        }
+
+        private static void apply(Contact contact) {
+            ContactPrefixIndex index = CACHE.getIfPresent(contact.getMailboxId());
+            if (index != null && !index.oversized) {
+                index.add(contact);
+            }
+        }
+
+        @Override
+        public Set<Type> registerForItemTypes() {
+            return TYPES;
+        }
+    }
+}
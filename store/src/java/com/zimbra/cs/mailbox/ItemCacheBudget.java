@@ -0,0 +1,240 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * Bounds the heap used by the item caches of all loaded mailboxes to {@code zimbra_mailbox_item_cache_heap_percent}
+ * of the maximum heap.
+ * <p>
+ * Every second, the sizes of all item caches are added up.  When the total is over budget, each mailbox is given a
+ * fair share of the budget (max-min fairness: mailboxes using less than an equal share keep what they have, and the
+ * rest is split evenly among the others), and the caches over their share are trimmed, least recently used items
+ * first.  Mailboxes busy in a transaction are skipped, and trim themselves to their share when the transaction ends.
+ */
+public final class ItemCacheBudget {
+
+    private static final long INTERVAL_MS = 1000L;
+    private static final ItemCacheBudget INSTANCE = new ItemCacheBudget(
+            Runtime.getRuntime().maxMemory() / 100 * Math.max(0, LC.zimbra_mailbox_item_cache_heap_percent.intValue()));
+
+    private final long budget;
+    // weak keys, so that a mailbox evicted from MailboxManager takes its item cache along to the garbage collector
+    private final Map<Mailbox, Boolean> mailboxes = Collections.synchronizedMap(new WeakHashMap<Mailbox, Boolean>());
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long fairShare = Long.MAX_VALUE;
+    private volatile long cachedBytes = 0;
+    private ScheduledExecutorService enforcer;
+
+    @VisibleForTesting
+    ItemCacheBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public static ItemCacheBudget getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts accounting for the item cache of the mailbox.
+     */
+    void register(Mailbox mbox) {
+        mailboxes.put(mbox, Boolean.TRUE);
+        if (budget > 0) {
+            startEnforcer();
+        }
+    }
+
+    private synchronized void startEnforcer() {
+        if (enforcer != null) {
+            return;
+        }
+        enforcer = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ItemCacheBudget").setDaemon(true).build());
+        enforcer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    enforce();
+                } catch (Throwable t) { // don't let the scheduler cancel the task
+                    ZimbraLog.cache.warn("item cache budget enforcement failed", t);
+                }
+            }
+        }, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private List<Mailbox> getMailboxes() {
+        synchronized (mailboxes) {
+            return new ArrayList<Mailbox>(mailboxes.keySet());
+        }
+    }
+
+    @VisibleForTesting
+    void enforce() {
+        List<Mailbox> list = getMailboxes();
+        long[] sizes = new long[list.size()];
+        long total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = list.get(i).getItemCacheBytes();
+            total += sizes[i];
+        }
+        cachedBytes = total;
+        if (budget <= 0 || total <= budget) {
+            fairShare = Long.MAX_VALUE;
+            return;
+        }
+
+        long share = getFairShare(sizes, budget);
+        fairShare = share;
+        int skipped = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] > share && !list.get(i).shrinkItemCache(share)) {
+                skipped++;
+            }
+        }
+        ZimbraLog.cache.debug("item caches over budget (%d/%d bytes), trimmed to %d bytes per mailbox, %d busy",
+                total, budget, share, skipped);
+    }
+
+    /**
+     * Returns the largest per-mailbox size such that the caches, each capped at that size, fit in the budget.
+     */
+    @VisibleForTesting
+    static long getFairShare(long[] sizes, long budget) {
+        long[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        long remaining = budget;
+        for (int i = 0; i < sorted.length; i++) {
+            long share = remaining / (sorted.length - i);
+            if (sorted[i] > share) {
+                return share;
+            }
+            remaining -= sorted[i];
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of bytes each mailbox may currently keep in its item cache, or {@link Long#MAX_VALUE} while
+     * the item caches are within budget.
+     */
+    public long getFairShare() {
+        return fairShare;
+    }
+
+    /**
+     * Returns the heap budget of all item caches in bytes, or 0 if item caches are only bounded by item count.
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the estimated size of all item caches at the last check.
+     */
+    public long getCachedBytes() {
+        return cachedBytes;
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictions.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the item cache usage of all loaded mailboxes that have an item cache.
+     */
+    public List<Usage> getUsage() {
+        List<Usage> result = new ArrayList<Usage>();
+        for (Mailbox mbox : getMailboxes()) {
+            Usage usage = mbox.getItemCacheUsage();
+            if (usage != null) {
+                result.add(usage);
+            }
+        }
+        return result;
+    }
+
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+    /**
+     * Item cache usage of one mailbox.
+     */
+    public static final class Usage {
+        public final int mailboxId;
+        public final long bytes;
+        public final int items;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        Usage(int mailboxId, long bytes, int items, long hits, long misses, long evictions) {
+            this.mailboxId = mailboxId;
+            this.bytes = bytes;
+            this.items = items;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "mailbox=" + mailboxId + ",bytes=" + bytes + ",items=" + items + ",hits=" + hits +
+                    ",misses=" + misses + ",evictions=" + evictions;
+        }
+    }
+}
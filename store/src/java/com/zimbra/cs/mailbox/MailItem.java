@@ -815,6 +815,30 @@ public abstract class MailItem implements Comparable<MailItem>, ScheduledTaskRes
         return getId();
     }
 
+    /**
+     * Estimated heap size of an item with no strings: the object and its {@link UnderlyingData}, with their headers,
+     * boxed fields and references.
+     */
+    static final int ITEM_HEAP_SIZE = 512;
+    /** Estimated heap size of one tag name reference, including its share of the tag array. */
+    static final int TAG_HEAP_SIZE = 48;
+
+    /**
+     * Returns a rough estimate of the heap used by this object, by which the mailbox's item cache weighs it against
+     * the server-wide item cache budget.  Strings count two bytes per character.  Subclasses holding sizable state
+     * add their own share.
+     */
+    int estimateHeapSize() {
+        String[] tags = mData.getTags();
+        return ITEM_HEAP_SIZE + 2 * (length(mData.getSubject()) + length(mData.name) + length(mData.uuid) +
+                length(mData.locator) + length(mData.getBlobDigest()) + length(mData.getPrevFolders())) +
+                TAG_HEAP_SIZE * (tags == null ? 0 : tags.length);
+    }
+
+    static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
     /** Returns the item's UUID.  UUIDs are globally unique. */
     public String getUuid() {
         return mData.uuid;
@@ -22,7 +22,6 @@ import java.io.Reader;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
-import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -42,7 +41,13 @@ import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
@@ -60,7 +65,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
 import com.zimbra.client.ZFolder;
 import com.zimbra.client.ZMailbox;
 import com.zimbra.client.ZMailbox.Options;
@@ -382,6 +390,7 @@ public class Mailbox implements MailboxStore {
         long timestamp = System.currentTimeMillis();
         int depth = 0;
         boolean active;
+        String caller = null;
         DbConnection conn = null;
         RedoableOp recorder = null;
         List<IndexItemEntry> indexItems = new ArrayList<IndexItemEntry>();
@@ -423,6 +432,7 @@ public class Mailbox implements MailboxStore {
         void startChange(String caller, OperationContext ctxt, RedoableOp op, boolean write) {
             active = true;
             if (depth++ == 0) {
+                this.caller = caller;
                 octxt = ctxt;
                 recorder = op;
                 this.writeChange = write;
@@ -453,7 +463,8 @@ public class Mailbox implements MailboxStore {
 
         DbConnection getConnection() throws ServiceException {
             if (conn == null) {
-                conn = DbPool.getConnection(Mailbox.this);
+                MailboxOperation op = getOperation();
+                conn = DbPool.getConnection(Mailbox.this, op != null ? op.name() : caller);
                 ZimbraLog.mailbox.debug("  fetching new DB connection");
             }
             return conn;
@@ -498,6 +509,7 @@ public class Mailbox implements MailboxStore {
         void reset() {
             DbPool.quietClose(conn);
             this.active = false;
+            this.caller = null;
             this.conn = null;
             this.octxt = null;
             this.tcon = null;
@@ -608,20 +620,83 @@ public class Mailbox implements MailboxStore {
         }
     }
 
+    /**
+     * Cache of the mailbox's items other than folders and tags.  Each item is weighed by its estimated heap size, so
+     * that {@link ItemCacheBudget} can keep the caches of all mailboxes within a server-wide budget.
+     */
     private static class ItemCache {
-        private final Map<Integer /* id */, MailItem> mapById;
+        private static final Weigher<MailItem> WEIGHER = new Weigher<MailItem>() {
+            @Override
+            public int weightOf(MailItem item) {
+                return Math.max(1, item.estimateHeapSize());
+            }
+        };
+
+        private final ConcurrentLinkedHashMap<Integer /* id */, MailItem> mapById;
         private final Map<String /* uuid */, Integer /* id */> uuid2id;
         private final Mailbox mbox;
         private boolean isAlwaysOn = false;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
 
         public ItemCache(Mailbox mbox) {
-            mapById = new ConcurrentLinkedHashMap.Builder<Integer, MailItem>().maximumWeightedCapacity(
-                            MAX_ITEM_CACHE_WITH_LISTENERS).build();
             uuid2id = new ConcurrentHashMap<String, Integer>(MAX_ITEM_CACHE_WITH_LISTENERS);
+            // the map only evicts by itself if a single mailbox outgrows the whole server-wide budget
+            long budget = ItemCacheBudget.getInstance().getBudget();
+            mapById = new ConcurrentLinkedHashMap.Builder<Integer, MailItem>()
+                    .maximumWeightedCapacity(budget > 0 ? (int) Math.min(budget, Integer.MAX_VALUE) : Integer.MAX_VALUE)
+                    .weigher(WEIGHER)
+                    .listener(new EvictionListener<Integer, MailItem>() {
+                        @Override
+                        public void onEviction(Integer id, MailItem item) {
+                            String uuid = item.getUuid();
+                            if (uuid != null) {
+                                uuid2id.remove(uuid);
+                            }
+                            recordEviction();
+                        }
+                    })
+                    .build();
             this.mbox = mbox;
             this.isAlwaysOn = Zimbra.isAlwaysOn();
         }
 
+        private MailItem recordAccess(MailItem item) {
+            if (item != null) {
+                hits.incrementAndGet();
+                ItemCacheBudget.getInstance().recordHit();
+            } else {
+                misses.incrementAndGet();
+                ItemCacheBudget.getInstance().recordMiss();
+            }
+            return item;
+        }
+
+        void recordEviction() {
+            evictions.incrementAndGet();
+            ItemCacheBudget.getInstance().recordEviction();
+        }
+
+        /**
+         * Returns the estimated heap size of the cached items.
+         */
+        long getBytes() {
+            return isAlwaysOn ? 0 : mapById.weightedSize();
+        }
+
+        /**
+         * Returns the IDs of the cached items, least recently used first.
+         */
+        Collection<Integer> getLeastRecentlyUsedIds() {
+            return mapById.ascendingKeySet();
+        }
+
+        ItemCacheBudget.Usage getUsage() {
+            return new ItemCacheBudget.Usage(mbox.getId(), getBytes(), size(), hits.get(), misses.get(),
+                    evictions.get());
+        }
+
         public void put(MailItem item) {
             if (isAlwaysOn) {
                 try {
@@ -649,7 +724,7 @@ public class Mailbox implements MailboxStore {
                 }
                 return item;
             } else {
-                return mapById.get(id);
+                return recordAccess(mapById.get(id));
             }
         }
 
@@ -665,7 +740,7 @@ public class Mailbox implements MailboxStore {
             } else {
                 // Always fetch item from mapById map to preserve LRU's access time ordering.
                 Integer id = uuid2id.get(uuid);
-                return id != null ? mapById.get(id) : null;
+                return recordAccess(id != null ? mapById.get(id) : null);
             }
         }
 
@@ -745,6 +820,12 @@ public class Mailbox implements MailboxStore {
     private static final int MAX_ITEM_CACHE_WITH_LISTENERS = LC.zimbra_mailbox_active_cache.intValue();
     private static final int MAX_ITEM_CACHE_WITHOUT_LISTENERS = LC.zimbra_mailbox_inactive_cache.intValue();
     private static final int MAX_ITEM_CACHE_FOR_GALSYNC_MAILBOX = LC.zimbra_mailbox_galsync_cache.intValue();
+    // Pre-populates item caches in the background, see warmItemCache(). When the queue is full, the warmup is skipped
+    // and the cache fills up one item at a time.
+    private static final ExecutorService ITEM_CACHE_WARMUP_EXECUTOR = new ThreadPoolExecutor(
+            LC.zimbra_mailbox_cache_warmup_threads.intValue(), LC.zimbra_mailbox_cache_warmup_threads.intValue(),
+            0L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(1000),
+            new ThreadFactoryBuilder().setNameFormat("ItemCacheWarmup-%d").setDaemon(true).build());
     private static final int MAX_MSGID_CACHE = 10;
 
     private final int mId;
@@ -754,7 +835,10 @@ public class Mailbox implements MailboxStore {
 
     private FolderCache mFolderCache;
     private Map<Object, Tag> mTagCache;
-    private SoftReference<ItemCache> mItemCache = new SoftReference<ItemCache>(null);
+    private volatile ItemCache mItemCache = null;
+    // set when a new item cache was created while nobody was listening, so that the first session warms it up
+    private volatile boolean itemCacheWarmupPending = false;
+    private final AtomicBoolean itemCacheWarmupScheduled = new AtomicBoolean(false);
     private final Map<String, Integer> mConvHashes = new ConcurrentLinkedHashMap.Builder<String, Integer>()
                     .maximumWeightedCapacity(MAX_MSGID_CACHE).build();
     private final Map<String, Integer> mSentMessageIDs = new ConcurrentLinkedHashMap.Builder<String, Integer>()
@@ -1115,6 +1199,9 @@ public class Mailbox implements MailboxStore {
         }
 
         ZimbraLog.mailbox.debug("adding listener: %s", session);
+        if (itemCacheWarmupPending) {
+            scheduleItemCacheWarmup();
+        }
     }
 
     /** Removes a {@link Session} from the set of listeners notified on
@@ -1848,11 +1935,17 @@ public class Mailbox implements MailboxStore {
         }
 
         // keep a hard reference to the item cache to avoid having it GCed during the op
-        ItemCache cache = mItemCache.get();
+        ItemCache cache = mItemCache;
         if (cache == null) {
             cache = new ItemCache(this);
-            mItemCache = new SoftReference<ItemCache>(cache);
+            mItemCache = cache;
+            ItemCacheBudget.getInstance().register(this);
             ZimbraLog.cache.debug("created a new MailItem cache for mailbox " + getId());
+            if (mListeners.isEmpty()) {
+                itemCacheWarmupPending = true;
+            } else {
+                scheduleItemCacheWarmup();
+            }
         }
         currentChange().itemCache = cache;
 
@@ -2013,11 +2106,80 @@ public class Mailbox implements MailboxStore {
         return currentChange().itemCache;
     }
 
+    /**
+     * Warms up the item cache in the background, unless a warmup of this mailbox is already queued.
+     */
+    private void scheduleItemCacheWarmup() {
+        itemCacheWarmupPending = false;
+        if (!LC.zimbra_mailbox_cache_warmup.booleanValue() || Zimbra.isAlwaysOn() ||
+                !itemCacheWarmupScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ITEM_CACHE_WARMUP_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ZimbraLog.addMboxToContext(mId);
+                    try {
+                        warmItemCache();
+                    } finally {
+                        itemCacheWarmupScheduled.set(false);
+                        ZimbraLog.clearContext();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            itemCacheWarmupScheduled.set(false);
+            ZimbraLog.cache.debug("item cache warmup queue is full, skipping mailbox %d", mId);
+        }
+    }
+
+    /**
+     * Loads the messages a syncing client is most likely to ask for into the item cache in two batched queries,
+     * instead of letting the cache fill up one {@code SELECT} per item: the latest unread messages, then the latest
+     * read messages. Folders and tags are not included, they are always cached.
+     */
+    void warmItemCache() {
+        int limit = Math.min(LC.zimbra_mailbox_cache_warmup_items.intValue(),
+                mListeners.isEmpty() ? MAX_ITEM_CACHE_WITHOUT_LISTENERS : MAX_ITEM_CACHE_WITH_LISTENERS);
+        if (limit <= 0 || !open) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int rows = 0;
+        try {
+            boolean success = false;
+            try {
+                beginReadTransaction("warmItemCache", null);
+                List<UnderlyingData> unread = DbMailItem.getWarmupItems(this, true, limit / 2);
+                for (UnderlyingData data : unread) {
+                    getItem(data);
+                }
+                // read messages only, so that no unread row is fetched (and counted) twice
+                List<UnderlyingData> recent = DbMailItem.getWarmupItems(this, false, limit - unread.size());
+                for (UnderlyingData data : recent) {
+                    getItem(data);
+                }
+                rows = unread.size() + recent.size();
+                success = true;
+            } finally {
+                endTransaction(success);
+            }
+        } catch (ServiceException e) {
+            ZimbraLog.cache.warn("Unable to warm up item cache of mailbox %d", mId, e);
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        ZimbraPerf.HISTOGRAM_MBOX_CACHE_WARMUP_MS.increment(elapsed);
+        ZimbraPerf.HISTOGRAM_MBOX_CACHE_WARMUP_ROWS.increment(rows);
+        ZimbraLog.cache.debug("warmed up item cache of mailbox %d with %d rows in %dms", mId, rows, elapsed);
+    }
+
     private void clearItemCache() {
         if (currentChange().isActive()) {
             currentChange().itemCache.clear();
         } else {
-            mItemCache.clear();
+            mItemCache = null;
         }
         try {
             if (Zimbra.isAlwaysOn()) {
@@ -2513,6 +2675,7 @@ public class Mailbox implements MailboxStore {
                     // remove all traces of the mailbox from the Mailbox cache
                     //   (so anyone asking for the Mailbox gets NO_SUCH_MBOX or creates a fresh new empty one with a different id)
                     MailboxManager.getInstance().markMailboxDeleted(this);
+                    ContactPrefixIndex.purgeMailbox(this);
 
                     // attempt to nuke the store and index
                     try {
@@ -2824,7 +2987,7 @@ public class Mailbox implements MailboxStore {
         }
         assert (currentChange().depth == 0);
 
-        ItemCache cache = mItemCache.get();
+        ItemCache cache = mItemCache;
         FolderCache folders = mFolderCache == null || Collections.disjoint(pms.changedTypes, FOLDER_TYPES) ? mFolderCache
                         : snapshotFolders();
 
@@ -2912,6 +3075,12 @@ public class Mailbox implements MailboxStore {
 
     public MailItem getItemById(OperationContext octxt, int id, MailItem.Type type, boolean fromDumpster)
                     throws ServiceException {
+        if (!fromDumpster) {
+            MailItem item = getCachedItemOptimistic(octxt, id, type);
+            if (item != null) {
+                return item;
+            }
+        }
         boolean success = false;
         try {
             // tag/folder caches are populated in beginTransaction...
@@ -2928,6 +3097,47 @@ public class Mailbox implements MailboxStore {
         return getItemById(id, type, false);
     }
 
+    /**
+     * Looks up a folder or tag without taking the mailbox lock, validating the read against the lock's write stamp.
+     * Only the owner's lookups qualify, since ACL checks need the transaction context. Returns null whenever the
+     * caller must fall back to a locked read transaction, including on a cache miss.
+     */
+    private MailItem getCachedItemOptimistic(OperationContext octxt, int id, MailItem.Type type) {
+        if (!isCachedType(type) || type == MailItem.Type.FLAG || id < 0 || requiresWriteLock() ||
+                currentChange().active) {
+            return null;
+        }
+        Account authuser = octxt == null ? null : octxt.getAuthenticatedUser();
+        if (authuser != null && !authuser.getId().equals(getAccountId())) {
+            return null;
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0L) {
+            return null;
+        }
+        MailItem item = null;
+        try {
+            if (type == MailItem.Type.TAG) {
+                Map<Object, Tag> tags = mTagCache;
+                item = tags == null ? null : tags.get(id);
+            } else {
+                FolderCache folders = mFolderCache;
+                item = folders == null ? null : folders.get(id);
+            }
+            if (item != null && !MailItem.isAcceptableType(type, MailItem.Type.of(item.mData.type))) {
+                item = null;
+            }
+        } catch (RuntimeException e) {
+            // a concurrent writer left the caches in an intermediate state; validate() will fail below
+            ZimbraLog.mailbox.trace("optimistic read of item %d failed", id, e);
+            item = null;
+        }
+        if (!lock.validate(stamp)) {
+            return null;
+        }
+        return item;
+    }
+
     // Returns true if the item in dumpster is visible to the user.
     // Item is hidden from non-admin user if it is too old or is a spam.
     private boolean isVisibleInDumpster(MailItem item) throws ServiceException {
@@ -10224,6 +10434,7 @@ public class Mailbox implements MailboxStore {
             if (cache == null) {
                 return;
             }
+            trimItemCacheBytes(cache, ItemCacheBudget.getInstance().getFairShare());
 
             int excess = cache.size() - sizeTarget;
             if (excess <= 0) {
@@ -10255,6 +10466,73 @@ public class Mailbox implements MailboxStore {
         }
     }
 
+    /**
+     * Evicts the least recently used items until the cache weighs at most {@code maxBytes}.  Must be called within a
+     * transaction.
+     */
+    private void trimItemCacheBytes(ItemCache cache, long maxBytes) {
+        if (cache.getBytes() <= maxBytes) {
+            return;
+        }
+        for (Integer id : cache.getLeastRecentlyUsedIds()) {
+            if (cache.getBytes() <= maxBytes) {
+                break;
+            }
+            MailItem item = cache.remove(id);
+            if (item != null) {
+                cache.recordEviction();
+                try {
+                    uncache(item); // takes out the children, and the message cache entry
+                } catch (ServiceException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by {@link ItemCacheBudget} to trim the item cache of a mailbox over its share of the server-wide budget.
+     * Doesn't wait for a busy mailbox, which trims itself at the end of its current transaction instead.
+     *
+     * @return false if the mailbox was busy
+     */
+    boolean shrinkItemCache(long maxBytes) {
+        ItemCache cache = mItemCache;
+        if (cache == null || cache.getBytes() <= maxBytes) {
+            return true;
+        }
+        if (!lock.tryLock()) {
+            return false;
+        }
+        try {
+            boolean success = false;
+            try {
+                beginReadTransaction("shrinkItemCache", null);
+                trimItemCacheBytes(currentChange().itemCache, maxBytes);
+                success = true;
+            } finally {
+                endTransaction(success);
+            }
+        } catch (ServiceException e) {
+            ZimbraLog.cache.warn("unable to trim item cache of mailbox %d", mId, e);
+        } finally {
+            lock.release();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the estimated heap size of the items in this mailbox's item cache.
+     */
+    long getItemCacheBytes() {
+        ItemCache cache = mItemCache;
+        return cache != null ? cache.getBytes() : 0;
+    }
+
+    ItemCacheBudget.Usage getItemCacheUsage() {
+        ItemCache cache = mItemCache;
+        return cache != null ? cache.getUsage() : null;
+    }
+
     public boolean attachmentsIndexingEnabled() throws ServiceException {
         return getAccount().isAttachmentsIndexingEnabled();
     }
@@ -18,15 +18,22 @@ package com.zimbra.cs.mailbox;
 
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.SynchronousQueue;
@@ -95,6 +102,11 @@ public final class MailboxIndex {
     private static final ExecutorService REINDEX_EXECUTOR = new ThreadPoolExecutor(
             0, LC.zimbra_reindex_threads.intValue(), 0L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
             new ThreadFactoryBuilder().setNameFormat("ReIndex-%d").setDaemon(true).build());
+    // Workers fetching items and generating their index data for re-index, shared by all re-indexing mailboxes.
+    // Each re-index limits the items it has queued here, see FetchPipeline. Null if re-index runs single-threaded.
+    private static final ExecutorService REINDEX_PIPELINE_EXECUTOR = LC.zimbra_reindex_pipeline_threads.intValue() > 1 ?
+            Executors.newFixedThreadPool(LC.zimbra_reindex_pipeline_threads.intValue(),
+                    new ThreadFactoryBuilder().setNameFormat("ReIndexFetch-%d").setDaemon(true).build()) : null;
 
     private volatile long lastFailedTime = -1;
     // Only one thread may run index at a time.
@@ -107,6 +119,8 @@ public final class MailboxIndex {
     // current compact-indexing operation for this mailbox, or NULL if a compact-index is not in progress.
     private volatile CompactIndexTask compactIndex;
     private volatile SetMultimap<MailItem.Type, Integer> deferredIds; // guarded by IndexHelper
+    // indexed items the index store has not committed yet, still deferred in the DB; guarded by itself
+    private final Set<Integer> uncommittedIds = new HashSet<Integer>();
     boolean indexingSuspended = false;
     int numMaybeIndexDeferredItemsCalls = 0;
 
@@ -424,6 +438,16 @@ public final class MailboxIndex {
         indexDeferredItems(EnumSet.noneOf(MailItem.Type.class), new BatchStatus(), true);
     }
 
+    /**
+     * Re-indexes the given items, or the whole mailbox if {@code ids} is null, in the calling thread.
+     */
+    @VisibleForTesting
+    ReIndexStatus reIndexInForeground(Collection<Integer> ids) throws ServiceException {
+        ReIndexTask task = new ReIndexTask(mailbox, ids);
+        task.reIndex();
+        return task.status;
+    }
+
     /**
      * Kick off the requested re-index in a background thread. The re-index is run on a best-effort basis, if it fails
      * a WARN message is logged, but it won't be retried.
@@ -717,6 +741,10 @@ public final class MailboxIndex {
      * Index a potentially very large list of {@link MailItem}s. Iterate through the list of items, fetch each one and
      * call generateIndexData(). Buffer the items, IndexData into a chunk and when the chunk gets sufficiently large,
      * run a Mailbox transaction to actually do the indexing
+     * <p>
+     * For re-index, fetching and generateIndexData() (blob read, MIME parse, text extraction) are spread over the
+     * re-index pipeline workers (see {@link FetchPipeline}), while this thread stays the single writer that adds the
+     * chunks to the index in the original order.
      *
      * @param ids item IDs to index
      * @param status progress will be written to the status
@@ -730,85 +758,196 @@ public final class MailboxIndex {
             return;
         }
 
+        FetchPipeline pipeline = null;
+        if (status instanceof ReIndexStatus && REINDEX_PIPELINE_EXECUTOR != null && ids.size() > 1) {
+            pipeline = new FetchPipeline(ids, (ReIndexStatus) status);
+        }
+        Iterator<Integer> remaining = ids.iterator();
+
         // we re-index 'chunks' of items -- up to a certain size or count
         List<Mailbox.IndexItemEntry> chunk = new ArrayList<Mailbox.IndexItemEntry>();
         long chunkByteSize = 0;
         int i = 0;
-        for (int id : ids) {
-            i++;
-            status.addProcessed(1);
-
-            // Fetch the item and generate the list of Lucene documents to index. Do this without holding the Mailbox
-            // lock. Once we've accumulated a "chunk" of items, do a mailbox transaction to actually add them to the
-            // index.
-            ZimbraLog.index.debug("Tokenizing id=%d", id);
-            MailItem item = null;
-            try {
-                mailbox.beginReadTransaction("IndexItemList-Fetch", null);
-                item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, false);
-            } catch (MailServiceException.NoSuchItemException e) { // fallback to dumpster
-                try {
-                    item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, true);
-                } catch (MailServiceException.NoSuchItemException again) { // The item has just been deleted.
-                    ZimbraLog.index.debug("deferred item no longer exist id=%d", id);
-                    removeDeferredId(id);
-                    continue;
+        try {
+            while (pipeline != null ? pipeline.hasNext() : remaining.hasNext()) {
+                i++;
+                // Fetch the item and generate the list of Lucene documents to index. Do this without holding the
+                // Mailbox lock. Once we've accumulated a "chunk" of items, do a mailbox transaction to actually add them
+                // to the index.
+                FetchResult fetched = pipeline != null ? pipeline.next() : fetchIndexItem(remaining.next());
+                status.addProcessed(1);
+                if (fetched.failed) {
+                    status.addFailed(1);
                 }
-            } catch (MailServiceException e) {
-                // fetch without metadata because reindex will regenerate metadata
-                if (MailServiceException.INVALID_METADATA.equals(e.getCode()) && isReIndexInProgress()) {
-                    UnderlyingData ud = DbMailItem.getById(mailbox, id, MailItem.Type.UNKNOWN, false);
-                    ud.metadata = null; // ignore corrupted metadata
-                    item = mailbox.getItem(ud);
-                } else {
-                    throw e;
+                if (fetched.entry != null) {
+                    chunk.add(fetched.entry);
+                    chunkByteSize += fetched.entry.item.getSize();
+                }
+
+                if (!chunk.isEmpty() && (i == ids.size() || chunkByteSize > MAX_TX_BYTES ||
+                        chunk.size() >= MAX_TX_ITEMS)) {
+                    ZimbraLog.index.debug("Batch progress %d/%d", i, ids.size());
+                    indexChunk(chunk, status);
+                    chunk.clear();
+                    chunkByteSize = 0;
+                }
+            }
+            if (!chunk.isEmpty()) { // the last few items were deleted or failed before the size check was reached
+                indexChunk(chunk, status);
+            }
+        } finally {
+            if (pipeline != null) {
+                pipeline.cancel();
+            }
+        }
+    }
+
+    /**
+     * Adds a chunk of items and their index data to the index in one mailbox transaction.
+     */
+    private void indexChunk(List<Mailbox.IndexItemEntry> chunk, BatchStatus status) throws ServiceException {
+        if (status.isCancelled()) {
+            throw ServiceException.INTERRUPTED("cancelled");
+        }
+
+        try {
+            boolean success = false;
+            try {
+                mailbox.beginTransaction("IndexItemList-Commit", null);
+                for (Mailbox.IndexItemEntry entry : chunk) {
+                    mailbox.addIndexItemToCurrentChange(entry);
                 }
-            } catch (Exception e) {
-                ZimbraLog.index.warn("Failed to fetch deferred item id=%d", id, e);
-                status.addFailed(1);
-                continue;
+                success = true;
             } finally {
-                mailbox.endTransaction(item != null);
+                mailbox.endTransaction(success);
             }
+        } catch (ServiceException e) {
+            ZimbraLog.index.warn("Failed to index chunk=%s", chunk, e);
+            status.addFailed(chunk.size());
+        }
+    }
+
+    /**
+     * Result of {@link MailboxIndex#fetchIndexItem(int)}.
+     */
+    private static final class FetchResult {
+        private static final FetchResult SKIPPED = new FetchResult(null, false);
+        private static final FetchResult FAILED = new FetchResult(null, true);
+
+        /** the item and its index data, or null if there is nothing to index */
+        final Mailbox.IndexItemEntry entry;
+        final boolean failed;
+
+        FetchResult(Mailbox.IndexItemEntry entry, boolean failed) {
+            this.entry = entry;
+            this.failed = failed;
+        }
+    }
+
+    /**
+     * Fetches an item and generates its index data. Must be called without holding the mailbox lock. Safe to call
+     * from the re-index pipeline workers, as it only uses a read transaction.
+     *
+     * @throws ServiceException if the item couldn't be fetched and the whole batch has to be aborted
+     */
+    private FetchResult fetchIndexItem(int id) throws ServiceException {
+        ZimbraLog.index.debug("Tokenizing id=%d", id);
+        MailItem item = null;
+        try {
+            mailbox.beginReadTransaction("IndexItemList-Fetch", null);
+            item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, false);
+        } catch (MailServiceException.NoSuchItemException e) { // fallback to dumpster
             try {
-                chunk.add(new Mailbox.IndexItemEntry(item, item.generateIndexData()));
-            } catch (MailItem.TemporaryIndexingException e) {
-                ZimbraLog.index.warn("Temporary index failure id=%d", id, e);
-                lastFailedTime = System.currentTimeMillis();
-                status.addFailed(1);
-                continue;
+                item = mailbox.getItemById(id, MailItem.Type.UNKNOWN, true);
+            } catch (MailServiceException.NoSuchItemException again) { // The item has just been deleted.
+                ZimbraLog.index.debug("deferred item no longer exist id=%d", id);
+                removeDeferredId(id);
+                return FetchResult.SKIPPED;
+            }
+        } catch (MailServiceException e) {
+            // fetch without metadata because reindex will regenerate metadata
+            if (MailServiceException.INVALID_METADATA.equals(e.getCode()) && isReIndexInProgress()) {
+                UnderlyingData ud = DbMailItem.getById(mailbox, id, MailItem.Type.UNKNOWN, false);
+                ud.metadata = null; // ignore corrupted metadata
+                item = mailbox.getItem(ud);
+            } else {
+                throw e;
             }
-            chunkByteSize += item.getSize();
+        } catch (Exception e) {
+            ZimbraLog.index.warn("Failed to fetch deferred item id=%d", id, e);
+            return FetchResult.FAILED;
+        } finally {
+            mailbox.endTransaction(item != null);
+        }
+        try {
+            return new FetchResult(new Mailbox.IndexItemEntry(item, item.generateIndexData()), false);
+        } catch (MailItem.TemporaryIndexingException e) {
+            ZimbraLog.index.warn("Temporary index failure id=%d", id, e);
+            lastFailedTime = System.currentTimeMillis();
+            return FetchResult.FAILED;
+        }
+    }
 
-            if (i == ids.size() || chunkByteSize > MAX_TX_BYTES || chunk.size() >= MAX_TX_ITEMS) {
-                // we have a chunk of items and their corresponding index data -- add them to the index
-                try {
-                    ZimbraLog.index.debug("Batch progress %d/%d", i, ids.size());
+    /**
+     * Runs {@link #fetchIndexItem(int)} for a list of items on the re-index pipeline workers and hands the results
+     * back in list order. At most {@code zimbra_reindex_pipeline_depth} items are fetched ahead of the consumer, which
+     * bounds the memory held by parsed messages waiting for the writer.
+     */
+    private final class FetchPipeline {
+        private final Iterator<Integer> ids;
+        private final ReIndexStatus status;
+        private final Deque<Future<FetchResult>> inflight = new ArrayDeque<Future<FetchResult>>();
+        private final int depth = Math.max(1, LC.zimbra_reindex_pipeline_depth.intValue());
 
-                    if (status.isCancelled()) {
-                        throw ServiceException.INTERRUPTED("cancelled");
-                    }
+        FetchPipeline(Collection<Integer> ids, ReIndexStatus status) {
+            this.ids = ids.iterator();
+            this.status = status;
+        }
 
-                    try {
-                        boolean success = false;
+        boolean hasNext() {
+            return !inflight.isEmpty() || ids.hasNext();
+        }
+
+        FetchResult next() throws ServiceException {
+            while (inflight.size() < depth && ids.hasNext()) {
+                final int id = ids.next();
+                inflight.add(REINDEX_PIPELINE_EXECUTOR.submit(new Callable<FetchResult>() {
+                    @Override
+                    public FetchResult call() throws ServiceException {
+                        ZimbraLog.addMboxToContext(mailbox.getId());
                         try {
-                            mailbox.beginTransaction("IndexItemList-Commit", null);
-                            for (Mailbox.IndexItemEntry entry : chunk) {
-                                mailbox.addIndexItemToCurrentChange(entry);
-                            }
-                            success = true;
+                            return fetchIndexItem(id);
                         } finally {
-                            mailbox.endTransaction(success);
+                            ZimbraLog.clearContext();
                         }
-                    } catch (ServiceException e) {
-                        ZimbraLog.index.warn("Failed to index chunk=%s", chunk, e);
-                        status.addFailed(chunk.size());
                     }
-                } finally {
-                    chunk.clear();
-                    chunkByteSize = 0;
+                }));
+            }
+            status.setInFlight(inflight.size());
+            try {
+                return inflight.poll().get();
+            } catch (InterruptedException e) {
+                throw ServiceException.INTERRUPTED("interrupted while waiting for re-index pipeline");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof ServiceException) {
+                    throw (ServiceException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
                 }
+                throw ServiceException.FAILURE("re-index pipeline failed", cause);
+            }
+        }
+
+        /**
+         * Drops the items that have been submitted but not consumed, e.g. after cancellation or a failure.
+         */
+        void cancel() {
+            for (Future<FetchResult> future : inflight) {
+                future.cancel(false);
             }
+            inflight.clear();
+            status.setInFlight(0);
         }
     }
 
@@ -959,11 +1098,30 @@ public final class MailboxIndex {
             }
         }
 
-        List<Integer> ids = new ArrayList<Integer>(indexed.size());
+        final List<Integer> ids = new ArrayList<Integer>(indexed.size());
         for (MailItem item : indexed) {
             ids.add(item.getId());
         }
-        DbMailItem.setIndexIds(mailbox.getOperationConnection(), mailbox, ids);
+        synchronized (uncommittedIds) {
+            uncommittedIds.addAll(ids);
+        }
+        boolean committed = indexStore.isCommitted(new Runnable() {
+            @Override
+            public void run() {
+                MarkIndexedTask task = new MarkIndexedTask(ids);
+                try {
+                    submit(task);
+                } catch (RejectedExecutionException e) {
+                    task.run();
+                }
+            }
+        });
+        if (committed) {
+            synchronized (uncommittedIds) {
+                uncommittedIds.removeAll(ids);
+            }
+            DbMailItem.setIndexIds(mailbox.getOperationConnection(), mailbox, ids);
+        }
         for (MailItem item : indexed) {
             item.mData.indexId = item.getId();
             removeDeferredId(item.getId());
@@ -1221,6 +1379,10 @@ public final class MailboxIndex {
             DbConnection conn = DbPool.getConnection(mailbox);
             try {
                 deferredIds = DbMailItem.getIndexDeferredIds(conn, mailbox);
+                // already indexed, waiting for the index store to commit them
+                synchronized (uncommittedIds) {
+                    deferredIds.values().removeAll(uncommittedIds);
+                }
             } finally {
                 conn.closeQuietly();
             }
@@ -1261,6 +1423,9 @@ public final class MailboxIndex {
             default:
                 break;
         }
+        synchronized (uncommittedIds) {
+            uncommittedIds.remove(item.getId()); // stays deferred in the DB until re-indexed
+        }
 
         if (deferredIds == null) {
             return;
@@ -1287,6 +1452,9 @@ public final class MailboxIndex {
 
     synchronized void clearDeferredIds() {
         deferredIds = null;
+        synchronized (uncommittedIds) {
+            uncommittedIds.clear();
+        }
     }
 
     /**
@@ -1352,9 +1520,11 @@ public final class MailboxIndex {
      * Re-index progress information. The counters are thread safe.
      */
     public static final class ReIndexStatus extends BatchStatus {
+        private final long startTime = System.currentTimeMillis();
         private volatile int total = -1;
         private volatile int processed = 0;
         private volatile int failed = 0;
+        private volatile int inFlight = 0;
         private volatile boolean cancel = false;
 
         private ReIndexStatus() {
@@ -1369,10 +1539,28 @@ public final class MailboxIndex {
         void addProcessed(int delta) {
             processed += delta;
             if (processed % 2000 == 0) {
-                ZimbraLog.index.info("Re-index progress %d/%d", processed, total);
+                ZimbraLog.index.info("Re-index progress %d/%d,failed=%d,inFlight=%d (%.2f items/sec)",
+                        processed, total, failed, inFlight, getItemsPerSecond());
             }
         }
 
+        void setInFlight(int value) {
+            inFlight = value;
+        }
+
+        /**
+         * Returns the number of items being fetched and parsed by the re-index pipeline workers that the writer has
+         * not consumed yet.
+         */
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public double getItemsPerSecond() {
+            long elapsed = System.currentTimeMillis() - startTime;
+            return elapsed > 0 ? 1000.0 * processed / elapsed : 0;
+        }
+
         @Override
         void addFailed(int delta) {
             failed += delta;
@@ -1428,6 +1616,50 @@ public final class MailboxIndex {
         protected abstract void exec() throws Exception;
     }
 
+    /**
+     * Marks items indexed in the DB once the index store has committed their documents, unless they have been queued
+     * for re-indexing or the index has been reset in the meantime.
+     */
+    private final class MarkIndexedTask extends IndexTask {
+        private final List<Integer> ids;
+
+        MarkIndexedTask(List<Integer> ids) {
+            super(mailbox);
+            this.ids = ids;
+        }
+
+        @Override
+        protected void exec() throws ServiceException {
+            mailbox.lock.lock();
+            try {
+                List<Integer> committed = new ArrayList<Integer>(ids.size());
+                synchronized (uncommittedIds) {
+                    for (Integer id : ids) {
+                        if (uncommittedIds.contains(id)) {
+                            committed.add(id);
+                        }
+                    }
+                }
+                if (committed.isEmpty()) {
+                    return;
+                }
+                boolean success = false;
+                try {
+                    mailbox.beginTransaction("MarkIndexed", null);
+                    DbMailItem.setIndexIds(mailbox.getOperationConnection(), mailbox, committed);
+                    success = true;
+                } finally {
+                    mailbox.endTransaction(success);
+                }
+                synchronized (uncommittedIds) {
+                    uncommittedIds.removeAll(committed);
+                }
+            } finally {
+                mailbox.lock.release();
+            }
+        }
+    }
+
     private final class BatchIndexTask extends IndexTask {
 
         BatchIndexTask() {
@@ -16,9 +16,9 @@
  */
 package com.zimbra.cs.mailbox;
 
-import java.util.EmptyStackException;
-import java.util.Stack;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreMutex;
 
@@ -28,6 +28,7 @@ import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.mailbox.lock.DebugZLock;
+import com.zimbra.cs.mailbox.lock.MailboxLockStats;
 import com.zimbra.cs.mailbox.lock.ZLock;
 import com.zimbra.cs.util.Zimbra;
 import com.zimbra.cs.zookeeper.CuratorManager;
@@ -39,12 +40,27 @@ import com.zimbra.cs.zookeeper.CuratorManager;
  * thrown. {@code Mailbox.beginTransaction()}) internally acquires the mailbox lock and it's released by
  * {@code Mailbox.endTransaction()}, so that you don't have to explicitly call {@link #lock()} and {@link #release()}
  * wrapping a mailbox transaction.
+ * <p>
+ * When {@code zimbra_mailbox_lock_optimistic_read} is enabled, pure lookups may skip the lock altogether by taking a
+ * stamp with {@link #tryOptimisticRead()}, reading the mailbox caches, and then checking with {@link #validate(long)}
+ * that no writer held the lock in the meantime, in the manner of {@link java.util.concurrent.locks.StampedLock}.
  *
  */
 public final class MailboxLock {
+    /** even: no writer; odd: a writer holds the lock. zero is reserved to mean "no stamp". */
+    private static final long STAMP_ORIGIN = 2L;
+
     private final ZLock zLock = DebugConfig.debugMailboxLock ? new DebugZLock() : new ZLock();
     private InterProcessSemaphoreMutex dLock = null;
-    private final Stack<Boolean> lockStack = new Stack<Boolean>();
+    private final ThreadLocal<HoldStack> holdStack = new ThreadLocal<HoldStack>() {
+        @Override
+        protected HoldStack initialValue() {
+            return new HoldStack();
+        }
+    };
+    private final AtomicLong writeStamp = new AtomicLong(STAMP_ORIGIN);
+    private final boolean optimisticRead = LC.zimbra_mailbox_lock_optimistic_read.booleanValue();
+    private final MailboxLockStats stats = new MailboxLockStats();
     private Mailbox mbox;
 
     public MailboxLock(String id, Mailbox mbox) {
@@ -92,6 +108,31 @@ public final class MailboxLock {
         return !isWriteLockedByCurrentThread() && zLock.getReadHoldCount() == 0;
     }
 
+    public MailboxLockStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns a stamp for a lock-free read, or zero if optimistic reads are disabled or a writer currently holds the
+     * lock. The caller must not act on anything it read until {@link #validate(long)} has confirmed the stamp.
+     */
+    public long tryOptimisticRead() {
+        if (!optimisticRead) {
+            return 0L;
+        }
+        long stamp = writeStamp.get();
+        return (stamp & 1L) == 0L ? stamp : 0L;
+    }
+
+    /**
+     * Returns true if no writer has acquired the lock since the stamp was issued by {@link #tryOptimisticRead()}.
+     */
+    public boolean validate(long stamp) {
+        boolean valid = stamp != 0L && writeStamp.get() == stamp;
+        stats.recordOptimisticRead(valid);
+        return valid;
+    }
+
     /**
      * Acquires the lock.
      *
@@ -101,6 +142,32 @@ public final class MailboxLock {
         lock(true);
     }
 
+    /**
+     * Acquires the write lock only if it is available right away, for background housekeeping that should rather skip
+     * a busy mailbox than queue behind its requests.
+     *
+     * @return true if the lock was acquired and must be released with {@link #release()}
+     */
+    public boolean tryLock() {
+        try {
+            if (!tryLock(true)) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        stats.recordAcquire();
+        pushHold(true);
+        try {
+            acquireDistributedLock(true);
+        } catch (ServiceException | LockFailedException e) {
+            release();
+            return false;
+        }
+        return true;
+    }
+
     private boolean tryLock(boolean write) throws InterruptedException {
         if (write) {
             return zLock.writeLock().tryLock(0, TimeUnit.SECONDS);
@@ -163,12 +230,13 @@ public final class MailboxLock {
         assert(neverReadBeforeWrite(write));
         try {
             if (tryLock(write)) {
+                stats.recordAcquire();
                 if (mbox.requiresWriteLock() && !isWriteLockedByCurrentThread()) {
                     //writer finished a purge while we waited
                     promote();
                     return;
                 }
-                lockStack.push(write);
+                pushHold(write);
                 try {
                     acquireDistributedLock(write);
                 } catch (ServiceException e) {
@@ -184,6 +252,7 @@ public final class MailboxLock {
                 // Too many threads are already waiting for the lock, can't let you queued. We don't want to log stack trace
                 // here because once requests back up, each new incoming request falls into here, which creates too much
                 // noise in the logs. Unless debug switch is enabled
+                stats.recordContended(0L, false);
                 LockFailedException e = new LockFailedException("too many waiters: " + queueLength);
                 if (DebugConfig.debugMailboxLock) {
                     e.logStackTrace();
@@ -191,13 +260,16 @@ public final class MailboxLock {
                 throw e;
             }
             // Wait for the lock up to the timeout.
-            if (tryLockWithTimeout(write)) {
+            long start = System.nanoTime();
+            boolean acquired = tryLockWithTimeout(write);
+            stats.recordContended(System.nanoTime() - start, acquired);
+            if (acquired) {
                 if (mbox.requiresWriteLock() && !isWriteLockedByCurrentThread()) {
                     //writer finished a purge while we waited
                     promote();
                     return;
                 }
-                lockStack.push(write);
+                pushHold(write);
                 try {
                     acquireDistributedLock(write);
                 } catch (ServiceException e) {
@@ -219,10 +291,8 @@ public final class MailboxLock {
     }
 
     public void release() {
-        Boolean write = false;
-        try {
-            write = lockStack.pop();
-        } catch (EmptyStackException ese) {
+        HoldStack holds = holdStack.get();
+        if (holds.isEmpty()) {
             //should only occur if locked failed; i.e. tryLock() returned error
             //or if call site has unbalanced lock/release
             ZimbraLog.mailbox.trace("release when not locked?");
@@ -230,12 +300,17 @@ public final class MailboxLock {
             assert(debugReleaseReadLock());
             return;
         }
+        boolean write = holds.pop();
         //keep release in order so caller doesn't have to manage write/read flag
         ZimbraLog.mailbox.trace("RELEASE %s", (write ? "WRITE" : "READ"));
 
         releaseDistributedLock(write);
         if (write) {
             assert(zLock.getWriteHoldCount() > 0);
+            if (zLock.getWriteHoldCount() == 1) {
+                // last write hold; invalidate outstanding optimistic reads before the lock becomes available
+                writeStamp.incrementAndGet();
+            }
             zLock.writeLock().unlock();
         } else {
             zLock.readLock().unlock();
@@ -243,6 +318,14 @@ public final class MailboxLock {
         }
     }
 
+    private void pushHold(boolean write) {
+        if (write && zLock.getWriteHoldCount() == 1) {
+            // first write hold; from here on optimistic readers must fail validation
+            writeStamp.incrementAndGet();
+        }
+        holdStack.get().push(write);
+    }
+
     private void promote() {
         assert(getHoldCount() == zLock.getReadHoldCount());
         int count = zLock.getReadHoldCount();
@@ -256,6 +339,30 @@ public final class MailboxLock {
         }
     }
 
+    /**
+     * Per-thread record of the read/write mode of each nested hold, so that {@link #release()} can unlock in the
+     * reverse order without the caller tracking the mode. Only ever touched by its owning thread.
+     */
+    private static final class HoldStack {
+        private boolean[] holds = new boolean[8];
+        private int size = 0;
+
+        void push(boolean write) {
+            if (size == holds.length) {
+                holds = Arrays.copyOf(holds, size * 2);
+            }
+            holds[size++] = write;
+        }
+
+        boolean pop() {
+            return holds[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
     public final class LockFailedException extends RuntimeException {
         private static final long serialVersionUID = -6899718561860023270L;
 
@@ -237,6 +237,18 @@ public class Message extends MailItem {
         return isTagged(Flag.FlagInfo.DRAFT);
     }
 
+    /** Estimated heap size of the {@link DraftInfo} of a draft. */
+    static final int DRAFT_INFO_HEAP_SIZE = 256;
+    /** Estimated heap size of one {@link CalendarItemInfo}, including the invite it may keep. */
+    static final int CALENDAR_ITEM_INFO_HEAP_SIZE = 1024;
+
+    @Override
+    int estimateHeapSize() {
+        return super.estimateHeapSize() + 2 * (length(sender) + length(recipients) + length(fragment) +
+                length(rawSubject)) + (draftInfo == null ? 0 : DRAFT_INFO_HEAP_SIZE) +
+                (calendarItemInfos == null ? 0 : CALENDAR_ITEM_INFO_HEAP_SIZE * calendarItemInfos.size());
+    }
+
     /**
      * Returns the {@code To:} header of the message, if the message was sent by the user, otherwise an empty string.
      */
@@ -18,14 +18,18 @@ package com.zimbra.cs.mailbox;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.mail.MessagingException;
 import javax.mail.internet.MimeMessage;
 
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import com.googlecode.concurrentlinkedhashmap.Weigher;
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.mime.MimeConstants;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ByteUtil;
@@ -50,17 +54,59 @@ public class MessageCache {
         CacheNode()  { }
         MimeMessage message;
         MimeMessage expanded;
-        Map<Integer, String> smimeAccessInfo = new HashMap<Integer, String>();
-        long size = 0;
+        Map<Integer, String> smimeAccessInfo = Collections.synchronizedMap(new HashMap<Integer, String>());
+        /** in-memory bytes of the original message; 0 when it's streamed from disk */
+        volatile long messageSize = 0;
+        /** in-memory bytes of the expanded copy, if it isn't the original */
+        volatile long expandedSize = 0;
+        /** bytes of this node currently included in {@link #sDataSize}; guarded by the node */
+        private long counted = 0;
+
+        long size() {
+            return messageSize + expandedSize;
+        }
     }
 
-    /** Cache mapping message digest to the corresponding message structure. */
-    private static Map<String, CacheNode> sCache = new LinkedHashMap<String, CacheNode>(150, (float) 0.75, true);
     /** Maximum number of items in {@link #sCache}. */
-    private static int sMaxCacheSize;
+    private static volatile int sMaxCacheSize;
+    /** Maximum number of bytes of message data held in memory by {@link #sCache}. */
+    private static volatile long sMaxDataSize;
     /** Number of bytes of message data stored in the cache.  This value includes only
-     * messages that are read into memory, not streamed from disk. */
-    private volatile static long sDataSize = 0;
+     * messages that are read into memory, not streamed from disk.  A node's bytes are
+     * only counted while it's in the map; see {@link #count} and {@link #uncount}. */
+    private static final AtomicLong sDataSize = new AtomicLong();
+
+    /**
+     * Weighs each node in units of {@code sMaxDataSize / sMaxCacheSize} bytes, with a minimum of one unit.  With the
+     * map's capacity set to {@link #sMaxCacheSize}, the cache then holds at most that many nodes and at most roughly
+     * {@link #sMaxDataSize} bytes of in-memory message data, whichever limit is hit first.
+     */
+    private static final Weigher<CacheNode> WEIGHER = new Weigher<CacheNode>() {
+        @Override
+        public int weightOf(CacheNode node) {
+            long unit = Math.max(1L, sMaxDataSize / Math.max(1, sMaxCacheSize));
+            long weight = (node.size() + unit - 1) / unit;
+            return (int) Math.max(1L, Math.min(weight, Math.max(1, sMaxCacheSize)));
+        }
+    };
+
+    private static final EvictionListener<String, CacheNode> EVICTION_LISTENER =
+            new EvictionListener<String, CacheNode>() {
+        @Override
+        public void onEviction(String digest, CacheNode node) {
+            sLog.debug("Pruning digest %s from the cache.", digest);
+            uncount(node);
+            ZimbraPerf.COUNTER_MBOX_MSG_CACHE_EVICTIONS.increment();
+        }
+    };
+
+    /** Cache mapping message digest to the corresponding message structure. */
+    private static final ConcurrentLinkedHashMap<String, CacheNode> sCache =
+            new ConcurrentLinkedHashMap.Builder<String, CacheNode>()
+            .maximumWeightedCapacity(1)
+            .weigher(WEIGHER)
+            .listener(EVICTION_LISTENER)
+            .build();
 
     static {
         try {
@@ -72,24 +118,47 @@ public class MessageCache {
 
     public static void loadSettings() throws ServiceException {
         sMaxCacheSize = Provisioning.getInstance().getLocalServer().getMessageCacheSize();
-        ZimbraLog.cache.info("setting message cache size to " + sMaxCacheSize);
+        sMaxDataSize = LC.zimbra_message_cache_max_bytes.longValue();
+        sCache.setCapacity(Math.max(1, sMaxCacheSize));
+        ZimbraLog.cache.info("setting message cache size to " + sMaxCacheSize + " messages, " + sMaxDataSize + " bytes");
     }
 
     /** Returns the number of messages in the cache. */
     public static int getSize() {
-        synchronized (sCache) {
-            return sCache.size();
-        }
+        return sCache.size();
     }
 
     public static boolean contains(String digest) {
-        synchronized (sCache) {
-            return sCache.containsKey(digest);
-        }
+        return sCache.containsKey(digest);
     }
 
     public static long getDataSize() {
-        return sDataSize;
+        return sDataSize.get();
+    }
+
+    /** Adds any bytes the node has gained since it was last counted to {@link #sDataSize}.  Called just before
+     *  the node is (re)inserted into the map, so that an eviction racing with the insert subtracts them again. */
+    private static void count(CacheNode node) {
+        synchronized (node) {
+            long size = node.size();
+            sDataSize.addAndGet(size - node.counted);
+            node.counted = size;
+        }
+    }
+
+    /** Subtracts the node's counted bytes from {@link #sDataSize}.  Safe to call more than once. */
+    private static void uncount(CacheNode node) {
+        synchronized (node) {
+            sDataSize.addAndGet(-node.counted);
+            node.counted = 0;
+        }
+    }
+
+    /** Empties the cache. */
+    static void clear() {
+        for (String digest : sCache.keySet()) {
+            purge(digest);
+        }
     }
 
     /** Uncaches any data associated with the given item.  This must be done
@@ -124,12 +193,10 @@ public class MessageCache {
      *  stale data. */
     public static void purge(String digest) {
         if (digest != null) {
-            synchronized (sCache) {
-                CacheNode node = sCache.remove(digest);
-                if (node != null) {
-                    sLog.debug("Purged digest %s from the message cache.", digest);
-                    sDataSize -= node.size;
-                }
+            CacheNode node = sCache.remove(digest);
+            if (node != null) {
+                sLog.debug("Purged digest %s from the message cache.", digest);
+                uncount(node);
             }
         }
     }
@@ -157,13 +224,12 @@ public class MessageCache {
         int mboxId = item.getMailboxId();
         boolean isEncrypted = false;
 
-        synchronized (sCache) {
-            cnode = sCache.get(digest);
-            if (cnode == null) {
-                newNode = true;
-                cnode = new CacheNode();
-            }
+        cnode = sCache.get(digest);
+        if (cnode == null) {
+            newNode = true;
+            cnode = new CacheNode();
         }
+        long originalSize = cnode.size();
 
         try {
             if (cnode.message == null) {
@@ -173,11 +239,7 @@ public class MessageCache {
                     in = fetchFromStore(item);
                     cnode.message = new Mime.FixedMimeMessage(JMSession.getSession(), in);
                     if (item.getSize() < MESSAGE_CACHE_DISK_STREAMING_THRESHOLD) {
-                        cnode.size = item.getSize();
-                        // Not the best place to increment the data size, but cacheItem()
-                        // won't get called if we're expanding a message for an existing
-                        // node.
-                        sDataSize += cnode.size;
+                        cnode.messageSize = item.getSize();
                     }
                 } finally {
                     ByteUtil.closeStream(in);
@@ -215,11 +277,19 @@ public class MessageCache {
                     // if the conversion bombs for any reason, revert to the original
                     sLog.warn("MIME converter failed for message %d.  Reverting to original.", item.getId(), e);
                     cnode.expanded = cnode.message;
+                    cnode.expandedSize = 0;
                 }
             }
 
             if (newNode) {
                 cacheItem(digest, cnode);
+            } else if (cnode.size() != originalSize) {
+                // re-insert so that the node is weighed again with its new size
+                count(cnode);
+                if (!sCache.replace(digest, cnode, cnode)) {
+                    // evicted or purged in the meantime
+                    uncount(cnode);
+                }
             }
         } catch (IOException e) {
             throw ServiceException.FAILURE("IOException while retrieving content for item " + item.getId(), e);
@@ -285,10 +355,9 @@ public class MessageCache {
             decodedMimeMessage != null ? decodedMimeMessage : mimeToExpand);
         expander.expand();
         cnode.expanded = expander.getExpanded();
-        if (cnode.expanded != cnode.message) {
-            sDataSize += cnode.size;
-            cnode.size *= 2;
-        }
+        // the expanded copy lives in memory even when the original is streamed from disk; it replaces
+        //   any earlier expansion (e.g. from before the message was decrypted)
+        cnode.expandedSize = cnode.expanded != cnode.message ? item.getSize() : 0;
     }
 
     private static MimeMessage doDecryption(MailItem item, CacheNode cnode, int mboxId) {
@@ -362,39 +431,26 @@ public class MessageCache {
 
     private static void cacheItem(String digest, CacheNode cnode) {
         sLog.debug("Caching MimeMessage for digest %s.", digest);
-        synchronized (sCache) {
-            sCache.put(digest, cnode);
-            // Cache data size was incremented in getMimeMessage().
-
-            // trim the cache if needed
-            if (sCache.size() > sMaxCacheSize) {
-                Iterator<Map.Entry<String, CacheNode>> it = sCache.entrySet().iterator();
-                while (sCache.size() > sMaxCacheSize && it.hasNext()) {
-                    Map.Entry<String, CacheNode> entry = it.next();
-                    sLog.debug("Pruning digest %s from the cache.", entry.getKey());
-                    it.remove();
-                    sDataSize -= entry.getValue().size;
-                }
-            }
+        // The map trims itself by weight.
+        count(cnode);
+        CacheNode previous = sCache.put(digest, cnode);
+        if (previous != null && previous != cnode) {
+            uncount(previous);
         }
     }
 
     public static void removeDecryptedMessages(int mboxId) {
         sLog.debug("Start removing decrypted messages for mboxId=%d", mboxId);
-        synchronized (sCache) {
-            Iterator<Map.Entry<String, CacheNode>> it = sCache.entrySet().iterator();
-            while (it.hasNext()) {
-                Map.Entry<String, CacheNode> entry = it.next();
-                CacheNode cacheNode = entry.getValue();
-                try {
-                    if (Mime.isEncrypted(cacheNode.message.getContentType())
-                        && cacheNode.smimeAccessInfo.containsKey(mboxId)) {
-                        cacheNode.smimeAccessInfo.remove(mboxId);
-                    }
-                } catch (MessagingException e) {
-                    sLog.warn("MessagingException while checking content type for cache node with digest = %s",
-                        entry.getKey(), e);
+        for (Map.Entry<String, CacheNode> entry : sCache.entrySet()) {
+            CacheNode cacheNode = entry.getValue();
+            try {
+                if (Mime.isEncrypted(cacheNode.message.getContentType())
+                    && cacheNode.smimeAccessInfo.containsKey(mboxId)) {
+                    cacheNode.smimeAccessInfo.remove(mboxId);
                 }
+            } catch (MessagingException e) {
+                sLog.warn("MessagingException while checking content type for cache node with digest = %s",
+                    entry.getKey(), e);
             }
         }
         sLog.debug("Removed decrypted messages for mboxId=%d", mboxId);
@@ -402,11 +458,9 @@ public class MessageCache {
 
     public static String getDecryptionError(int id, String digest) {
         if (digest != null) {
-            synchronized (sCache) {
-                CacheNode node = sCache.get(digest);
-                if (node != null) {
-                    return node.smimeAccessInfo.get(id);
-                }
+            CacheNode node = sCache.getQuietly(digest);
+            if (node != null) {
+                return node.smimeAccessInfo.get(id);
             }
         }
         return null;
@@ -134,7 +134,12 @@ public final class Metadata {
 
     public Metadata(Map<?, ?> map) {
         associatedItemId = null;
-        this.map = new TreeMap<Object, Object>(map);
+        if (map instanceof BEncoding.LazyDictionary) {
+            // keep values the caller hasn't read encoded
+            this.map = new BEncoding.LazyDictionary((BEncoding.LazyDictionary) map);
+        } else {
+            this.map = new TreeMap<Object, Object>(map);
+        }
     }
 
     public Metadata(String encoded) throws MailServiceException {
@@ -149,7 +154,7 @@ public final class Metadata {
         }
         try {
             try {
-                map = (Map) BEncoding.decode(encoded);
+                map = BEncoding.decodeLazily(encoded);
                 return;
             } catch (BEncodingException be) {
                 // Bug 87718 in some instances, it appears that an encoded string is getting corrupted by being
@@ -159,7 +164,7 @@ public final class Metadata {
                 if (be.getCause() != null && be.getCause() instanceof NumberFormatException) {
                     String fixedUpEncoded = new String(encoded.getBytes(Charsets.ISO_8859_1), Charsets.UTF_8);
                     try {
-                        map = (Map) BEncoding.decode(fixedUpEncoded);
+                        map = BEncoding.decodeLazily(fixedUpEncoded);
                         return;
                     } catch (Exception e) {
                     }
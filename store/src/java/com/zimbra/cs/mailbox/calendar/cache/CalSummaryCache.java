@@ -25,6 +25,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.zimbra.common.account.Key.AccountBy;
 import com.zimbra.common.calendar.ParsedDateTime;
 import com.zimbra.common.localconfig.LC;
@@ -94,6 +95,7 @@ public class CalSummaryCache {
 
     public static CalendarItemData reloadCalendarItemOverRange(CalendarItem calItem, long rangeStart, long rangeEnd)
     throws ServiceException {
+        ZimbraPerf.COUNTER_CALENDAR_CACHE_ITEM_RELOAD.increment();
         CalendarItemData calItemData = null;
         try {
             boolean rangeValid = (rangeStart >= CalendarUtils.MICROSOFT_EPOC_START_MS_SINCE_EPOC &&
@@ -324,6 +326,7 @@ public class CalSummaryCache {
             && (rangeStart < prevCalData.getRangeStart() || rangeEnd > prevCalData.getRangeEnd()))
             prevCalData = null;
 
+        ZimbraPerf.COUNTER_CALENDAR_CACHE_FOLDER_RELOAD.increment();
         Folder folder = mbox.getFolderById(octxt, folderId);
         CalendarData calData = new CalendarData(folderId, folder.getImapMODSEQ(), rangeStart, rangeEnd);
         Collection<CalendarItem> calItems = mbox.getCalendarItemsForRange(octxt, type, rangeStart, rangeEnd,
@@ -351,6 +354,7 @@ public class CalSummaryCache {
     private static final int sMaxStaleItems;
     private static final int sMaxStaleItemsBeforeInvalidatingCalendar;
     private static final int sMaxSearchDays;
+    private static final boolean sUpdateOnCommit;
 
     private static final long MSEC_PER_DAY = 1000 * 60 * 60 * 24;
 
@@ -360,6 +364,7 @@ public class CalSummaryCache {
         sMaxStaleItems = LC.calendar_cache_max_stale_items.intValue();
         sMaxStaleItemsBeforeInvalidatingCalendar = 100;
         sMaxSearchDays = LC.calendar_search_max_days.intValueWithinRange(0, 3660);
+        sUpdateOnCommit = LC.calendar_cache_update_on_commit.booleanValue();
     }
 
     @SuppressWarnings("serial")
@@ -543,21 +548,24 @@ public class CalSummaryCache {
                     "you do not have sufficient permissions on folder " + targetAcctId + ":" + folderId);
         result.allowPrivateAccess = (short) (perms & ACL.RIGHT_PRIVATE) == ACL.RIGHT_PRIVATE;
 
-        // Look up from memcached.
         CalSummaryKey key = new CalSummaryKey(targetAcctId, folderId);
-        CalendarData calData = mMemcachedCache.getForRange(key, rangeStart, rangeEnd);
-        if (calData != null) {
-            ZimbraPerf.COUNTER_CALENDAR_CACHE_HIT.increment(1);
-            ZimbraPerf.COUNTER_CALENDAR_CACHE_MEM_HIT.increment(1);
-            result.data = calData;
-            if (ZimbraLog.calendar.isDebugEnabled()) {
-                ZimbraLog.calendar.debug("Calendar Summary for %s:%s reloaded (memcached) - %s items private=%s",
-                        targetAcctId, folderId, result.data.getNumItems(), result.allowPrivateAccess);
-            }
-            return result;
-        }
-        // If not found in memcached and account is not on local server, we're done.
+        CalendarData calData;
         if (!targetAcctOnLocalServer) {
+            // Only the home server can check the cached data against the folder.  Other servers take memcached
+            // as is; the home server keeps it current or removes it as the calendar changes.
+            calData = mMemcachedCache.getForRange(key, rangeStart, rangeEnd);
+            if (calData != null) {
+                ZimbraPerf.COUNTER_CALENDAR_CACHE_HIT.increment(1);
+                ZimbraPerf.COUNTER_CALENDAR_CACHE_MEM_HIT.increment(1);
+                ZimbraPerf.COUNTER_CALENDAR_CACHE_MEMCACHED_HIT.increment();
+                result.data = calData;
+                if (ZimbraLog.calendar.isDebugEnabled()) {
+                    ZimbraLog.calendar.debug("Calendar Summary for %s:%s reloaded (memcached) - %s items private=%s",
+                            targetAcctId, folderId, result.data.getNumItems(), result.allowPrivateAccess);
+                }
+                return result;
+            }
+            // If not found in memcached and account is not on local server, we're done.
             if (ZimbraLog.calendar.isDebugEnabled()) {
                 ZimbraLog.calendar.debug("Calendar Summary - ignoring non-local %s:%s",
                         targetAcctId, folderId);
@@ -576,22 +584,42 @@ public class CalSummaryCache {
         int currentModSeq = folder.getImapMODSEQ();
 
         // Lookup from heap LRU.
-            synchronized (mSummaryCache) {
-                if (mLRUCapacity > 0) {
-                    calData = mSummaryCache.get(key);
-                    lruSize = mSummaryCache.size();
-                }
+        calData = null;
+        synchronized (mSummaryCache) {
+            if (mLRUCapacity > 0) {
+                calData = mSummaryCache.get(key);
+                lruSize = mSummaryCache.size();
             }
-            if (calData != null) {
-                // Sanity check: Cached data can't be newer than the backend data.
-                if (calData.getModSeq() > currentModSeq) {
-                    calData = null;
+        }
+        if (calData != null) {
+            // Sanity check: Cached data can't be newer than the backend data.
+            if (calData.getModSeq() > currentModSeq) {
+                calData = null;
+            } else {
+                dataFrom = CacheLevel.Memory;
+                // Data loaded from heap LRU supports incremental update for stale items.
+                incrementalUpdate = sMaxStaleItems > 0;
+            }
+        }
+
+        if (calData == null) {
+            // Lookup from memcached.  The folder modseq the data was built at tells us whether it is current.
+            CalendarData cached = mMemcachedCache.get(key);
+            if (cached != null) {
+                if (cached.getModSeq() == currentModSeq) {
+                    calData = cached;
+                    dataFrom = CacheLevel.Memcached;
+                    if (mLRUCapacity > 0) {
+                        synchronized (mSummaryCache) {
+                            mSummaryCache.put(key, calData);
+                            lruSize = mSummaryCache.size();
+                        }
+                    }
                 } else {
-                    dataFrom = CacheLevel.Memory;
-                    // Data loaded from heap LRU supports incremental update for stale items.
-                    incrementalUpdate = sMaxStaleItems > 0;
+                    ZimbraPerf.COUNTER_CALENDAR_CACHE_STALE.increment();
                 }
             }
+        }
 
         if (calData == null) {
             // Load from file.
@@ -688,13 +716,19 @@ public class CalSummaryCache {
         // COUNTER_CALENDAR_CACHE_MEM_HIT - A hit is a successful lookup from memory only.
         switch (dataFrom) {
         case Memory:
+            ZimbraPerf.COUNTER_CALENDAR_CACHE_HIT.increment(1);
+            ZimbraPerf.COUNTER_CALENDAR_CACHE_MEM_HIT.increment(1);
+            ZimbraPerf.COUNTER_CALENDAR_CACHE_LRU_HIT.increment();
+            break;
         case Memcached:
             ZimbraPerf.COUNTER_CALENDAR_CACHE_HIT.increment(1);
             ZimbraPerf.COUNTER_CALENDAR_CACHE_MEM_HIT.increment(1);
+            ZimbraPerf.COUNTER_CALENDAR_CACHE_MEMCACHED_HIT.increment();
             break;
         case File:
             ZimbraPerf.COUNTER_CALENDAR_CACHE_HIT.increment(1);
             ZimbraPerf.COUNTER_CALENDAR_CACHE_MEM_HIT.increment(0);
+            ZimbraPerf.COUNTER_CALENDAR_CACHE_FILE_HIT.increment();
             break;
         case Miss:
         default:
@@ -747,14 +781,131 @@ public class CalSummaryCache {
         }
     }
 
+    /**
+     * Calendar item changes committed in one transaction to a single cached calendar.  A null item means the item
+     * was deleted or moved out of the calendar.
+     */
+    static class CalendarDelta {
+        final Mailbox mbox;
+        final int folderId;
+        final Map<Integer, CalendarItem> changes = new LinkedHashMap<Integer, CalendarItem>();
+        int prevModSeq = -1;  // folder modseq before the transaction, or -1 if the folder's modseq didn't change
+
+        CalendarDelta(Mailbox mbox, int folderId) {
+            this.mbox = mbox;
+            this.folderId = folderId;
+        }
+    }
+
+    private void changeItem(Map<CalSummaryKey, CalendarDelta> deltas, Mailbox mbox, int folderId, int calItemId,
+            CalendarItem calItem) {
+        if (!sUpdateOnCommit) {
+            invalidateItem(mbox, folderId, calItemId);
+            return;
+        }
+        CalSummaryKey key = new CalSummaryKey(mbox.getAccountId(), folderId);
+        CalendarDelta delta = deltas.get(key);
+        if (delta == null) {
+            delta = new CalendarDelta(mbox, folderId);
+            deltas.put(key, delta);
+        }
+        delta.changes.put(calItemId, calItem);
+    }
+
+    /**
+     * Brings the cached calendar up to date by expanding only the changed items over the cached range.  The
+     * cached data is replaced rather than modified because readers may still be serializing it.  Falls back to
+     * marking the items stale if the calendar can't be updated.
+     *
+     * @return the updated calendar if it is now current with the folder, otherwise null
+     */
+    CalendarData applyDelta(CalSummaryKey key, CalendarDelta delta) {
+        if (!LC.calendar_cache_enabled.booleanValue())
+            return null;
+        CalendarData calData = null;
+        synchronized (mSummaryCache) {
+            if (mLRUCapacity > 0) {
+                calData = mSummaryCache.get(key);
+            }
+        }
+        if (calData == null)
+            return null;
+        if (delta.changes.size() > sMaxStaleItemsBeforeInvalidatingCalendar) {
+            invalidateSummary(delta.mbox, delta.folderId);
+            return null;
+        }
+
+        CalendarData updated;
+        int modSeq;
+        try {
+            modSeq = delta.mbox.getFolderById(null, delta.folderId).getImapMODSEQ();
+            Map<Integer, CalendarItemData> changes = new HashMap<Integer, CalendarItemData>();
+            for (Map.Entry<Integer, CalendarItem> entry : delta.changes.entrySet()) {
+                CalendarItem calItem = entry.getValue();
+                CalendarItemData calItemData = null;
+                if (calItem != null) {
+                    // Don't let a late notification roll back newer data.
+                    CalendarItemData cur = calData.getCalendarItemData(entry.getKey());
+                    if (cur != null && cur.getModMetadata() > calItem.getModifiedSequence())
+                        continue;
+                    calItemData = expandItem(calItem, calData.getRangeStart(), calData.getRangeEnd());
+                }
+                changes.put(entry.getKey(), calItemData);
+            }
+            // The data is only as current as the folder it was built from.  If it missed a change before this
+            // transaction, whether as a stale item or to a reload racing with a commit, keep the old modseq so
+            // that the next read still sees the mismatch and reloads.
+            int prevModSeq = delta.prevModSeq >= 0 ? delta.prevModSeq : modSeq;
+            boolean current = calData.getModSeq() == prevModSeq && calData.getNumStaleItems() == 0;
+            updated = calData.withChanges(current ? modSeq : calData.getModSeq(), changes);
+        } catch (ServiceException e) {
+            // Typically the folder itself is gone.
+            ZimbraLog.calendar.info("Unable to update calendar summary cache for %s", key, e);
+            invalidateSummary(delta.mbox, delta.folderId);
+            return null;
+        }
+
+        synchronized (mSummaryCache) {
+            // Someone may have reloaded the calendar while we were expanding.
+            if (mSummaryCache.get(key) == calData) {
+                mSummaryCache.put(key, updated);
+                ZimbraPerf.COUNTER_CALENDAR_CACHE_DELTA.increment(delta.changes.size());
+                return updated.getNumStaleItems() == 0 && updated.getModSeq() == modSeq ? updated : null;
+            }
+        }
+        for (int calItemId : delta.changes.keySet()) {
+            invalidateItem(delta.mbox, delta.folderId, calItemId);
+        }
+        return null;
+    }
+
+    CalendarItemData expandItem(CalendarItem calItem, long rangeStart, long rangeEnd) throws ServiceException {
+        return reloadCalendarItemOverRange(calItem, rangeStart, rangeEnd);
+    }
+
+    @VisibleForTesting
+    CalendarData getCachedCalendar(CalSummaryKey key) {
+        synchronized (mSummaryCache) {
+            return mSummaryCache.get(key);
+        }
+    }
+
+    @VisibleForTesting
+    void putCachedCalendar(CalSummaryKey key, CalendarData calData) {
+        synchronized (mSummaryCache) {
+            mSummaryCache.put(key, calData);
+        }
+    }
+
     void notifyCommittedChanges(PendingLocalModifications mods, int changeId) {
+        Map<CalSummaryKey, CalendarDelta> deltas = new LinkedHashMap<CalSummaryKey, CalendarDelta>();
         if (mods.created != null) {
             for (Map.Entry<ModificationKey, BaseItemInfo> entry : mods.created.entrySet()) {
                 BaseItemInfo item = entry.getValue();
                 if (item instanceof CalendarItem) {
                     CalendarItem calItem = (CalendarItem) item;
                     int folderId = calItem.getFolderId();
-                    invalidateItem(calItem.getMailbox(), folderId, calItem.getId());
+                    changeItem(deltas, calItem.getMailbox(), folderId, calItem.getId(), calItem);
                 }
             }
         }
@@ -767,7 +918,7 @@ public class CalSummaryCache {
                     Mailbox mbox = item.getMailbox();
                     int folderId = item.getFolderId();
                     int itemId = item.getId();
-                    invalidateItem(mbox, folderId, itemId);
+                    changeItem(deltas, mbox, folderId, itemId, item);
 
                     // If this is a folder move, invalidate the item from the old folder too.
                     if ((change.why & Change.FOLDER) != 0) {
@@ -777,7 +928,7 @@ public class CalSummaryCache {
                             prevFolderId = mSummaryCache.getFolderForItem(accountId, itemId);
                         }
                         if (prevFolderId != folderId && prevFolderId != SummaryLRU.FOLDER_NOT_FOUND) {
-                            invalidateItem(mbox, prevFolderId, itemId);
+                            changeItem(deltas, mbox, prevFolderId, itemId, null);
                         }
                     }
                 }
@@ -815,15 +966,35 @@ public class CalSummaryCache {
                             folderId = mSummaryCache.getFolderForItem(accountId, itemId);
                         }
                         if (folderId != SummaryLRU.FOLDER_NOT_FOUND) {
-                            invalidateItem(mbox, folderId, itemId);
+                            changeItem(deltas, mbox, folderId, itemId, null);
                         }
                     }
                 }
             }
         }
 
+        if (!deltas.isEmpty() && mods.modified != null) {
+            // The folder snapshot taken when the folder was first touched in the transaction has its old modseq.
+            for (Change change : mods.modified.values()) {
+                if (change.what instanceof Folder && change.preModifyObj instanceof Folder) {
+                    Folder folder = (Folder) change.what;
+                    CalendarDelta delta = deltas.get(new CalSummaryKey(folder.getMailbox().getAccountId(), folder.getId()));
+                    if (delta != null)
+                        delta.prevModSeq = ((Folder) change.preModifyObj).getImapMODSEQ();
+                }
+            }
+        }
+
+        // Only calendars that are current go to memcached; other servers couldn't tell they're stale.
+        Map<CalSummaryKey, CalendarData> updated = new HashMap<CalSummaryKey, CalendarData>();
+        for (Map.Entry<CalSummaryKey, CalendarDelta> entry : deltas.entrySet()) {
+            CalendarData calData = applyDelta(entry.getKey(), entry.getValue());
+            if (calData != null)
+                updated.put(entry.getKey(), calData);
+        }
+
         if (MemcachedConnector.isConnected()) {
-            mMemcachedCache.notifyCommittedChanges(mods, changeId);
+            mMemcachedCache.notifyCommittedChanges(mods, changeId, updated);
         }
     }
 
@@ -80,6 +80,10 @@ public class CalSummaryMemcachedCache {
         }
     }
 
+    public CalendarData get(CalSummaryKey key) throws ServiceException {
+        return mMemcachedLookup.get(key);
+    }
+
     public CalendarData getForRange(CalSummaryKey key, long rangeStart, long rangeEnd)
     throws ServiceException {
         CalendarData calData = mMemcachedLookup.get(key);
@@ -104,7 +108,12 @@ public class CalSummaryMemcachedCache {
         mMemcachedLookup.removeMulti(keys);
     }
 
-    void notifyCommittedChanges(PendingLocalModifications mods, int changeId) {
+    /**
+     * @param updated calendars the summary cache has already brought up to date with this change; these are
+     *                written through rather than invalidated
+     */
+    void notifyCommittedChanges(PendingLocalModifications mods, int changeId,
+            Map<CalSummaryKey, CalendarData> updated) {
         Set<CalSummaryKey> keysToInvalidate = new HashSet<CalSummaryKey>();
         if (mods.modified != null) {
             for (Map.Entry<ModificationKey, Change> entry : mods.modified.entrySet()) {
@@ -134,8 +143,12 @@ public class CalSummaryMemcachedCache {
                 // Let's not worry about hard deletes of invite/reply emails.  It has no practical benefit.
             }
         }
+        keysToInvalidate.removeAll(updated.keySet());
         try {
             mMemcachedLookup.removeMulti(keysToInvalidate);
+            for (Map.Entry<CalSummaryKey, CalendarData> entry : updated.entrySet()) {
+                mMemcachedLookup.put(entry.getKey(), entry.getValue());
+            }
         } catch (ServiceException e) {
             ZimbraLog.calendar.warn("Unable to notify ctag info cache.  Some cached data may become stale.", e);
         }
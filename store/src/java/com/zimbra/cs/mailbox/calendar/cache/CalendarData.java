@@ -80,6 +80,27 @@ public class CalendarData {
         return calData;
     }
 
+    /**
+     * Returns a copy of this calendar with the given items replaced, added or, where the value is null, removed.
+     * The other items and their stale marks are shared with this calendar; the changed items are not stale.
+     */
+    CalendarData withChanges(int modSeq, Map<Integer, CalendarItemData> changes) {
+        CalendarData calData = new CalendarData(mFolderId, modSeq, mRangeStart, mRangeEnd);
+        for (CalendarItemData calItemData : mCalendarItems) {
+            int itemId = calItemData.getCalItemId();
+            if (!changes.containsKey(itemId)) {
+                calData.addCalendarItem(calItemData);
+                if (isItemStale(itemId))
+                    calData.markItemStale(itemId);
+            }
+        }
+        for (CalendarItemData calItemData : changes.values()) {
+            if (calItemData != null)
+                calData.addCalendarItem(calItemData);
+        }
+        return calData;
+    }
+
     synchronized int getNumStaleItems() {
         return mStaleItemIds.size();
     }
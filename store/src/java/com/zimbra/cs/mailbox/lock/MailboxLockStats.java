@@ -0,0 +1,149 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.mailbox.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Acquisition, contention and wait time counters for a single mailbox lock. Every instance also feeds a set of
+ * server-wide totals, so that the counters of mailboxes that have since been evicted from the cache are not lost.
+ */
+public final class MailboxLockStats {
+
+    private static final MailboxLockStats TOTALS = new MailboxLockStats(null);
+
+    private final MailboxLockStats parent;
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong optimisticReads = new AtomicLong();
+    private final AtomicLong optimisticFailures = new AtomicLong();
+
+    public MailboxLockStats() {
+        this(TOTALS);
+    }
+
+    private MailboxLockStats(MailboxLockStats parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Returns the counters accumulated by all mailbox locks of this server.
+     */
+    public static MailboxLockStats getTotals() {
+        return TOTALS;
+    }
+
+    /**
+     * Records a lock acquired without waiting.
+     */
+    public void recordAcquire() {
+        acquires.incrementAndGet();
+        if (parent != null) {
+            parent.recordAcquire();
+        }
+    }
+
+    /**
+     * Records a lock request that had to queue behind other holders.
+     *
+     * @param nanos time spent waiting
+     * @param acquired false if the request timed out or was rejected
+     */
+    public void recordContended(long nanos, boolean acquired) {
+        contended.incrementAndGet();
+        if (acquired) {
+            acquires.incrementAndGet();
+        } else {
+            failures.incrementAndGet();
+        }
+        waitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+        if (parent != null) {
+            parent.recordContended(nanos, acquired);
+        }
+    }
+
+    /**
+     * Records the outcome of a lock-free optimistic read.
+     *
+     * @param valid false if the read had to be retried under the lock
+     */
+    public void recordOptimisticRead(boolean valid) {
+        optimisticReads.incrementAndGet();
+        if (!valid) {
+            optimisticFailures.incrementAndGet();
+        }
+        if (parent != null) {
+            parent.recordOptimisticRead(valid);
+        }
+    }
+
+    public long getAcquires() {
+        return acquires.get();
+    }
+
+    public long getContended() {
+        return contended.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public long getMaxWaitMs() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    public long getOptimisticReads() {
+        return optimisticReads.get();
+    }
+
+    public long getOptimisticFailures() {
+        return optimisticFailures.get();
+    }
+
+    /**
+     * Resets this set of counters only; the server-wide totals are left untouched.
+     */
+    public void reset() {
+        acquires.set(0);
+        contended.set(0);
+        failures.set(0);
+        waitNanos.set(0);
+        maxWaitNanos.set(0);
+        optimisticReads.set(0);
+        optimisticFailures.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "acquires=" + getAcquires() + ",contended=" + getContended() + ",failures=" + getFailures() +
+                ",waitMs=" + getWaitMs() + ",maxWaitMs=" + getMaxWaitMs() + ",optimisticReads=" + getOptimisticReads() +
+                ",optimisticFailures=" + getOptimisticFailures();
+    }
+}
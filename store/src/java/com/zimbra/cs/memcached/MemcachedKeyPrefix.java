@@ -37,6 +37,8 @@ public final class MemcachedKeyPrefix {
 
     public static final String IMAP                 = "zmImap" + DELIMITER;
 
+    public static final String IMAP_STRUCTURE       = "zmImapStruct" + DELIMITER;
+
     public static final String WATCHED_ITEMS        = "zmWatch" + DELIMITER;
 
     public static final String SYNC_STATE           = "zmSync" + DELIMITER;
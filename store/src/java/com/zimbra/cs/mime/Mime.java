@@ -1268,12 +1268,7 @@ public class Mime {
                 return NO_HEADERS;
 
             for (int i = 0; i < values.length; i++) {
-                try {
-                    values[i] = MimeUtility.decodeText(values[i]);
-                } catch (UnsupportedEncodingException e) {
-                    // values[i] would contain the undecoded value, fine
-                }
-                values[i] = MimeUtility.unfold(values[i]);
+                values[i] = decodeHeader(values[i]);
             }
 
             return values;
@@ -1283,6 +1278,19 @@ public class Mime {
         }
     }
 
+    /**
+     * Decodes RFC 2047 encoded-words in a raw header value and unfolds it, as
+     * {@link #getHeaders(MimePart, String)} does for each value it returns.
+     */
+    public static String decodeHeader(String value) {
+        try {
+            value = MimeUtility.decodeText(value);
+        } catch (UnsupportedEncodingException e) {
+            // value would contain the undecoded value, fine
+        }
+        return MimeUtility.unfold(value);
+    }
+
     /**
      * Returns the value of the <tt>Message-ID</tt> header, or <tt>null</tt>
      * if the header does not exist or has an empty value.
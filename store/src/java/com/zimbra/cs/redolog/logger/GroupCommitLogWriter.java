@@ -0,0 +1,507 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.redolog.logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.zimbra.common.localconfig.DebugConfig;
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ByteUtil;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.redolog.CommitId;
+import com.zimbra.cs.redolog.RedoCommitCallback;
+import com.zimbra.cs.redolog.RedoConfig;
+import com.zimbra.cs.redolog.RedoLogManager;
+import com.zimbra.cs.redolog.RolloverManager;
+import com.zimbra.cs.redolog.op.CommitTxn;
+import com.zimbra.cs.redolog.op.RedoableOp;
+import com.zimbra.cs.stats.ZimbraPerf;
+import com.zimbra.cs.util.Zimbra;
+
+/**
+ * {@link LogWriter} that commits entries from many threads as a group.
+ * <p>
+ * Each caller serializes its op outside of any lock and appends it to a bounded ring of pending entries.  Whichever
+ * caller finds no write in progress becomes the leader: it takes every pending entry, writes them with a single
+ * gathering {@link FileChannel#write(ByteBuffer[])}, calls {@link FileChannel#force(boolean)} once if any of them
+ * needs to be durable, runs the commit callbacks in log order and wakes the other callers.  While the leader waits
+ * on the disk, new entries pile up in the ring and go out together in the next batch, so the number of fsyncs tracks
+ * disk latency rather than the number of committing threads.  There is no fsync thread and no fsync interval.
+ * <p>
+ * Batch sizes and fsync latency are reported through {@link ZimbraPerf#HISTOGRAM_REDO_BATCH_SIZE} and
+ * {@link ZimbraPerf#HISTOGRAM_REDO_FSYNC_US}.  Enabled with the {@code zimbra_redolog_group_commit} localconfig key.
+ */
+public class GroupCommitLogWriter implements LogWriter {
+
+    private static String sServerId;
+    static {
+        try {
+            sServerId = Provisioning.getInstance().getLocalServer().getId();
+        } catch (ServiceException e) {
+            ZimbraLog.redolog.error("Unable to get local server ID", e);
+            sServerId = "unknown";
+        }
+    }
+
+    protected RedoLogManager mRedoLogMgr;
+
+    // Guards the ring and all state below.  Never held while doing I/O.
+    private final Object mLock = new Object();
+    // Serializes I/O on the channel between the batch leader and open/close.
+    private final Object mIoLock = new Object();
+
+    private final FileHeader mHeader;
+    private long mFirstOpTstamp;
+    private long mLastOpTstamp;
+    private long mCreateTime;
+    private boolean mHeaderDirty;
+
+    private File mFile;
+    private RandomAccessFile mRAF;
+    private FileChannel mChannel;
+    private long mFileSize;
+    private long mLastLogTime;
+    private final boolean mFsyncDisabled;
+
+    private final Entry[] mRing;
+    private int mHead;              // first pending entry
+    private int mCount;             // number of pending entries
+
+    private long mLogSeq;           // last entry queued
+    private long mWriteSeq;         // last entry written to the channel
+    private long mFsyncSeq;         // last entry forced to disk
+    private boolean mWriting;       // a leader is writing a batch
+    private IOException mFailure;   // a batch failed; the log is unusable
+
+    // for gathering some stats; nonessential for functionality
+    private int mLogCount;
+    private int mFsyncCount;
+    private boolean mNoStat;
+
+    public GroupCommitLogWriter(RedoLogManager redoLogMgr, File logfile) {
+        mRedoLogMgr = redoLogMgr;
+        mHeader = new FileHeader(sServerId);
+        mFile = logfile;
+        mFileSize = mFile.length();
+        mLastLogTime = mFile.lastModified();
+        mFsyncDisabled = DebugConfig.disableRedoLogFsync;
+        mRing = new Entry[Math.max(1, LC.zimbra_redolog_group_commit_max_batch.intValue())];
+    }
+
+    @Override public long getSequence() {
+        synchronized (mLock) {
+            return mHeader.getSequence();
+        }
+    }
+
+    @Override public long getSize() {
+        synchronized (mLock) {
+            return mFileSize;
+        }
+    }
+
+    @Override public long getCreateTime() {
+        synchronized (mLock) {
+            return mCreateTime;
+        }
+    }
+
+    @Override public long getLastLogTime() {
+        synchronized (mLock) {
+            return mLastLogTime;
+        }
+    }
+
+    @Override public boolean isEmpty() throws IOException {
+        return getSize() <= FileHeader.HEADER_LEN;
+    }
+
+    @Override public boolean exists() {
+        return mFile.exists();
+    }
+
+    @Override public String getAbsolutePath() {
+        return mFile.getAbsolutePath();
+    }
+
+    @Override public boolean renameTo(File dest) {
+        return mFile.renameTo(dest);
+    }
+
+    @Override public boolean delete() {
+        return mFile.delete();
+    }
+
+    @Override public synchronized void open() throws IOException {
+        synchronized (mIoLock) {
+            synchronized (mLock) {
+                if (mRAF != null) {
+                    return;  // already open
+                }
+                RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+                if (raf.length() >= FileHeader.HEADER_LEN) {
+                    mHeader.read(raf);
+                    mCreateTime = mHeader.getCreateTime();
+                    if (mCreateTime == 0) {
+                        mCreateTime = System.currentTimeMillis();
+                        mHeader.setCreateTime(mCreateTime);
+                    }
+                    mFirstOpTstamp = mHeader.getFirstOpTstamp();
+                    mLastOpTstamp = mHeader.getLastOpTstamp();
+                } else {
+                    mCreateTime = System.currentTimeMillis();
+                    mHeader.setCreateTime(mCreateTime);
+                    mHeader.setSequence(mRedoLogMgr.getCurrentLogSequence());
+                }
+                mHeader.setOpen(true);
+                mHeader.write(raf);
+
+                // go to the end of file, so we can append
+                long len = raf.length();
+                raf.seek(len);
+                mFileSize = len;
+
+                mRAF = raf;
+                mChannel = raf.getChannel();
+                mHead = mCount = 0;
+                mLogSeq = mWriteSeq = mFsyncSeq = 0;
+                mHeaderDirty = false;
+                mFailure = null;
+            }
+        }
+    }
+
+    @Override public synchronized void close() throws IOException {
+        synchronized (mLock) {
+            if (mRAF == null) {
+                return;
+            }
+        }
+        flush();
+        synchronized (mIoLock) {
+            synchronized (mLock) {
+                if (mRAF == null) {
+                    return;
+                }
+                if (mLastOpTstamp != 0) {
+                    mHeader.setLastOpTstamp(mLastOpTstamp);
+                }
+                mHeader.setOpen(false);
+                mHeader.setFileSize(mRAF.length());
+                mHeader.write(mRAF);
+
+                mChannel.force(true);
+                mRAF.close();
+                mRAF = null;
+                mChannel = null;
+                mLock.notifyAll();
+            }
+        }
+
+        if (!mNoStat && mLogCount > 0 && ZimbraLog.redolog.isDebugEnabled()) {
+            ZimbraLog.redolog.debug("Logged: " + mLogCount + " items, " + mFsyncCount + " fsyncs");
+        }
+    }
+
+    /**
+     * Queues the entry and returns once it has been written to the log file, and if {@code synchronous}, once it
+     * has been forced to disk.  Either this thread writes the batch the entry ended up in, or it waits for the
+     * thread that does.
+     */
+    @Override public void log(RedoableOp op, InputStream data, boolean synchronous) throws IOException {
+        byte[] bytes = ByteUtil.getContent(data, 1024);
+        long seq;
+        synchronized (mLock) {
+            checkUsable();
+            while (mCount == mRing.length) {
+                // ring is full; the current leader drains it when it starts its next batch
+                waitOnLock();
+                checkUsable();
+            }
+
+            // Record first transaction in header.
+            long tstamp = op.getTimestamp();
+            mLastOpTstamp = Math.max(tstamp, mLastOpTstamp);
+            if (mFirstOpTstamp == 0) {
+                mFirstOpTstamp = tstamp;
+                mHeader.setFirstOpTstamp(mFirstOpTstamp);
+                mHeader.setLastOpTstamp(mLastOpTstamp);
+                mHeaderDirty = true;
+            }
+
+            Notif notif = null;
+            if (op instanceof CommitTxn) {
+                RedoCommitCallback cb = ((CommitTxn) op).getCallback();
+                if (cb != null) {
+                    long redoSeq = mRedoLogMgr.getRolloverManager().getCurrentSequence();
+                    notif = new Notif(cb, new CommitId(redoSeq, (CommitTxn) op));
+                }
+            }
+
+            seq = ++mLogSeq;
+            mRing[(mHead + mCount) % mRing.length] = new Entry(seq, bytes, synchronous, notif);
+            mCount++;
+            mLogCount++;
+            mFileSize += bytes.length;
+            mLastLogTime = System.currentTimeMillis();
+        }
+        commit(seq, synchronous);
+    }
+
+    @Override public void flush() throws IOException {
+        long seq;
+        synchronized (mLock) {
+            seq = mLogSeq;
+        }
+        commit(seq, true);
+    }
+
+    public void noStat(boolean b) {
+        mNoStat = b;
+    }
+
+    private void checkUsable() throws IOException {
+        if (mFailure != null) {
+            throw new IOException("Redolog write failed earlier", mFailure);
+        }
+        if (mRAF == null) {
+            throw new IOException("Redolog file closed");
+        }
+    }
+
+    private void waitOnLock() {
+        try {
+            mLock.wait();
+        } catch (InterruptedException e) {
+            ZimbraLog.redolog.info("Thread interrupted while waiting for redolog write");
+        }
+    }
+
+    /**
+     * Returns once the entry with the given sequence has been written, and forced to disk if {@code durable}.
+     */
+    private void commit(long seq, boolean durable) throws IOException {
+        while (true) {
+            Entry[] batch;
+            boolean writeHeader;
+            boolean force;
+            long lastSeq;
+            synchronized (mLock) {
+                while (true) {
+                    if (mFailure != null) {
+                        throw new IOException("Redolog write failed", mFailure);
+                    }
+                    if (mWriteSeq >= seq && (!durable || mFsyncSeq >= seq)) {
+                        return;
+                    }
+                    if (!mWriting) {
+                        break;
+                    }
+                    waitOnLock();
+                }
+                if (mRAF == null) {
+                    throw new IOException("Redolog file closed");
+                }
+
+                // become the leader for the next batch
+                mWriting = true;
+                batch = new Entry[mCount];
+                boolean needsForce = durable;
+                for (int i = 0; i < mCount; i++) {
+                    int slot = (mHead + i) % mRing.length;
+                    batch[i] = mRing[slot];
+                    mRing[slot] = null;
+                    needsForce |= batch[i].synchronous || batch[i].notif != null;
+                }
+                mHead = (mHead + mCount) % mRing.length;
+                mCount = 0;
+                lastSeq = batch.length > 0 ? batch[batch.length - 1].seq : mWriteSeq;
+                writeHeader = mHeaderDirty;
+                mHeaderDirty = false;
+                force = needsForce && !mFsyncDisabled && mFsyncSeq < lastSeq;
+                mLock.notifyAll();  // wake up threads waiting for room in the ring
+            }
+
+            IOException failure = null;
+            try {
+                writeBatch(batch, writeHeader, force);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            if (failure == null) {
+                // Make the callbacks before letting the next leader in, so they are truly in log order.
+                for (Entry entry : batch) {
+                    if (entry.notif != null) {
+                        entry.notif.callback();
+                    }
+                }
+            }
+
+            synchronized (mLock) {
+                mWriting = false;
+                if (failure != null) {
+                    mFailure = failure;
+                } else {
+                    mWriteSeq = lastSeq;
+                    if (force || mFsyncDisabled) {
+                        mFsyncSeq = lastSeq;
+                    }
+                }
+                mLock.notifyAll();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void writeBatch(Entry[] batch, boolean writeHeader, boolean force) throws IOException {
+        synchronized (mIoLock) {
+            if (mRAF == null) {
+                throw new IOException("Redolog file closed");
+            }
+            if (writeHeader) {
+                long pos = mChannel.position();
+                mHeader.write(mRAF);
+                mRAF.seek(pos);
+            }
+            if (batch.length > 0) {
+                ByteBuffer[] buffers = new ByteBuffer[batch.length];
+                long remaining = 0;
+                for (int i = 0; i < batch.length; i++) {
+                    buffers[i] = ByteBuffer.wrap(batch[i].data);
+                    remaining += batch[i].data.length;
+                }
+                while (remaining > 0) {
+                    remaining -= mChannel.write(buffers);
+                }
+                ZimbraPerf.HISTOGRAM_REDO_BATCH_SIZE.increment(batch.length);
+            }
+            if (force) {
+                long start = System.nanoTime();
+                mChannel.force(false);
+                ZimbraPerf.HISTOGRAM_REDO_FSYNC_US.increment((System.nanoTime() - start) / 1000);
+                mFsyncCount++;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public synchronized File rollover(LinkedHashMap /*<TxnId, RedoableOp>*/ activeOps)
+    throws IOException {
+        RolloverManager romgr = mRedoLogMgr.getRolloverManager();
+
+        long lastSeq = getSequence();
+
+        // Close current log, so it's impossible for its content to change.
+        noStat(true);
+        close();
+
+        romgr.incrementSequence();
+
+        String currentPath = mFile.getAbsolutePath();
+
+        // Open a temporary logger.
+        File tempLogfile = new File(mFile.getParentFile(), romgr.getTempFilename(lastSeq + 1));
+        GroupCommitLogWriter tempLogger = new GroupCommitLogWriter(mRedoLogMgr, tempLogfile);
+        tempLogger.open();
+        tempLogger.noStat(true);
+
+        // Rewrite change entries for all active operations, maintaining
+        // their order of occurrence.  (LinkedHashMap ensures ordering.)
+        Set opsSet = activeOps.entrySet();
+        for (Iterator it = opsSet.iterator(); it.hasNext(); ) {
+            Map.Entry entry = (Map.Entry) it.next();
+            RedoableOp op = (RedoableOp) entry.getValue();
+            tempLogger.log(op, op.getInputStream(), false);
+        }
+        tempLogger.close();
+
+        // Rename the current log to rolled-over name.
+        File rolloverFile = romgr.getRolloverFile(lastSeq);
+        if (RedoConfig.redoLogDeleteOnRollover()) {
+            // Delete the current log.  We don't need to hold on to the
+            // indexing-only log files after rollover.
+            if (!mFile.delete())
+                throw new IOException("Unable to delete current redo log " + mFile.getAbsolutePath());
+        } else {
+            File destDir = rolloverFile.getParentFile();
+            if (destDir != null && !destDir.exists())
+                destDir.mkdirs();
+            if (!mFile.renameTo(rolloverFile))
+                throw new IOException("Unable to rename current redo log to " + rolloverFile.getAbsolutePath());
+        }
+
+        // Rename the temporary logger to current logfile name.
+        String tempPath = tempLogfile.getAbsolutePath();
+        mFile = new File(currentPath);
+        if (!tempLogfile.renameTo(mFile))
+            throw new IOException("Unable to rename " + tempPath + " to " + currentPath);
+
+        // Reopen current log.
+        open();
+        noStat(false);
+
+        return rolloverFile;
+    }
+
+    private static final class Entry {
+        final long seq;
+        final byte[] data;
+        final boolean synchronous;
+        final Notif notif;
+
+        Entry(long seq, byte[] data, boolean synchronous, Notif notif) {
+            this.seq = seq;
+            this.data = data;
+            this.synchronous = synchronous;
+            this.notif = notif;
+        }
+    }
+
+    private static final class Notif {
+        private final RedoCommitCallback mCallback;
+        private final CommitId mCommitId;
+
+        Notif(RedoCommitCallback callback, CommitId cid) {
+            mCallback = callback;
+            mCommitId = cid;
+        }
+
+        void callback() {
+            try {
+                mCallback.callback(mCommitId);
+            } catch (OutOfMemoryError e) {
+                Zimbra.halt("out of memory", e);
+            } catch (Throwable t) {
+                ZimbraLog.misc.error("Error while making commit callback", t);
+            }
+        }
+    }
+}
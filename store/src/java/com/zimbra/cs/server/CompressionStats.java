@@ -0,0 +1,86 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-wide totals of the DEFLATE streams negotiated by connections (e.g. IMAP COMPRESS=DEFLATE).
+ */
+final class CompressionStats {
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong deflateIn = new AtomicLong();
+    private final AtomicLong deflateOut = new AtomicLong();
+    private final AtomicLong deflateNanos = new AtomicLong();
+    private final AtomicLong inflateIn = new AtomicLong();
+    private final AtomicLong inflateOut = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+
+    void recordSession() {
+        sessions.incrementAndGet();
+    }
+
+    void recordDeflate(long raw, long compressed, long nanos) {
+        deflateIn.addAndGet(raw);
+        deflateOut.addAndGet(compressed);
+        deflateNanos.addAndGet(nanos);
+    }
+
+    void recordInflate(long compressed, long raw, long nanos) {
+        inflateIn.addAndGet(compressed);
+        inflateOut.addAndGet(raw);
+        inflateNanos.addAndGet(nanos);
+    }
+
+    long getSessions() {
+        return sessions.get();
+    }
+
+    /** Uncompressed bytes handed to the compressor. */
+    long getDeflateInputBytes() {
+        return deflateIn.get();
+    }
+
+    /** Compressed bytes actually written to the network. */
+    long getDeflateOutputBytes() {
+        return deflateOut.get();
+    }
+
+    long getInflateInputBytes() {
+        return inflateIn.get();
+    }
+
+    long getInflateOutputBytes() {
+        return inflateOut.get();
+    }
+
+    /** Uncompressed to compressed ratio of all responses written so far, e.g. 5.0 for 5:1. */
+    double getRatio() {
+        long out = deflateOut.get();
+        return out == 0 ? 0.0 : (double) deflateIn.get() / out;
+    }
+
+    /** Time spent deflating; the work is purely CPU bound so this approximates its CPU cost. */
+    long getDeflateMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deflateNanos.get());
+    }
+
+    long getInflateMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(inflateNanos.get());
+    }
+}
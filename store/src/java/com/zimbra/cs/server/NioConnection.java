@@ -85,6 +85,17 @@ public final class NioConnection {
         session.setAttribute(SaslFilter.DISABLE_ENCRYPTION_ONCE, true);
     }
 
+    /**
+     * Switches the connection to DEFLATE compression in both directions. The next write (the response confirming the
+     * switch) is still sent uncompressed.
+     */
+    public void startCompression() {
+        // beneath the codec and logger, above TLS/SASL: compress before encrypting
+        NioDeflateFilter filter = new NioDeflateFilter(server.compressionStats, server.getLog());
+        session.getFilterChain().addBefore("executer", "deflate", filter);
+        session.setAttribute(NioDeflateFilter.DISABLE_COMPRESSION_ONCE, true);
+    }
+
     public void send(Object obj) {
         session.write(obj);
     }
@@ -0,0 +1,181 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.server;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.DefaultWriteRequest;
+import org.apache.mina.core.write.WriteRequest;
+
+import com.zimbra.common.util.Log;
+
+/**
+ * MINA filter compressing the connection with raw DEFLATE (RFC 1951) in both directions, as negotiated by the IMAP
+ * COMPRESS command (RFC 4978).
+ * <p>
+ * The filter sits beneath the protocol codec but above TLS/SASL, so data is compressed before it is encrypted. Every
+ * write is completed with a sync flush so that responses aren't held back waiting for more output.
+ */
+final class NioDeflateFilter extends IoFilterAdapter {
+    /** When set, compression is disabled for the first write, i.e. the tagged OK of the COMPRESS command. */
+    static final String DISABLE_COMPRESSION_ONCE = NioDeflateFilter.class.getName() + ".DisableCompressionOnce";
+
+    private static final int CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_INPUT_CHUNK = 64 * 1024;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] deflateChunk = new byte[CHUNK_SIZE];
+    private final byte[] inflateChunk = new byte[CHUNK_SIZE];
+    private final CompressionStats stats;
+    private final Log log;
+    private boolean closed;
+
+    NioDeflateFilter(CompressionStats stats, Log log) {
+        this.stats = stats;
+        this.log = log;
+        stats.recordSession();
+    }
+
+    @Override
+    public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws IOException {
+        if (!(message instanceof IoBuffer)) {
+            nextFilter.messageReceived(session, message);
+            return;
+        }
+        IoBuffer in = (IoBuffer) message;
+        int compressed = in.remaining();
+        IoBuffer out;
+        synchronized (inflater) {
+            if (closed) {
+                return;
+            }
+            long start = System.nanoTime();
+            if (in.hasArray()) {
+                inflater.setInput(in.array(), in.arrayOffset() + in.position(), compressed);
+                in.position(in.limit());
+            } else {
+                byte[] input = new byte[compressed];
+                in.get(input);
+                inflater.setInput(input);
+            }
+            out = IoBuffer.allocate(compressed * 4 + 64).setAutoExpand(true);
+            try {
+                while (true) {
+                    int n = inflater.inflate(inflateChunk);
+                    if (n > 0) {
+                        out.put(inflateChunk, 0, n);
+                    } else if (inflater.needsInput() || inflater.finished()) {
+                        break;
+                    } else {
+                        throw new IOException("DEFLATE stream requires a preset dictionary");
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("invalid DEFLATE stream", e);
+            }
+            stats.recordInflate(compressed, out.position(), System.nanoTime() - start);
+        }
+        out.flip();
+        if (out.hasRemaining()) {
+            nextFilter.messageReceived(session, out);
+        }
+    }
+
+    @Override
+    public void filterWrite(NextFilter nextFilter, IoSession session, WriteRequest writeRequest) {
+        if (!(writeRequest.getMessage() instanceof IoBuffer)) {
+            nextFilter.filterWrite(session, writeRequest);
+            return;
+        }
+        IoBuffer buf = (IoBuffer) writeRequest.getMessage();
+        // the OK response to COMPRESS itself still goes out uncompressed
+        if (session.containsAttribute(DISABLE_COMPRESSION_ONCE)) {
+            session.removeAttribute(DISABLE_COMPRESSION_ONCE);
+            nextFilter.filterWrite(session, writeRequest);
+            return;
+        }
+        if (!buf.hasRemaining()) {
+            nextFilter.filterWrite(session, writeRequest);
+            return;
+        }
+
+        // deflate and pass on under the lock so that concurrent writers can't reorder the stream
+        synchronized (deflater) {
+            if (closed) {
+                return;
+            }
+            long start = System.nanoTime();
+            int raw = buf.remaining();
+            IoBuffer out = IoBuffer.allocate(Math.min(raw, MAX_INPUT_CHUNK) / 2 + 64).setAutoExpand(true);
+            if (buf.hasArray()) {
+                deflater.setInput(buf.array(), buf.arrayOffset() + buf.position(), raw);
+                buf.position(buf.limit());
+            } else {
+                // direct buffers (e.g. memory-mapped blobs) can be huge, so stage them through a bounded array
+                byte[] input = new byte[Math.min(raw, MAX_INPUT_CHUNK)];
+                while (true) {
+                    int len = Math.min(input.length, buf.remaining());
+                    buf.get(input, 0, len);
+                    deflater.setInput(input, 0, len);
+                    if (!buf.hasRemaining()) {
+                        break;
+                    }
+                    while (!deflater.needsInput()) {
+                        int n = deflater.deflate(deflateChunk, 0, deflateChunk.length, Deflater.NO_FLUSH);
+                        out.put(deflateChunk, 0, n);
+                    }
+                }
+            }
+            int n;
+            do {
+                n = deflater.deflate(deflateChunk, 0, deflateChunk.length, Deflater.SYNC_FLUSH);
+                out.put(deflateChunk, 0, n);
+            } while (n == deflateChunk.length);
+            out.flip();
+            stats.recordDeflate(raw, out.remaining(), System.nanoTime() - start);
+            nextFilter.filterWrite(session, new DefaultWriteRequest(out, writeRequest.getFuture()));
+        }
+    }
+
+    @Override
+    public void sessionClosed(NextFilter nextFilter, IoSession session) throws Exception {
+        synchronized (deflater) {
+            synchronized (inflater) {
+                if (!closed) {
+                    closed = true;
+                    if (log.isDebugEnabled()) {
+                        long out = deflater.getBytesWritten();
+                        log.debug("COMPRESS=DEFLATE: wrote %d bytes for %d (%.1f:1), read %d bytes for %d",
+                                out, deflater.getBytesRead(), out == 0 ? 0.0 : (double) deflater.getBytesRead() / out,
+                                inflater.getBytesRead(), inflater.getBytesWritten());
+                    }
+                    // release the native zlib buffers now rather than at finalization
+                    deflater.end();
+                    inflater.end();
+                }
+            }
+        }
+        nextFilter.sessionClosed(session);
+    }
+}
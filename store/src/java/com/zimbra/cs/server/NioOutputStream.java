@@ -19,6 +19,7 @@ package com.zimbra.cs.server;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.future.WriteFuture;
@@ -57,6 +58,26 @@ public final class NioOutputStream extends OutputStream {
         }
     }
 
+    /**
+     * Writes the remaining content of the buffer without copying it.  The buffer must not be modified
+     * afterwards, since it's written to the socket asynchronously.
+     * <p>
+     * The content is written in windows of the chunk size so that the write queue throttle applies to
+     * each of them, and so that TLS, SASL and deflate filters only ever copy one chunk at a time.
+     */
+    public synchronized void write(ByteBuffer bb) throws IOException {
+        flush();
+        int chunkSize = buf.capacity();
+        ByteBuffer src = bb.duplicate();
+        while (src.hasRemaining()) {
+            int len = Math.min(src.remaining(), chunkSize);
+            ByteBuffer chunk = src.slice();
+            chunk.limit(len);
+            src.position(src.position() + len);
+            writeToSession(IoBuffer.wrap(chunk));
+        }
+    }
+
     public synchronized void write(String s) throws IOException {
         int len = s.length();
         // If the request is larger than the capacity, flush the buffer and write it directly.
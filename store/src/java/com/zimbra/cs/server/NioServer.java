@@ -77,6 +77,7 @@ public abstract class NioServer implements Server {
     protected final ExecutorFilter executorFilter;
     protected final ZimbraSocketAcceptor acceptor;
     protected final ServerConfig config;
+    final CompressionStats compressionStats = new CompressionStats();
 
     private static SSLContext sslContext;
     private static String[] mSslEnabledCipherSuites;
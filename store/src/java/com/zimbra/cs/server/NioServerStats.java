@@ -27,10 +27,12 @@ import org.apache.mina.core.service.IoServiceStatistics;
 final class NioServerStats implements NioServerStatsMBean {
     private final IoAcceptor acceptor;
     private final IoServiceStatistics stats;
+    private final CompressionStats compression;
 
     NioServerStats(NioServer server) {
         acceptor = server.acceptor;
         stats = acceptor.getStatistics();
+        compression = server.compressionStats;
     }
 
     @Override
@@ -72,4 +74,44 @@ final class NioServerStats implements NioServerStatsMBean {
     public long getScheduledWriteMessages() {
         return stats.getScheduledWriteMessages();
     }
+
+    @Override
+    public long getCompressedSessions() {
+        return compression.getSessions();
+    }
+
+    @Override
+    public long getCompressionInputBytes() {
+        return compression.getDeflateInputBytes();
+    }
+
+    @Override
+    public long getCompressionOutputBytes() {
+        return compression.getDeflateOutputBytes();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        return compression.getRatio();
+    }
+
+    @Override
+    public long getCompressionMillis() {
+        return compression.getDeflateMillis();
+    }
+
+    @Override
+    public long getDecompressionInputBytes() {
+        return compression.getInflateInputBytes();
+    }
+
+    @Override
+    public long getDecompressionOutputBytes() {
+        return compression.getInflateOutputBytes();
+    }
+
+    @Override
+    public long getDecompressionMillis() {
+        return compression.getInflateMillis();
+    }
 }
@@ -25,4 +25,12 @@ public interface NioServerStatsMBean {
     long getWrittenMessages();
     long getScheduledWriteBytes();
     long getScheduledWriteMessages();
+    long getCompressedSessions();
+    long getCompressionInputBytes();
+    long getCompressionOutputBytes();
+    double getCompressionRatio();
+    long getCompressionMillis();
+    long getDecompressionInputBytes();
+    long getDecompressionOutputBytes();
+    long getDecompressionMillis();
 }
@@ -53,7 +53,7 @@ public final class CreateVolume extends AdminDocumentHandler {
     private Volume toVolume(VolumeInfo vol) throws ServiceException {
         return Volume.builder().setType(vol.getType()).setName(vol.getName()).setPath(vol.getRootPath(), true)
                 .setCompressBlobs(vol.isCompressBlobs()).setCompressionThreshold(vol.getCompressionThreshold())
-                .build();
+                .setCompressionCodec(vol.getCompressionCodec()).build();
     }
 
     @Override
@@ -71,6 +71,9 @@ public final class ModifyVolume extends AdminDocumentHandler {
         if (vol.getCompressionThreshold() > 0) {
             builder.setCompressionThreshold(vol.getCompressionThreshold());
         }
+        if (vol.getCompressionCodec() != null) {
+            builder.setCompressionCodec(vol.getCompressionCodec());
+        }
         mgr.update(builder.build());
         return new ModifyVolumeResponse();
 
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
@@ -83,7 +84,9 @@ import com.zimbra.cs.service.UserServletException;
 import com.zimbra.cs.service.formatter.FormatterFactory.FormatType;
 import com.zimbra.cs.service.mail.UploadScanner;
 import com.zimbra.cs.servlet.ETagHeaderFilter;
+import com.zimbra.cs.servlet.util.JettyUtil;
 import com.zimbra.cs.store.Blob;
+import com.zimbra.cs.store.MappedBlob;
 import com.zimbra.cs.store.StoreManager;
 
 public final class NativeFormatter extends Formatter {
@@ -165,6 +168,12 @@ public final class NativeFormatter extends Formatter {
             handleMessagePart(context, mp, msg);
         } else {
             context.resp.setContentType(MimeConstants.CT_TEXT_PLAIN);
+            MappedBlob mapped = MappedBlob.open(msg.getBlob());
+            if (mapped != null) {
+                context.resp.setContentLengthLong(mapped.getSize());
+                JettyUtil.sendContent(context.resp, mapped);
+                return;
+            }
             long size = msg.getSize();
             if (size > 0)
                 context.resp.setContentLength((int)size);
@@ -407,8 +416,11 @@ public final class NativeFormatter extends Formatter {
         } else {
             String defaultCharset = context.targetAccount.getAttr(Provisioning.A_zimbraPrefMailDefaultCharset, null);
             boolean neuter = doc.getAccount().getBooleanAttr(Provisioning.A_zimbraNotebookSanitizeHtml, true);
+            MappedBlob mapped = MappedBlob.open(doc.getBlob());
             if (neuter)
-                sendbackOriginalDoc(is, contentType, defaultCharset, doc.getName(), null, doc.getSize(), context.req, context.resp);
+                sendbackOriginalDoc(is, mapped, contentType, defaultCharset, doc.getName(), null, doc.getSize(), context.req, context.resp);
+            else if (mapped != null)
+                sendbackBinaryData(context.req, context.resp, is, mapped, contentType, null, doc.getName());
             else
                 sendbackBinaryData(context.req, context.resp, is, contentType, null , doc.getName(), doc.getSize());
         }
@@ -446,11 +458,11 @@ public final class NativeFormatter extends Formatter {
 
     public static void sendbackOriginalDoc(InputStream is, String contentType, String defaultCharset, String filename,
             String desc, HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        sendbackOriginalDoc(is, contentType, defaultCharset, filename, desc, 0, req, resp);
+        sendbackOriginalDoc(is, null, contentType, defaultCharset, filename, desc, 0, req, resp);
     }
 
-    private static void sendbackOriginalDoc(InputStream is, String contentType, String defaultCharset, String filename,
-            String desc, long size, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    private static void sendbackOriginalDoc(InputStream is, MappedBlob mapped, String contentType, String defaultCharset,
+            String filename, String desc, long size, HttpServletRequest req, HttpServletResponse resp) throws IOException {
         String disp = req.getParameter(UserServlet.QP_DISP);
         disp = (disp == null || disp.toLowerCase().startsWith("i")) ? Part.INLINE : Part.ATTACHMENT;
         if (desc != null && desc.length() <= 2048) { // do not return ridiculously long header.
@@ -476,7 +488,11 @@ public final class NativeFormatter extends Formatter {
                 disp = Part.ATTACHMENT;
             }
             resp.setContentType(contentType);
-            sendbackBinaryData(req, resp, is, contentType, disp, filename, size);
+            if (mapped != null) {
+                sendbackBinaryData(req, resp, is, mapped, contentType, disp, filename);
+            } else {
+                sendbackBinaryData(req, resp, is, contentType, disp, filename, size);
+            }
         }
     }
 
@@ -610,54 +626,97 @@ public final class NativeFormatter extends Formatter {
                                           long size, boolean ignoreContentDisposition)
     throws IOException {
         resp.setContentType(contentType);
+        disposition = getDisposition(req, disposition);
+        PushbackInputStream pis = new PushbackInputStream(in, READ_AHEAD_BUFFER_SIZE);
+        if (needsScriptCheck(req, resp, contentType, disposition)) {
+            byte[] buf = new byte[READ_AHEAD_BUFFER_SIZE];
+            int bytesRead = pis.read(buf, 0, READ_AHEAD_BUFFER_SIZE);
+            if (hasScript(buf, bytesRead)) {
+                resp.addHeader("Cache-Control", "no-transform");
+                disposition = Part.ATTACHMENT;
+            }
+            if (bytesRead > 0)
+                pis.unread(buf, 0, bytesRead);
+        }
+        if (!ignoreContentDisposition) {
+            String cd = HttpUtil.createContentDisposition(req, disposition, filename == null ? "unknown" : filename);
+            resp.addHeader("Content-Disposition", cd);
+        }
+        if (size > 0)
+            resp.setContentLength((int)size);
+        ByteUtil.copy(pis, true, resp.getOutputStream(), false);
+    }
+
+    /**
+     * Same as the stream version, but sends the content from a memory-mapped blob.  <tt>in</tt> is
+     * only closed.
+     */
+    private static void sendbackBinaryData(HttpServletRequest req, HttpServletResponse resp, InputStream in,
+                                           MappedBlob mapped, String contentType, String disposition, String filename)
+    throws IOException {
+        ByteUtil.closeStream(in);
+        resp.setContentType(contentType);
+        disposition = getDisposition(req, disposition);
+        if (needsScriptCheck(req, resp, contentType, disposition)) {
+            ByteBuffer head = mapped.getBuffer();
+            byte[] buf = new byte[Math.min(READ_AHEAD_BUFFER_SIZE, head.remaining())];
+            head.get(buf);
+            if (hasScript(buf, buf.length)) {
+                resp.addHeader("Cache-Control", "no-transform");
+                disposition = Part.ATTACHMENT;
+            }
+        }
+        String cd = HttpUtil.createContentDisposition(req, disposition, filename == null ? "unknown" : filename);
+        resp.addHeader("Content-Disposition", cd);
+        resp.setContentLengthLong(mapped.getSize());
+        JettyUtil.sendContent(resp, mapped);
+    }
+
+    private static String getDisposition(HttpServletRequest req, String disposition) {
         if (disposition == null) {
             String disp = req.getParameter(UserServlet.QP_DISP);
             disposition = (disp == null || disp.toLowerCase().startsWith("i") ) ? Part.INLINE : Part.ATTACHMENT;
         }
-        PushbackInputStream pis = new PushbackInputStream(in, READ_AHEAD_BUFFER_SIZE);
-        boolean isSafe = false;
+        return disposition;
+    }
+
+    /**
+     * Returns true if the content has to be scanned for script before it's sent, which is only the case for
+     * IE displaying it inline.
+     */
+    private static boolean needsScriptCheck(HttpServletRequest req, HttpServletResponse resp, String contentType,
+            String disposition) {
         HttpUtil.Browser browser = HttpUtil.guessBrowser(req);
         if (browser != HttpUtil.Browser.IE) {
-            isSafe = true;
+            return false;
         } else if (disposition.equals(Part.ATTACHMENT)) {
-            isSafe = true;
             if (isScriptableContent(contentType)) {
                 resp.addHeader("X-Download-Options", "noopen"); // ask it to save the file
             }
+            return false;
         }
+        return true;
+    }
 
-        if (!isSafe) {
-            byte[] buf = new byte[READ_AHEAD_BUFFER_SIZE];
-            int bytesRead = pis.read(buf, 0, READ_AHEAD_BUFFER_SIZE);
-            boolean hasScript;
-            for (int i = 0; i < bytesRead; i++) {
-                if (buf[i] == SCRIPT_PATTERN[0][0] || buf[i] == SCRIPT_PATTERN[1][0]) {
-                    hasScript = true;
-                    for (int pos = 1; pos < 7 && (i + pos) < bytesRead; pos++) {
-                        if (buf[i+pos] != SCRIPT_PATTERN[0][pos] &&
-                                buf[i+pos] != SCRIPT_PATTERN[1][pos]) {
-                            hasScript = false;
-                            break;
-                        }
-                    }
-                    if (hasScript) {
-                        resp.addHeader("Cache-Control", "no-transform");
-                        disposition = Part.ATTACHMENT;
+    private static boolean hasScript(byte[] buf, int bytesRead) {
+        for (int i = 0; i < bytesRead; i++) {
+            if (buf[i] == SCRIPT_PATTERN[0][0] || buf[i] == SCRIPT_PATTERN[1][0]) {
+                boolean hasScript = true;
+                for (int pos = 1; pos < 7 && (i + pos) < bytesRead; pos++) {
+                    if (buf[i+pos] != SCRIPT_PATTERN[0][pos] &&
+                            buf[i+pos] != SCRIPT_PATTERN[1][pos]) {
+                        hasScript = false;
                         break;
                     }
                 }
+                if (hasScript) {
+                    return true;
+                }
             }
-            if (bytesRead > 0)
-                pis.unread(buf, 0, bytesRead);
         }
-        if (!ignoreContentDisposition) {
-            String cd = HttpUtil.createContentDisposition(req, disposition, filename == null ? "unknown" : filename);
-            resp.addHeader("Content-Disposition", cd);
-        }
-        if (size > 0)
-            resp.setContentLength((int)size);
-        ByteUtil.copy(pis, true, resp.getOutputStream(), false);
+        return false;
     }
+
     /**
      * Determines whether or not the contentType passed might contain script or other unsavory tags.
      * @param contentType The content type to check
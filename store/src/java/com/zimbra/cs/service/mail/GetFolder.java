@@ -21,14 +21,17 @@
 package com.zimbra.cs.service.mail;
 
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.Lists;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.soap.Element;
 import com.zimbra.common.soap.MailConstants;
 import com.zimbra.common.util.Pair;
+import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.mailbox.Folder;
 import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.mailbox.MailServiceException;
@@ -37,6 +40,7 @@ import com.zimbra.cs.mailbox.Mailbox.FolderNode;
 import com.zimbra.cs.mailbox.Mountpoint;
 import com.zimbra.cs.mailbox.OperationContext;
 import com.zimbra.cs.mailbox.OperationContextData;
+import com.zimbra.cs.mailbox.SearchFolder;
 import com.zimbra.cs.service.util.ItemId;
 import com.zimbra.cs.service.util.ItemIdFormatter;
 import com.zimbra.soap.ZimbraSoapContext;
@@ -121,7 +125,14 @@ public class GetFolder extends MailDocumentHandler {
             }
 
             List<ExpandableMountpoint> mounts = Lists.newArrayList();
-            Element folderRoot = encodeFolderNode(rootnode, response, ifmt, octxt, true, depth, view, traverse, mounts);
+            Element folderRoot;
+            if (!traverse && !(rootnode.mFolder instanceof Mountpoint) && canStreamResponse(request, context)) {
+                // no mountpoint contents to graft on afterwards, so subfolders can be encoded as they're written out
+                folderRoot = encodeFolder(rootnode, response, ifmt, octxt, true);
+                streamSubfolders(folderRoot, rootnode, ifmt, octxt, depth);
+            } else {
+                folderRoot = encodeFolderNode(rootnode, response, ifmt, octxt, true, depth, view, traverse, mounts);
+            }
 
             if (rootnode.mFolder != null && rootnode.mFolder instanceof Mountpoint) {
                 mounts.add(new ExpandableMountpoint(folderRoot, (Mountpoint) rootnode.mFolder, depth));
@@ -142,16 +153,11 @@ public class GetFolder extends MailDocumentHandler {
     private static Element encodeFolderNode(FolderNode node, Element parent, ItemIdFormatter ifmt, OperationContext octxt,
             boolean exposeAclAccessKey, int depth, MailItem.Type view, boolean traverse, List<ExpandableMountpoint> mounts)
     throws ServiceException {
-        Element eFolder;
+        Element eFolder = encodeFolder(node, parent, ifmt, octxt, exposeAclAccessKey);
         Folder folder = node.mFolder;
-        if (folder != null) {
-            eFolder = ToXML.encodeFolder(parent, ifmt, octxt, folder, ToXML.NOTIFY_FIELDS, exposeAclAccessKey);
-            // if requested, fetch contents of mountpoints
-            if (traverse && mounts != null && folder instanceof Mountpoint && folder.getMailbox().hasFullAccess(octxt)) {
-                mounts.add(new ExpandableMountpoint(eFolder, (Mountpoint) folder, depth));
-            }
-        } else {
-            eFolder = parent.addNonUniqueElement(MailConstants.E_FOLDER).addAttribute(MailConstants.A_ID, ifmt.formatItemId(node.mId)).addAttribute(MailConstants.A_NAME, node.mName);
+        // if requested, fetch contents of mountpoints
+        if (traverse && mounts != null && folder instanceof Mountpoint && folder.getMailbox().hasFullAccess(octxt)) {
+            mounts.add(new ExpandableMountpoint(eFolder, (Mountpoint) folder, depth));
         }
 
         if (depth == 0) {
@@ -166,6 +172,99 @@ public class GetFolder extends MailDocumentHandler {
         return eFolder;
     }
 
+    private static Element encodeFolder(FolderNode node, Element parent, ItemIdFormatter ifmt, OperationContext octxt,
+            boolean exposeAclAccessKey) throws ServiceException {
+        if (node.mFolder != null) {
+            return ToXML.encodeFolder(parent, ifmt, octxt, node.mFolder, ToXML.NOTIFY_FIELDS, exposeAclAccessKey);
+        } else {
+            return parent.addNonUniqueElement(MailConstants.E_FOLDER).addAttribute(MailConstants.A_ID, ifmt.formatItemId(node.mId)).addAttribute(MailConstants.A_NAME, node.mName);
+        }
+    }
+
+    /**
+     * Adds the subfolders of {@code node} to {@code eFolder} as streamed elements, which only get encoded while the
+     * response is being written out.  XML keeps all of them in one stream so that their order is preserved; JSON
+     * groups children into one array per element name, so it gets a stream per name.
+     */
+    private static void streamSubfolders(Element eFolder, FolderNode node, ItemIdFormatter ifmt,
+            OperationContext octxt, int depth) throws ServiceException {
+        if (depth == 0 || node.mSubfolders.isEmpty()) {
+            return;
+        }
+        int remainingDepth = depth > 0 ? depth - 1 : depth;
+        try {
+            if (eFolder instanceof Element.JSONElement) {
+                Set<String> names = new LinkedHashSet<String>();
+                for (FolderNode subNode : node.mSubfolders) {
+                    names.add(getElementName(subNode));
+                }
+                for (String name : names) {
+                    eFolder.addStreamedElements(name, new SubfolderSource(node, name, ifmt, octxt, remainingDepth));
+                }
+            } else {
+                eFolder.addStreamedElements(MailConstants.E_FOLDER,
+                        new SubfolderSource(node, null, ifmt, octxt, remainingDepth));
+            }
+        } catch (Element.ContainerException e) {
+            // this kind of element can't hold streamed children; encode them right away
+            for (FolderNode subNode : node.mSubfolders) {
+                encodeFolderNode(subNode, eFolder, ifmt, octxt, true, remainingDepth, null, false, null);
+            }
+        }
+    }
+
+    private static String getElementName(FolderNode node) {
+        if (node.mFolder instanceof SearchFolder) {
+            return MailConstants.E_SEARCH;
+        } else if (node.mFolder instanceof Mountpoint) {
+            return MailConstants.E_MOUNT;
+        } else {
+            return MailConstants.E_FOLDER;
+        }
+    }
+
+    private static final class SubfolderSource implements Element.StreamedElement.Source {
+        private final Iterator<FolderNode> subNodes;
+        private final String name;
+        private final ItemIdFormatter ifmt;
+        private final OperationContext octxt;
+        private final int depth;
+
+        /**
+         * @param name the element name to produce, or null for all subfolders
+         * @param depth how many levels below the subfolders to include, -1 for all
+         */
+        SubfolderSource(FolderNode node, String name, ItemIdFormatter ifmt, OperationContext octxt, int depth) {
+            this.subNodes = node.mSubfolders.iterator();
+            this.name = name;
+            this.ifmt = ifmt;
+            this.octxt = octxt;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean next(Element parent) {
+            while (subNodes.hasNext()) {
+                FolderNode subNode = subNodes.next();
+                if (name != null && !name.equals(getElementName(subNode))) {
+                    continue;
+                }
+                try {
+                    Element eFolder = encodeFolder(subNode, parent, ifmt, octxt, true);
+                    streamSubfolders(eFolder, subNode, ifmt, octxt, depth);
+                } catch (ServiceException e) {
+                    // too late to fail the request; leave the folder out
+                    ZimbraLog.mailbox.warn("unable to encode folder %d (skipped)", subNode.mId, e);
+                    for (Element partial : parent.listElements()) {
+                        partial.detach();
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
     private static class ExpandableMountpoint {
         final Element elt;
         final Mountpoint mpt;
@@ -114,7 +114,9 @@ public class Search extends MailDocumentHandler  {
             // must use results.getSortBy() because the results might have ignored our sortBy
             // request and used something else...
             response.addAttribute(MailConstants.A_SORTBY, results.getSortBy().toString());
-            putHits(zsc, octxt, response, results, params, memberOfMap);
+            boolean streaming = canStreamResponse(request, context) &&
+                    params.getFetchMode() != SearchParams.Fetch.IDS;
+            putHits(zsc, octxt, response, results, params, memberOfMap, streaming);
         } catch (IOException e) {
         } 
         return response;
@@ -131,7 +133,7 @@ public class Search extends MailDocumentHandler  {
     }
 
     private void putHits(ZimbraSoapContext zsc, OperationContext octxt, Element el, ZimbraQueryResults results,
-            SearchParams params, Map<String,Set<String>> memberOfMap) throws ServiceException {
+            SearchParams params, Map<String,Set<String>> memberOfMap, boolean streaming) throws ServiceException {
 
         if (params.getInlineRule() == ExpandResults.HITS ||
             params.getInlineRule() == ExpandResults.FIRST_MSG ||
@@ -159,6 +161,7 @@ public class Search extends MailDocumentHandler  {
         SearchResponse resp = new SearchResponse(zsc, octxt, el, params, memberOfMap);
         resp.setIncludeMailbox(false);
         resp.setSortOrder(pager.getSortOrder());
+        resp.setStreaming(streaming);
         boolean expand;
         ExpandResults expandValue = params.getInlineRule();
         int hitNum = 0;
@@ -23,14 +23,11 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 
-import com.google.common.base.Strings;
 import com.zimbra.common.account.Key.AccountBy;
-import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.soap.Element;
 import com.zimbra.common.soap.MailConstants;
 import com.zimbra.common.soap.SoapFaultException;
-import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.Account;
 import com.zimbra.cs.account.Provisioning;
 import com.zimbra.cs.index.MessageHit;
@@ -107,6 +104,7 @@ public final class SearchConv extends Search {
                         response, ifmt, octxt, conv, CONVERSATION_FIELD_MASK): response;
                         SearchResponse builder = new SearchResponse(zsc, octxt, container, params);
                         builder.setAllRead(conv.getUnreadCount() == 0);
+                        builder.setStreaming(canStreamResponse(request, context));
                         boolean more = putHits(octxt, ifmt, builder, msgs, results, params, conv);
                         response.addAttribute(MailConstants.A_QUERY_MORE, more);
 
@@ -201,9 +199,8 @@ public final class SearchConv extends Search {
                 if (matched[i - offset] != null) {
                     resp.add(matched[i - offset],expandMsg);
                 } else {
-                    Message msg = msgs.get(i);
                     //boolean inline = expand == ExpandResults.ALL || expand.matches(msg);
-                    addMessageMiss(msg, resp.toElement(), octxt, ifmt, expandMsg, params);
+                    resp.addMiss(msgs.get(i), expandMsg);
                 }
             }
         }
@@ -273,31 +270,4 @@ public final class SearchConv extends Search {
         return expandMsgs;
     }
 
-    private Element addMessageMiss(Message msg, Element response, OperationContext octxt, ItemIdFormatter ifmt,
-            boolean inline, SearchParams params) throws ServiceException {
-        //ZimbraLog.search.debug("query "+params.getQueryString()+" didn't match message "+Integer.toString(msg.getId()));
-
-        // for bug 7568, mark-as-read must happen before the response is encoded.
-        if (inline && msg.isUnread() && params.getMarkRead()) {
-            // Mark the message as READ
-            try {
-                msg.getMailbox().alterTag(octxt, msg.getId(), msg.getType(), Flag.FlagInfo.UNREAD, false, null);
-            } catch (ServiceException e) {
-                ZimbraLog.search.warn("problem marking message as read (ignored): %d", msg.getId(), e);
-            }
-        }
-
-        Element el;
-        if (inline) {
-            el = ToXML.encodeMessageAsMP(response, ifmt, octxt, msg, null, params.getMaxInlinedLength(),
-                    params.getWantHtml(), params.getNeuterImages(), null, true, params.getWantExpandGroupInfo(), LC.mime_encode_missing_blob.booleanValue(), params.getWantContent());
-            if (!Strings.isNullOrEmpty(msg.getFragment())) {
-                el.addAttribute(MailConstants.E_FRAG, msg.getFragment(), Element.Disposition.CONTENT);
-            }
-        } else {
-            el = ToXML.encodeMessageSummary(response, ifmt, octxt, msg, params.getWantRecipients(), ToXML.NOTIFY_FIELDS);
-        }
-        return el;
-    }
-
 }
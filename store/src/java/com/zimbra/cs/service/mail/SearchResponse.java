@@ -16,11 +16,13 @@
  */
 package com.zimbra.cs.service.mail;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.common.base.Strings;
 import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.mailbox.ZimbraFetchMode;
 import com.zimbra.common.service.ServiceException;
@@ -83,6 +85,8 @@ final class SearchResponse {
     private SortBy sortOrder = SortBy.NONE;;
     private boolean allRead = false;
     private final Map<String,Set<String>> memberOfMap;
+    private boolean streaming = false;
+    private HitStream stream;
 
     protected SearchResponse(ZimbraSoapContext zsc, OperationContext octxt, Element el, SearchParams params) {
         this(zsc, octxt, el, params, (Map<String,Set<String>>) null);
@@ -116,6 +120,18 @@ final class SearchResponse {
         sortOrder = value;
     }
 
+    /**
+     * Set whether message and conversation hits may be encoded only once the response is written out, so that
+     * they never all sit in memory as {@link Element}s.  Only use this when the response goes straight to the
+     * client (see {@link DocumentHandler#canStreamResponse}).  Side effects such as mark-as-read still happen
+     * when the hit is added.
+     *
+     * @param value true to stream, otherwise false
+     */
+    void setStreaming(boolean value) {
+        streaming = value;
+    }
+
     /**
      * Append a paging flag to the response.
      *
@@ -167,14 +183,28 @@ final class SearchResponse {
                 el.addAttribute(MailConstants.A_ID, ifmt.formatItemId(hit.getParsedItemID()));
             }
         } else if (hit instanceof ProxiedHit) {
+            stopStreaming();
             element.addElement(((ProxiedHit) hit).getElement().detach());
             size++;
             return;
         } else {
+            if (hit instanceof MessageHit) {
+                markRead(((MessageHit) hit).getMessage(), expandMsg);
+            }
+            if (hit instanceof ConversationHit || hit instanceof MessageHit) {
+                String name = hit instanceof ConversationHit ? MailConstants.E_CONV : MailConstants.E_MSG;
+                if (defer(name, hit, null, expandMsg)) {
+                    size++;
+                    return;
+                }
+            } else {
+                stopStreaming();
+            }
+
             if (hit instanceof ConversationHit) {
-                el = add((ConversationHit) hit);
+                el = add(element, (ConversationHit) hit);
             } else if (hit instanceof MessageHit) {
-                el = add((MessageHit) hit,expandMsg);
+                el = add(element, (MessageHit) hit, expandMsg);
             } else if (hit instanceof MessagePartHit) {
                 el = add((MessagePartHit) hit);
             } else if (hit instanceof ContactHit) {
@@ -193,16 +223,169 @@ final class SearchResponse {
 
         if (el != null) {
             size++;
-            el.addAttribute(MailConstants.A_SORT_FIELD, hit.getSortField(sortOrder).toString());
-            if (includeMailbox) {
-                el.addAttribute(MailConstants.A_ID, new ItemId(hit.getAcctIdStr(), hit.getItemId()).toString());
+            addHitFields(el, hit);
+        }
+    }
+
+    private void addHitFields(Element el, ZimbraHit hit) throws ServiceException {
+        el.addAttribute(MailConstants.A_SORT_FIELD, hit.getSortField(sortOrder).toString());
+        if (includeMailbox) {
+            el.addAttribute(MailConstants.A_ID, new ItemId(hit.getAcctIdStr(), hit.getItemId()).toString());
+        }
+    }
+
+    /**
+     * Append a message of the conversation that did not match the search.
+     *
+     * @param msg the message
+     * @param inline true to return the message expanded, otherwise false
+     * @throws ServiceException error
+     */
+    void addMiss(Message msg, boolean inline) throws ServiceException {
+        markRead(msg, inline);
+        if (!defer(MailConstants.E_MSG, null, msg, inline)) {
+            addMiss(element, msg, inline);
+        }
+    }
+
+    private Element addMiss(Element parent, Message msg, boolean inline) throws ServiceException {
+        Element el;
+        if (inline) {
+            el = ToXML.encodeMessageAsMP(parent, ifmt, octxt, msg, null, params.getMaxInlinedLength(),
+                    params.getWantHtml(), params.getNeuterImages(), null, true, params.getWantExpandGroupInfo(),
+                    LC.mime_encode_missing_blob.booleanValue(), params.getWantContent());
+            if (!Strings.isNullOrEmpty(msg.getFragment())) {
+                el.addAttribute(MailConstants.E_FRAG, msg.getFragment(), Element.Disposition.CONTENT);
+            }
+        } else {
+            el = ToXML.encodeMessageSummary(parent, ifmt, octxt, msg, params.getWantRecipients(),
+                    ToXML.NOTIFY_FIELDS);
+        }
+        return el;
+    }
+
+    /**
+     * Queues a hit (or a conversation miss) on the response's {@link HitStream} if streaming is on and the stream
+     * takes elements of that name.
+     *
+     * @return false if the caller has to encode the entry right away
+     */
+    private boolean defer(String name, ZimbraHit hit, Message miss, boolean expandMsg) throws ServiceException {
+        if (!streaming) {
+            return false;
+        } else if (stream == null) {
+            stream = new HitStream(name);
+            try {
+                stream.placeholder = element.addStreamedElements(name, stream);
+            } catch (Element.ContainerException e) {
+                // some elements of that name were already added directly
+                stream = null;
+                streaming = false;
+                return false;
+            }
+        } else if (!stream.name.equals(name)) {
+            // JSON needs all the elements of one name in a single array; fall back to building the rest
+            stopStreaming();
+            return false;
+        }
+        stream.entries.add(new Deferred(hit, miss, expandMsg));
+        return true;
+    }
+
+    /**
+     * Turns streaming off, encoding whatever was deferred so far in place of the stream.
+     */
+    private void stopStreaming() throws ServiceException {
+        streaming = false;
+        if (stream != null) {
+            stream.placeholder.detach();
+            for (Deferred entry : stream.entries) {
+                entry.encode(element);
+            }
+            stream = null;
+        }
+    }
+
+    private void markRead(Message msg, boolean expandMsg) {
+        // for bug 7568, mark-as-read must happen before the response is encoded.
+        if (expandMsg && msg.isUnread() && params.getMarkRead()) {
+            // Mark the message as READ
+            try {
+                msg.getMailbox().alterTag(octxt, msg.getId(), msg.getType(), Flag.FlagInfo.UNREAD, false, null);
+            } catch (ServiceException e) {
+                if (e.getCode().equals(ServiceException.PERM_DENIED)) {
+                    LOG.info("no permissions to mark message as read (ignored): %d", msg.getId());
+                } else {
+                    LOG.warn("problem marking message as read (ignored): %d", msg.getId(), e);
+                }
+            }
+        }
+    }
+
+    /** A message or conversation hit, or a conversation miss, waiting to be encoded. */
+    private final class Deferred {
+        private final ZimbraHit hit;
+        private final Message miss;
+        private final boolean expandMsg;
+
+        Deferred(ZimbraHit hit, Message miss, boolean expandMsg) {
+            this.hit = hit;
+            this.miss = miss;
+            this.expandMsg = expandMsg;
+        }
+
+        void encode(Element parent) throws ServiceException {
+            if (miss != null) {
+                addMiss(parent, miss, expandMsg);
+                return;
+            }
+            Element el;
+            if (hit instanceof ConversationHit) {
+                el = add(parent, (ConversationHit) hit);
+            } else {
+                el = add(parent, (MessageHit) hit, expandMsg);
+            }
+            addHitFields(el, hit);
+        }
+    }
+
+    /**
+     * Encodes the deferred hits one at a time while the response is being written out.
+     */
+    private final class HitStream implements Element.StreamedElement.Source {
+        private final String name;
+        private final List<Deferred> entries = new ArrayList<Deferred>();
+        private Element.StreamedElement placeholder;
+        private int next = 0;
+
+        HitStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean next(Element parent) {
+            if (next >= entries.size()) {
+                entries.clear();
+                return false;
+            }
+            Deferred entry = entries.get(next);
+            entries.set(next++, null);
+            try {
+                entry.encode(parent);
+            } catch (ServiceException e) {
+                // most likely the item went away since the search ran; too late to fail the request
+                LOG.warn("unable to encode search result (skipped): %s", entry.hit != null ? entry.hit : entry.miss, e);
+                for (Element partial : parent.listElements()) {
+                    partial.detach();
+                }
             }
+            return true;
         }
     }
 
-    private Element add(ConversationHit hit) throws ServiceException {
+    private Element add(Element parent, ConversationHit hit) throws ServiceException {
         if (params.getFetchMode() == SearchParams.Fetch.IDS) {
-            Element el = element.addNonUniqueElement(MailConstants.E_CONV);
+            Element el = parent.addNonUniqueElement(MailConstants.E_CONV);
             for (MessageHit mhit : hit.getMessageHits()) {
                 ConversationMsgHitInfo cMsgHit = new ConversationMsgHitInfo(ifmt.formatItemId(mhit.getItemId()));
                 cMsgHit.toElement(el);
@@ -211,7 +394,7 @@ final class SearchResponse {
         } else {
             Conversation conv = hit.getConversation();
             MessageHit mhit = hit.getFirstMessageHit();
-            Element el = ToXML.encodeConversationSummary(element, ifmt, octxt, conv,
+            Element el = ToXML.encodeConversationSummary(parent, ifmt, octxt, conv,
                     mhit == null ? null : mhit.getMessage(), params.getWantRecipients());
 
             Collection<MessageHit> msgHits = hit.getMessageHits();
@@ -252,22 +435,8 @@ final class SearchResponse {
     }
 
     //for bug 75990, we are now passing an expandMsg boolean instead of calculating in isInLineExpand
-    private Element add(MessageHit hit, boolean expandMsg) throws ServiceException {
+    private Element add(Element parent, MessageHit hit, boolean expandMsg) throws ServiceException {
         Message msg = hit.getMessage();
-        // for bug 7568, mark-as-read must happen before the response is encoded.
-        if (expandMsg && msg.isUnread() && params.getMarkRead()) {
-            // Mark the message as READ
-            try {
-                msg.getMailbox().alterTag(octxt, msg.getId(), msg.getType(), Flag.FlagInfo.UNREAD, false, null);
-            } catch (ServiceException e) {
-                if (e.getCode().equals(ServiceException.PERM_DENIED)) {
-                    LOG.info("no permissions to mark message as read (ignored): %d", msg.getId());
-                } else {
-                    LOG.warn("problem marking message as read (ignored): %d", msg.getId(), e);
-                }
-            }
-        }
-
         Element el;
         int fields;
         if (params.isQuick()) {
@@ -276,12 +445,12 @@ final class SearchResponse {
             fields = getFieldBitmask();
         }
         if (expandMsg) {
-            el = ToXML.encodeMessageAsMP(element, ifmt, octxt, msg, null, params.getMaxInlinedLength(),
+            el = ToXML.encodeMessageAsMP(parent, ifmt, octxt, msg, null, params.getMaxInlinedLength(),
                     params.getWantHtml(), params.getNeuterImages(), params.getInlinedHeaders(), true,
                     params.getWantExpandGroupInfo(), LC.mime_encode_missing_blob.booleanValue(),
                     params.getWantContent(), fields);
         } else {
-            el = ToXML.encodeMessageSummary(element, ifmt, octxt, msg, params.getWantRecipients(), fields);
+            el = ToXML.encodeMessageSummary(parent, ifmt, octxt, msg, params.getWantRecipients(), fields);
         }
 
         el.addAttribute(MailConstants.A_CONTENTMATCHED, true);
@@ -17,12 +17,18 @@
 
 package com.zimbra.cs.servlet.util;
 
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.io.EndPoint;
 import org.eclipse.jetty.server.HttpConnection;
+import org.eclipse.jetty.server.HttpOutput;
 
 import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.store.MappedBlob;
 
 public class JettyUtil {
 
@@ -46,4 +52,17 @@ public class JettyUtil {
             ZimbraLog.misc.warn("cannot set timeout for null request", new Exception());
         }
     }
+
+    /**
+     * Writes the blob as the complete response body.  When the response goes straight to Jetty the mapped
+     * buffer is handed to the connector as is; wrapped responses get a chunked copy.
+     */
+    public static void sendContent(HttpServletResponse resp, MappedBlob blob) throws IOException {
+        ServletOutputStream out = resp.getOutputStream();
+        if (out instanceof HttpOutput) {
+            ((HttpOutput) out).sendContent(blob.getBuffer());
+        } else {
+            blob.writeTo(out);
+        }
+    }
 }
\ No newline at end of file
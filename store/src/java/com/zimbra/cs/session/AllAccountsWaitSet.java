@@ -49,7 +49,9 @@ public final class AllAccountsWaitSet extends WaitSetBase {
     private static volatile Set<MailItem.Type> interestTypes = EnumSet.noneOf(MailItem.Type.class);
 
     /** If non-null, then we're buffering the commits during creation */
-    private List<Pair<String/*AccountId*/, String/*CommitId*/>> mBufferedCommits;
+    private volatile List<Pair<String/*AccountId*/, String/*CommitId*/>> mBufferedCommits;
+    /** commitId of the most recently queued signal, see {@link #drainSignals()} */
+    private volatile String mLatestCommitId;
 
     private String mCbSeqNo; // seqno returned by the most recent callback
     private String mCurrentSeqNo;
@@ -148,16 +150,35 @@ public final class AllAccountsWaitSet extends WaitSetBase {
         return new ArrayList<WaitSetError>();
     }
 
-    private synchronized void onMailboxChangeCommitted(String commitIdStr, String accountId,
+    private void onMailboxChangeCommitted(String commitIdStr, String accountId,
             Set<MailItem.Type> changedTypes) {
         if (!Collections.disjoint(changedTypes, defaultInterest)) {
             if (mBufferedCommits != null) {
-                mBufferedCommits.add(new Pair<String/*acctId*/, String/*commitId*/>(accountId, commitIdStr));
-            } else {
-                mNextSeqNo = commitIdStr;
-                mCurrentSignalledAccounts.add(accountId);
-                trySendData();
+                synchronized (this) {
+                    if (mBufferedCommits != null) {
+                        mBufferedCommits.add(new Pair<String/*acctId*/, String/*commitId*/>(accountId, commitIdStr));
+                        return;
+                    }
+                }
             }
+            // queue before publishing the commit id, drainSignals() relies on that order
+            queueSignal(accountId, null, null);
+            mLatestCommitId = commitIdStr;
+            signalWaiter();
+        }
+    }
+
+    /**
+     * Also advances the next sequence number.  The commit id is read before draining: every account queued before
+     * that commit id was published is then guaranteed to be in this drain, so a client resuming from the sequence
+     * number can be sent an account twice but never miss one.
+     */
+    @Override
+    protected synchronized void drainSignals() {
+        String latest = mLatestCommitId;
+        super.drainSignals();
+        if (latest != null && mBufferedCommits == null) {
+            mNextSeqNo = latest;
         }
     }
 
@@ -256,10 +277,7 @@ public final class AllAccountsWaitSet extends WaitSetBase {
             }
             interestTypes = types;
         }
-        mCurrentSignalledSessions.clear();
-        mSentSignalledSessions.clear();
-        mSentSignalledAccounts.clear();
-        mCurrentSignalledAccounts.clear();
+        clearSignals();
         return null;
     }
 
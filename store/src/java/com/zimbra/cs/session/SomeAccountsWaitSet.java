@@ -22,6 +22,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.util.ZimbraLog;
@@ -47,8 +48,11 @@ public final class SomeAccountsWaitSet extends WaitSetBase implements MailboxMan
     private long mCbSeqNo = 0; // seqno passed in by the current waiting callback
     private long mCurrentSeqNo; // current sequence number
 
-    /** these are the accounts we are listening to.  Stores EITHER a WaitSetSession or an AccountID  */
-    private HashMap<String, WaitSetAccount> mSessions = new HashMap<String, WaitSetAccount>();
+    /**
+     * these are the accounts we are listening to.  Stores EITHER a WaitSetSession or an AccountID.
+     * Only modified under the monitor, concurrent so that signalDataReady() can check membership without it.
+     */
+    private final ConcurrentHashMap<String, WaitSetAccount> mSessions = new ConcurrentHashMap<String, WaitSetAccount>();
 
     /** Constructor */
     SomeAccountsWaitSet(String ownerAccountId, String id, Set<MailItem.Type> defaultInterest) {
@@ -253,12 +257,9 @@ public final class SomeAccountsWaitSet extends WaitSetBase implements MailboxMan
             ZimbraLog.session.warn("Caught unexpected ServiceException while destroying WaitSet: "+e, e);
         }
         cancelExistingCB();
-        HashMap<String, WaitSetAccount> toRet = mSessions;
-        mSessions = new HashMap<String, WaitSetAccount>();
-        mCurrentSignalledSessions.clear();
-        mSentSignalledSessions.clear();
-        mSentSignalledAccounts.clear();
-        mCurrentSignalledAccounts.clear();
+        HashMap<String, WaitSetAccount> toRet = new HashMap<String, WaitSetAccount>(mSessions);
+        mSessions.clear();
+        clearSignals();
         mCurrentSeqNo = Long.MAX_VALUE;
         return toRet;
    }
@@ -275,10 +276,14 @@ public final class SomeAccountsWaitSet extends WaitSetBase implements MailboxMan
      *
      * @param session
      */
-    synchronized protected void unsignalDataReady(WaitSetSession session) {
-        if (mSessions.containsKey(session.getTargetAccountId())) { // ...false if waitset is shutting down...
-            mCurrentSignalledAccounts.remove(session.getTargetAccountId());
-            mCurrentSignalledSessions.remove(session.getTargetAccountId());
+    protected void unsignalDataReady(WaitSetSession session) {
+        String targetAccId = session.getTargetAccountId();
+        cancelSignal(targetAccId);
+        synchronized (this) {
+            if (mSessions.containsKey(targetAccId)) { // ...false if waitset is shutting down...
+                mCurrentSignalledAccounts.remove(targetAccId);
+                mCurrentSignalledSessions.remove(session);
+            }
         }
     }
 
@@ -286,28 +291,27 @@ public final class SomeAccountsWaitSet extends WaitSetBase implements MailboxMan
      * Called by the WaitSetSession when there is data to be signalled by this session
      * @param session
      */
-    synchronized protected void signalDataReady(WaitSetSession session) {
+    protected void signalDataReady(WaitSetSession session) {
         signalDataReady(session, null);
     }
 
     /**
-     * Called by the WaitSetSession when there is data to be signalled by this session
+     * Called by the WaitSetSession when there is data to be signalled by this session.  Runs on the thread committing
+     * the mailbox change, so it only takes the WaitSet monitor when a callback is waiting for the data.
      * @param session
      */
-    synchronized protected void signalDataReady(WaitSetSession session, PendingModifications pms) {
-        boolean trace = ZimbraLog.session.isTraceEnabled();
-        if (trace) ZimbraLog.session.trace("SomeAccountsWaitSet.signalDataReady 1");
+    protected void signalDataReady(WaitSetSession session, PendingModifications pms) {
         String targetAccId = session.getTargetAccountId();
         if (mSessions.containsKey(targetAccId)) { // ...false if waitset is shutting down...
-            if (trace) ZimbraLog.session.trace("SomeAccountsWaitSet.signalDataReady 2");
-            if (mCurrentSignalledAccounts.add(targetAccId)) {
-                mCurrentSignalledSessions.add(session);
-                if (trace) ZimbraLog.session.trace("SomeAccountsWaitSet.signalDataReady 3");
-                addMods(currentPendingModifications, targetAccId, pms);
-                trySendData();
-            }
+            ZimbraLog.session.trace("SomeAccountsWaitSet.signalDataReady %s", targetAccId);
+            queueSignal(targetAccId, session, pms);
+            signalWaiter();
         }
-        if (trace) ZimbraLog.session.trace("SomeAccountsWaitSet.signalDataReady done");
+    }
+
+    @Override
+    protected boolean acceptsSignal(String accountId) {
+        return mSessions.containsKey(accountId);
     }
 
     @Override
@@ -21,12 +21,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.mailbox.MailItem;
 import com.zimbra.cs.service.mail.WaitSetRequest;
+import com.zimbra.cs.stats.ZimbraPerf;
 import com.zimbra.soap.admin.type.AccountsAttrib;
 import com.zimbra.soap.admin.type.WaitSetInfo;
 import com.zimbra.soap.type.IdAndType;
@@ -41,7 +46,8 @@ public abstract class WaitSetBase implements IWaitSet {
     protected final Set<MailItem.Type> defaultInterest;
 
     protected long mLastAccessedTime = -1;
-    protected WaitSetCallback mCb = null;
+    /** volatile so that signalling threads can see whether anyone is waiting without taking the monitor */
+    protected volatile WaitSetCallback mCb = null;
 
     /**
      * List of errors (right now, only mailbox deletion notifications) to be sent
@@ -59,6 +65,18 @@ public abstract class WaitSetBase implements IWaitSet {
     protected HashSet<WaitSetSession /*accountId*/> mSentSignalledSessions = Sets.newHashSet();
     protected Map<String /*accountId*/, PendingModifications> sentPendingModifications = Maps.newHashMap();
 
+    /**
+     * Signals which arrived since the monitor was last taken, keyed by account id.  Mailbox commits only add to
+     * this map; it is moved into the current signalled set under the monitor when there is a callback to hand it
+     * to, so a WaitSet over many accounts is not a serialization point for every commit between two polls.
+     */
+    private final ConcurrentMap<String /*accountId*/, PendingSignal> incomingSignals =
+            new ConcurrentHashMap<String, PendingSignal>();
+    /** set while a thread is on its way to drain incomingSignals, concurrent signals share that one wakeup */
+    private final AtomicBoolean drainPending = new AtomicBoolean();
+    /** System.nanoTime() when the oldest entry in the current signalled set was signalled, 0 if unknown */
+    private long oldestCurrentSignal = 0;
+
     abstract protected Map<String, WaitSetAccount> destroy();
     abstract protected int countSessions();
     abstract protected boolean cbSeqIsCurrent();
@@ -130,7 +148,98 @@ public abstract class WaitSetBase implements IWaitSet {
         this.defaultInterest = defaultInterest;
     }
 
+    /**
+     * Adds {@code accountId} to the signals waiting to be drained, merging its modifications with any already
+     * waiting for the same account.  Does not take the monitor; follow with {@link #signalWaiter()}.
+     */
+    protected void queueSignal(String accountId, WaitSetSession session, PendingModifications pms) {
+        while (true) {
+            PendingSignal signal = incomingSignals.get(accountId);
+            if (signal == null) {
+                if (incomingSignals.putIfAbsent(accountId, new PendingSignal(session, pms)) == null) {
+                    return;
+                }
+            } else if (signal.add(session, pms)) {
+                return;
+            }
+            // lost a race with drainSignals(), try again with a new entry
+        }
+    }
+
+    /** Drops a queued signal that has not been drained yet */
+    protected void cancelSignal(String accountId) {
+        incomingSignals.remove(accountId);
+    }
+
+    /**
+     * Hands the queued signals to the waiting callback, if there is one.  Only one of the threads signalling at the
+     * same time takes the monitor; the others leave their signals for it to pick up.
+     */
+    protected void signalWaiter() {
+        if (mCb != null && drainPending.compareAndSet(false, true)) {
+            synchronized (this) {
+                trySendData();
+            }
+        }
+    }
+
+    /** Returns the number of accounts whose signals have not been drained yet */
+    public int getPendingSignalCount() {
+        return incomingSignals.size();
+    }
+
+    /** Returns false if signals for this account should be discarded, e.g. because it has left the set */
+    protected boolean acceptsSignal(String accountId) {
+        return true;
+    }
+
+    /**
+     * Moves the queued signals into the current signalled set.
+     */
+    protected synchronized void drainSignals() {
+        // clear first: a signal queued after this point either gets drained below or wakes another drain
+        drainPending.set(false);
+        if (incomingSignals.isEmpty()) {
+            return;
+        }
+        ZimbraPerf.HISTOGRAM_WAITSET_QUEUE_DEPTH.increment(incomingSignals.size());
+        for (String accountId : incomingSignals.keySet()) {
+            PendingSignal signal = incomingSignals.remove(accountId);
+            if (signal == null) {
+                continue;
+            }
+            signal.drain();
+            if (!acceptsSignal(accountId)) {
+                continue;
+            }
+            mCurrentSignalledAccounts.add(accountId);
+            if (signal.session != null) {
+                mCurrentSignalledSessions.add(signal.session);
+            }
+            PendingModifications current = currentPendingModifications.get(accountId);
+            if (current == null) {
+                addMods(currentPendingModifications, accountId, signal.mods);
+            } else if (signal.mods != null) {
+                addMods(currentPendingModifications, accountId, mergeModifications(current, signal.mods));
+            }
+            if (oldestCurrentSignal == 0 || signal.created - oldestCurrentSignal < 0) {
+                oldestCurrentSignal = signal.created;
+            }
+        }
+    }
+
+    /** Discards all signalled data, queued, current and sent */
+    protected synchronized void clearSignals() {
+        incomingSignals.clear();
+        mCurrentSignalledSessions.clear();
+        mSentSignalledSessions.clear();
+        mSentSignalledAccounts.clear();
+        mCurrentSignalledAccounts.clear();
+        oldestCurrentSignal = 0;
+    }
+
     protected synchronized void trySendData() {
+        drainSignals();
         if (mCb == null) {
             ZimbraLog.session.trace("WaitSetBase.trySendData - no callback listening");
             return;
@@ -193,6 +302,12 @@ public abstract class WaitSetBase implements IWaitSet {
 
             assert(mSentSignalledAccounts.size() > 0 || mSentErrors.size() > 0);
             ZimbraLog.session.trace("WaitSetBase.trySendData 3");
+            ZimbraPerf.HISTOGRAM_WAITSET_BATCH.increment(mSentSignalledAccounts.size());
+            if (oldestCurrentSignal != 0) {
+                ZimbraPerf.HISTOGRAM_WAITSET_NOTIFY_MS.increment(
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldestCurrentSignal));
+                oldestCurrentSignal = 0;
+            }
             mCb.dataReady(this, toNextSeqNo(), false, mSentErrors, mSentSignalledSessions, mSentSignalledAccounts, sentPendingModifications);
             mCb = null;
             mLastAccessedTime = System.currentTimeMillis();
@@ -202,6 +317,7 @@ public abstract class WaitSetBase implements IWaitSet {
 
     @Override
     public synchronized WaitSetInfo handleQuery() {
+        drainSignals();
         WaitSetInfo info = WaitSetInfo.createForWaitSetIdOwnerInterestsLastAccessDate(mWaitSetId, mOwnerAccountId,
                 WaitSetRequest.expandInterestStr(defaultInterest), mLastAccessedTime);
 
@@ -242,4 +358,67 @@ public abstract class WaitSetBase implements IWaitSet {
     protected synchronized void addMods(Map<String, PendingModifications> mods, String acctId, PendingModifications mod) {
         mods.put(acctId, mod);
     }
+
+    /**
+     * Returns a new object holding the changes in both, without modifying either: the ones passed to a WaitSet are
+     * shared with the other listeners on the mailbox.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    static PendingModifications mergeModifications(PendingModifications first, PendingModifications second) {
+        PendingModifications merged;
+        if (first instanceof PendingLocalModifications && second instanceof PendingLocalModifications) {
+            merged = new PendingLocalModifications();
+        } else if (first instanceof PendingRemoteModifications && second instanceof PendingRemoteModifications) {
+            merged = new PendingRemoteModifications();
+        } else {
+            return second;
+        }
+        return merged.add(first).add(second);
+    }
+
+    /**
+     * The changes signalled for one account since the last drain.
+     */
+    private static final class PendingSignal {
+        final long created = System.nanoTime();
+        WaitSetSession session;
+        PendingModifications mods;
+        /** true once mods is a merged copy which we own and can add to */
+        private boolean merged = false;
+        private boolean drained = false;
+
+        PendingSignal(WaitSetSession session, PendingModifications mods) {
+            this.session = session;
+            this.mods = mods;
+        }
+
+        /**
+         * Returns false if this signal has already been drained, in which case the caller must queue a new one.
+         */
+        @SuppressWarnings("unchecked")
+        synchronized boolean add(WaitSetSession newSession, PendingModifications pms) {
+            if (drained) {
+                return false;
+            }
+            if (newSession != null) {
+                session = newSession;
+            }
+            if (mods == null) {
+                mods = pms;
+            } else if (pms != null) {
+                if (merged && mods.getClass() == pms.getClass()) {
+                    mods.add(pms);
+                } else {
+                    PendingModifications result = mergeModifications(mods, pms);
+                    merged = result != pms;
+                    mods = result;
+                }
+            }
+            return true;
+        }
+
+        synchronized void drain() {
+            drained = true;
+        }
+    }
 }
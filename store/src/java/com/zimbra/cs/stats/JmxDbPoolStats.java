@@ -0,0 +1,96 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.zimbra.cs.db.DbPool;
+import com.zimbra.cs.db.DbPoolStats;
+
+/**
+ * Exposes the database connection pool usage, and the {@link DbPoolStats} breakdown of connection wait and hold times
+ * by caller.
+ */
+public class JmxDbPoolStats implements JmxDbPoolStatsMBean {
+
+    private static final int MAX_CALLERS = 50;
+
+    JmxDbPoolStats() {
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return DbPool.getSize();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return DbPool.getIdleSize();
+    }
+
+    @Override
+    public int getMaxConnections() {
+        return DbPool.getMaxSize();
+    }
+
+    @Override
+    public long getConnectionWaitP99Us() {
+        return ZimbraPerf.HISTOGRAM_DB_CONN_WAIT_US.getPercentile(99);
+    }
+
+    @Override
+    public long getConnectionHoldP99Ms() {
+        return ZimbraPerf.HISTOGRAM_DB_CONN_HOLD_MS.getPercentile(99);
+    }
+
+    @Override
+    public long getSlowHolds() {
+        return DbPoolStats.getSlowHolds();
+    }
+
+    @Override
+    public String[] getCallerStats() {
+        List<DbPoolStats.CallerStats> callers = DbPoolStats.getCallers();
+        // snapshot the wait times first, the counters keep moving while we sort
+        final Map<DbPoolStats.CallerStats, Long> waits = new HashMap<DbPoolStats.CallerStats, Long>(callers.size());
+        for (DbPoolStats.CallerStats caller : callers) {
+            waits.put(caller, caller.getWaitUs().getTotal());
+        }
+        Collections.sort(callers, new Comparator<DbPoolStats.CallerStats>() {
+            @Override
+            public int compare(DbPoolStats.CallerStats c1, DbPoolStats.CallerStats c2) {
+                return Long.compare(waits.get(c2), waits.get(c1));
+            }
+        });
+        int count = Math.min(callers.size(), MAX_CALLERS);
+        List<String> result = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(callers.get(i).toString());
+        }
+        return result.toArray(new String[count]);
+    }
+
+    @Override
+    public void reset() {
+        DbPoolStats.reset();
+    }
+}
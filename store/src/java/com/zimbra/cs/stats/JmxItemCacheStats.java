@@ -0,0 +1,102 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.stats;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.zimbra.cs.mailbox.ItemCacheBudget;
+
+/**
+ * Exposes the server-wide {@link ItemCacheBudget} and the item cache usage of the loaded mailboxes.
+ */
+public class JmxItemCacheStats implements JmxItemCacheStatsMBean {
+
+    private static final int MAX_MAILBOXES = 50;
+
+    private final ItemCacheBudget budget = ItemCacheBudget.getInstance();
+
+    JmxItemCacheStats() {
+    }
+
+    @Override
+    public long getBudgetBytes() {
+        return budget.getBudget();
+    }
+
+    @Override
+    public long getCachedBytes() {
+        return budget.getCachedBytes();
+    }
+
+    @Override
+    public long getFairShareBytes() {
+        long share = budget.getFairShare();
+        return share == Long.MAX_VALUE ? -1 : share;
+    }
+
+    @Override
+    public int getCachedMailboxes() {
+        return budget.getUsage().size();
+    }
+
+    @Override
+    public long getHits() {
+        return budget.getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return budget.getMisses();
+    }
+
+    @Override
+    public double getHitRatio() {
+        long hits = budget.getHits();
+        long total = hits + budget.getMisses();
+        return total == 0 ? 0.0 : (double) hits / (double) total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return budget.getEvictions();
+    }
+
+    @Override
+    public String[] getLargestMailboxes() {
+        // the usage objects are snapshots, safe to sort
+        List<ItemCacheBudget.Usage> usage = budget.getUsage();
+        Collections.sort(usage, new Comparator<ItemCacheBudget.Usage>() {
+            @Override
+            public int compare(ItemCacheBudget.Usage u1, ItemCacheBudget.Usage u2) {
+                return Long.compare(u2.bytes, u1.bytes);
+            }
+        });
+        int count = Math.min(usage.size(), MAX_MAILBOXES);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = usage.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        budget.reset();
+    }
+}
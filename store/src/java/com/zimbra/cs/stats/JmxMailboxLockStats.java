@@ -0,0 +1,113 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.zimbra.common.service.ServiceException;
+import com.zimbra.common.util.ZimbraLog;
+import com.zimbra.cs.mailbox.Mailbox;
+import com.zimbra.cs.mailbox.MailboxManager;
+import com.zimbra.cs.mailbox.lock.MailboxLockStats;
+
+/**
+ * Exposes the server-wide {@link MailboxLockStats} totals, plus a per-mailbox breakdown for loaded mailboxes.
+ */
+public class JmxMailboxLockStats implements JmxMailboxLockStatsMBean {
+
+    private static final int MAX_MAILBOXES = 50;
+
+    private final MailboxLockStats totals = MailboxLockStats.getTotals();
+
+    JmxMailboxLockStats() {
+    }
+
+    @Override
+    public long getLockAcquires() {
+        return totals.getAcquires();
+    }
+
+    @Override
+    public long getLockContended() {
+        return totals.getContended();
+    }
+
+    @Override
+    public long getLockFailures() {
+        return totals.getFailures();
+    }
+
+    @Override
+    public long getLockWaitMs() {
+        return totals.getWaitMs();
+    }
+
+    @Override
+    public long getLockMaxWaitMs() {
+        return totals.getMaxWaitMs();
+    }
+
+    @Override
+    public long getOptimisticReads() {
+        return totals.getOptimisticReads();
+    }
+
+    @Override
+    public long getOptimisticFailures() {
+        return totals.getOptimisticFailures();
+    }
+
+    @Override
+    public String[] getMostContendedMailboxes() {
+        List<Mailbox> mailboxes;
+        try {
+            mailboxes = MailboxManager.getInstance().getAllLoadedMailboxes();
+        } catch (ServiceException e) {
+            ZimbraLog.perf.warn("Unable to list loaded mailboxes.", e);
+            return new String[0];
+        }
+        // snapshot the wait times first, the counters keep moving while we sort
+        final Map<Mailbox, Long> waits = new HashMap<Mailbox, Long>(mailboxes.size());
+        for (Mailbox mbox : mailboxes) {
+            waits.put(mbox, mbox.lock.getStats().getWaitMs());
+        }
+        List<Mailbox> sorted = new ArrayList<Mailbox>(waits.keySet());
+        Collections.sort(sorted, new Comparator<Mailbox>() {
+            @Override
+            public int compare(Mailbox m1, Mailbox m2) {
+                return Long.compare(waits.get(m2), waits.get(m1));
+            }
+        });
+        int count = Math.min(sorted.size(), MAX_MAILBOXES);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            Mailbox mbox = sorted.get(i);
+            result[i] = "mailbox=" + mbox.getId() + "," + mbox.lock.getStats();
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        totals.reset();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.zimbra.cs.session.IWaitSet;
+import com.zimbra.cs.session.WaitSetBase;
+import com.zimbra.cs.session.WaitSetMgr;
+
+/**
+ * Exposes WaitSet notification latency and the signals queued on each WaitSet.
+ */
+public class JmxWaitSetStats implements JmxWaitSetStatsMBean {
+
+    private static final int MAX_WAITSETS = 50;
+
+    JmxWaitSetStats() {
+    }
+
+    @Override
+    public int getWaitSets() {
+        return WaitSetMgr.getAll().size();
+    }
+
+    @Override
+    public int getPendingSignals() {
+        int pending = 0;
+        for (IWaitSet ws : WaitSetMgr.getAll()) {
+            if (ws instanceof WaitSetBase) {
+                pending += ((WaitSetBase) ws).getPendingSignalCount();
+            }
+        }
+        return pending;
+    }
+
+    @Override
+    public long getNotifyLatencyP99Ms() {
+        return ZimbraPerf.HISTOGRAM_WAITSET_NOTIFY_MS.getPercentile(99);
+    }
+
+    @Override
+    public long getNotifyLatencyMaxMs() {
+        return ZimbraPerf.HISTOGRAM_WAITSET_NOTIFY_MS.getMax();
+    }
+
+    @Override
+    public long getBatchSizeP99() {
+        return ZimbraPerf.HISTOGRAM_WAITSET_BATCH.getPercentile(99);
+    }
+
+    @Override
+    public String[] getPendingSignalsByWaitSet() {
+        List<WaitSetBase> waitSets = new ArrayList<WaitSetBase>();
+        final List<Integer> counts = new ArrayList<Integer>();
+        for (IWaitSet ws : WaitSetMgr.getAll()) {
+            if (ws instanceof WaitSetBase) {
+                WaitSetBase base = (WaitSetBase) ws;
+                int pending = base.getPendingSignalCount();
+                if (pending > 0) {
+                    waitSets.add(base);
+                    counts.add(pending);
+                }
+            }
+        }
+        // sort indexes rather than the WaitSets, the counts keep moving while we sort
+        List<Integer> order = new ArrayList<Integer>(waitSets.size());
+        for (int i = 0; i < waitSets.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Integer.compare(counts.get(i2), counts.get(i1));
+            }
+        });
+        int count = Math.min(order.size(), MAX_WAITSETS);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            WaitSetBase ws = waitSets.get(order.get(i));
+            result[i] = String.format("%s owner=%s pending=%d", ws.getWaitSetId(), ws.getOwnerAccountId(),
+                    counts.get(order.get(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        // the histograms are reset each time the stats dumper writes mailboxd.csv
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.stats;
+
+public interface JmxWaitSetStatsMBean extends JmxStatsMBeanBase {
+    int getWaitSets();
+
+    /**
+     * Returns the number of accounts signalled across all WaitSets which have not been handed to a callback yet.
+     */
+    int getPendingSignals();
+    long getNotifyLatencyP99Ms();
+    long getNotifyLatencyMaxMs();
+    long getBatchSizeP99();
+
+    /**
+     * Returns one line per WaitSet with signals pending, most pending first.
+     */
+    String[] getPendingSignalsByWaitSet();
+}
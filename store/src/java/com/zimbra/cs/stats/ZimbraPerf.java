@@ -40,6 +40,7 @@ import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.stats.Accumulator;
 import com.zimbra.common.stats.Counter;
 import com.zimbra.common.stats.DeltaCalculator;
+import com.zimbra.common.stats.Histogram;
 import com.zimbra.common.stats.RealtimeStats;
 import com.zimbra.common.stats.RealtimeStatsCallback;
 import com.zimbra.common.stats.StatsDumper;
@@ -112,12 +113,18 @@ public class ZimbraPerf {
     @Description("Number of message structures cached in memory")
     public static final String RTS_MSG_CACHE_SIZE = "msg_cache_size";
 
+    @Description("Number of bytes of message data held in memory by the message cache")
+    public static final String RTS_MSG_CACHE_BYTES = "msg_cache_bytes";
+
     @Description("Number of open file descriptors that reference message content")
     public static final String RTS_FD_CACHE_SIZE = "fd_cache_size";
 
     @Description("File descriptor cache hit rate")
     public static final String RTS_FD_CACHE_HIT_RATE = "fd_cache_hit_rate";
 
+    @Description("Number of open blob file descriptors, including evicted ones that are still being read")
+    public static final String RTS_FD_CACHE_OPEN = "fd_cache_open";
+
     // LDAP provisioning caches.
     @Description("LDAP ACL cache hit rate")
     public static final String RTS_ACL_CACHE_HIT_RATE = "acl_cache_hit_rate";
@@ -177,27 +184,56 @@ public class ZimbraPerf {
     public static final Counter COUNTER_LMTP_RCVD_RCPT = new Counter();
     public static final Counter COUNTER_LMTP_DLVD_MSGS = new Counter();
     public static final Counter COUNTER_LMTP_DLVD_BYTES = new Counter();
+    public static final StopWatch STOPWATCH_LMTP_RCPT = new StopWatch();   // Per-recipient local delivery time
     public static final StopWatch STOPWATCH_DB_CONN = new StopWatch();
     public static final StopWatch STOPWATCH_LDAP_DC = new StopWatch();
     public static final StopWatch STOPWATCH_MBOX_ADD_MSG = new StopWatch();
     public static final StopWatch STOPWATCH_MBOX_GET = new StopWatch();         // Mailbox accessor response time
     public static final Counter COUNTER_MBOX_CACHE = new Counter();           // Mailbox cache hit rate
     public static final Counter COUNTER_MBOX_MSG_CACHE = new Counter();
+    public static final Counter COUNTER_MBOX_MSG_CACHE_EVICTIONS = new Counter();
     public static final Counter COUNTER_MBOX_ITEM_CACHE = new Counter();
+    public static final Counter COUNTER_IMAP_STRUCTURE_CACHE = new Counter();
     public static final StopWatch STOPWATCH_SOAP = new StopWatch();
     public static final StopWatch STOPWATCH_IMAP = new StopWatch();
     public static final StopWatch STOPWATCH_POP = new StopWatch();
+    public static final StopWatch STOPWATCH_FILTER = new StopWatch();       // Sieve script evaluation time
     public static final Counter COUNTER_IDX_WRT = new Counter();
     public static final Counter COUNTER_IDX_WRT_OPENED = new Counter();
     public static final Counter COUNTER_IDX_WRT_OPENED_CACHE_HIT = new Counter();
     public static final Counter COUNTER_CALENDAR_CACHE_HIT = new Counter();
     public static final Counter COUNTER_CALENDAR_CACHE_MEM_HIT = new Counter();
     public static final Counter COUNTER_CALENDAR_CACHE_LRU_SIZE = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_LRU_HIT = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_MEMCACHED_HIT = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_FILE_HIT = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_STALE = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_FOLDER_RELOAD = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_ITEM_RELOAD = new Counter();
+    public static final Counter COUNTER_CALENDAR_CACHE_DELTA = new Counter();
     public static final Counter COUNTER_IDX_BYTES_WRITTEN = new Counter();
     public static final Counter COUNTER_IDX_BYTES_READ = new Counter();
     public static final Counter COUNTER_BLOB_INPUT_STREAM_READ = new Counter();
     public static final Counter COUNTER_BLOB_INPUT_STREAM_SEEK_RATE = new Counter();
+    public static final Counter COUNTER_FD_CACHE_BLOCKED = new Counter();
+    public static final Counter COUNTER_CONTACT_AC_INDEX = new Counter();     // Autocomplete index hit rate
     public static final StopWatch STOPWATCH_EWS = new StopWatch();
+    public static final Histogram HISTOGRAM_REDO_BATCH_SIZE = new Histogram("redo_batch_size");
+    public static final Histogram HISTOGRAM_LMTP_FANOUT = new Histogram("lmtp_fanout");
+    public static final Histogram HISTOGRAM_REDO_FSYNC_US = new Histogram("redo_fsync_us");
+    public static final Histogram HISTOGRAM_IDX_COMMIT_MS = new Histogram("idx_commit_ms");
+    public static final Histogram HISTOGRAM_IDX_READER_OPEN_MS = new Histogram("idx_reader_open_ms");
+    public static final Histogram HISTOGRAM_IDX_SEGMENTS = new Histogram("idx_segments");
+    public static final Histogram HISTOGRAM_DB_CONN_WAIT_US = new Histogram("db_conn_wait_us");
+    public static final Histogram HISTOGRAM_DB_CONN_HOLD_MS = new Histogram("db_conn_hold_ms");
+    public static final Histogram HISTOGRAM_DB_CONN_QUERIES = new Histogram("db_conn_queries");
+    public static final Histogram HISTOGRAM_MBOX_CACHE_WARMUP_MS = new Histogram("mbox_cache_warmup_ms");
+    public static final Histogram HISTOGRAM_MBOX_CACHE_WARMUP_ROWS = new Histogram("mbox_cache_warmup_rows");
+    public static final Histogram HISTOGRAM_SOAP_TTFB_MS = new Histogram("soap_ttfb_ms");
+    public static final Histogram HISTOGRAM_SOAP_ALLOC_KB = new Histogram("soap_alloc_kb");
+    public static final Histogram HISTOGRAM_WAITSET_NOTIFY_MS = new Histogram("waitset_notify_ms");
+    public static final Histogram HISTOGRAM_WAITSET_BATCH = new Histogram("waitset_batch");
+    public static final Histogram HISTOGRAM_WAITSET_QUEUE_DEPTH = new Histogram("waitset_queue_depth");
 
     public static final ActivityTracker SOAP_TRACKER = new ActivityTracker("soap.csv");
     public static final ActivityTracker IMAP_TRACKER = new ActivityTracker("imap.csv");
@@ -219,8 +255,8 @@ public class ZimbraPerf {
             RTS_POP_CONN, RTS_POP_THREADS, RTS_POP_SSL_CONN, RTS_POP_SSL_THREADS,
             RTS_IMAP_CONN, RTS_IMAP_THREADS, RTS_IMAP_SSL_CONN, RTS_IMAP_SSL_THREADS,
             RTS_HTTP_IDLE_THREADS, RTS_HTTP_THREADS, RTS_SOAP_SESSIONS,
-            RTS_MBOX_CACHE_SIZE, RTS_MSG_CACHE_SIZE,
-            RTS_FD_CACHE_SIZE, RTS_FD_CACHE_HIT_RATE,
+            RTS_MBOX_CACHE_SIZE, RTS_MSG_CACHE_SIZE, RTS_MSG_CACHE_BYTES,
+            RTS_FD_CACHE_SIZE, RTS_FD_CACHE_HIT_RATE, RTS_FD_CACHE_OPEN,
             RTS_ACL_CACHE_HIT_RATE,
             RTS_ACCOUNT_CACHE_SIZE, RTS_ACCOUNT_CACHE_HIT_RATE,
             RTS_COS_CACHE_SIZE, RTS_COS_CACHE_HIT_RATE,
@@ -282,9 +318,39 @@ public class ZimbraPerf {
     @Description("Message cache hit rate")
     private static final String DC_MBOX_MSG_CACHE = "mbox_msg_cache";
 
+    @Description("Number of message cache lookups")
+    private static final String DC_MBOX_MSG_CACHE_COUNT = "mbox_msg_cache_count";
+
+    @Description("Number of messages evicted from the message cache")
+    private static final String DC_MBOX_MSG_CACHE_EVICTIONS = "mbox_msg_cache_evictions";
+
     @Description("Item cache hit rate")
     private static final String DC_MBOX_ITEM_CACHE = "mbox_item_cache";
 
+    @Description("IMAP BODYSTRUCTURE/ENVELOPE cache hit rate")
+    private static final String DC_IMAP_STRUCTURE_CACHE = "imap_structure_cache";
+
+    @Description("Number of times a blob read waited for a file descriptor cache shard lock")
+    private static final String DC_FD_CACHE_BLOCKED_COUNT = "fd_cache_blocked_count";
+
+    @Description("Total time (us) blob reads spent waiting for file descriptor cache shard locks")
+    private static final String DC_FD_CACHE_BLOCKED_US = "fd_cache_blocked_us";
+
+    @Description("Number of local LMTP recipient deliveries")
+    private static final String DC_LMTP_RCPT_COUNT = "lmtp_rcpt_count";
+
+    @Description("Average time (ms) spent delivering to one local LMTP recipient")
+    private static final String DC_LMTP_RCPT_MS_AVG = "lmtp_rcpt_ms_avg";
+
+    @Description("Number of Sieve scripts evaluated")
+    private static final String DC_FILTER_COUNT = "filter_count";
+
+    @Description("Average time (ms) spent evaluating a Sieve script")
+    private static final String DC_FILTER_MS_AVG = "filter_ms_avg";
+
+    @Description("Contact autocomplete index hit rate")
+    private static final String DC_CONTACT_AC_INDEX = "contact_ac_index";
+
     @Description("Number of SOAP requests received")
     private static final String DC_SOAP_COUNT = "soap_count";
 
@@ -339,6 +405,27 @@ public class ZimbraPerf {
     @Description("Number of calendars (folders) in the calendar summary cache LRU in Java heap")
     private static final String DC_CALCACHE_LRU_SIZE = "calcache_lru_size";
 
+    @Description("Number of calendar summaries served from the calendar summary cache LRU in Java heap")
+    private static final String DC_CALCACHE_LRU_HIT = "calcache_lru_hit";
+
+    @Description("Number of calendar summaries served from memcached")
+    private static final String DC_CALCACHE_MEMCACHED_HIT = "calcache_memcached_hit";
+
+    @Description("Number of calendar summaries loaded from the calendar summary file cache")
+    private static final String DC_CALCACHE_FILE_HIT = "calcache_file_hit";
+
+    @Description("Number of calendar summaries found in memcached but older than the folder")
+    private static final String DC_CALCACHE_STALE = "calcache_stale";
+
+    @Description("Number of calendar summaries rebuilt by scanning the calendar folder")
+    private static final String DC_CALCACHE_FOLDER_RELOAD = "calcache_folder_reload";
+
+    @Description("Number of calendar items whose instances were expanded for the calendar summary cache")
+    private static final String DC_CALCACHE_ITEM_RELOAD = "calcache_item_reload";
+
+    @Description("Number of calendar item changes applied to cached calendar summaries when committed")
+    private static final String DC_CALCACHE_DELTA = "calcache_delta";
+
     private static CopyOnWriteArrayList<Accumulator> sAccumulators = null;
 
     private static final long CSV_DUMP_FREQUENCY = Constants.MILLIS_PER_MINUTE;
@@ -478,12 +565,16 @@ public class ZimbraPerf {
                             new DeltaCalculator(STOPWATCH_MBOX_GET).setCountName(DC_MBOX_GET_COUNT)
                                     .setAverageName(DC_MBOX_GET_MS_AVG),
                             new DeltaCalculator(COUNTER_MBOX_CACHE).setAverageName(DC_MBOX_CACHE),
-                            new DeltaCalculator(COUNTER_MBOX_MSG_CACHE).setAverageName(DC_MBOX_MSG_CACHE),
+                            new DeltaCalculator(COUNTER_MBOX_MSG_CACHE).setCountName(DC_MBOX_MSG_CACHE_COUNT)
+                                    .setAverageName(DC_MBOX_MSG_CACHE),
+                            new DeltaCalculator(COUNTER_MBOX_MSG_CACHE_EVICTIONS)
+                                    .setTotalName(DC_MBOX_MSG_CACHE_EVICTIONS),
                             new DeltaCalculator(COUNTER_MBOX_ITEM_CACHE).setAverageName(DC_MBOX_ITEM_CACHE),
                             new DeltaCalculator(STOPWATCH_SOAP).setCountName(DC_SOAP_COUNT)
                                     .setAverageName(DC_SOAP_MS_AVG),
                             new DeltaCalculator(STOPWATCH_IMAP).setCountName(DC_IMAP_COUNT)
                                     .setAverageName(DC_IMAP_MS_AVG),
+                            new DeltaCalculator(COUNTER_IMAP_STRUCTURE_CACHE).setAverageName(DC_IMAP_STRUCTURE_CACHE),
                             new DeltaCalculator(STOPWATCH_POP).setCountName(DC_POP_COUNT)
                                     .setAverageName(DC_POP_MS_AVG),
                             new DeltaCalculator(COUNTER_IDX_WRT).setAverageName(DC_IDX_WRT_AVG),
@@ -495,6 +586,16 @@ public class ZimbraPerf {
                                     .setAverageName(DC_CALCACHE_MEM_HIT),
                             new DeltaCalculator(COUNTER_CALENDAR_CACHE_LRU_SIZE)
                                     .setAverageName(DC_CALCACHE_LRU_SIZE),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_LRU_HIT).setTotalName(DC_CALCACHE_LRU_HIT),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_MEMCACHED_HIT)
+                                    .setTotalName(DC_CALCACHE_MEMCACHED_HIT),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_FILE_HIT).setTotalName(DC_CALCACHE_FILE_HIT),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_STALE).setTotalName(DC_CALCACHE_STALE),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_FOLDER_RELOAD)
+                                    .setTotalName(DC_CALCACHE_FOLDER_RELOAD),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_ITEM_RELOAD)
+                                    .setTotalName(DC_CALCACHE_ITEM_RELOAD),
+                            new DeltaCalculator(COUNTER_CALENDAR_CACHE_DELTA).setTotalName(DC_CALCACHE_DELTA),
                             new DeltaCalculator(COUNTER_IDX_BYTES_WRITTEN)
                                     .setTotalName(DC_IDX_BYTES_WRITTEN)
                                     .setAverageName(DC_IDX_BYTES_WRITTTEN_AVG),
@@ -503,6 +604,29 @@ public class ZimbraPerf {
                             new DeltaCalculator(COUNTER_BLOB_INPUT_STREAM_READ).setTotalName(DC_BIS_READ),
                             new DeltaCalculator(COUNTER_BLOB_INPUT_STREAM_SEEK_RATE)
                                     .setAverageName(DC_BIS_SEEK_RATE),
+                            new DeltaCalculator(COUNTER_FD_CACHE_BLOCKED)
+                                    .setCountName(DC_FD_CACHE_BLOCKED_COUNT).setTotalName(DC_FD_CACHE_BLOCKED_US),
+                            new DeltaCalculator(COUNTER_CONTACT_AC_INDEX).setAverageName(DC_CONTACT_AC_INDEX),
+                            new DeltaCalculator(STOPWATCH_FILTER).setCountName(DC_FILTER_COUNT)
+                                    .setAverageName(DC_FILTER_MS_AVG),
+                            new DeltaCalculator(STOPWATCH_LMTP_RCPT).setCountName(DC_LMTP_RCPT_COUNT)
+                                    .setAverageName(DC_LMTP_RCPT_MS_AVG),
+                            HISTOGRAM_REDO_BATCH_SIZE,
+                            HISTOGRAM_LMTP_FANOUT,
+                            HISTOGRAM_REDO_FSYNC_US,
+                            HISTOGRAM_IDX_COMMIT_MS,
+                            HISTOGRAM_IDX_READER_OPEN_MS,
+                            HISTOGRAM_IDX_SEGMENTS,
+                            HISTOGRAM_DB_CONN_WAIT_US,
+                            HISTOGRAM_DB_CONN_HOLD_MS,
+                            HISTOGRAM_DB_CONN_QUERIES,
+                            HISTOGRAM_MBOX_CACHE_WARMUP_MS,
+                            HISTOGRAM_MBOX_CACHE_WARMUP_ROWS,
+                            HISTOGRAM_SOAP_TTFB_MS,
+                            HISTOGRAM_SOAP_ALLOC_KB,
+                            HISTOGRAM_WAITSET_NOTIFY_MS,
+                            HISTOGRAM_WAITSET_BATCH,
+                            HISTOGRAM_WAITSET_QUEUE_DEPTH,
                             realtimeStats
                     }
                 );
@@ -513,6 +637,7 @@ public class ZimbraPerf {
                     new Accumulator[] {
                             new DeltaCalculator(STOPWATCH_IMAP)
                                     .setCountName(DC_IMAP_COUNT).setAverageName(DC_IMAP_MS_AVG),
+                            new DeltaCalculator(COUNTER_IMAP_STRUCTURE_CACHE).setAverageName(DC_IMAP_STRUCTURE_CACHE),
                             realtimeStats
                     }
                 );
@@ -555,6 +680,28 @@ public class ZimbraPerf {
         } catch (Exception e) {
             ZimbraLog.perf.warn("Unable to register JMX interface.", e);
         }
+        try {
+            jmxServer.registerMBean(new JmxMailboxLockStats(),
+                    new ObjectName("ZimbraCollaborationSuite:type=MailboxLockStats"));
+        } catch (Exception e) {
+            ZimbraLog.perf.warn("Unable to register mailbox lock JMX interface.", e);
+        }
+        try {
+            jmxServer.registerMBean(new JmxDbPoolStats(), new ObjectName("ZimbraCollaborationSuite:type=DbPoolStats"));
+        } catch (Exception e) {
+            ZimbraLog.perf.warn("Unable to register database pool JMX interface.", e);
+        }
+        try {
+            jmxServer.registerMBean(new JmxItemCacheStats(),
+                    new ObjectName("ZimbraCollaborationSuite:type=ItemCacheStats"));
+        } catch (Exception e) {
+            ZimbraLog.perf.warn("Unable to register item cache JMX interface.", e);
+        }
+        try {
+            jmxServer.registerMBean(new JmxWaitSetStats(), new ObjectName("ZimbraCollaborationSuite:type=WaitSetStats"));
+        } catch (Exception e) {
+            ZimbraLog.perf.warn("Unable to register WaitSet JMX interface.", e);
+        }
         StatsDumper.schedule(new Stats("mailboxd.csv", sAccumulators, jmxServerStats), CSV_DUMP_FREQUENCY);
         StatsDumper.schedule(SOAP_TRACKER, CSV_DUMP_FREQUENCY);
         StatsDumper.schedule(IMAP_TRACKER, CSV_DUMP_FREQUENCY);
@@ -597,6 +744,21 @@ public class ZimbraPerf {
         return mailboxCacheSize;
     }
 
+    /**
+     * Returns the number of bytes allocated so far by the current thread, or -1 if the JVM does not track it.
+     * The difference between two calls approximates the heap churned by the work done in between.
+     */
+    public static long getThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
     /**
      * Scheduled task that writes a row to a CSV file with the latest <tt>Accumulator</tt> data.
      */
@@ -25,13 +25,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.FileUtils;
 
 import com.google.common.base.MoreObjects;
 import com.zimbra.common.util.ByteUtil;
-import com.zimbra.common.util.FileUtil;
 import com.zimbra.common.zmime.ZSharedFileInputStream;
 
 /**
@@ -45,6 +43,7 @@ public class Blob {
     private File file;
     private String path;
     private Boolean compressed = null;
+    private BlobCodec codec;
     private String digest;
     private Long rawSize;
 
@@ -67,6 +66,7 @@ public class Blob {
         setFile(blob.getFile());
         setPath(blob.getPath());
         setCompressed(blob.isCompressed());
+        this.codec = blob.codec;
         setDigest(blob.getDigest());
         setRawSize(blob.getRawSize());
     }
@@ -81,8 +81,9 @@ public class Blob {
 
     public InputStream getInputStream() throws IOException {
         InputStream in = new ZSharedFileInputStream(file);
-        if (isCompressed()) {
-            in = new GZIPInputStream(in);
+        BlobCodec codec = getCompressionCodec();
+        if (codec != null) {
+            in = codec.decompress(in);
         }
         return in;
     }
@@ -92,12 +93,26 @@ public class Blob {
             if (rawSize != null && rawSize.longValue() == file.length()) {
                 this.compressed = Boolean.FALSE;
             } else {
-                this.compressed = FileUtil.isGzipped(file);
+                this.codec = BlobCodec.detect(file);
+                this.compressed = codec != null;
             }
         }
         return compressed;
     }
 
+    /** Returns the codec the blob's file was compressed with, or
+     *  <tt>null</tt> if the blob is not compressed. */
+    public BlobCodec getCompressionCodec() throws IOException {
+        if (!isCompressed()) {
+            return null;
+        }
+        if (codec == null) {
+            BlobCodec detected = BlobCodec.detect(file);
+            this.codec = detected != null ? detected : BlobCodec.GZIP;
+        }
+        return codec;
+    }
+
     /** Returns the SHA-256 digest of this blob's uncompressed data,
      *  encoded in base64. */
     public String getDigest() throws IOException {
@@ -147,6 +162,15 @@ public class Blob {
 
     public Blob setCompressed(final boolean isCompressed) {
         this.compressed = isCompressed;
+        if (!isCompressed) {
+            this.codec = null;
+        }
+        return this;
+    }
+
+    public Blob setCompressionCodec(final BlobCodec codec) {
+        this.codec = codec;
+        this.compressed = codec != null;
         return this;
     }
 
@@ -173,6 +197,7 @@ public class Blob {
     public Blob copyCachedDataFrom(final Blob other) {
         if (compressed == null && other.compressed != null) {
             this.compressed = other.compressed;
+            this.codec = other.codec;
         }
         if (digest == null && other.digest != null) {
             this.digest = other.digest;
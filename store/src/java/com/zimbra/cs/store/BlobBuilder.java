@@ -27,8 +27,6 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import org.apache.commons.io.IOUtils;
 
 import com.zimbra.common.localconfig.DebugConfig;
@@ -82,6 +80,14 @@ public class BlobBuilder {
         return 0;
     }
 
+    /**
+     * Returns the format used for blobs that exceed the compression threshold.
+     */
+    @SuppressWarnings("unused")
+    protected BlobCodec getCompressionCodec() throws IOException {
+        return BlobCodec.GZIP;
+    }
+
     public BlobBuilder disableDigest(boolean disable) {
         this.disableDigest = disable;
         return this;
@@ -162,9 +168,10 @@ public class BlobBuilder {
 
             // This call exceeded compression threshold.  Compress the stream and
             // write everything that we've read so far.
-            out = new GZIPOutputStream(out);
+            BlobCodec codec = getCompressionCodec();
+            out = codec.compress(out);
             writeToFile(buf, 0, bufLen);
-            blob.setCompressed(true);
+            blob.setCompressionCodec(codec);
             compressionThresholdExceeded = true;
         }
 
@@ -243,10 +250,10 @@ public class BlobBuilder {
             if (blob.isCompressed() && totalBytes == file.length())
             {
               ZimbraLog.store.info("Blob compression is useless avoid it");
-              GZIPInputStream in = null;
+              InputStream in = null;
               try {
                 uncompresedFile = File.createTempFile("blob","",file.getParentFile());
-                in = new GZIPInputStream(new FileInputStream(file));
+                in = blob.getCompressionCodec().decompress(new FileInputStream(file));
                 out = createOutputStream(uncompresedFile);
                 IOUtils.copy(in,out);
                 blob.setCompressed(false);
@@ -0,0 +1,236 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.store;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.util.ByteUtil;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * Compression formats for blobs in the message store.  Every codec writes a distinct header, so the format
+ * of an existing blob is always determined from the file itself and volumes can hold a mix of formats.
+ */
+public enum BlobCodec {
+
+    /** The original format.  Slow to write, but readable by every existing tool. */
+    GZIP("gzip") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out);
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            return new GZIPInputStream(in);
+        }
+
+        @Override
+        boolean matches(byte[] header, int len) {
+            return len >= 2 && header[0] == (byte) 0x1f && header[1] == (byte) 0x8b;
+        }
+    },
+
+    /**
+     * A zlib stream at a low compression level (see <tt>zimbra_blob_deflate_level</tt>), prefixed with
+     * {@link #DEFLATE_MAGIC}.  Compresses several times faster than gzip at a slightly lower ratio.
+     */
+    DEFLATE("deflate") {
+        @Override
+        public OutputStream compress(OutputStream out) throws IOException {
+            out.write(DEFLATE_MAGIC);
+            int level = Math.min(Math.max(LC.zimbra_blob_deflate_level.intValue(), Deflater.BEST_SPEED),
+                    Deflater.BEST_COMPRESSION);
+            return new DeflaterOutputStream(out, new Deflater(level)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public InputStream decompress(InputStream in) throws IOException {
+            byte[] header = new byte[DEFLATE_MAGIC.length];
+            if (!matches(header, readHeader(in, header))) {
+                throw new IOException("not a " + getName() + " blob");
+            }
+            return new InflaterInputStream(in);
+        }
+
+        @Override
+        boolean matches(byte[] header, int len) {
+            if (len < DEFLATE_MAGIC.length) {
+                return false;
+            }
+            for (int i = 0; i < DEFLATE_MAGIC.length; i++) {
+                if (header[i] != DEFLATE_MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    };
+
+    /** Header of {@link #DEFLATE} blobs.  The leading non-ASCII byte can't start an RFC 822 message. */
+    static final byte[] DEFLATE_MAGIC = new byte[] { (byte) 0x89, 'Z', 'D', 'F' };
+
+    /** Number of bytes {@link #detect} needs to see. */
+    static final int HEADER_LENGTH = DEFLATE_MAGIC.length;
+
+    private final String name;
+
+    private BlobCodec(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Wraps the stream that receives the blob file contents.  Closing the returned stream closes <tt>out</tt>.
+     */
+    public abstract OutputStream compress(OutputStream out) throws IOException;
+
+    /**
+     * Wraps a stream positioned at the start of a blob file written by this codec.
+     */
+    public abstract InputStream decompress(InputStream in) throws IOException;
+
+    abstract boolean matches(byte[] header, int len);
+
+    /**
+     * Compresses <tt>src</tt> into <tt>dest</tt>, deleting <tt>dest</tt> if the copy doesn't complete.
+     */
+    public void compress(File src, File dest, boolean sync) throws IOException {
+        InputStream in = null;
+        FileOutputStream fos = null;
+        OutputStream out = null;
+        boolean isComplete = false;
+        try {
+            in = new FileInputStream(src);
+            fos = new FileOutputStream(dest);
+            out = compress(fos);
+            ByteUtil.copy(in, false, out, false);
+            out.flush();
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+            }
+            if (sync) {
+                fos.getChannel().force(true);
+            }
+            isComplete = true;
+        } finally {
+            ByteUtil.closeStream(in);
+            ByteUtil.closeStream(out != null ? out : fos);
+            if (!isComplete) {
+                dest.delete();
+            }
+        }
+    }
+
+    public static boolean isKnown(String name) {
+        for (BlobCodec codec : values()) {
+            if (codec.name.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the codec with the given name, or {@link #GZIP} if <tt>name</tt> is <tt>null</tt> or unknown.
+     */
+    public static BlobCodec fromName(String name) {
+        if (name == null) {
+            return GZIP;
+        }
+        for (BlobCodec codec : values()) {
+            if (codec.name.equalsIgnoreCase(name)) {
+                return codec;
+            }
+        }
+        ZimbraLog.store.warn("unknown blob compression codec %s, using %s", name, GZIP.name);
+        return GZIP;
+    }
+
+    /**
+     * Returns the codec that wrote the given header, or <tt>null</tt> if the data isn't compressed.
+     */
+    public static BlobCodec detect(byte[] header, int len) {
+        for (BlobCodec codec : values()) {
+            if (codec.matches(header, len)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the codec that wrote the given file, or <tt>null</tt> if the file isn't compressed.
+     */
+    public static BlobCodec detect(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] header = new byte[HEADER_LENGTH];
+            return detect(header, readHeader(in, header));
+        } finally {
+            ByteUtil.closeStream(in);
+        }
+    }
+
+    /**
+     * Wraps a stream of compressed blob data, detecting the codec from its header.  Data that doesn't
+     * match any header is assumed to be gzipped, as it was before other codecs existed.
+     */
+    public static InputStream decompressAny(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        byte[] header = new byte[HEADER_LENGTH];
+        in.mark(header.length);
+        int len = readHeader(in, header);
+        in.reset();
+        BlobCodec codec = detect(header, len);
+        return (codec == null ? GZIP : codec).decompress(in);
+    }
+
+    private static int readHeader(InputStream in, byte[] header) throws IOException {
+        int len = 0, n;
+        while (len < header.length && (n = in.read(header, len, header.length - len)) > 0) {
+            len += n;
+        }
+        return len;
+    }
+}
@@ -22,38 +22,50 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
+import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.common.stats.Counter;
 import com.zimbra.common.util.FileCache;
-import com.zimbra.common.util.FileUtil;
 import com.zimbra.common.util.Log;
 import com.zimbra.common.util.LogFactory;
 import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.account.Provisioning;
 import com.zimbra.cs.account.Server;
+import com.zimbra.cs.stats.ZimbraPerf;
 
 /**
  * Caches file descriptors to blobs in the mail store.  If the blob is compressed,
  * uses a {@link FileCache} to access the uncompressed data.  Cache entries
  * that reference uncompressed blobs keep the file descriptor open until {@link #remove}
  * is called or the cache entry is aged out.
+ * <p>
+ * Entries are spread over independently locked LRU shards by path, so that concurrent blob reads don't all
+ * serialize on one monitor.  Each shard evicts its own least recently used entries once it holds more than its
+ * share of the configured maximum.
  */
 public class FileDescriptorCache
 {
     private static final Log sLog = LogFactory.getLog(FileDescriptorCache.class);
 
-    // Create the file cache with default LinkedHashMap values, but sorted by last access time.
-    private final LinkedHashMap<String, SharedFile> mCache = new LinkedHashMap<String, SharedFile>(16, 0.75f, true);
-    // Create a concurrent list for the SharedFies for which the mapping has been removed but is still in use by some threads.
-    private final List<SharedFileInfo> mInactiveCache = Collections.synchronizedList(new ArrayList<SharedFileInfo>());
+    /** Smallest number of entries per shard; small caches use fewer shards so that LRU order stays meaningful. */
+    private static final int MIN_SHARD_SIZE = 64;
+
+    private volatile Shard[] mShards;
+    // SharedFiles for which the mapping has been removed but which are still in use by some threads.
+    private final Queue<SharedFileInfo> mInactiveCache = new ConcurrentLinkedQueue<SharedFileInfo>();
+    private final AtomicBoolean mClosingInactive = new AtomicBoolean();
     private int mMaxSize = 1000;
+    private final int mMaxShards;
     private final FileCache<String> mUncompressedFileCache;
     private final Counter mHitRate = new Counter();
 
@@ -67,8 +79,36 @@ public class FileDescriptorCache
         }
     }
 
+    /** One LRU partition of the cache, sorted by last access time. */
+    private static final class Shard {
+        final LinkedHashMap<String, SharedFile> map = new LinkedHashMap<String, SharedFile>(16, 0.75f, true);
+        final ReentrantLock lock = new ReentrantLock();
+        final int maxSize;
+        /** Set once the shard's entries have been moved to a new set of shards by {@link #setMaxSize}. */
+        boolean retired;
+
+        Shard(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
     public FileDescriptorCache(FileCache<String> uncompressedCache) {
         mUncompressedFileCache = uncompressedCache;
+        mMaxShards = Math.max(1, LC.zimbra_blob_fd_cache_shards.intValue());
+        mShards = createShards(mMaxSize);
+    }
+
+    private Shard[] createShards(int maxSize) {
+        int count = 1;
+        while (count * 2 <= mMaxShards && count * 2 * MIN_SHARD_SIZE <= maxSize) {
+            count *= 2;
+        }
+        int shardSize = (maxSize + count - 1) / count;
+        Shard[] shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(shardSize);
+        }
+        return shards;
     }
 
     public synchronized FileDescriptorCache setMaxSize(int maxSize) {
@@ -77,7 +117,28 @@ public class FileDescriptorCache
 
         mMaxSize = maxSize;
         mHitRate.reset(); // Recalculate hit rate based on the new size.
-        pruneIfNecessary();
+
+        // Move the existing entries into a new set of shards sized for the new maximum.  Threads still holding
+        // an old shard see it retired and retry against the new ones.
+        Shard[] oldShards = mShards;
+        Shard[] newShards = createShards(maxSize);
+        List<SharedFileInfo> evicted = new ArrayList<SharedFileInfo>();
+        for (Shard shard : oldShards) {
+            lock(shard);
+            try {
+                for (Map.Entry<String, SharedFile> entry : shard.map.entrySet()) {
+                    Shard target = shardFor(newShards, entry.getKey());
+                    target.map.put(entry.getKey(), entry.getValue());
+                    evictIfNecessary(target, evicted);
+                }
+                shard.map.clear();
+                shard.retired = true;
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+        mShards = newShards;
+        closeEvicted(evicted);
         return this;
     }
 
@@ -98,18 +159,25 @@ public class FileDescriptorCache
      * the uncompressed cache.
      */
     public synchronized void shutdown() {
-        Iterator<Map.Entry<String, SharedFile>> iEntries = mCache.entrySet().iterator();
-        while (iEntries.hasNext()) {
-            Map.Entry<String, SharedFile> entry = iEntries.next();
-            String path = entry.getKey();
-            SharedFile file = entry.getValue();
-            iEntries.remove();
+        for (Shard shard : mShards) {
+            List<Map.Entry<String, SharedFile>> entries;
+            lock(shard);
             try {
-                boolean success = close(file, path);
-                if (!success)
-                    sLog.warn("Unable to close %s. File is in use.", file);
-            } catch (IOException e) {
-                sLog.warn("Unable to close %s", file, e);
+                entries = new ArrayList<Map.Entry<String, SharedFile>>(shard.map.entrySet());
+                shard.map.clear();
+            } finally {
+                shard.lock.unlock();
+            }
+            for (Map.Entry<String, SharedFile> entry : entries) {
+                String path = entry.getKey();
+                SharedFile file = entry.getValue();
+                try {
+                    boolean success = close(file, path);
+                    if (!success)
+                        sLog.warn("Unable to close %s. File is in use.", file);
+                } catch (IOException e) {
+                    sLog.warn("Unable to close %s", file, e);
+                }
             }
         }
     }
@@ -136,11 +204,46 @@ public class FileDescriptorCache
     }
 
     boolean contains(String path) {
-        synchronized (this) {
-            return mCache.containsKey(path);
+        Shard shard = lockShard(path);
+        try {
+            return shard.map.containsKey(path);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    private static Shard shardFor(Shard[] shards, String path) {
+        int h = path.hashCode();
+        return shards[(h ^ (h >>> 16)) & (shards.length - 1)];
+    }
+
+    /**
+     * Locks and returns the current shard for the path, retrying if {@link #setMaxSize} retired it meanwhile.
+     */
+    private Shard lockShard(String path) {
+        while (true) {
+            Shard shard = shardFor(mShards, path);
+            lock(shard);
+            if (!shard.retired) {
+                return shard;
+            }
+            shard.lock.unlock();
+            Thread.yield();
         }
     }
 
+    /**
+     * Acquires the shard lock, accounting for the time spent waiting if another thread holds it.
+     */
+    private void lock(Shard shard) {
+        if (shard.lock.tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        shard.lock.lock();
+        ZimbraPerf.COUNTER_FD_CACHE_BLOCKED.increment(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+    }
+
     /**
      * Returns the existing cache entry or creates a new one.  Implicitly
      * increments the number of readers for the <tt>SharedFile</tt>.
@@ -148,12 +251,18 @@ public class FileDescriptorCache
     private SharedFile getSharedFile(String path, long rawSize) throws IOException {
         SharedFile sharedFile = null;
 
-        synchronized (this) {
-            sharedFile = mCache.get(path);
+        Shard shard = lockShard(path);
+        try {
+            sharedFile = shard.map.get(path);
+            if (sharedFile != null) {
+                // count the reader before releasing the lock so that eviction can't close the file under us
+                sharedFile.aboutToRead();
+            }
+        } finally {
+            shard.lock.unlock();
         }
         if (sharedFile != null) {
             sLog.debug("Found existing file descriptor for %s, rawSize=%d.", path, rawSize);
-            sharedFile.aboutToRead();
             mHitRate.increment(100);
             return sharedFile;
         }
@@ -162,12 +271,13 @@ public class FileDescriptorCache
         mHitRate.increment(0);
         File file = new File(path);
 
-        if (file.length() != rawSize && FileUtil.isGzipped(file)) {
+        BlobCodec codec = file.length() != rawSize ? BlobCodec.detect(file) : null;
+        if (codec != null) {
             sLog.debug("Adding file descriptor cache entry for %s from the uncompressed file cache.", path);
             FileCache.Item uncompressed = mUncompressedFileCache.get(path);
             if (uncompressed == null) {
                 InputStream in = null;
-                in = new GZIPInputStream(new FileInputStream(file));
+                in = codec.decompress(new FileInputStream(file));
                 mUncompressedFileCache.put(path, in);
                 uncompressed = mUncompressedFileCache.get(path);
                 if (uncompressed == null) {
@@ -182,18 +292,24 @@ public class FileDescriptorCache
             sharedFile = new SharedFile(file);
         }
 
-        synchronized (this) {
-            if (mCache.containsKey(path)) {
+        List<SharedFileInfo> evicted = new ArrayList<SharedFileInfo>();
+        shard = lockShard(path);
+        try {
+            SharedFile existing = shard.map.get(path);
+            if (existing != null) {
                 sLog.debug("Another thread just opened the same file.  Closing our copy and returning the other one.");
                 sharedFile.close();
-                sharedFile = mCache.get(path);
+                sharedFile = existing;
             } else {
                 sLog.debug("Caching file descriptor: path=%s, sharedFile=%s", path, sharedFile);
-                mCache.put(path, sharedFile);
+                shard.map.put(path, sharedFile);
+                evictIfNecessary(shard, evicted);
             }
+            sharedFile.aboutToRead();
+        } finally {
+            shard.lock.unlock();
         }
-        sharedFile.aboutToRead();
-        pruneIfNecessary();
+        closeEvicted(evicted);
 
         return sharedFile;
     }
@@ -205,8 +321,11 @@ public class FileDescriptorCache
     public void remove(String path) throws IOException {
         SharedFile file = null;
 
-        synchronized (this) {
-            file = mCache.remove(path);
+        Shard shard = lockShard(path);
+        try {
+            file = shard.map.remove(path);
+        } finally {
+            shard.lock.unlock();
         }
 
         if (file != null) {
@@ -233,12 +352,15 @@ public class FileDescriptorCache
             if (file.getNumReaders() == 0) {
                 file.close();
                 if (mUncompressedFileCache != null) {
-                    synchronized (this) {
-                        if (!mCache.containsKey(path)) {
+                    Shard shard = lockShard(path);
+                    try {
+                        if (!shard.map.containsKey(path)) {
                             mUncompressedFileCache.remove(path);
                         } else {
                             sLog.debug("Not removing %s from the uncompressed cache.  Another thread reopened it.");
                         }
+                    } finally {
+                        shard.lock.unlock();
                     }
                 }
                 return true;
@@ -249,7 +371,11 @@ public class FileDescriptorCache
     }
 
     private void quietCloseInactiveCache() {
-        synchronized (mInactiveCache) {
+        if (mInactiveCache.isEmpty() || !mClosingInactive.compareAndSet(false, true)) {
+            // nothing to do, or another thread is already sweeping
+            return;
+        }
+        try {
             Iterator<SharedFileInfo> iter = mInactiveCache.iterator();
             while (iter.hasNext()) {
                 SharedFileInfo info = iter.next();
@@ -262,41 +388,62 @@ public class FileDescriptorCache
                     iter.remove();
                 }
             }
+        } finally {
+            mClosingInactive.set(false);
+        }
+    }
+
+    public int getSize() {
+        int size = 0;
+        for (Shard shard : mShards) {
+            lock(shard);
+            try {
+                size += shard.map.size();
+            } finally {
+                shard.lock.unlock();
+            }
         }
+        return size;
     }
 
-    public synchronized int getSize() {
-        return mCache.size();
+    /**
+     * Returns the number of open file descriptors, including the ones that have been
+     * evicted but are still being read.
+     */
+    public int getOpenCount() {
+        return getSize() + mInactiveCache.size();
     }
 
     public double getHitRate() {
         return mHitRate.getAverage();
     }
 
-    private void pruneIfNecessary() {
-         if (getSize() <= mMaxSize)
-            return;
-
-        List<Map.Entry<String, SharedFile>> removeList = new ArrayList<Map.Entry<String, SharedFile>>();
+    int getShardCount() {
+        return mShards.length;
+    }
 
-        synchronized (this) {
-            Iterator<Map.Entry<String, SharedFile>> iEntries = mCache.entrySet().iterator();
-            while (iEntries.hasNext() && mCache.size() > mMaxSize) {
-                Map.Entry<String, SharedFile> mapEntry = iEntries.next();
-                iEntries.remove();
-                removeList.add(mapEntry);
-            }
+    /**
+     * Removes the shard's least recently used entries beyond its maximum size.  Must be called with
+     * the shard lock held; the evicted files are closed by {@link #closeEvicted} once it's released.
+     */
+    private static void evictIfNecessary(Shard shard, List<SharedFileInfo> evicted) {
+        Iterator<Map.Entry<String, SharedFile>> iEntries = shard.map.entrySet().iterator();
+        while (shard.map.size() > shard.maxSize && iEntries.hasNext()) {
+            Map.Entry<String, SharedFile> mapEntry = iEntries.next();
+            iEntries.remove();
+            evicted.add(new SharedFileInfo(mapEntry.getKey(), mapEntry.getValue()));
         }
-        for (Map.Entry<String, SharedFile> mapEntry : removeList) {
-            String path = mapEntry.getKey();
-            SharedFile file = mapEntry.getValue();
+    }
+
+    private void closeEvicted(List<SharedFileInfo> evicted) {
+        for (SharedFileInfo info : evicted) {
             try {
-                boolean success = close(file, path);
+                boolean success = close(info.file, info.path);
                 if (!success) {
-                    mInactiveCache.add(new SharedFileInfo(path, file));
+                    mInactiveCache.add(info);
                 }
             } catch (IOException e) {
-                ZimbraLog.store.warn("Unable to close file descriptor for " + path, e);
+                ZimbraLog.store.warn("Unable to close file descriptor for " + info.path, e);
             }
         }
 
@@ -0,0 +1,105 @@
+/*
+ * ***** BEGIN LICENSE BLOCK *****
+ * Zimbra Collaboration Suite Server
+ * Copyright (C) 2026 Synacor, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software Foundation,
+ * version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ * You should have received a copy of the GNU General Public License along with this program.
+ * If not, see <https://www.gnu.org/licenses/>.
+ * ***** END LICENSE BLOCK *****
+ */
+package com.zimbra.cs.store;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.zimbra.common.localconfig.LC;
+import com.zimbra.common.util.ZimbraLog;
+
+/**
+ * A read-only memory mapping of a large uncompressed blob in a local file.  Network code can hand the mapped
+ * buffer to the socket layer directly instead of copying the content through {@link BlobInputStream} and a
+ * chain of heap buffers.  Compressed blobs and blobs in stores without local files aren't mapped; callers fall
+ * back to {@link StoreManager#getContent(MailboxBlob)}.
+ * <p>
+ * The mapping stays valid after the blob file is deleted and is released when the buffer is garbage collected.
+ */
+public final class MappedBlob {
+
+    private static final int COPY_CHUNK_SIZE = 64 * 1024;
+
+    private final ByteBuffer buffer;
+
+    private MappedBlob(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Maps the blob if it's an uncompressed local file no smaller than <tt>zimbra_blob_mmap_threshold_kb</tt>.
+     *
+     * @return the mapping, or <tt>null</tt> if the content should be streamed instead
+     */
+    public static MappedBlob open(MailboxBlob mblob) throws IOException {
+        long threshold = LC.zimbra_blob_mmap_threshold_kb.longValue();
+        if (mblob == null || threshold < 0) {
+            return null;
+        }
+        File file = StoreManager.getInstance().getUncompressedFile(mblob);
+        if (file == null) {
+            return null;
+        }
+        RandomAccessFile raf;
+        try {
+            raf = new RandomAccessFile(file, "r");
+        } catch (FileNotFoundException e) {
+            // let the streaming path report the missing blob
+            ZimbraLog.store.debug("unable to map %s", file, e);
+            return null;
+        }
+        try {
+            FileChannel fc = raf.getChannel();
+            long size = fc.size();
+            if (size < threshold * 1024 || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            return new MappedBlob(fc.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } finally {
+            raf.close();
+        }
+    }
+
+    public long getSize() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns a new read-only buffer positioned at the start of the content.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies the content to a stream that can't accept a {@link ByteBuffer}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        ByteBuffer bb = getBuffer();
+        byte[] chunk = new byte[(int) Math.min(COPY_CHUNK_SIZE, bb.remaining())];
+        while (bb.hasRemaining()) {
+            int len = Math.min(chunk.length, bb.remaining());
+            bb.get(chunk, 0, len);
+            out.write(chunk, 0, len);
+        }
+    }
+}
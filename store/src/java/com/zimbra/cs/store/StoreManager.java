@@ -16,6 +16,7 @@
  */
 package com.zimbra.cs.store;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -400,6 +401,16 @@ public abstract class StoreManager {
      */
     public abstract InputStream getContent(Blob blob) throws IOException;
 
+    /**
+     * Returns the local file holding the blob's uncompressed content, or
+     * <tt>null</tt> if the content can only be read through {@link #getContent(MailboxBlob)}.
+     * Callers must treat the file as read-only.
+     */
+    @SuppressWarnings("unused")
+    public File getUncompressedFile(MailboxBlob mboxBlob) throws IOException {
+        return null;
+    }
+
     /**
      * Deletes a user's entire store.  SHOULD BE CALLED CAREFULLY.  No going back.
      * @param mbox
@@ -277,7 +277,7 @@ public class BlobDeduper {
                         case Volume.TYPE_MESSAGE:
                         case Volume.TYPE_MESSAGE_SECONDARY:
                             // reset volume metadata.
-                            updateMetadata(vol.getId(), new VolumeMetadata(0, 0, 0));
+                            resetMetadata(vol);
                             break;
                     }
                 }
@@ -287,7 +287,7 @@ public class BlobDeduper {
                     // remove the entries from volume_blobs and reset volume metadata.
                     DbVolumeBlobs.deleteBlobRef(conn, vol);
                     // reset volume metadata.
-                    updateMetadata(vol.getId(), new VolumeMetadata(0, 0, 0));
+                    resetMetadata(vol);
                 }
             }
             conn.commit();
@@ -297,6 +297,13 @@ public class BlobDeduper {
         } 
     }
     
+    private Volume resetMetadata(Volume vol) throws ServiceException {
+        VolumeMetadata metadata = new VolumeMetadata(0, 0, 0);
+        // the compression codec is configuration, not sync state
+        metadata.setCompressionCodec(vol.getMetadata().getCompressionCodec());
+        return updateMetadata(vol.getId(), metadata);
+    }
+
     private Volume updateMetadata(short volumeId, VolumeMetadata metadata) throws ServiceException {
         VolumeManager mgr = VolumeManager.getInstance();
         Volume.Builder builder = Volume.builder(mgr.getVolume(volumeId));
@@ -17,6 +17,7 @@
 package com.zimbra.cs.store.file;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -30,6 +31,7 @@ import com.zimbra.common.util.ZimbraLog;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.store.Blob;
 import com.zimbra.cs.store.BlobBuilder;
+import com.zimbra.cs.store.BlobCodec;
 import com.zimbra.cs.store.BlobInputStream;
 import com.zimbra.cs.store.FileDescriptorCache;
 import com.zimbra.cs.store.IncomingDirectory;
@@ -170,25 +172,26 @@ public final class FileBlobStore extends StoreManager {
 
         ensureParentDirExists(dest);
 
-        boolean destCompressed;
+        BlobCodec destCodec;
         if (destVolume.isCompressBlobs()) {
             if (src.isCompressed() || srcFile.length() <= destVolume.getCompressionThreshold()) {
                 FileUtil.copy(srcFile, dest, !DebugConfig.disableMessageStoreFsync);
-                destCompressed = src.isCompressed();
+                destCodec = src.getCompressionCodec();
             } else {
-                FileUtil.compress(srcFile, dest, !DebugConfig.disableMessageStoreFsync);
-                destCompressed = true;
+                destVolume.getCompressionCodec().compress(srcFile, dest, !DebugConfig.disableMessageStoreFsync);
+                destCodec = destVolume.getCompressionCodec();
             }
         } else {
             if (src.isCompressed()) {
-                FileUtil.uncompress(srcFile, dest, !DebugConfig.disableMessageStoreFsync);
+                FileUtil.uncompress(src.getCompressionCodec().decompress(new FileInputStream(srcFile)), dest,
+                        !DebugConfig.disableMessageStoreFsync);
             } else {
                 FileUtil.copy(srcFile, dest, !DebugConfig.disableMessageStoreFsync);
             }
-            destCompressed = false;
+            destCodec = null;
         }
 
-        VolumeBlob newBlob = (VolumeBlob) new VolumeBlob(dest, destVolume.getId()).copyCachedDataFrom(src).setCompressed(destCompressed);
+        VolumeBlob newBlob = (VolumeBlob) new VolumeBlob(dest, destVolume.getId()).copyCachedDataFrom(src).setCompressionCodec(destCodec);
         return new VolumeMailboxBlob(destMbox, destItemId, destRevision, destVolume.getLocator(), newBlob);
     }
 
@@ -371,6 +374,15 @@ public final class FileBlobStore extends StoreManager {
         return getContent(mboxBlob.getLocalBlob());
     }
 
+    @Override
+    public File getUncompressedFile(MailboxBlob mboxBlob) throws IOException {
+        if (mboxBlob == null) {
+            return null;
+        }
+        Blob blob = mboxBlob.getLocalBlob();
+        return blob == null || blob.isCompressed() ? null : blob.getFile();
+    }
+
     @Override
     public InputStream getContent(Blob blob) throws IOException {
         if (blob == null) {
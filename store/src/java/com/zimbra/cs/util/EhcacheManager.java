@@ -53,6 +53,7 @@ public final class EhcacheManager {
     public static final String IMAP_ACTIVE_SESSION_CACHE = "imap-active-session-cache";
     public static final String IMAP_INACTIVE_SESSION_CACHE = "imap-inactive-session-cache";
     public static final String SYNC_STATE_ITEM_CACHE = "sync-state-item-cache";
+    public static final String IMAP_STRUCTURE_CACHE = "imap-structure-cache";
 
     private EhcacheManager(Service service) {
         cacheManager = CacheManagerBuilder.newCacheManagerBuilder()
@@ -65,6 +66,9 @@ public final class EhcacheManager {
         } else {
             cacheManager.createCache(IMAP_INACTIVE_SESSION_CACHE, createImapInactiveSessionCache());
             cacheManager.createCache(SYNC_STATE_ITEM_CACHE, createActiveSyncStateItemCache());
+            if (LC.imap_structure_cache.booleanValue()) {
+                cacheManager.createCache(IMAP_STRUCTURE_CACHE, createImapStructureCache());
+            }
         }
     }
 
@@ -155,6 +159,16 @@ public final class EhcacheManager {
                 .build();
     }
 
+    private CacheConfiguration<String, byte[]> createImapStructureCache() {
+        // entries are keyed by blob digest and never go stale, so no expiry
+        return CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class,
+                byte[].class,
+                ResourcePoolsBuilder.newResourcePoolsBuilder()
+                .heap(LC.imap_structure_cache_heap_size.longValue(), MemoryUnit.B)
+                .disk(LC.imap_structure_cache_disk_size.longValue(), MemoryUnit.B, true)) // disk backed persistent store
+                .build();
+    }
+
     public Cache<String, ImapFolder> getEhcache(String cacheName) {
         return cacheManager.getCache(cacheName, String.class, ImapFolder.class);
     }
@@ -163,6 +177,10 @@ public final class EhcacheManager {
         return cacheManager.getCache(SYNC_STATE_ITEM_CACHE, String.class, String.class);
     }
 
+    public Cache<String, byte[]> getImapStructureEhcache() {
+        return cacheManager.getCache(IMAP_STRUCTURE_CACHE, String.class, byte[].class);
+    }
+
     public void shutdown() {
         cacheManager.close();
     }
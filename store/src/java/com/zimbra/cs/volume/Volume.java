@@ -24,6 +24,7 @@ import com.zimbra.common.localconfig.LC;
 import com.zimbra.common.service.ServiceException;
 import com.zimbra.cs.account.Provisioning;
 import com.zimbra.cs.mailbox.Metadata;
+import com.zimbra.cs.store.BlobCodec;
 import com.zimbra.cs.store.IncomingDirectory;
 import com.zimbra.cs.util.Zimbra;
 import com.zimbra.soap.admin.type.VolumeInfo;
@@ -65,21 +66,25 @@ public final class Volume {
     private boolean compressBlobs;
     private long compressionThreshold;
     private Metadata metadata;
+    private BlobCodec compressionCodec;
     
     public static class VolumeMetadata {
         private int lastSyncDate;
         private int currentSyncDate;
         private int groupId;
+        private String compressionCodec;
 
         private static final String FN_DATE_LASTSYNC = "lsd";
         private static final String FN_DATE_CURRENTSYNC = "csd";
         private static final String FN_LAST_GROUP_ID = "gid";
+        private static final String FN_COMPRESSION_CODEC = "codec";
 
         Metadata serialize() {
             Metadata meta = new Metadata();
             meta.put(FN_DATE_LASTSYNC, lastSyncDate);
             meta.put(FN_DATE_CURRENTSYNC, currentSyncDate);
             meta.put(FN_LAST_GROUP_ID, groupId);
+            meta.put(FN_COMPRESSION_CODEC, compressionCodec);
             return meta;
         }
 
@@ -87,6 +92,7 @@ public final class Volume {
             this.lastSyncDate = meta.getInt(FN_DATE_LASTSYNC, 0);
             this.currentSyncDate = meta.getInt(FN_DATE_CURRENTSYNC, 0);
             this.groupId = meta.getInt(FN_LAST_GROUP_ID, 0);
+            this.compressionCodec = meta.get(FN_COMPRESSION_CODEC, null);
         }
         
         public VolumeMetadata(int lastSyncDate, int currentSyncDate, int groupId) {
@@ -106,6 +112,14 @@ public final class Volume {
         public int getGroupId() {
             return groupId;
         }
+
+        /**
+         * Returns the name of the {@link BlobCodec} new blobs on the volume are compressed with,
+         * or <tt>null</tt> for the default.
+         */
+        public String getCompressionCodec() {
+            return compressionCodec;
+        }
         
         public void setLastSyncDate(int date) {
             this.lastSyncDate = date;
@@ -118,6 +132,10 @@ public final class Volume {
         public void setGroupId(int id) {
             this.groupId = id;
         }
+
+        public void setCompressionCodec(String codec) {
+            this.compressionCodec = codec;
+        }
         
         public String toString() {
             return serialize().toString();
@@ -138,6 +156,8 @@ public final class Volume {
     public static final class Builder {
         private final Volume volume = new Volume();
 
+        private String compressionCodec;
+
         private Builder() {
         }
 
@@ -153,6 +173,7 @@ public final class Volume {
             volume.compressBlobs = copy.compressBlobs;
             volume.compressionThreshold = copy.compressionThreshold;
             volume.metadata = copy.metadata;
+            volume.compressionCodec = copy.compressionCodec;
             
         }
 
@@ -216,6 +237,11 @@ public final class Volume {
             return this;
         }
 
+        public Builder setCompressionCodec(String value) {
+            compressionCodec = value;
+            return this;
+        }
+
         public Volume build() throws VolumeServiceException {
             switch (volume.id) {
                 case Volume.ID_AUTO_INCREMENT:
@@ -259,6 +285,15 @@ public final class Volume {
             if (volume.metadata == null) {
                 volume.metadata = new VolumeMetadata(0, 0, 0).serialize();
             }
+            if (compressionCodec != null) {
+                if (!BlobCodec.isKnown(compressionCodec)) {
+                    throw VolumeServiceException.INVALID_REQUEST("Invalid compression codec: " + compressionCodec);
+                }
+                // don't modify the metadata of the volume this builder was copied from
+                volume.metadata = new Metadata().copy(volume.metadata).put(VolumeMetadata.FN_COMPRESSION_CODEC,
+                        BlobCodec.fromName(compressionCodec).getName());
+            }
+            volume.compressionCodec = BlobCodec.fromName(volume.metadata.get(VolumeMetadata.FN_COMPRESSION_CODEC, null));
             return volume;
         }
     }
@@ -315,6 +350,10 @@ public final class Volume {
         return compressionThreshold;
     }
     
+    public BlobCodec getCompressionCodec() {
+        return compressionCodec;
+    }
+
     public VolumeMetadata getMetadata() throws ServiceException {
         return new VolumeMetadata(metadata);
     }
@@ -464,6 +503,7 @@ public final class Volume {
                 .add("mboxGroupBits", mboxGroupBits).add("mboxBits", mboxBits)
                 .add("fileGroupBits", fileGroupBits).add("fileBits", fileBits)
                 .add("compressBlobs", compressBlobs).add("compressionThreshold",compressionThreshold)
+                .add("compressionCodec", compressionCodec.getName())
                 .toString();
     }
 
@@ -479,6 +519,7 @@ public final class Volume {
         jaxb.setFbits(fileBits);
         jaxb.setCompressBlobs(compressBlobs);
         jaxb.setCompressionThreshold(compressionThreshold);
+        jaxb.setCompressionCodec(compressionCodec.getName());
         jaxb.setCurrent(VolumeManager.getInstance().isCurrent(this));
         return jaxb;
     }
@@ -108,6 +108,15 @@ public abstract class DocumentHandler {
 
     public abstract Element handle(Element request, Map<String, Object> context) throws ServiceException;
 
+    /** Returns whether the response to <tt>request</tt> goes straight from
+     *  the handler to the client, in which case the handler may fill it with
+     *  {@link Element.StreamedElement}s that are only produced while the
+     *  response is being written.  Batched and locally proxied requests, whose
+     *  responses get read back, always need a fully built response. */
+    public static boolean canStreamResponse(Element request, Map<String, Object> context) {
+        return request != null && context != null && context.get(SoapEngine.STREAMABLE_REQUEST) == request;
+    }
+
 
     /** Returns the {@link ZimbraSoapContext} object encapsulating the
      *  containing SOAP request's <pre>&lt;context></pre> header element. */
@@ -567,6 +576,7 @@ public abstract class DocumentHandler {
         if (isLocal && engine != null) {
             // executing on same server; just hand back to the SoapEngine
             Map<String, Object> contextTarget = new HashMap<String, Object>(context);
+            contextTarget.remove(SoapEngine.STREAMABLE_REQUEST);
             contextTarget.put(SoapEngine.ZIMBRA_ENGINE, engine);
             contextTarget.put(SoapEngine.ZIMBRA_CONTEXT, zsc);
             if (ZimbraLog.soap.isDebugEnabled()) {
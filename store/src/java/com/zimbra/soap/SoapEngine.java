@@ -54,6 +54,7 @@ import com.zimbra.cs.account.AccountServiceException.AuthFailedServiceException;
 import com.zimbra.cs.account.AuthToken;
 import com.zimbra.cs.account.GuestAccount;
 import com.zimbra.cs.account.Provisioning;
+import com.zimbra.cs.db.DbPoolStats;
 import com.zimbra.cs.mailbox.Mailbox;
 import com.zimbra.cs.mailbox.MailboxManager;
 import com.zimbra.cs.redolog.RedoLogProvider;
@@ -111,6 +112,10 @@ public class SoapEngine {
     /** context name of the original user agent */
     public static final String ORIG_REQUEST_USER_AGENT = "orig.request.user.agent";
 
+    /** context name of the top-level request whose response the servlet writes out as-is, and may
+     *  therefore contain {@link Element.StreamedElement}s */
+    public static final String STREAMABLE_REQUEST = "soap.streamable.request";
+
     private final DocumentDispatcher dispatcher = new DocumentDispatcher();
 
     SoapEngine() {
@@ -488,6 +493,9 @@ public class SoapEngine {
             } else {
                 String id = doc.getAttribute(A_REQUEST_CORRELATOR, null);
                 long start = System.currentTimeMillis();
+                if (LC.soap_response_streaming_enabled.booleanValue()) {
+                    context.put(STREAMABLE_REQUEST, doc);
+                }
                 responseBody = dispatchRequest(handler, doc, context, zsc);
                 if (!isResumed) {
                     ZimbraLog.soap.info("%s elapsed=%d", doc.getName(), System.currentTimeMillis() - start);
@@ -643,8 +651,14 @@ public class SoapEngine {
                 if (delegatedAuth) {
                     handler.logAuditAccess(at.getAdminAccountId(), acctId, acctId);
                 }
-                response = handler.handle(soapReqElem, context);
-                ZimbraPerf.SOAP_TRACKER.addStat(getStatName(soapReqElem), startTime);
+                String statName = getStatName(soapReqElem);
+                String previousRequest = DbPoolStats.setRequest(statName);
+                try {
+                    response = handler.handle(soapReqElem, context);
+                } finally {
+                    DbPoolStats.setRequest(previousRequest);
+                }
+                ZimbraPerf.SOAP_TRACKER.addStat(statName, startTime);
                 long duration = System.currentTimeMillis() - startTime;
                 if (LC.zimbra_slow_logging_enabled.booleanValue() && duration > LC.zimbra_slow_logging_threshold.longValue() &&
                         !soapReqElem.getQName().getName().equals(MailConstants.SYNC_REQUEST.getName())) {
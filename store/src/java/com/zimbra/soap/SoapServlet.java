@@ -212,16 +212,22 @@ public class SoapServlet extends ZimbraServlet {
     @Override public void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
         ZimbraLog.clearContext();
         long startTime = ZimbraPerf.STOPWATCH_SOAP.start();
+        long startAllocated = ZimbraPerf.getThreadAllocatedBytes();
 
         try {
-            doWork(req, resp);
+            doWork(req, resp, startTime);
         } finally {
             ZimbraLog.clearContext();
             ZimbraPerf.STOPWATCH_SOAP.stop(startTime);
+            if (startAllocated >= 0) {
+                // heap churned building and writing the response; streamed responses keep this flat
+                ZimbraPerf.HISTOGRAM_SOAP_ALLOC_KB.increment(
+                        (ZimbraPerf.getThreadAllocatedBytes() - startAllocated) / 1024);
+            }
         }
     }
 
-    private void doWork(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+    private void doWork(HttpServletRequest req, HttpServletResponse resp, long startTime) throws IOException {
         int len = req.getContentLength();
         byte[] buffer;
         boolean isResumed = true;
@@ -274,7 +280,7 @@ public class SoapServlet extends ZimbraServlet {
                 ZimbraLog.soap.warn(null, e);
                 Element fault = SoapProtocol.Soap12.soapFault(e);
                 Element envelope = SoapProtocol.Soap12.soapEnvelope(fault);
-                sendResponse(req, resp, envelope);
+                sendResponse(req, resp, envelope, startTime);
                 return;
             }
 
@@ -330,7 +336,7 @@ public class SoapServlet extends ZimbraServlet {
         if (ZimbraLog.soap.isTraceEnabled()) {
             ZimbraLog.soap.trace("S:\n%s", envelope.prettyPrint());
         }
-        sendResponse(req, resp, envelope);
+        sendResponse(req, resp, envelope, startTime);
     }
 
     private int soapResponseBufferSize() {
@@ -341,7 +347,8 @@ public class SoapServlet extends ZimbraServlet {
             return LC.soap_response_buffer_size.intValue();
     }
 
-    private void sendResponse(HttpServletRequest req, HttpServletResponse resp, Element envelope) throws IOException {
+    private void sendResponse(HttpServletRequest req, HttpServletResponse resp, Element envelope, long startTime)
+    throws IOException {
         SoapProtocol soapProto = SoapProtocol.determineProtocol(envelope);
         int statusCode = soapProto.hasFault(envelope) ?
                 HttpServletResponse.SC_INTERNAL_SERVER_ERROR : HttpServletResponse.SC_OK;
@@ -375,10 +382,12 @@ public class SoapServlet extends ZimbraServlet {
             ZimbraServletOutputStream out = new ZimbraServletOutputStream(resp.getOutputStream());
             envelope.output(out);
             out.flush();
+            ZimbraPerf.HISTOGRAM_SOAP_TTFB_MS.increment(out.getFirstWriteTime() - startTime);
         } else {
             // serialize the envelope to a byte array and send the response with Content-Length header.
             byte[] soapBytes = envelope.toUTF8();
             resp.setContentLength(soapBytes.length);
+            ZimbraPerf.HISTOGRAM_SOAP_TTFB_MS.increment(System.currentTimeMillis() - startTime);
             resp.getOutputStream().write(soapBytes);
             resp.getOutputStream().flush();
         }